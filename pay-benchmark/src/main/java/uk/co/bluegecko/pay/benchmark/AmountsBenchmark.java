@@ -0,0 +1,62 @@
+package uk.co.bluegecko.pay.benchmark;
+
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.bluegecko.pay.bacs.std18.mapper.JulianDateHandler;
+import uk.co.bluegecko.pay.bacs.std18.mapper.PenceHandler;
+import uk.co.bluegecko.pay.common.model.BuilderConstants;
+
+
+// the type handlers against the divide and ofEpochDay calls they replaced
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class AmountsBenchmark
+{
+
+	private final String pence = "00000012345";
+	private final String julianDate = " 14308";
+	private final PenceHandler penceHandler = new PenceHandler();
+	private final JulianDateHandler julianDateHandler = new JulianDateHandler();
+
+	@Benchmark
+	public BigDecimal penceDivide()
+	{
+		return new BigDecimal( pence ).divide( BuilderConstants.HUNDRED );
+	}
+
+	@Benchmark
+	public Object penceHandler()
+	{
+		return penceHandler.parse( pence );
+	}
+
+	@Benchmark
+	public LocalDate julianDateOfEpochDay()
+	{
+		return LocalDate.ofEpochDay( Long.valueOf( julianDate.trim() ) );
+	}
+
+	@Benchmark
+	public Object julianDateHandler()
+	{
+		return julianDateHandler.parse( julianDate );
+	}
+
+}
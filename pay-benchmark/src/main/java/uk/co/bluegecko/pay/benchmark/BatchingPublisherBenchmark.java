@@ -0,0 +1,128 @@
+package uk.co.bluegecko.pay.benchmark;
+
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uk.co.bluegecko.pay.bacs.std18.model.Account;
+import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
+import uk.co.bluegecko.pay.bacs.std18.service.v1.AccountWireStd18ToV1;
+import uk.co.bluegecko.pay.bacs.std18.service.v1.InstructionWireStd18ToV1;
+import uk.co.bluegecko.pay.upload.service.InstructionPublisher;
+import uk.co.bluegecko.pay.upload.service.base.StreamingServiceBase;
+
+
+// a message per instruction against envelopes of a batch, over a channel that only hands the message on
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class BatchingPublisherBenchmark
+{
+
+	private static final int INSTRUCTIONS = 1000;
+	private static final Account ACCOUNT = Account.builder()
+			.sortCode( "123456" )
+			.number( "12345678" )
+			.name( "B.BAGGINS" )
+			.build();
+
+	@Param(
+		{ "100", "500" } )
+	private int batchSize;
+
+	private Instruction[] instructions;
+	private StreamingServiceBase streamingService;
+	private Blackhole blackhole;
+
+	@Setup
+	public void setUp( final Blackhole blackhole )
+	{
+		this.blackhole = blackhole;
+		instructions = new Instruction[INSTRUCTIONS];
+		for ( int i = 0; i < instructions.length; i++ )
+		{
+			instructions[i] = Instruction.builder()
+					.index( i + 1 )
+					.lineNo( i + 5 )
+					.origin( ACCOUNT )
+					.destination( ACCOUNT )
+					.transactionType( "99" )
+					.amount( "1001" )
+					.reference( "REF" + i )
+					.build();
+		}
+		final MessageChannel channel = new ConsumingChannel();
+		streamingService = new StreamingServiceBase( () -> channel,
+				new InstructionWireStd18ToV1( new AccountWireStd18ToV1() ), batchSize, 0, Clock.systemUTC(),
+				new SimpleMeterRegistry() );
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		streamingService.shutdown();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( INSTRUCTIONS )
+	public void single()
+	{
+		for ( final Instruction instruction : instructions )
+		{
+			streamingService.sendInstruction( instruction );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( INSTRUCTIONS )
+	public void batched()
+	{
+		try (InstructionPublisher publisher = streamingService.publisher())
+		{
+			for ( final Instruction instruction : instructions )
+			{
+				publisher.send( instruction );
+			}
+		}
+	}
+
+	private final class ConsumingChannel implements MessageChannel
+	{
+
+		@Override
+		public boolean send( final Message< ? > message )
+		{
+			return send( message, INDEFINITE_TIMEOUT );
+		}
+
+		@Override
+		public boolean send( final Message< ? > message, final long timeout )
+		{
+			blackhole.consume( message );
+			return true;
+		}
+
+	}
+
+}
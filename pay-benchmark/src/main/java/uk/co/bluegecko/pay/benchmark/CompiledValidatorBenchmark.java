@@ -0,0 +1,77 @@
+package uk.co.bluegecko.pay.benchmark;
+
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+
+import org.hibernate.validator.messageinterpolation.ParameterMessageInterpolator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
+import uk.co.bluegecko.pay.common.service.base.CompiledValidatorBase;
+
+
+// the compiled validator against the reflective Bean Validation provider, for a valid and an invalid instruction
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class CompiledValidatorBenchmark
+{
+
+	@Param(
+		{ "REF & CO. 1/2-3", "invalid reference" } )
+	private String reference;
+
+	private Instruction instruction;
+	private CompiledValidatorBase compiledValidator;
+	private Validator validator;
+
+	@Setup
+	public void setUp()
+	{
+		instruction = Instruction.builder()
+				.index( 1 )
+				.lineNo( 1 )
+				.transactionType( "99" )
+				.rti( "0001" )
+				.amount( "1234" )
+				.reference( reference )
+				.build();
+		compiledValidator = new CompiledValidatorBase();
+		validator = Validation.byDefaultProvider()
+				.configure()
+				.messageInterpolator( new ParameterMessageInterpolator() )
+				.buildValidatorFactory()
+				.getValidator();
+	}
+
+	@Benchmark
+	public Set< ConstraintViolation< Instruction > > compiled()
+	{
+		return compiledValidator.validate( instruction );
+	}
+
+	@Benchmark
+	public Set< ConstraintViolation< Instruction > > reflective()
+	{
+		return validator.validate( instruction );
+	}
+
+}
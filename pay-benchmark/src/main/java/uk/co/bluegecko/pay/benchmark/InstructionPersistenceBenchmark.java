@@ -0,0 +1,183 @@
+package uk.co.bluegecko.pay.benchmark;
+
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import uk.co.bluegecko.pay.portfolio.model.Account;
+import uk.co.bluegecko.pay.portfolio.model.Batch;
+import uk.co.bluegecko.pay.portfolio.model.Instruction;
+import uk.co.bluegecko.pay.portfolio.model.base.AccountBase;
+import uk.co.bluegecko.pay.portfolio.model.base.BatchBase;
+import uk.co.bluegecko.pay.portfolio.model.base.InstructionBase;
+import uk.co.bluegecko.pay.portfolio.service.BatchCache;
+import uk.co.bluegecko.pay.portfolio.service.base.BatchTotalServiceBase;
+import uk.co.bluegecko.pay.portfolio.service.base.InstructionServiceBase;
+
+
+// instructions saved a row at a time against JDBC batches, into embedded H2 with the portfolio schema; each
+// invocation writes a batch of its own, as uk_Instruction_Idx allows an index only once in a batch
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class InstructionPersistenceBenchmark
+{
+
+	private static final String CHANGELOG = "db/changelog/v1.0/db.changelog-portfolio-1.0.xml";
+	private static final int INSTRUCTIONS = 1000;
+	private static final Account ORIGIN = new AccountBase( null ).sortCode( "123456" )
+			.number( "12345678" )
+			.name( "TEST AC1" )
+			.type( "0" );
+	private static final Account DESTINATION = new AccountBase( null ).sortCode( "654321" )
+			.number( "87654321" )
+			.name( "TEST AC2" )
+			.type( "1" );
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private InstructionServiceBase instructionService;
+	private long batchId;
+
+	@Setup
+	public void setUp() throws SQLException, LiquibaseException
+	{
+		database = new EmbeddedDatabaseBuilder().setType( EmbeddedDatabaseType.H2 )
+				.generateUniqueName( true )
+				.build();
+		final Database schema = DatabaseFactory.getInstance()
+				.findCorrectDatabaseImplementation( new JdbcConnection( database.getConnection() ) );
+		try
+		{
+			final Liquibase liquibase = new Liquibase( CHANGELOG, new ClassLoaderResourceAccessor(), schema );
+			liquibase.setChangeLogParameter( "autoIncrement", false );
+			liquibase.update( new Contexts() );
+		}
+		finally
+		{
+			schema.close();
+		}
+
+		jdbcTemplate = new JdbcTemplate( database );
+		final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+		final DataSourceTransactionManager transactionManager = new DataSourceTransactionManager( database );
+		instructionService = new InstructionServiceBase( jdbcTemplate, transactionManager, new BatchTotalServiceBase(
+				jdbcTemplate, transactionManager, meterRegistry, 10, 1000 ), new UncachedBatches(), meterRegistry );
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		database.shutdown();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( INSTRUCTIONS )
+	public void rowAtATime()
+	{
+		for ( final Instruction instruction : instructions() )
+		{
+			instructionService.save( instruction );
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation( INSTRUCTIONS )
+	public void batched()
+	{
+		instructionService.saveAll( instructions() );
+	}
+
+	private List< Instruction > instructions()
+	{
+		batchId++;
+		jdbcTemplate.update( "INSERT INTO portfolio.Batch (Id, Version, Idx, Name) VALUES (?, 0, ?, ?)", batchId,
+				batchId, "BATCH-" + batchId );
+		final Batch batch = new BatchBase( batchId );
+		final List< Instruction > instructions = new ArrayList<>( INSTRUCTIONS );
+		for ( int index = 1; index <= INSTRUCTIONS; index++ )
+		{
+			instructions.add( new InstructionBase( null, batch, index + 4 ).index( index )
+					.origin( ORIGIN )
+					.destination( DESTINATION )
+					.transactionType( "99" )
+					.amount( new BigDecimal( "10.01" ) )
+					.processingDate( LocalDate.of( 2017, 1, 2 ) )
+					.reference( "REF" + index )
+					.rti( "/001" ) );
+		}
+		return instructions;
+	}
+
+	// the cache is only told which batches to refresh, and there is nothing cached to refresh
+	private static final class UncachedBatches implements BatchCache
+	{
+
+		@Override
+		public Batch batch( final long batchId )
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public uk.co.bluegecko.pay.v1.portfolio.wire.Batch wireBatch( final long batchId )
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public uk.co.bluegecko.pay.v1.portfolio.wire.Batch toWire( final Batch batch )
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void invalidate( final Collection< Long > batchIds )
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void refresh( final Collection< Long > batchIds )
+		{
+			// nothing cached
+		}
+
+	}
+
+}
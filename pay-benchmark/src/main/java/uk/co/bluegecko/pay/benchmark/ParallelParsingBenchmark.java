@@ -0,0 +1,94 @@
+package uk.co.bluegecko.pay.benchmark;
+
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import uk.co.bluegecko.pay.bacs.std18.mapper.Standard18ByteMapper;
+import uk.co.bluegecko.pay.bacs.std18.model.Row;
+import uk.co.bluegecko.pay.common.service.base.ByteParsingServiceBase;
+import uk.co.bluegecko.pay.common.service.base.ParallelByteParsingServiceBase;
+
+
+// scaling of the segmented parser against the sequential byte parser it reproduces
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class ParallelParsingBenchmark
+{
+
+	private static final int SEGMENT_SIZE = 1024 * 1024;
+
+	@Param(
+		{ "100000", "1000000" } )
+	private int instructions;
+	@Param(
+		{ "1", "2", "4", "8" } )
+	private int parallelism;
+
+	private Path file;
+	private ByteParsingServiceBase sequentialService;
+	private ParallelByteParsingServiceBase parallelService;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		file = Standard18Files.singleBatch( instructions );
+		sequentialService = new ByteParsingServiceBase();
+		parallelService = new ParallelByteParsingServiceBase( parallelism, SEGMENT_SIZE );
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		parallelService.shutdown();
+		Files.deleteIfExists( file );
+	}
+
+	@Benchmark
+	public void sequential( final Blackhole blackhole ) throws IOException
+	{
+		try (FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ))
+		{
+			sequentialService.parse( channel, mapper( blackhole ) );
+		}
+	}
+
+	@Benchmark
+	public void parallel( final Blackhole blackhole ) throws IOException
+	{
+		parallelService.parse( FileChannel.open( file, StandardOpenOption.READ ), mapper( blackhole ) );
+	}
+
+	private Standard18ByteMapper mapper( final Blackhole blackhole )
+	{
+		final Standard18ByteMapper mapper = new Standard18ByteMapper();
+		for ( final Row row : Row.values() )
+		{
+			mapper.addRow( row, ( parsed, value ) -> blackhole.consume( value ) );
+		}
+		return mapper;
+	}
+
+}
@@ -0,0 +1,64 @@
+package uk.co.bluegecko.pay.benchmark;
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+public final class Standard18Files
+{
+
+	private static final String[] HEADERS =
+		{ "VOL1173922                               100101                                1",
+				"HDR1A100101S  11001011739220001000108194 08192 000000                           ",
+				"HDR2F0051200106                                   00                            ",
+				"UHL1 14308999999    AA0000BB4 MULTI  001       AUD0000                          " };
+	private static final String INSTRUCTION =
+			"0100390105996309940202421315692/00000000000055BSDSAF 00000000055REF&LT 00000000055NAME   00000000055 14308";
+	private static final String CONTRA = "4020242131569201740202421315692/000%011dOSTEXT 09         CONTRA            "
+			+ "OA NAME 09         16116";
+	private static final String UTL1 = "UTL1%013d%013d%07d%07d        0000000                     ";
+	private static final long AMOUNT = 55;
+	private static final String[] TRAILERS =
+		{ "EOF1A100101S  11001011739220001000108194 08192 000000                           ",
+				"EOF2F0051200106                                   00                            " };
+
+	private Standard18Files()
+	{
+		super();
+	}
+
+	// a single batch, as month-end bureau files are, of credits balanced by one contra
+	public static Path singleBatch( final int instructions ) throws IOException
+	{
+		final Path file = Files.createTempFile( "std18-", ".txt" );
+		try (BufferedWriter writer = Files.newBufferedWriter( file, StandardCharsets.US_ASCII ))
+		{
+			for ( final String header : HEADERS )
+			{
+				line( writer, header );
+			}
+			for ( int i = 0; i < instructions; i++ )
+			{
+				line( writer, INSTRUCTION );
+			}
+			line( writer, String.format( CONTRA, AMOUNT * instructions ) );
+			line( writer, String.format( UTL1, AMOUNT * instructions, AMOUNT * instructions, 1, instructions ) );
+			for ( final String trailer : TRAILERS )
+			{
+				line( writer, trailer );
+			}
+		}
+		return file;
+	}
+
+	private static void line( final BufferedWriter writer, final String line ) throws IOException
+	{
+		writer.write( line );
+		writer.write( "\r\n" );
+	}
+
+}
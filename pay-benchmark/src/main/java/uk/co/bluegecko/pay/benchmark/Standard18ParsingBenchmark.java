@@ -0,0 +1,94 @@
+package uk.co.bluegecko.pay.benchmark;
+
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import uk.co.bluegecko.pay.bacs.std18.mapper.Standard18ByteMapper;
+import uk.co.bluegecko.pay.bacs.std18.mapper.Standard18Mapper;
+import uk.co.bluegecko.pay.bacs.std18.model.Row;
+import uk.co.bluegecko.pay.common.service.base.ByteParsingServiceBase;
+import uk.co.bluegecko.pay.common.service.base.ParsingServiceBase;
+
+
+// the BeanIO and byte engines over the same file, every row mapped and handed on
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class Standard18ParsingBenchmark
+{
+
+	@Param(
+		{ "10000", "100000" } )
+	private int instructions;
+
+	private Path file;
+	private ParsingServiceBase parsingService;
+	private ByteParsingServiceBase byteParsingService;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		file = Standard18Files.singleBatch( instructions );
+		parsingService = new ParsingServiceBase();
+		byteParsingService = new ByteParsingServiceBase();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		Files.deleteIfExists( file );
+	}
+
+	@Benchmark
+	public void beanIO( final Blackhole blackhole ) throws IOException
+	{
+		final Standard18Mapper mapper = new Standard18Mapper();
+		for ( final Row row : Row.values() )
+		{
+			mapper.addRow( row, ( parsed, value ) -> blackhole.consume( value ) );
+		}
+		try (Reader reader = Files.newBufferedReader( file, StandardCharsets.UTF_8 ))
+		{
+			parsingService.parse( reader, mapper );
+		}
+	}
+
+	@Benchmark
+	public void bytes( final Blackhole blackhole ) throws IOException
+	{
+		final Standard18ByteMapper mapper = new Standard18ByteMapper();
+		for ( final Row row : Row.values() )
+		{
+			mapper.addRow( row, ( parsed, value ) -> blackhole.consume( value ) );
+		}
+		try (FileChannel channel = FileChannel.open( file, StandardOpenOption.READ ))
+		{
+			byteParsingService.parse( channel, mapper );
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package uk.co.bluegecko.pay.benchmark;
+
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import uk.co.bluegecko.pay.bacs.std18.model.TransactionCode;
+
+
+// the lookup table against the linear scan over CLASSES it replaced, for a hit and a miss
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class TransactionCodeBenchmark
+{
+
+	private final String valid = "0C";
+	private final String invalid = "ZZ";
+
+	@Benchmark
+	public TransactionCode validScan()
+	{
+		return scan( valid );
+	}
+
+	@Benchmark
+	public TransactionCode validLookup()
+	{
+		return TransactionCode.byCode( valid );
+	}
+
+	@Benchmark
+	public TransactionCode validChars()
+	{
+		return TransactionCode.byCode( valid.charAt( 0 ), valid.charAt( 1 ) );
+	}
+
+	@Benchmark
+	public Object invalidScan()
+	{
+		try
+		{
+			return scan( invalid );
+		}
+		catch ( final IllegalArgumentException ex )
+		{
+			return ex;
+		}
+	}
+
+	@Benchmark
+	public Object invalidLookup()
+	{
+		try
+		{
+			return TransactionCode.byCode( invalid );
+		}
+		catch ( final IllegalArgumentException ex )
+		{
+			return ex;
+		}
+	}
+
+	private static TransactionCode scan( final String code )
+	{
+		for ( final Class< ? extends TransactionCode > klass : TransactionCode.CLASSES )
+		{
+			for ( final TransactionCode value : klass.getEnumConstants() )
+			{
+				if ( value.code()
+						.equals( code ) )
+				{
+					return value;
+				}
+			}
+		}
+		throw new IllegalArgumentException( "no-transaction-with-code-" + code );
+	}
+
+}
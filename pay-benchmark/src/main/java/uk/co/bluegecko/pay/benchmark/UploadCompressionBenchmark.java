@@ -0,0 +1,115 @@
+package uk.co.bluegecko.pay.benchmark;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.PathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.StreamUtils;
+
+import uk.co.bluegecko.pay.tools.file.upload.service.base.GzipResource;
+
+
+// a file as the upload tool sends it, plain and gzipped on the fly, from the sample file repeated; the bytes counter
+// is what went on the wire
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class UploadCompressionBenchmark
+{
+
+	private static final String SAMPLE = "/sample-files/BTE_DEF.B01256.50.1";
+
+	@Param(
+		{ "100", "400" } )
+	private int scale;
+
+	private Path file;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		final byte[] sample;
+		try (InputStream input = getClass().getResourceAsStream( SAMPLE ))
+		{
+			sample = StreamUtils.copyToByteArray( input );
+		}
+		file = Files.createTempFile( "upload-", ".txt" );
+		try (OutputStream output = Files.newOutputStream( file ))
+		{
+			for ( int i = 0; i < scale; i++ )
+			{
+				output.write( sample );
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException
+	{
+		Files.deleteIfExists( file );
+	}
+
+	@Benchmark
+	public long plain( final Transfer transfer ) throws IOException
+	{
+		return send( new PathResource( file ), transfer );
+	}
+
+	@Benchmark
+	public long gzipped( final Transfer transfer ) throws IOException
+	{
+		return send( new GzipResource( file ), transfer );
+	}
+
+	private long send( final Resource resource, final Transfer transfer ) throws IOException
+	{
+		try (InputStream input = resource.getInputStream())
+		{
+			final long sent = StreamUtils.copy( input, StreamUtils.emptyOutput() );
+			transfer.bytes += sent;
+			transfer.files++;
+			return sent;
+		}
+	}
+
+	@State( Scope.Thread )
+	@AuxCounters( AuxCounters.Type.EVENTS )
+	public static class Transfer
+	{
+
+		public long bytes;
+		public long files;
+
+		@Setup( Level.Iteration )
+		public void reset()
+		{
+			bytes = 0;
+			files = 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,132 @@
+package uk.co.bluegecko.pay.benchmark;
+
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import uk.co.bluegecko.pay.common.config.StandardConfiguration;
+import uk.co.bluegecko.pay.v1.portfolio.codec.WireCodec;
+import uk.co.bluegecko.pay.v1.portfolio.wire.Account;
+import uk.co.bluegecko.pay.v1.portfolio.wire.Instruction;
+import uk.co.bluegecko.pay.v1.portfolio.wire.InstructionEnvelope;
+
+
+// the binary codec against the JSON it replaced on the wire, for one instruction and an envelope of a hundred
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class WireCodecBenchmark
+{
+
+	private ObjectMapper objectMapper;
+	private Instruction instruction;
+	private InstructionEnvelope envelope;
+	private byte[] json;
+	private byte[] binary;
+	private byte[] jsonEnvelope;
+	private byte[] binaryEnvelope;
+
+	@Setup
+	public void setUp() throws IOException
+	{
+		objectMapper = new StandardConfiguration().objectMapper( new Jackson2ObjectMapperBuilder() );
+		instruction = Instruction.builder()
+				.index( 1 )
+				.lineNo( 2 )
+				.origin( account( "123456", "12345678", "TEST AC1", "A" ) )
+				.destination( account( "654321", "87654321", "TEST AC2", "1" ) )
+				.transactionType( "99" )
+				.amount( new BigDecimal( "10.01" ) )
+				.processingDate( LocalDate.of( 2017, 1, 2 ) )
+				.reference( "A-REFERENCE" )
+				.rti( "/001" )
+				.build();
+		envelope = InstructionEnvelope.builder()
+				.sequence( 1 )
+				.instructions( Collections.nCopies( 100, instruction ) )
+				.build();
+		json = objectMapper.writeValueAsBytes( instruction );
+		binary = WireCodec.encode( instruction );
+		jsonEnvelope = objectMapper.writeValueAsBytes( envelope );
+		binaryEnvelope = WireCodec.encode( envelope );
+	}
+
+	@Benchmark
+	public byte[] jsonEncode() throws IOException
+	{
+		return objectMapper.writeValueAsBytes( instruction );
+	}
+
+	@Benchmark
+	public Instruction jsonDecode() throws IOException
+	{
+		return objectMapper.readValue( json, Instruction.class );
+	}
+
+	@Benchmark
+	public byte[] binaryEncode()
+	{
+		return WireCodec.encode( instruction );
+	}
+
+	@Benchmark
+	public Instruction binaryDecode()
+	{
+		return WireCodec.decode( binary, Instruction.class );
+	}
+
+	@Benchmark
+	public byte[] jsonEncodeEnvelope() throws IOException
+	{
+		return objectMapper.writeValueAsBytes( envelope );
+	}
+
+	@Benchmark
+	public InstructionEnvelope jsonDecodeEnvelope() throws IOException
+	{
+		return objectMapper.readValue( jsonEnvelope, InstructionEnvelope.class );
+	}
+
+	@Benchmark
+	public byte[] binaryEncodeEnvelope()
+	{
+		return WireCodec.encode( envelope );
+	}
+
+	@Benchmark
+	public InstructionEnvelope binaryDecodeEnvelope()
+	{
+		return WireCodec.decode( binaryEnvelope, InstructionEnvelope.class );
+	}
+
+	private Account account( final String sortCode, final String number, final String name, final String type )
+	{
+		return Account.builder()
+				.sortCode( sortCode )
+				.number( number )
+				.name( name )
+				.type( type )
+				.build();
+	}
+
+}
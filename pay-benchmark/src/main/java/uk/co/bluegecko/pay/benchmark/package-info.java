@@ -0,0 +1 @@
+package uk.co.bluegecko.pay.benchmark;
\ No newline at end of file
@@ -21,6 +21,17 @@ public interface RestMapping
 
 	}
 
+	public interface Page
+	{
+
+		public static final String AFTER = "after";
+		public static final String LIMIT = "limit";
+		public static final String DEFAULT_LIMIT = "100";
+		public static final int MAX_LIMIT = 1000;
+		public static final String NDJSON = "application/x-ndjson";
+
+	}
+
 	public interface v1
 	{
 
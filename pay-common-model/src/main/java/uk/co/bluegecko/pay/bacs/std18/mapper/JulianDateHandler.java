@@ -6,6 +6,9 @@ import java.time.LocalDate;
 import org.beanio.types.TypeConversionException;
 import org.beanio.types.TypeHandler;
 
+import uk.co.bluegecko.pay.common.model.Digits;
+import uk.co.bluegecko.pay.common.model.EpochDays;
+
 
 public class JulianDateHandler implements TypeHandler
 {
@@ -13,10 +16,14 @@ public class JulianDateHandler implements TypeHandler
 	@Override
 	public Object parse( final String text ) throws TypeConversionException
 	{
+		final long day = Digits.parse( text, true );
+		if ( day != Digits.NONE )
+		{
+			return EpochDays.toDate( day );
+		}
 		try
 		{
-			final long day = Long.valueOf( text.trim() );
-			return LocalDate.ofEpochDay( day );
+			return EpochDays.toDate( Long.parseLong( text.trim() ) );
 		}
 		catch ( final NumberFormatException ex )
 		{
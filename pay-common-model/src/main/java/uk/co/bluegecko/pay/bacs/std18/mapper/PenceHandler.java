@@ -7,6 +7,8 @@ import java.math.RoundingMode;
 import org.beanio.types.TypeConversionException;
 import org.beanio.types.TypeHandler;
 
+import uk.co.bluegecko.pay.common.model.Amounts;
+
 
 public class PenceHandler implements TypeHandler
 {
@@ -18,7 +20,7 @@ public class PenceHandler implements TypeHandler
 	{
 		try
 		{
-			return new BigDecimal( text ).divide( HUNDRED );
+			return Amounts.fromPence( text );
 		}
 		catch ( final NumberFormatException ex )
 		{
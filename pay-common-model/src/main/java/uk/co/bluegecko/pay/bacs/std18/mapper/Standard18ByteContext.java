@@ -0,0 +1,31 @@
+package uk.co.bluegecko.pay.bacs.std18.mapper;
+
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.co.bluegecko.pay.common.service.base.AbstractByteParsingContext;
+
+
+public class Standard18ByteContext extends AbstractByteParsingContext
+{
+
+	private final AtomicInteger index;
+
+	public Standard18ByteContext()
+	{
+		this( 0 );
+	}
+
+	public Standard18ByteContext( final int lineNumber )
+	{
+		super( lineNumber );
+
+		index = new AtomicInteger( 0 );
+	}
+
+	public int index()
+	{
+		return index.incrementAndGet();
+	}
+
+}
@@ -0,0 +1,510 @@
+package uk.co.bluegecko.pay.bacs.std18.mapper;
+
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import lombok.extern.slf4j.Slf4j;
+import uk.co.bluegecko.pay.bacs.std18.model.Account;
+import uk.co.bluegecko.pay.bacs.std18.model.Contra;
+import uk.co.bluegecko.pay.bacs.std18.model.Header1;
+import uk.co.bluegecko.pay.bacs.std18.model.Header2;
+import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
+import uk.co.bluegecko.pay.bacs.std18.model.Row;
+import uk.co.bluegecko.pay.bacs.std18.model.UserHeader;
+import uk.co.bluegecko.pay.bacs.std18.model.UserTrailer;
+import uk.co.bluegecko.pay.bacs.std18.model.Volume;
+import uk.co.bluegecko.pay.common.model.Amounts;
+import uk.co.bluegecko.pay.common.model.EpochDays;
+import uk.co.bluegecko.pay.common.service.SegmentedByteMapper;
+
+
+@Slf4j
+public class Standard18ByteMapper
+		implements SegmentedByteMapper< Standard18ByteContext, Standard18Segment >
+{
+
+	// row indicators, packed from the first four bytes
+	private static final int VOL1 = 'V' << 24 | 'O' << 16 | 'L' << 8 | '1';
+	private static final int HDR1 = 'H' << 24 | 'D' << 16 | 'R' << 8 | '1';
+	private static final int HDR2 = 'H' << 24 | 'D' << 16 | 'R' << 8 | '2';
+	private static final int UHL1 = 'U' << 24 | 'H' << 16 | 'L' << 8 | '1';
+	private static final int EOF1 = 'E' << 24 | 'O' << 16 | 'F' << 8 | '1';
+	private static final int EOF2 = 'E' << 24 | 'O' << 16 | 'F' << 8 | '2';
+	private static final int UTL1 = 'U' << 24 | 'T' << 16 | 'L' << 8 | '1';
+
+	private static final byte[] CONTRA =
+		{ 'C', 'O', 'N', 'T', 'R', 'A' };
+	private static final int CONTRA_AT = 64;
+
+	// record lengths
+	private static final int LABEL_LENGTH = 80;
+	private static final int MIN_LENGTH = 100;
+	private static final int MAX_LENGTH = 106;
+
+	// values
+	private static final byte SPACE = ' ';
+	private static final long BLANK = -1L;
+	private static final String EMPTY = "";
+
+	private static final String STANDARD_18 = "standard18";
+
+	private final Map< Row, BiConsumer< Row, Object > > consumers;
+
+	public Standard18ByteMapper()
+	{
+		consumers = new EnumMap<>( Row.class );
+	}
+
+	@Override
+	public Standard18ByteContext newContext()
+	{
+		return new Standard18ByteContext();
+	}
+
+	@Override
+	public Standard18Segment newSegment()
+	{
+		return new Standard18Segment();
+	}
+
+	@Override
+	public String name()
+	{
+		return STANDARD_18;
+	}
+
+	public Standard18ByteMapper addRow( final Row row, final BiConsumer< Row, Object > consumer )
+	{
+		consumers.put( row, consumer );
+		return this;
+	}
+
+	public boolean isSet( final Row row )
+	{
+		return consumers.containsKey( row );
+	}
+
+	@Override
+	public void map( final ByteBuffer record, final Standard18ByteContext context )
+	{
+		final Row row = identify( record, context );
+		final BiConsumer< Row, Object > consumer = consumers.get( row );
+
+		if ( consumer != null )
+		{
+			final Object value = decodeRecord( row, record, context );
+			if ( value != null )
+			{
+				consumer.accept( row, build( value, context, context.lineNumber() ) );
+			}
+		}
+	}
+
+	@Override
+	public void mapSegment( final ByteBuffer record, final Standard18Segment segment )
+	{
+		if ( segment.failed() )
+		{
+			return;
+		}
+
+		final Row row;
+		try
+		{
+			row = identify( record, segment );
+		}
+		catch ( final IllegalArgumentException ex )
+		{
+			// held back until the records before it have been published
+			segment.fail();
+			return;
+		}
+		if ( isSet( row ) )
+		{
+			final Object value = decodeRecord( row, record, segment );
+			if ( value != null )
+			{
+				segment.add( row, value );
+			}
+		}
+	}
+
+	@Override
+	public void publish( final Standard18Segment segment, final Standard18ByteContext context )
+	{
+		final int offset = context.skipLines( segment.lineNumber() );
+
+		for ( int i = 0; i < segment.size(); i++ )
+		{
+			final Row row = segment.row( i );
+			consumers.get( row )
+					.accept( row, build( segment.value( i ), context, offset + segment.line( i ) ) );
+		}
+
+		if ( segment.failed() )
+		{
+			throw new IllegalArgumentException( "unidentified-record-at-line-" + ( offset + segment.failedAt() ) );
+		}
+	}
+
+	// instructions and contras are decoded in parallel, but only numbered once their place in the file is known
+	protected Object build( final Object value, final Standard18ByteContext context, final int lineNo )
+	{
+		if ( value instanceof Instruction.InstructionBuilder )
+		{
+			return ( ( Instruction.InstructionBuilder ) value ).index( context.index() )
+					.lineNo( lineNo )
+					.build();
+		}
+		if ( value instanceof Contra.ContraBuilder )
+		{
+			return ( ( Contra.ContraBuilder ) value ).index( context.index() )
+					.lineNo( lineNo )
+					.build();
+		}
+		return value;
+	}
+
+	protected Row identify( final ByteBuffer record, final Standard18ByteContext context )
+	{
+		final int offset = record.position();
+		final int length = record.remaining();
+
+		if ( length >= 4 )
+		{
+			final int indicator = record.get( offset ) << 24 | record.get( offset + 1 ) << 16
+					| record.get( offset + 2 ) << 8 | record.get( offset + 3 );
+			switch ( indicator )
+			{
+				case VOL1:
+					return Row.VOL1;
+				case HDR1:
+					return Row.HDR1;
+				case HDR2:
+					return Row.HDR2;
+				case UHL1:
+					return Row.UHL1;
+				case EOF1:
+					return Row.EOF1;
+				case EOF2:
+					return Row.EOF2;
+				case UTL1:
+					return Row.UTL1;
+				default:
+					break;
+			}
+		}
+		if ( length >= CONTRA_AT + CONTRA.length && matches( record, CONTRA_AT, CONTRA ) )
+		{
+			return Row.CONTRA;
+		}
+		// instructions are any numbered row not already taken as a contra
+		if ( length >= CONTRA.length && isDigits( record, 0, 4 ) )
+		{
+			return Row.INSTR;
+		}
+		throw new IllegalArgumentException( "unidentified-record-at-line-" + context.lineNumber() );
+	}
+
+	protected boolean isValidLength( final Row row, final int length )
+	{
+		switch ( row )
+		{
+			case INSTR:
+			case CONTRA:
+				return length >= MIN_LENGTH && length <= MAX_LENGTH;
+			default:
+				return length == LABEL_LENGTH;
+		}
+	}
+
+	protected Object decodeRecord( final Row row, final ByteBuffer record, final Standard18ByteContext context )
+	{
+		if ( !isValidLength( row, record.remaining() ) )
+		{
+			log.warn( "Invalid '{}' record at line {}, length {}", row, context.lineNumber(), record.remaining() );
+			return null;
+		}
+		try
+		{
+			return decode( row, record );
+		}
+		catch ( final NumberFormatException | DateTimeException ex )
+		{
+			log.warn( "Invalid '{}' record at line {}, {}", row, context.lineNumber(), ex.getLocalizedMessage() );
+			return null;
+		}
+	}
+
+	protected Object decode( final Row row, final ByteBuffer record )
+	{
+		switch ( row )
+		{
+			case VOL1:
+				return decodeVolume( record );
+			case HDR1:
+			case EOF1:
+				return decodeHeader1( row, record );
+			case HDR2:
+			case EOF2:
+				return decodeHeader2( row, record );
+			case UHL1:
+				return decodeUserHeader( record );
+			case UTL1:
+				return decodeUserTrailer( record );
+			case CONTRA:
+				return decodeContra( record );
+			case INSTR:
+				return decodeInstruction( record );
+			default:
+				throw new IllegalArgumentException( "no-decoder-for-row-" + row );
+		}
+	}
+
+	protected Volume decodeVolume( final ByteBuffer record )
+	{
+		return Volume.builder()
+				.serialNo( text( record, 4, 6 ) )
+				.accessibility( text( record, 40, 1 ) )
+				.userNumber( text( record, 41, 6 ) )
+				.label( text( record, 79, 1 ) )
+				.build();
+	}
+
+	protected Header1 decodeHeader1( final Row row, final ByteBuffer record )
+	{
+		return Header1.builder()
+				.indicator( row )
+				.file( text( record, 4, 17 ) )
+				.set( text( record, 21, 6 ) )
+				.section( integer( record, 27, 4, 0 ) )
+				.sequence( integer( record, 31, 4, 0 ) )
+				.generation( integer( record, 35, 4 ) )
+				.version( integer( record, 39, 2, 0 ) )
+				.created( julianDate( record, 41, 6 ) )
+				.expires( julianDate( record, 47, 6 ) )
+				.accessibility( text( record, 53, 1 ) )
+				.blockCount( text( record, 54, 6 ) )
+				.systemCode( text( record, 60, 13 ) )
+				.build();
+	}
+
+	protected Header2 decodeHeader2( final Row row, final ByteBuffer record )
+	{
+		return Header2.builder()
+				.indicator( row )
+				.format( text( record, 4, 1 ) )
+				.block( text( record, 5, 5 ) )
+				.record( text( record, 10, 5 ) )
+				.offset( text( record, 50, 2 ) )
+				.build();
+	}
+
+	protected UserHeader decodeUserHeader( final ByteBuffer record )
+	{
+		return UserHeader.builder()
+				.processingDate( julianDate( record, 4, 6 ) )
+				.dest( text( record, 10, 10 ) )
+				.currency( text( record, 20, 2 ) )
+				.country( text( record, 22, 6 ) )
+				.workCode( text( record, 28, 9 ) )
+				.file( text( record, 37, 3 ) )
+				.audit( text( record, 47, 7 ) )
+				.build();
+	}
+
+	protected UserTrailer decodeUserTrailer( final ByteBuffer record )
+	{
+		return UserTrailer.builder()
+				.debitValue( pence( record, 4, 13, true ) )
+				.creditValue( pence( record, 17, 13, true ) )
+				.debitCount( optionalInteger( record, 30, 7 ) )
+				.creditCount( optionalInteger( record, 37, 7 ) )
+				.ddiCount( optionalInteger( record, 52, 7 ) )
+				.serviceUser( text( record, 59, 21 ) )
+				.build();
+	}
+
+	protected Contra.ContraBuilder decodeContra( final ByteBuffer record )
+	{
+		return Contra.builder()
+				.origin( Account.builder()
+						.sortCode( text( record, 17, 6 ) )
+						.number( text( record, 23, 8 ) )
+						.name( text( record, 82, 18 ) )
+						.type( EMPTY )
+						.build() )
+				.destination( Account.builder()
+						.sortCode( text( record, 0, 6 ) )
+						.number( text( record, 6, 8 ) )
+						.name( EMPTY )
+						.type( text( record, 14, 1 ) )
+						.build() )
+				.transactionType( text( record, 15, 2 ) )
+				.freeFormat( text( record, 31, 4 ) )
+				.amount( pence( record, 35, 11, false ) )
+				.narrative( text( record, 46, 18 ) )
+				.processingDate( julianDate( record, 100, 6 ) );
+	}
+
+	protected Instruction.InstructionBuilder decodeInstruction( final ByteBuffer record )
+	{
+		return Instruction.builder()
+				.origin( Account.builder()
+						.sortCode( text( record, 17, 6 ) )
+						.number( text( record, 23, 8 ) )
+						.name( text( record, 46, 18 ) )
+						.type( EMPTY )
+						.build() )
+				.destination( Account.builder()
+						.sortCode( text( record, 0, 6 ) )
+						.number( text( record, 6, 8 ) )
+						.name( text( record, 82, 18 ) )
+						.type( text( record, 14, 1 ) )
+						.build() )
+				.transactionType( text( record, 15, 2 ) )
+				.rti( text( record, 31, 4 ) )
+				.amount( pence( record, 35, 11, false ) )
+				.reference( text( record, 64, 18 ) )
+				.processingDate( julianDate( record, 100, 6 ) );
+	}
+
+	protected String text( final ByteBuffer record, final int at, final int length )
+	{
+		final int start = start( record, at );
+		int end = end( record, at, length );
+		while ( end > start && record.get( end - 1 ) == SPACE )
+		{
+			end--;
+		}
+		return string( record, start, end );
+	}
+
+	protected BigDecimal pence( final ByteBuffer record, final int at, final int length, final boolean trim )
+	{
+		final long pence = number( record, at, length, trim );
+		return pence == BLANK ? null : Amounts.fromPence( pence );
+	}
+
+	protected LocalDate julianDate( final ByteBuffer record, final int at, final int length )
+	{
+		final long day = number( record, at, length, true );
+		return day == BLANK ? null : EpochDays.toDate( day );
+	}
+
+	protected Integer optionalInteger( final ByteBuffer record, final int at, final int length )
+	{
+		final long value = number( record, at, length, false );
+		return value == BLANK ? null : ( int ) value;
+	}
+
+	protected int integer( final ByteBuffer record, final int at, final int length, final int defaultValue )
+	{
+		final long value = number( record, at, length, false );
+		return value == BLANK ? defaultValue : ( int ) value;
+	}
+
+	protected int integer( final ByteBuffer record, final int at, final int length )
+	{
+		final long value = number( record, at, length, false );
+		if ( value == BLANK )
+		{
+			throw new NumberFormatException( "Missing value at " + at );
+		}
+		return ( int ) value;
+	}
+
+	protected long number( final ByteBuffer record, final int at, final int length, final boolean trim )
+	{
+		int start = start( record, at );
+		int end = end( record, at, length );
+		while ( end > start && record.get( end - 1 ) == SPACE )
+		{
+			end--;
+		}
+		while ( trim && start < end && record.get( start ) == SPACE )
+		{
+			start++;
+		}
+		if ( start == end )
+		{
+			return BLANK;
+		}
+
+		long value = 0;
+		for ( int i = start; i < end; i++ )
+		{
+			final int digit = record.get( i ) - '0';
+			if ( digit < 0 || digit > 9 )
+			{
+				throw new NumberFormatException( "Invalid number '" + string( record, start, end ) + "'" );
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	protected boolean matches( final ByteBuffer record, final int at, final byte[] literal )
+	{
+		final int offset = record.position() + at;
+		for ( int i = 0; i < literal.length; i++ )
+		{
+			if ( record.get( offset + i ) != literal[i] )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected boolean isDigits( final ByteBuffer record, final int at, final int length )
+	{
+		final int offset = record.position() + at;
+		for ( int i = offset; i < offset + length; i++ )
+		{
+			final byte b = record.get( i );
+			if ( b < '0' || b > '9' )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int start( final ByteBuffer record, final int at )
+	{
+		return record.position() + Math.min( at, record.remaining() );
+	}
+
+	private int end( final ByteBuffer record, final int at, final int length )
+	{
+		return record.position() + Math.min( at + length, record.remaining() );
+	}
+
+	private String string( final ByteBuffer record, final int start, final int end )
+	{
+		if ( start >= end )
+		{
+			return EMPTY;
+		}
+		if ( record.hasArray() )
+		{
+			return new String( record.array(), record.arrayOffset() + start, end - start, StandardCharsets.US_ASCII );
+		}
+
+		final byte[] bytes = new byte[end - start];
+		for ( int i = 0; i < bytes.length; i++ )
+		{
+			bytes[i] = record.get( start + i );
+		}
+		return new String( bytes, StandardCharsets.US_ASCII );
+	}
+
+}
@@ -12,18 +12,30 @@ public class Standard18Context extends AbstractParsingContext
 {
 
 	private final AtomicInteger index;
+	private final int lineOffset;
 
 	public Standard18Context( final BeanReader reader )
+	{
+		this( reader, 0, 0 );
+	}
+
+	// a resumed parse starts part way through a file, so indexes and line numbers carry on from where it stopped
+	public Standard18Context( final BeanReader reader, final int index, final int lineOffset )
 	{
 		super( reader );
 
-		index = new AtomicInteger( 0 );
+		this.index = new AtomicInteger( index );
+		this.lineOffset = lineOffset;
 	}
 
 	public int index()
 	{
-
 		return index.incrementAndGet();
 	}
 
+	public int lineNumber()
+	{
+		return reader().getLineNumber() + lineOffset;
+	}
+
 }
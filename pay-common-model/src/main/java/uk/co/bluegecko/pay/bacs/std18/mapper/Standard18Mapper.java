@@ -6,7 +6,6 @@ import java.time.LocalDate;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.function.BiConsumer;
-import java.util.function.Function;
 
 import org.beanio.BeanReader;
 import org.beanio.StreamFactory;
@@ -26,6 +25,7 @@ import uk.co.bluegecko.pay.bacs.std18.model.Row;
 import uk.co.bluegecko.pay.bacs.std18.model.UserHeader;
 import uk.co.bluegecko.pay.bacs.std18.model.UserTrailer;
 import uk.co.bluegecko.pay.bacs.std18.model.Volume;
+import uk.co.bluegecko.pay.common.model.ParsedRecord;
 import uk.co.bluegecko.pay.common.service.Mapper;
 
 
@@ -104,7 +104,12 @@ public class Standard18Mapper implements Mapper< Standard18Context >
 	private static final String PENCE_HANDLER = "penceHandler";
 	private static final String JULIAN_DATE_HANDLER = "julianDateHandler";
 
+	// selects a row for the record stream without a callback
+	private static final BiConsumer< Row, Object > IGNORE = ( row, value ) -> {};
+
 	private final Map< Row, BiConsumer< Row, Object > > consumers;
+	private int startIndex;
+	private int startLine;
 
 	public Standard18Mapper()
 	{
@@ -114,57 +119,80 @@ public class Standard18Mapper implements Mapper< Standard18Context >
 	@Override
 	public Standard18Context newContext( final BeanReader reader )
 	{
-		return new Standard18Context( reader );
+		return new Standard18Context( reader, startIndex, startLine );
+	}
+
+	@Override
+	public ParsedRecord toRecord( final Object record, final Standard18Context context )
+	{
+		final Row row = row( record );
+
+		if ( !consumers.containsKey( row ) )
+		{
+			return null;
+		}
+		return ParsedRecord.builder()
+				.name( row.name() )
+				.value( position( record, context ) )
+				.lineNo( context.lineNumber() )
+				.build();
 	}
 
 	@Override
-	public void map( final Object record, final Standard18Context context )
+	public void accept( final ParsedRecord record )
 	{
-		final BeanReader reader = context.reader();
-		final String recordName = reader.getRecordName();
+		final Row row = row( record.value() );
+		consumers.get( row )
+				.accept( row, record.value() );
+	}
 
-		if ( recordName.equals( Row.VOL1.name() ) )
+	// the record types identify the row, so there's no need to look up the record name
+	protected Row row( final Object record )
+	{
+		if ( record instanceof Instruction )
 		{
-			consume( record, Row.VOL1, r -> ( Volume ) r );
+			return Row.INSTR;
 		}
-		else if ( recordName.equals( Row.HDR1.name() ) )
+		if ( record instanceof Contra )
 		{
-			consume( record, Row.HDR1, r -> ( Header1 ) r );
+			return Row.CONTRA;
 		}
-		else if ( recordName.equals( Row.HDR2.name() ) )
+		if ( record instanceof Header1 )
 		{
-			consume( record, Row.HDR2, r -> ( Header2 ) r );
+			return ( ( Header1 ) record ).indicator();
 		}
-		else if ( recordName.equals( Row.UHL1.name() ) )
+		if ( record instanceof Header2 )
 		{
-			consume( record, Row.UHL1, r -> ( UserHeader ) r );
+			return ( ( Header2 ) record ).indicator();
 		}
-		else if ( recordName.equals( Row.EOF1.name() ) )
+		if ( record instanceof UserHeader )
 		{
-			consume( record, Row.EOF1, r -> ( Header1 ) r );
+			return Row.UHL1;
 		}
-		else if ( recordName.equals( Row.EOF2.name() ) )
+		if ( record instanceof UserTrailer )
 		{
-			consume( record, Row.EOF2, r -> ( Header2 ) r );
+			return Row.UTL1;
 		}
-		else if ( recordName.equals( Row.UTL1.name() ) )
+		if ( record instanceof Volume )
 		{
-			consume( record, Row.UTL1, r -> ( UserTrailer ) r );
+			return Row.VOL1;
 		}
-		else if ( recordName.equals( Row.CONTRA.name() ) )
+		throw new IllegalArgumentException( "unknown-record-" + record.getClass()
+				.getSimpleName() );
+	}
+
+	// BeanIO only sees the line, so the index and line number are stamped on once the record is taken
+	protected Object position( final Object record, final Standard18Context context )
+	{
+		if ( record instanceof Instruction )
 		{
-			consume( record, Row.CONTRA, r -> ( ( Contra ) r ).toBuilder()
-					.index( context.index() )
-					.lineNo( reader.getLineNumber() )
-					.build() );
+			return ( ( Instruction ) record ).at( context.index(), context.lineNumber() );
 		}
-		else if ( recordName.equals( Row.INSTR.name() ) )
+		if ( record instanceof Contra )
 		{
-			consume( record, Row.INSTR, r -> ( ( Instruction ) r ).toBuilder()
-					.index( context.index() )
-					.lineNo( reader.getLineNumber() )
-					.build() );
+			return ( ( Contra ) record ).at( context.index(), context.lineNumber() );
 		}
+		return record;
 	}
 
 	@Override
@@ -179,6 +207,23 @@ public class Standard18Mapper implements Mapper< Standard18Context >
 		return this;
 	}
 
+	public Standard18Mapper addRow( final Row row )
+	{
+		return addRow( row, IGNORE );
+	}
+
+	// for a reader already advanced past the given line, with instructions up to the given index taken
+	public Standard18Mapper startAt( final int index, final int line )
+	{
+		if ( index < 0 || line < 0 )
+		{
+			throw new IllegalArgumentException( "invalid-start-" + index + "-" + line );
+		}
+		startIndex = index;
+		startLine = line;
+		return this;
+	}
+
 	public boolean isSet( final Row row )
 	{
 		return consumers.containsKey( row );
@@ -204,15 +249,6 @@ public class Standard18Mapper implements Mapper< Standard18Context >
 		return factory;
 	}
 
-	protected void consume( final Object record, final Row row, final Function< Object, Object > mapper )
-	{
-		if ( consumers.containsKey( row ) )
-		{
-			consumers.get( row )
-					.accept( row, mapper.apply( record ) );
-		}
-	}
-
 	protected RecordBuilder createVolumeRecord()
 	{
 		return new RecordBuilder( Row.VOL1.name() ).type( Volume.class )
@@ -0,0 +1,70 @@
+package uk.co.bluegecko.pay.bacs.std18.mapper;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.co.bluegecko.pay.bacs.std18.model.Row;
+
+
+// line numbers are relative to the start of the segment until it is published
+public class Standard18Segment extends Standard18ByteContext
+{
+
+	private final List< Row > rows;
+	private final List< Object > values;
+	private final List< Integer > lines;
+	private int failedAt;
+
+	public Standard18Segment()
+	{
+		super();
+
+		rows = new ArrayList<>();
+		values = new ArrayList<>();
+		lines = new ArrayList<>();
+	}
+
+	public void add( final Row row, final Object value )
+	{
+		rows.add( row );
+		values.add( value );
+		lines.add( lineNumber() );
+	}
+
+	public Row row( final int i )
+	{
+		return rows.get( i );
+	}
+
+	public Object value( final int i )
+	{
+		return values.get( i );
+	}
+
+	public int line( final int i )
+	{
+		return lines.get( i );
+	}
+
+	public int size()
+	{
+		return rows.size();
+	}
+
+	public void fail()
+	{
+		failedAt = lineNumber();
+	}
+
+	public boolean failed()
+	{
+		return failedAt > 0;
+	}
+
+	public int failedAt()
+	{
+		return failedAt;
+	}
+
+}
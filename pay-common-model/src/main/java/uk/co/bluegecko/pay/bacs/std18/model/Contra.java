@@ -12,7 +12,9 @@ import org.hibernate.validator.constraints.Length;
 import lombok.Builder;
 import lombok.Value;
 import lombok.experimental.Accessors;
-import uk.co.bluegecko.pay.common.model.BuilderConstants;
+import lombok.experimental.NonFinal;
+import uk.co.bluegecko.pay.common.model.Amounts;
+import uk.co.bluegecko.pay.common.model.EpochDays;
 
 
 @Value
@@ -22,8 +24,10 @@ public class Contra
 {
 
 	@Min( 1 )
-	private final int index;
-	private final Integer lineNo;
+	@NonFinal
+	private int index;
+	@NonFinal
+	private Integer lineNo;
 	private final Account origin;
 	private final Account destination;
 	@Pattern( regexp = "[A-Z0-9]{2}" )
@@ -38,7 +42,16 @@ public class Contra
 	private final String narrative;
 	private final LocalDate processingDate;
 
-	public static final class ContraBuilder implements BuilderConstants
+	// BeanIO builds the record before its place in the file is known, so the parser stamps it on rather than copying
+	public Contra at( final int index, final Integer lineNo )
+	{
+		this.index = index;
+		this.lineNo = lineNo;
+
+		return this;
+	}
+
+	public static final class ContraBuilder
 	{
 
 		public ContraBuilder processingDate( final LocalDate processingDate )
@@ -50,7 +63,7 @@ public class Contra
 
 		public ContraBuilder processingDate( final long julianDate )
 		{
-			return processingDate( LocalDate.ofEpochDay( julianDate ) );
+			return processingDate( EpochDays.toDate( julianDate ) );
 		}
 
 		public ContraBuilder amount( final BigDecimal amount )
@@ -62,7 +75,7 @@ public class Contra
 
 		public ContraBuilder amount( final String pence )
 		{
-			return amount( new BigDecimal( pence ).divide( HUNDRED ) );
+			return amount( Amounts.fromPence( pence ) );
 		}
 
 	}
@@ -6,6 +6,7 @@ import java.time.LocalDate;
 import lombok.Builder;
 import lombok.Value;
 import lombok.experimental.Accessors;
+import uk.co.bluegecko.pay.common.model.EpochDays;
 
 
 @Value
@@ -39,7 +40,7 @@ public class Header1
 
 		public Header1Builder created( final long julianDate )
 		{
-			return created( LocalDate.ofEpochDay( julianDate ) );
+			return created( EpochDays.toDate( julianDate ) );
 		}
 
 		public Header1Builder expires( final LocalDate expires )
@@ -51,7 +52,7 @@ public class Header1
 
 		public Header1Builder expires( final long julianDate )
 		{
-			return expires( LocalDate.ofEpochDay( julianDate ) );
+			return expires( EpochDays.toDate( julianDate ) );
 		}
 
 	}
@@ -15,7 +15,9 @@ import com.fasterxml.jackson.annotation.JsonView;
 import lombok.Builder;
 import lombok.Value;
 import lombok.experimental.Accessors;
-import uk.co.bluegecko.pay.common.model.BuilderConstants;
+import lombok.experimental.NonFinal;
+import uk.co.bluegecko.pay.common.model.Amounts;
+import uk.co.bluegecko.pay.common.model.EpochDays;
 import uk.co.bluegecko.pay.view.View;
 
 
@@ -26,10 +28,12 @@ public class Instruction
 {
 
 	@Min( 1 )
-	private final int index;
+	@NonFinal
+	private int index;
 	@Min( 1 )
 	@JsonView( View.Detailed.class )
-	private final Integer lineNo;
+	@NonFinal
+	private Integer lineNo;
 	private final Account origin;
 	private final Account destination;
 	@Pattern( regexp = "[A-Z0-9]{2}" )
@@ -44,7 +48,16 @@ public class Instruction
 	private final String reference;
 	private final LocalDate processingDate;
 
-	public static final class InstructionBuilder implements BuilderConstants
+	// BeanIO builds the record before its place in the file is known, so the parser stamps it on rather than copying
+	public Instruction at( final int index, final Integer lineNo )
+	{
+		this.index = index;
+		this.lineNo = lineNo;
+
+		return this;
+	}
+
+	public static final class InstructionBuilder
 	{
 
 		public InstructionBuilder processingDate( final LocalDate processingDate )
@@ -56,7 +69,7 @@ public class Instruction
 
 		public InstructionBuilder processingDate( final long julianDate )
 		{
-			return processingDate( LocalDate.ofEpochDay( julianDate ) );
+			return processingDate( EpochDays.toDate( julianDate ) );
 		}
 
 		public InstructionBuilder amount( final BigDecimal amount )
@@ -68,7 +81,7 @@ public class Instruction
 
 		public InstructionBuilder amount( final String pence )
 		{
-			return amount( new BigDecimal( pence ).divide( HUNDRED ) );
+			return amount( Amounts.fromPence( pence ) );
 		}
 
 	}
@@ -93,31 +93,74 @@ public interface TransactionCode
 	public static < T extends Enum< ? extends TransactionCode > & TransactionCode > T byCode( final Class< T > klass,
 			final String code )
 	{
-		for ( final T value : klass.getEnumConstants() )
+		final TransactionCode value = Lookup.get( code );
+		if ( klass.isInstance( value ) )
 		{
-			if ( value.code()
-					.equals( code ) )
-			{
-				return value;
-			}
+			return klass.cast( value );
 		}
 		throw new IllegalArgumentException( "no-transaction-type-" + klass.getSimpleName() + "-with-code-" + code );
 	}
 
 	public static TransactionCode byCode( final String code )
 	{
-		for ( final Class< ? extends TransactionCode > klass : CLASSES )
+		final TransactionCode value = Lookup.get( code );
+		if ( value != null )
+		{
+			return value;
+		}
+		throw new IllegalArgumentException( "no-transaction-with-code-" + code );
+	}
+
+	public static TransactionCode byCode( final char first, final char second )
+	{
+		final TransactionCode value = Lookup.get( first, second );
+		if ( value != null )
 		{
-			for ( final TransactionCode value : klass.getEnumConstants() )
+			return value;
+		}
+		throw new IllegalArgumentException( "no-transaction-with-code-" + first + second );
+	}
+
+	// dense table indexed by the two packed ASCII code characters
+	public static final class Lookup
+	{
+
+		private static final int BITS = 7;
+		private static final int LIMIT = 1 << BITS;
+		private static final TransactionCode[] CODES = new TransactionCode[LIMIT * LIMIT];
+
+		static
+		{
+			for ( final Class< ? extends TransactionCode > klass : CLASSES )
 			{
-				if ( value.code()
-						.equals( code ) )
+				for ( final TransactionCode value : klass.getEnumConstants() )
 				{
-					return value;
+					CODES[index( value.code()
+							.charAt( 0 ),
+							value.code()
+									.charAt( 1 ) )] = value;
 				}
 			}
 		}
-		throw new IllegalArgumentException( "no-transaction-with-code-" + code );
+
+		private Lookup()
+		{}
+
+		private static int index( final char first, final char second )
+		{
+			return first << BITS | second;
+		}
+
+		private static TransactionCode get( final char first, final char second )
+		{
+			return first < LIMIT && second < LIMIT ? CODES[index( first, second )] : null;
+		}
+
+		private static TransactionCode get( final String code )
+		{
+			return code != null && code.length() == 2 ? get( code.charAt( 0 ), code.charAt( 1 ) ) : null;
+		}
+
 	}
 
 }
@@ -7,6 +7,7 @@ import lombok.Builder;
 import lombok.Value;
 import lombok.experimental.Accessors;
 import uk.co.bluegecko.pay.common.model.BuilderConstants;
+import uk.co.bluegecko.pay.common.model.EpochDays;
 
 
 @Value
@@ -35,7 +36,7 @@ public class UserHeader
 
 		public UserHeaderBuilder processingDate( final long julianDate )
 		{
-			processingDate = LocalDate.ofEpochDay( julianDate );
+			processingDate = EpochDays.toDate( julianDate );
 
 			return this;
 		}
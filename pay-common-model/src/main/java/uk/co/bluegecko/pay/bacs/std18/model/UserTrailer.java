@@ -6,7 +6,7 @@ import java.math.BigDecimal;
 import lombok.Builder;
 import lombok.Value;
 import lombok.experimental.Accessors;
-import uk.co.bluegecko.pay.common.model.BuilderConstants;
+import uk.co.bluegecko.pay.common.model.Amounts;
 
 
 @Value
@@ -22,7 +22,7 @@ public class UserTrailer
 	private final Integer ddiCount;
 	private final String serviceUser;
 
-	public static final class UserTrailerBuilder implements BuilderConstants
+	public static final class UserTrailerBuilder
 	{
 
 		public UserTrailerBuilder debitValue( final BigDecimal debitValue )
@@ -34,7 +34,7 @@ public class UserTrailer
 
 		public UserTrailerBuilder debitValue( final String pence )
 		{
-			return debitValue( new BigDecimal( pence ).divide( HUNDRED ) );
+			return debitValue( Amounts.fromPence( pence ) );
 		}
 
 		public UserTrailerBuilder creditValue( final BigDecimal creditValue )
@@ -46,7 +46,7 @@ public class UserTrailer
 
 		public UserTrailerBuilder creditValue( final String pence )
 		{
-			return creditValue( new BigDecimal( pence ).divide( HUNDRED ) );
+			return creditValue( Amounts.fromPence( pence ) );
 		}
 
 	}
@@ -0,0 +1,185 @@
+package uk.co.bluegecko.pay.bacs.std18.service;
+
+
+import java.math.BigDecimal;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+import uk.co.bluegecko.pay.bacs.std18.model.Contra;
+import uk.co.bluegecko.pay.bacs.std18.model.Header1;
+import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
+import uk.co.bluegecko.pay.bacs.std18.model.Row;
+import uk.co.bluegecko.pay.bacs.std18.model.TransactionCode;
+import uk.co.bluegecko.pay.bacs.std18.model.UserTrailer;
+import uk.co.bluegecko.pay.common.model.Amounts;
+import uk.co.bluegecko.pay.common.model.Message;
+import uk.co.bluegecko.pay.common.model.Message.Classification;
+
+
+public class TrailerReconciler implements BiConsumer< Row, Object >
+{
+
+	public static final Row[] ROWS =
+		{ Row.HDR1, Row.INSTR, Row.CONTRA, Row.EOF1, Row.UTL1 };
+
+	private final Message message;
+
+	private int batch;
+	private Header1 header;
+	private boolean pending;
+	private long debitValue;
+	private long creditValue;
+	private int debitCount;
+	private int creditCount;
+	private int ddiCount;
+
+	public TrailerReconciler()
+	{
+		message = new Message();
+	}
+
+	public Message message()
+	{
+		return message;
+	}
+
+	public boolean isReconciled()
+	{
+		return !message.has( Classification.ERROR );
+	}
+
+	@Override
+	public void accept( final Row row, final Object value )
+	{
+		switch ( row )
+		{
+			case HDR1:
+				batch++;
+				header = ( Header1 ) value;
+				reset();
+				break;
+			case INSTR:
+				final Instruction instruction = ( Instruction ) value;
+				add( instruction.transactionType(), instruction.amount(), instruction.lineNo() );
+				break;
+			case CONTRA:
+				final Contra contra = ( Contra ) value;
+				add( contra.transactionType(), contra.amount(), contra.lineNo() );
+				break;
+			case EOF1:
+				check( ( Header1 ) value );
+				break;
+			case UTL1:
+				check( ( UserTrailer ) value );
+				break;
+			default:
+				break;
+		}
+	}
+
+	public Message finish()
+	{
+		if ( pending )
+		{
+			message.add( Classification.WARN, key(), "no-user-trailer" );
+		}
+		return message;
+	}
+
+	protected void add( final String transactionType, final BigDecimal amount, final Integer lineNo )
+	{
+		pending = true;
+
+		final TransactionCode code;
+		try
+		{
+			code = transactionType != null && transactionType.length() == 2
+					? TransactionCode.byCode( transactionType.charAt( 0 ), transactionType.charAt( 1 ) )
+					: TransactionCode.byCode( transactionType );
+		}
+		catch ( final IllegalArgumentException ex )
+		{
+			message.add( Classification.ERROR, key(), ex.getMessage() + "-at-line-" + lineNo );
+			return;
+		}
+
+		switch ( code.transactionType() )
+		{
+			case DEBIT:
+				debitValue += Amounts.toPence( amount );
+				debitCount++;
+				break;
+			case CREDIT:
+				creditValue += Amounts.toPence( amount );
+				creditCount++;
+				break;
+			case AUDDIS:
+				ddiCount++;
+				break;
+			default:
+				break;
+		}
+	}
+
+	protected void check( final UserTrailer trailer )
+	{
+		compare( "debit-value", trailer.debitValue() == null ? null : Amounts.toPence( trailer.debitValue() ),
+				debitValue );
+		compare( "credit-value", trailer.creditValue() == null ? null : Amounts.toPence( trailer.creditValue() ),
+				creditValue );
+		compare( "debit-count", trailer.debitCount(), debitCount );
+		compare( "credit-count", trailer.creditCount(), creditCount );
+		compare( "ddi-count", trailer.ddiCount(), ddiCount );
+
+		reset();
+	}
+
+	protected void check( final Header1 trailer )
+	{
+		if ( header == null )
+		{
+			message.add( Classification.ERROR, key(), "EOF1-without-HDR1" );
+			return;
+		}
+		compareHeader( "file", header.file(), trailer.file() );
+		compareHeader( "set", header.set(), trailer.set() );
+		compareHeader( "section", header.section(), trailer.section() );
+		compareHeader( "sequence", header.sequence(), trailer.sequence() );
+		compareHeader( "generation", header.generation(), trailer.generation() );
+		compareHeader( "version", header.version(), trailer.version() );
+	}
+
+	protected void compare( final String field, final Number expected, final long actual )
+	{
+		if ( expected == null || expected.longValue() != actual )
+		{
+			message.add( Classification.ERROR, key(),
+					String.format( "%s: trailer %s, records %d", field, expected, actual ) );
+		}
+	}
+
+	protected void compareHeader( final String field, final Object expected, final Object actual )
+	{
+		if ( !Objects.equals( expected, actual ) )
+		{
+			message.add( Classification.ERROR, key(),
+					String.format( "%s: HDR1 '%s', EOF1 '%s'", field, expected, actual ) );
+		}
+	}
+
+	protected String key()
+	{
+		return "batch-" + batch;
+	}
+
+	private void reset()
+	{
+		pending = false;
+		debitValue = 0;
+		creditValue = 0;
+		debitCount = 0;
+		creditCount = 0;
+		ddiCount = 0;
+	}
+
+}
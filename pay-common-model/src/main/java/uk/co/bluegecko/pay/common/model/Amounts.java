@@ -0,0 +1,47 @@
+package uk.co.bluegecko.pay.common.model;
+
+
+import java.math.BigDecimal;
+
+
+public final class Amounts implements BuilderConstants
+{
+
+	// scale of an exact divide by HUNDRED never drops below this
+	private static final int MIN_SCALE = -2;
+	private static final BigDecimal ZERO = BigDecimal.valueOf( 0, MIN_SCALE );
+
+	private Amounts()
+	{}
+
+	public static BigDecimal fromPence( final long pence )
+	{
+		if ( pence == 0 )
+		{
+			return ZERO;
+		}
+
+		// same value and scale as BigDecimal.valueOf( pence ).divide( HUNDRED ), without the divide
+		long unscaled = pence;
+		int scale = 2;
+		while ( scale > MIN_SCALE && unscaled % 10 == 0 )
+		{
+			unscaled /= 10;
+			scale--;
+		}
+		return BigDecimal.valueOf( unscaled, scale );
+	}
+
+	public static BigDecimal fromPence( final String pence )
+	{
+		final long value = Digits.parse( pence, false );
+		return value == Digits.NONE ? new BigDecimal( pence ).divide( HUNDRED ) : fromPence( value );
+	}
+
+	public static long toPence( final BigDecimal amount )
+	{
+		return amount.movePointRight( 2 )
+				.longValueExact();
+	}
+
+}
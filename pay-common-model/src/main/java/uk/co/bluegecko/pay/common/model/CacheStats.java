@@ -0,0 +1,38 @@
+package uk.co.bluegecko.pay.common.model;
+
+
+import java.util.concurrent.TimeUnit;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+
+@Value
+@Builder
+@Accessors( fluent = true )
+public class CacheStats
+{
+
+	private final long hits;
+	private final long misses;
+	private final long loadTime;
+	private final int size;
+
+	public long requests()
+	{
+		return hits + misses;
+	}
+
+	public double hitRate()
+	{
+		final long requests = requests();
+		return requests == 0 ? 1.0 : ( double ) hits / requests;
+	}
+
+	public long averageLoadTime( final TimeUnit unit )
+	{
+		return misses == 0 ? 0 : unit.convert( loadTime / misses, TimeUnit.NANOSECONDS );
+	}
+
+}
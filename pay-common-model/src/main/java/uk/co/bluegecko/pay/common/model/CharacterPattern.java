@@ -0,0 +1,251 @@
+package uk.co.bluegecko.pay.common.model;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+
+public final class CharacterPattern implements Predicate< CharSequence >
+{
+
+	private static final int UNBOUNDED = -1;
+
+	private final Term[] terms;
+
+	private CharacterPattern( final List< Term > terms )
+	{
+		this.terms = terms.toArray( new Term[terms.size()] );
+	}
+
+	// sequences of ASCII character classes where only the last may vary in length scan directly, anything else
+	// falls back to a regular expression compiled once
+	public static Predicate< CharSequence > matcher( final String regexp )
+	{
+		try
+		{
+			return compile( regexp );
+		}
+		catch ( final IllegalArgumentException ex )
+		{
+			final Pattern pattern = Pattern.compile( regexp );
+			return text -> pattern.matcher( text )
+					.matches();
+		}
+	}
+
+	public static CharacterPattern compile( final String regexp )
+	{
+		final List< Term > terms = new ArrayList<>();
+		int i = 0;
+		while ( i < regexp.length() )
+		{
+			final CharacterSet chars;
+			final char c = regexp.charAt( i++ );
+			if ( c == '[' )
+			{
+				final int end = closing( regexp, i );
+				chars = characterClass( regexp, i, end );
+				i = end + 1;
+			}
+			else if ( c == '\\' )
+			{
+				chars = escaped( regexp, i++ );
+			}
+			else if ( "()|.^$*+?{}".indexOf( c ) >= 0 || !CharacterSet.isSupported( c ) )
+			{
+				throw unsupported( regexp );
+			}
+			else
+			{
+				chars = CharacterSet.of( c );
+			}
+
+			final Term term = new Term( chars );
+			i = quantifier( regexp, i, term );
+			if ( !terms.isEmpty() && terms.get( terms.size() - 1 ).min != terms.get( terms.size() - 1 ).max )
+			{
+				throw unsupported( regexp );
+			}
+			terms.add( term );
+		}
+		return new CharacterPattern( terms );
+	}
+
+	@Override
+	public boolean test( final CharSequence text )
+	{
+		return matches( text );
+	}
+
+	public boolean matches( final CharSequence text )
+	{
+		final int length = text.length();
+		int position = 0;
+		for ( final Term term : terms )
+		{
+			int count = 0;
+			while ( position < length && ( term.max == UNBOUNDED || count < term.max )
+					&& term.chars.contains( text.charAt( position ) ) )
+			{
+				position++;
+				count++;
+			}
+			if ( count < term.min )
+			{
+				return false;
+			}
+		}
+		return position == length;
+	}
+
+	private static int closing( final String regexp, final int from )
+	{
+		for ( int i = from; i < regexp.length(); i++ )
+		{
+			final char c = regexp.charAt( i );
+			if ( c == '\\' )
+			{
+				i++;
+			}
+			else if ( c == ']' )
+			{
+				return i;
+			}
+		}
+		throw unsupported( regexp );
+	}
+
+	private static CharacterSet characterClass( final String regexp, final int from, final int to )
+	{
+		if ( from == to || regexp.charAt( from ) == '^' )
+		{
+			throw unsupported( regexp );
+		}
+
+		CharacterSet chars = CharacterSet.of();
+		int i = from;
+		while ( i < to )
+		{
+			char c = regexp.charAt( i++ );
+			if ( c == '\\' )
+			{
+				final CharacterSet escaped = escaped( regexp, i++ );
+				if ( escaped == CharacterSet.DIGITS )
+				{
+					chars = chars.union( escaped );
+					continue;
+				}
+				c = regexp.charAt( i - 1 );
+			}
+			else if ( c == '[' || !CharacterSet.isSupported( c ) )
+			{
+				throw unsupported( regexp );
+			}
+
+			if ( i + 1 < to && regexp.charAt( i ) == '-' )
+			{
+				char last = regexp.charAt( i + 1 );
+				i += 2;
+				if ( last == '\\' )
+				{
+					if ( i >= to )
+					{
+						throw unsupported( regexp );
+					}
+					last = regexp.charAt( i++ );
+				}
+				chars = chars.union( CharacterSet.range( c, last ) );
+			}
+			else
+			{
+				chars = chars.union( CharacterSet.of( c ) );
+			}
+		}
+		return chars;
+	}
+
+	private static CharacterSet escaped( final String regexp, final int at )
+	{
+		if ( at >= regexp.length() )
+		{
+			throw unsupported( regexp );
+		}
+		final char c = regexp.charAt( at );
+		if ( c == 'd' )
+		{
+			return CharacterSet.DIGITS;
+		}
+		if ( Character.isLetterOrDigit( c ) || !CharacterSet.isSupported( c ) )
+		{
+			throw unsupported( regexp );
+		}
+		return CharacterSet.of( c );
+	}
+
+	private static int quantifier( final String regexp, final int at, final Term term )
+	{
+		if ( at >= regexp.length() )
+		{
+			return at;
+		}
+		switch ( regexp.charAt( at ) )
+		{
+			case '*':
+				term.bounds( 0, UNBOUNDED );
+				return at + 1;
+			case '+':
+				term.bounds( 1, UNBOUNDED );
+				return at + 1;
+			case '?':
+				term.bounds( 0, 1 );
+				return at + 1;
+			case '{':
+				final int end = regexp.indexOf( '}', at );
+				if ( end < 0 )
+				{
+					throw unsupported( regexp );
+				}
+				final String[] bounds = regexp.substring( at + 1, end )
+						.split( ",", -1 );
+				final long min = Digits.parse( bounds[0], false );
+				final long max = bounds.length == 1 ? min : Digits.parse( bounds[1], false );
+				final boolean unbounded = bounds.length == 2 && bounds[1].isEmpty();
+				if ( bounds.length > 2 || min == Digits.NONE || !unbounded && ( max == Digits.NONE || max < min ) )
+				{
+					throw unsupported( regexp );
+				}
+				term.bounds( ( int ) min, unbounded ? UNBOUNDED : ( int ) max );
+				return end + 1;
+			default:
+				return at;
+		}
+	}
+
+	private static IllegalArgumentException unsupported( final String regexp )
+	{
+		return new IllegalArgumentException( "unsupported-pattern-" + regexp );
+	}
+
+	private static final class Term
+	{
+
+		private final CharacterSet chars;
+		private int min = 1;
+		private int max = 1;
+
+		private Term( final CharacterSet chars )
+		{
+			this.chars = chars;
+		}
+
+		private void bounds( final int min, final int max )
+		{
+			this.min = min;
+			this.max = max;
+		}
+
+	}
+
+}
@@ -0,0 +1,78 @@
+package uk.co.bluegecko.pay.common.model;
+
+
+public final class CharacterSet
+{
+
+	public static final CharacterSet DIGITS = new CharacterSet().add( '0', '9' );
+
+	private static final int SIZE = 128;
+
+	private final boolean[] allowed;
+
+	private CharacterSet()
+	{
+		allowed = new boolean[SIZE];
+	}
+
+	public static CharacterSet of( final char... chars )
+	{
+		final CharacterSet set = new CharacterSet();
+		for ( final char c : chars )
+		{
+			set.add( c, c );
+		}
+		return set;
+	}
+
+	public static CharacterSet range( final char from, final char to )
+	{
+		return new CharacterSet().add( from, to );
+	}
+
+	public static boolean isSupported( final char c )
+	{
+		return c < SIZE;
+	}
+
+	public CharacterSet union( final CharacterSet other )
+	{
+		final CharacterSet set = new CharacterSet();
+		for ( int i = 0; i < SIZE; i++ )
+		{
+			set.allowed[i] = allowed[i] || other.allowed[i];
+		}
+		return set;
+	}
+
+	public boolean contains( final char c )
+	{
+		return c < SIZE && allowed[c];
+	}
+
+	public boolean containsAll( final CharSequence text )
+	{
+		for ( int i = 0; i < text.length(); i++ )
+		{
+			if ( !contains( text.charAt( i ) ) )
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private CharacterSet add( final char from, final char to )
+	{
+		if ( from > to || !isSupported( to ) )
+		{
+			throw new IllegalArgumentException( "unsupported-range-" + from + "-" + to );
+		}
+		for ( char c = from; c <= to; c++ )
+		{
+			allowed[c] = true;
+		}
+		return this;
+	}
+
+}
@@ -0,0 +1,47 @@
+package uk.co.bluegecko.pay.common.model;
+
+
+public final class Digits
+{
+
+	public static final long NONE = -1L;
+
+	private static final int MAX_DIGITS = 18;
+
+	private Digits()
+	{}
+
+	public static long parse( final CharSequence text, final boolean trim )
+	{
+		int start = 0;
+		int end = text.length();
+		if ( trim )
+		{
+			while ( start < end && text.charAt( start ) <= ' ' )
+			{
+				start++;
+			}
+			while ( end > start && text.charAt( end - 1 ) <= ' ' )
+			{
+				end--;
+			}
+		}
+		if ( start == end || end - start > MAX_DIGITS )
+		{
+			return NONE;
+		}
+
+		long value = 0;
+		for ( int i = start; i < end; i++ )
+		{
+			final int digit = text.charAt( i ) - '0';
+			if ( digit < 0 || digit > 9 )
+			{
+				return NONE;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,33 @@
+package uk.co.bluegecko.pay.common.model;
+
+
+import java.time.LocalDate;
+
+
+public final class EpochDays
+{
+
+	private static final int SIZE = 1024;
+	private static final int MASK = SIZE - 1;
+
+	// direct mapped, so a batch sharing one processing date resolves to one instance
+	private static final LocalDate[] CACHE = new LocalDate[SIZE];
+
+	private EpochDays()
+	{}
+
+	public static LocalDate toDate( final long epochDay )
+	{
+		final int slot = ( int ) ( epochDay & MASK );
+		final LocalDate cached = CACHE[slot];
+		if ( cached != null && cached.toEpochDay() == epochDay )
+		{
+			return cached;
+		}
+
+		final LocalDate date = LocalDate.ofEpochDay( epochDay );
+		CACHE[slot] = date;
+		return date;
+	}
+
+}
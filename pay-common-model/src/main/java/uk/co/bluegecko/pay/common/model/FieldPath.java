@@ -0,0 +1,95 @@
+package uk.co.bluegecko.pay.common.model;
+
+
+import java.util.Collections;
+import java.util.Iterator;
+
+import javax.validation.ElementKind;
+import javax.validation.Path;
+
+import lombok.EqualsAndHashCode;
+
+
+// a path to a single field, so it is its own only node
+@EqualsAndHashCode
+public final class FieldPath implements Path, Path.PropertyNode
+{
+
+	private final String name;
+
+	private FieldPath( final String name )
+	{
+		this.name = name;
+	}
+
+	public static FieldPath of( final String name )
+	{
+		return new FieldPath( name );
+	}
+
+	@Override
+	public Iterator< Node > iterator()
+	{
+		return Collections.< Node > singletonList( this )
+				.iterator();
+	}
+
+	@Override
+	public String getName()
+	{
+		return name;
+	}
+
+	@Override
+	public boolean isInIterable()
+	{
+		return false;
+	}
+
+	@Override
+	public Integer getIndex()
+	{
+		return null;
+	}
+
+	@Override
+	public Object getKey()
+	{
+		return null;
+	}
+
+	@Override
+	public Class< ? > getContainerClass()
+	{
+		return null;
+	}
+
+	@Override
+	public Integer getTypeArgumentIndex()
+	{
+		return null;
+	}
+
+	@Override
+	public ElementKind getKind()
+	{
+		return ElementKind.PROPERTY;
+	}
+
+	@Override
+	public < T extends Node > T as( final Class< T > nodeType )
+	{
+		if ( nodeType.isInstance( this ) )
+		{
+			return nodeType.cast( this );
+		}
+		throw new ClassCastException( "unsupported-node-" + nodeType.getName() );
+	}
+
+	@Override
+	public String toString()
+	{
+		return name;
+	}
+
+}
@@ -0,0 +1,53 @@
+package uk.co.bluegecko.pay.common.model;
+
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Path;
+import javax.validation.metadata.ConstraintDescriptor;
+
+import lombok.Builder;
+import lombok.Value;
+
+
+@Value
+@Builder
+public class FieldViolation< T > implements ConstraintViolation< T >
+{
+
+	private final String message;
+	private final String messageTemplate;
+	private final T rootBean;
+	private final Class< T > rootBeanClass;
+	private final Object leafBean;
+	private final Path propertyPath;
+	private final Object invalidValue;
+
+	@Override
+	public Object[] getExecutableParameters()
+	{
+		return null;
+	}
+
+	@Override
+	public Object getExecutableReturnValue()
+	{
+		return null;
+	}
+
+	@Override
+	public ConstraintDescriptor< ? > getConstraintDescriptor()
+	{
+		return null;
+	}
+
+	@Override
+	public < U > U unwrap( final Class< U > type )
+	{
+		if ( type.isInstance( this ) )
+		{
+			return type.cast( this );
+		}
+		throw new IllegalArgumentException( "unsupported-type-" + type.getName() );
+	}
+
+}
@@ -0,0 +1,19 @@
+package uk.co.bluegecko.pay.common.model;
+
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+
+@Value
+@Builder
+@Accessors( fluent = true )
+public class ParsedRecord
+{
+
+	private final String name;
+	private final Object value;
+	private final int lineNo;
+
+}
@@ -0,0 +1,16 @@
+package uk.co.bluegecko.pay.common.service;
+
+
+import java.nio.ByteBuffer;
+
+
+public interface ByteMapper< T extends ByteParsingContext >
+{
+
+	public String name();
+
+	public void map( final ByteBuffer record, final T context );
+
+	public T newContext();
+
+}
@@ -0,0 +1,11 @@
+package uk.co.bluegecko.pay.common.service;
+
+
+public interface ByteParsingContext
+{
+
+	public int lineNumber();
+
+	public int nextLine();
+
+}
@@ -0,0 +1,18 @@
+package uk.co.bluegecko.pay.common.service;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+
+
+public interface ByteParsingService
+{
+
+	public < T extends ByteParsingContext > void parse( final InputStream dataFile, final ByteMapper< T > mapper )
+			throws IOException;
+
+	public < T extends ByteParsingContext > void parse( final ReadableByteChannel dataFile,
+			final ByteMapper< T > mapper ) throws IOException;
+
+}
@@ -0,0 +1,16 @@
+package uk.co.bluegecko.pay.common.service;
+
+
+import java.util.Set;
+
+import javax.validation.ConstraintViolation;
+
+
+public interface CompiledValidator
+{
+
+	public < T > Set< ConstraintViolation< T > > validate( final T object );
+
+	public boolean isValid( final Object object );
+
+}
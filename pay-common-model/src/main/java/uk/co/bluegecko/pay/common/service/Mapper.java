@@ -4,6 +4,8 @@ package uk.co.bluegecko.pay.common.service;
 import org.beanio.BeanReader;
 import org.beanio.StreamFactory;
 
+import uk.co.bluegecko.pay.common.model.ParsedRecord;
+
 
 public interface Mapper< T extends ParsingContext >
 {
@@ -12,7 +14,9 @@ public interface Mapper< T extends ParsingContext >
 
 	public StreamFactory addMapping( StreamFactory factory );
 
-	public void map( final Object record, T context );
+	public ParsedRecord toRecord( final Object record, T context );
+
+	public void accept( final ParsedRecord record );
 
 	public T newContext( BeanReader reader );
 
@@ -0,0 +1,26 @@
+package uk.co.bluegecko.pay.common.service;
+
+
+import uk.co.bluegecko.pay.common.model.Message;
+
+
+public class MessageException extends RuntimeException
+{
+
+	private static final long serialVersionUID = 1L;
+
+	private final transient Message messages;
+
+	public MessageException( final String reason, final Message messages )
+	{
+		super( reason );
+
+		this.messages = messages;
+	}
+
+	public Message messages()
+	{
+		return messages;
+	}
+
+}
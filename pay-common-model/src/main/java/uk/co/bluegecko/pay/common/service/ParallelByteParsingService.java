@@ -0,0 +1,14 @@
+package uk.co.bluegecko.pay.common.service;
+
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+
+public interface ParallelByteParsingService
+{
+
+	public < T extends ByteParsingContext, S extends ByteParsingContext > void parse( final FileChannel dataFile,
+			final SegmentedByteMapper< T, S > mapper ) throws IOException;
+
+}
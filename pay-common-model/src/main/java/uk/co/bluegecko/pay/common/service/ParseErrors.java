@@ -0,0 +1,85 @@
+package uk.co.bluegecko.pay.common.service;
+
+
+import java.util.HashMap;
+import java.util.Map;
+
+import uk.co.bluegecko.pay.common.model.Message;
+import uk.co.bluegecko.pay.common.model.Message.Classification;
+
+
+public class ParseErrors
+{
+
+	public static final int ERRORS_PER_KEY = 10;
+	public static final long UNLIMITED = Long.MAX_VALUE;
+
+	private final Message message;
+	private final Map< String, Long > counts;
+	private final int errorsPerKey;
+	private final long budget;
+	private long total;
+
+	public ParseErrors()
+	{
+		this( ERRORS_PER_KEY, UNLIMITED );
+	}
+
+	public ParseErrors( final int errorsPerKey, final long budget )
+	{
+		if ( errorsPerKey < 0 || budget < 0 )
+		{
+			throw new IllegalArgumentException( "negative-error-limit" );
+		}
+
+		message = new Message();
+		counts = new HashMap<>();
+		this.errorsPerKey = errorsPerKey;
+		this.budget = budget;
+	}
+
+	public void add( final String key, final String text )
+	{
+		total++;
+		final long count = counts.merge( key, 1L, Long::sum );
+		if ( count <= errorsPerKey )
+		{
+			message.add( Classification.ERROR, key, text );
+		}
+		if ( total > budget )
+		{
+			throw new MessageException( "error-budget-exceeded", message() );
+		}
+	}
+
+	public long total()
+	{
+		return total;
+	}
+
+	public long count( final String key )
+	{
+		return counts.getOrDefault( key, 0L );
+	}
+
+	public boolean isEmpty()
+	{
+		return total == 0;
+	}
+
+	public Message message()
+	{
+		// errors beyond the cap are only counted, so report how many were dropped for each key
+		for ( final Map.Entry< String, Long > entry : counts.entrySet() )
+		{
+			if ( entry.getValue() > errorsPerKey )
+			{
+				message.clear( Classification.INFO, entry.getKey() );
+				message.add( Classification.INFO, entry.getKey(),
+						( entry.getValue() - errorsPerKey ) + "-more-errors" );
+			}
+		}
+		return message;
+	}
+
+}
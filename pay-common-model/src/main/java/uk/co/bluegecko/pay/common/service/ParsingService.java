@@ -4,11 +4,25 @@ package uk.co.bluegecko.pay.common.service;
 import java.io.IOException;
 import java.io.Reader;
 
+import reactor.core.publisher.Flux;
+import uk.co.bluegecko.pay.common.model.Message;
+import uk.co.bluegecko.pay.common.model.ParsedRecord;
+
 
 public interface ParsingService
 {
 
-	public < T extends ParsingContext > void parse( final Reader dataFile, final Mapper< T > mapper )
+	public ParseErrors newErrors();
+
+	public < T extends ParsingContext > Flux< ParsedRecord > records( final Reader dataFile, final Mapper< T > mapper );
+
+	public < T extends ParsingContext > Flux< ParsedRecord > records( final Reader dataFile, final Mapper< T > mapper,
+			final ParseErrors errors );
+
+	public < T extends ParsingContext > Message parse( final Reader dataFile, final Mapper< T > mapper )
 			throws IOException;
 
+	public < T extends ParsingContext > Message parse( final Reader dataFile, final Mapper< T > mapper,
+			final ParseErrors errors ) throws IOException;
+
 }
@@ -0,0 +1,17 @@
+package uk.co.bluegecko.pay.common.service;
+
+
+import java.nio.ByteBuffer;
+
+
+public interface SegmentedByteMapper< T extends ByteParsingContext, S extends ByteParsingContext >
+		extends ByteMapper< T >
+{
+
+	public S newSegment();
+
+	public void mapSegment( final ByteBuffer record, final S segment );
+
+	public void publish( final S segment, final T context );
+
+}
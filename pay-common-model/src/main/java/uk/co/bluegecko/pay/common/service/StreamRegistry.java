@@ -0,0 +1,22 @@
+package uk.co.bluegecko.pay.common.service;
+
+
+import org.beanio.StreamFactory;
+
+import uk.co.bluegecko.pay.common.model.CacheStats;
+
+
+public interface StreamRegistry
+{
+
+	public StreamFactory factory( final Mapper< ? > mapper );
+
+	public StreamFactory reload( final Mapper< ? > mapper );
+
+	public void invalidate( final String name );
+
+	public void invalidateAll();
+
+	public CacheStats stats();
+
+}
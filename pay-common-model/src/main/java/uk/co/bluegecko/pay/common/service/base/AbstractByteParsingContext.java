@@ -0,0 +1,41 @@
+package uk.co.bluegecko.pay.common.service.base;
+
+
+import uk.co.bluegecko.pay.common.service.ByteParsingContext;
+
+
+public abstract class AbstractByteParsingContext implements ByteParsingContext
+{
+
+	private int lineNumber;
+
+	public AbstractByteParsingContext()
+	{
+		this( 0 );
+	}
+
+	public AbstractByteParsingContext( final int lineNumber )
+	{
+		this.lineNumber = lineNumber;
+	}
+
+	@Override
+	public int lineNumber()
+	{
+		return lineNumber;
+	}
+
+	@Override
+	public int nextLine()
+	{
+		return ++lineNumber;
+	}
+
+	public int skipLines( final int count )
+	{
+		final int skipped = lineNumber;
+		lineNumber += count;
+		return skipped;
+	}
+
+}
@@ -0,0 +1,114 @@
+package uk.co.bluegecko.pay.common.service.base;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+import org.springframework.stereotype.Service;
+
+import uk.co.bluegecko.pay.common.service.ByteMapper;
+import uk.co.bluegecko.pay.common.service.ByteParsingContext;
+import uk.co.bluegecko.pay.common.service.ByteParsingService;
+
+
+@Service
+public class ByteParsingServiceBase implements ByteParsingService
+{
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final byte LF = '\n';
+	private static final byte CR = '\r';
+
+	private final int bufferSize;
+
+	public ByteParsingServiceBase()
+	{
+		this( BUFFER_SIZE );
+	}
+
+	protected ByteParsingServiceBase( final int bufferSize )
+	{
+		super();
+
+		this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public < T extends ByteParsingContext > void parse( final InputStream dataFile, final ByteMapper< T > mapper )
+			throws IOException
+	{
+		parse( Channels.newChannel( dataFile ), mapper );
+	}
+
+	@Override
+	public < T extends ByteParsingContext > void parse( final ReadableByteChannel dataFile,
+			final ByteMapper< T > mapper ) throws IOException
+	{
+		try
+		{
+			final T context = mapper.newContext();
+
+			ByteBuffer buffer = ByteBuffer.allocate( bufferSize );
+			boolean eof = false;
+			while ( !eof )
+			{
+				final int scanFrom = buffer.position();
+				eof = dataFile.read( buffer ) < 0;
+				buffer.flip();
+
+				final int limit = buffer.limit();
+				int start = 0;
+				for ( int i = scanFrom; i < limit; i++ )
+				{
+					if ( buffer.get( i ) == LF )
+					{
+						mapRecord( buffer, start, i, mapper, context );
+						start = i + 1;
+					}
+				}
+				if ( eof && start < limit )
+				{
+					mapRecord( buffer, start, limit, mapper, context );
+					start = limit;
+				}
+
+				buffer.limit( limit )
+						.position( start );
+				buffer.compact();
+				if ( !buffer.hasRemaining() )
+				{
+					buffer = grow( buffer );
+				}
+			}
+		}
+		finally
+		{
+			dataFile.close();
+		}
+	}
+
+	protected < T extends ByteParsingContext > void mapRecord( final ByteBuffer buffer, final int start, final int end,
+			final ByteMapper< T > mapper, final T context )
+	{
+		final int limit = buffer.limit();
+		final int length = end > start && buffer.get( end - 1 ) == CR ? end - 1 : end;
+
+		context.nextLine();
+		buffer.limit( length )
+				.position( start );
+		mapper.map( buffer, context );
+		buffer.limit( limit );
+	}
+
+	protected ByteBuffer grow( final ByteBuffer buffer )
+	{
+		final ByteBuffer larger = ByteBuffer.allocate( buffer.capacity() * 2 );
+		buffer.flip();
+		larger.put( buffer );
+		return larger;
+	}
+
+}
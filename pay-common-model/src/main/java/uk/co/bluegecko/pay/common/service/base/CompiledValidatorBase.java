@@ -0,0 +1,282 @@
+package uk.co.bluegecko.pay.common.service.base;
+
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+import javax.validation.Constraint;
+import javax.validation.ConstraintViolation;
+import javax.validation.Path;
+import javax.validation.constraints.Digits;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import javax.validation.groups.Default;
+
+import org.hibernate.validator.constraints.Length;
+import org.springframework.stereotype.Service;
+
+import lombok.extern.slf4j.Slf4j;
+import uk.co.bluegecko.pay.common.model.CharacterPattern;
+import uk.co.bluegecko.pay.common.model.FieldPath;
+import uk.co.bluegecko.pay.common.model.FieldViolation;
+import uk.co.bluegecko.pay.common.service.CompiledValidator;
+
+
+@Service
+@Slf4j
+public class CompiledValidatorBase implements CompiledValidator
+{
+
+	private final ConcurrentMap< Class< ? >, FieldConstraints[] > constraints;
+
+	public CompiledValidatorBase()
+	{
+		constraints = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public < T > Set< ConstraintViolation< T > > validate( final T object )
+	{
+		Set< ConstraintViolation< T > > violations = null;
+		for ( final FieldConstraints field : constraints( object.getClass() ) )
+		{
+			final Object value = field.value( object );
+			for ( final FieldConstraint constraint : field.constraints )
+			{
+				if ( !constraint.check.test( value ) )
+				{
+					if ( violations == null )
+					{
+						violations = new HashSet<>();
+					}
+					violations.add( violation( object, field, constraint, value ) );
+				}
+			}
+		}
+		return violations == null ? Collections.emptySet() : violations;
+	}
+
+	@Override
+	public boolean isValid( final Object object )
+	{
+		for ( final FieldConstraints field : constraints( object.getClass() ) )
+		{
+			final Object value = field.value( object );
+			for ( final FieldConstraint constraint : field.constraints )
+			{
+				if ( !constraint.check.test( value ) )
+				{
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	protected FieldConstraints[] constraints( final Class< ? > type )
+	{
+		final FieldConstraints[] compiled = constraints.get( type );
+		if ( compiled != null )
+		{
+			return compiled;
+		}
+		return constraints.computeIfAbsent( type, this::compile );
+	}
+
+	protected FieldConstraints[] compile( final Class< ? > type )
+	{
+		final long start = System.nanoTime();
+
+		final List< FieldConstraints > fields = new ArrayList<>();
+		for ( Class< ? > current = type; current != null && current != Object.class; current = current
+				.getSuperclass() )
+		{
+			for ( final Field field : current.getDeclaredFields() )
+			{
+				if ( Modifier.isStatic( field.getModifiers() ) )
+				{
+					continue;
+				}
+				final List< FieldConstraint > checks = new ArrayList<>();
+				for ( final Annotation annotation : field.getAnnotations() )
+				{
+					final FieldConstraint check = compile( annotation );
+					if ( check != null )
+					{
+						checks.add( check );
+					}
+				}
+				if ( !checks.isEmpty() )
+				{
+					field.setAccessible( true );
+					fields.add( new FieldConstraints( field, checks ) );
+				}
+			}
+		}
+
+		log.debug( "compiled {} in {}ns", type.getName(), System.nanoTime() - start );
+		return fields.toArray( new FieldConstraints[fields.size()] );
+	}
+
+	protected FieldConstraint compile( final Annotation annotation )
+	{
+		if ( annotation instanceof NotNull )
+		{
+			final NotNull notNull = ( NotNull ) annotation;
+			return constraint( notNull.groups(), notNull.message(), "must not be null", Objects::nonNull );
+		}
+		if ( annotation instanceof Pattern )
+		{
+			final Pattern pattern = ( Pattern ) annotation;
+			if ( pattern.flags().length > 0 )
+			{
+				throw new IllegalArgumentException( "unsupported-flags-" + pattern.regexp() );
+			}
+			final Predicate< CharSequence > matcher = CharacterPattern.matcher( pattern.regexp() );
+			return constraint( pattern.groups(), pattern.message(), "must match \"" + pattern.regexp() + "\"",
+					value -> value == null || matcher.test( ( CharSequence ) value ) );
+		}
+		if ( annotation instanceof Length )
+		{
+			final Length length = ( Length ) annotation;
+			final int min = length.min();
+			final int max = length.max();
+			return constraint( length.groups(), length.message(), "length must be between " + min + " and " + max,
+					value -> value == null || ( ( CharSequence ) value ).length() >= min
+							&& ( ( CharSequence ) value ).length() <= max );
+		}
+		if ( annotation instanceof Min )
+		{
+			final Min min = ( Min ) annotation;
+			final long value = min.value();
+			return constraint( min.groups(), min.message(), "must be greater than or equal to " + value,
+					number -> number == null || isAtLeast( ( Number ) number, value ) );
+		}
+		if ( annotation instanceof Digits )
+		{
+			final Digits digits = ( Digits ) annotation;
+			final int integer = digits.integer();
+			final int fraction = digits.fraction();
+			return constraint( digits.groups(), digits.message(),
+					"numeric value out of bounds (<" + integer + " digits>.<" + fraction + " digits> expected)",
+					number -> number == null || isWithin( number, integer, fraction ) );
+		}
+		if ( annotation.annotationType()
+				.isAnnotationPresent( Constraint.class ) )
+		{
+			throw new IllegalArgumentException( "unsupported-constraint-" + annotation.annotationType()
+					.getSimpleName() );
+		}
+		return null;
+	}
+
+	protected FieldConstraint constraint( final Class< ? >[] groups, final String template, final String message,
+			final Predicate< Object > check )
+	{
+		// only the default group is validated, as Validator.validate( object ) does
+		if ( groups.length > 0 && !( groups.length == 1 && groups[0] == Default.class ) )
+		{
+			return null;
+		}
+		return new FieldConstraint( template, template.startsWith( "{" ) ? message : template, check );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	protected < T > ConstraintViolation< T > violation( final T object, final FieldConstraints field,
+			final FieldConstraint constraint, final Object value )
+	{
+		return FieldViolation.< T > builder()
+				.message( constraint.message )
+				.messageTemplate( constraint.template )
+				.rootBean( object )
+				.rootBeanClass( ( Class< T > ) object.getClass() )
+				.leafBean( object )
+				.propertyPath( field.path )
+				.invalidValue( value )
+				.build();
+	}
+
+	private static boolean isAtLeast( final Number number, final long min )
+	{
+		if ( number instanceof BigDecimal )
+		{
+			return ( ( BigDecimal ) number ).compareTo( BigDecimal.valueOf( min ) ) >= 0;
+		}
+		if ( number instanceof BigInteger )
+		{
+			return ( ( BigInteger ) number ).compareTo( BigInteger.valueOf( min ) ) >= 0;
+		}
+		if ( number instanceof Double || number instanceof Float )
+		{
+			return number.doubleValue() >= min;
+		}
+		return number.longValue() >= min;
+	}
+
+	private static boolean isWithin( final Object number, final int integer, final int fraction )
+	{
+		final BigDecimal value = ( number instanceof BigDecimal ? ( BigDecimal ) number
+				: new BigDecimal( number.toString() ) ).stripTrailingZeros();
+		final int integerLength = value.precision() - value.scale();
+		final int fractionLength = value.scale() < 0 ? 0 : value.scale();
+		return integerLength <= integer && fractionLength <= fraction;
+	}
+
+	protected static final class FieldConstraints
+	{
+
+		private final Field field;
+		private final Path path;
+		private final FieldConstraint[] constraints;
+
+		protected FieldConstraints( final Field field, final List< FieldConstraint > constraints )
+		{
+			this.field = field;
+			path = FieldPath.of( field.getName() );
+			this.constraints = constraints.toArray( new FieldConstraint[constraints.size()] );
+		}
+
+		protected Object value( final Object object )
+		{
+			try
+			{
+				return field.get( object );
+			}
+			catch ( final IllegalAccessException ex )
+			{
+				throw new IllegalStateException( ex );
+			}
+		}
+
+	}
+
+	protected static final class FieldConstraint
+	{
+
+		private final String template;
+		private final String message;
+		private final Predicate< Object > check;
+
+		protected FieldConstraint( final String template, final String message, final Predicate< Object > check )
+		{
+			this.template = template;
+			this.message = message;
+			this.check = check;
+		}
+
+	}
+
+}
@@ -0,0 +1,209 @@
+package uk.co.bluegecko.pay.common.service.base;
+
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.stereotype.Service;
+
+import uk.co.bluegecko.pay.common.service.ByteParsingContext;
+import uk.co.bluegecko.pay.common.service.ParallelByteParsingService;
+import uk.co.bluegecko.pay.common.service.SegmentedByteMapper;
+
+
+@Service
+public class ParallelByteParsingServiceBase implements ParallelByteParsingService
+{
+
+	private static final int SEGMENT_SIZE = 8 * 1024 * 1024;
+	private static final int SCAN_SIZE = 4 * 1024;
+	private static final byte LF = '\n';
+	private static final byte CR = '\r';
+
+	private final int parallelism;
+	private final int segmentSize;
+	private final ForkJoinPool pool;
+
+	public ParallelByteParsingServiceBase()
+	{
+		this( Runtime.getRuntime()
+				.availableProcessors(), SEGMENT_SIZE );
+	}
+
+	public ParallelByteParsingServiceBase( final int parallelism, final int segmentSize )
+	{
+		super();
+
+		this.parallelism = parallelism;
+		this.segmentSize = segmentSize;
+		pool = new ForkJoinPool( parallelism );
+	}
+
+	@Override
+	public < T extends ByteParsingContext, S extends ByteParsingContext > void parse( final FileChannel dataFile,
+			final SegmentedByteMapper< T, S > mapper ) throws IOException
+	{
+		final Deque< ForkJoinTask< S > > pending = new ArrayDeque<>();
+		try
+		{
+			final List< Segment > segments = split( dataFile );
+
+			final T context = mapper.newContext();
+			// bound the number of decoded segments held in memory awaiting publication
+			final int window = parallelism * 2;
+			int next = 0;
+			while ( next < segments.size() || !pending.isEmpty() )
+			{
+				while ( next < segments.size() && pending.size() < window )
+				{
+					final Segment segment = segments.get( next++ );
+					pending.add( pool.submit( () -> parseSegment( dataFile, segment, mapper ) ) );
+				}
+				mapper.publish( join( pending.remove() ), context );
+			}
+		}
+		finally
+		{
+			pending.forEach( task -> task.cancel( true ) );
+			dataFile.close();
+		}
+	}
+
+	@PreDestroy
+	public void shutdown()
+	{
+		pool.shutdownNow();
+	}
+
+	protected List< Segment > split( final FileChannel dataFile ) throws IOException
+	{
+		final long size = dataFile.size();
+		final List< Segment > segments = new ArrayList<>();
+
+		long start = 0;
+		while ( start < size )
+		{
+			final long end = start + segmentSize >= size ? size : nextLine( dataFile, start + segmentSize, size );
+			segments.add( new Segment( start, end ) );
+			start = end;
+		}
+		return segments;
+	}
+
+	protected long nextLine( final FileChannel dataFile, final long from, final long size ) throws IOException
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate( SCAN_SIZE );
+
+		long position = from;
+		while ( position < size )
+		{
+			buffer.clear();
+			final int read = dataFile.read( buffer, position );
+			if ( read < 0 )
+			{
+				break;
+			}
+			for ( int i = 0; i < read; i++ )
+			{
+				if ( buffer.get( i ) == LF )
+				{
+					return position + i + 1;
+				}
+			}
+			position += read;
+		}
+		return size;
+	}
+
+	protected < T extends ByteParsingContext, S extends ByteParsingContext > S parseSegment(
+			final FileChannel dataFile, final Segment segment, final SegmentedByteMapper< T, S > mapper )
+			throws IOException
+	{
+		final ByteBuffer buffer = read( dataFile, segment );
+		final S context = mapper.newSegment();
+
+		final int limit = buffer.limit();
+		int start = 0;
+		for ( int i = 0; i < limit; i++ )
+		{
+			if ( buffer.get( i ) == LF )
+			{
+				mapRecord( buffer, start, i, mapper, context );
+				start = i + 1;
+			}
+		}
+		if ( start < limit )
+		{
+			mapRecord( buffer, start, limit, mapper, context );
+		}
+		return context;
+	}
+
+	protected < T extends ByteParsingContext, S extends ByteParsingContext > void mapRecord(
+			final ByteBuffer buffer, final int start, final int end, final SegmentedByteMapper< T, S > mapper,
+			final S context )
+	{
+		final int limit = buffer.limit();
+		final int length = end > start && buffer.get( end - 1 ) == CR ? end - 1 : end;
+
+		context.nextLine();
+		buffer.limit( length )
+				.position( start );
+		mapper.mapSegment( buffer, context );
+		buffer.limit( limit );
+	}
+
+	protected ByteBuffer read( final FileChannel dataFile, final Segment segment ) throws IOException
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate( ( int ) ( segment.end - segment.start ) );
+		while ( buffer.hasRemaining() )
+		{
+			if ( dataFile.read( buffer, segment.start + buffer.position() ) < 0 )
+			{
+				break;
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	protected < V > V join( final ForkJoinTask< V > task ) throws IOException
+	{
+		try
+		{
+			return task.join();
+		}
+		catch ( final RuntimeException ex )
+		{
+			if ( ex.getCause() instanceof IOException )
+			{
+				throw ( IOException ) ex.getCause();
+			}
+			throw ex;
+		}
+	}
+
+	protected static final class Segment
+	{
+
+		private final long start;
+		private final long end;
+
+		protected Segment( final long start, final long end )
+		{
+			this.start = start;
+			this.end = end;
+		}
+
+	}
+
+}
@@ -4,80 +4,216 @@ package uk.co.bluegecko.pay.common.service.base;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
-import org.apache.commons.lang3.StringUtils;
 import org.beanio.BeanReader;
-import org.beanio.BeanReaderErrorHandler;
 import org.beanio.BeanReaderException;
 import org.beanio.InvalidRecordException;
 import org.beanio.RecordContext;
 import org.beanio.StreamFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import uk.co.bluegecko.pay.common.model.Message;
+import uk.co.bluegecko.pay.common.model.Message.Classification;
+import uk.co.bluegecko.pay.common.model.ParsedRecord;
 import uk.co.bluegecko.pay.common.service.Mapper;
+import uk.co.bluegecko.pay.common.service.ParseErrors;
 import uk.co.bluegecko.pay.common.service.ParsingContext;
 import uk.co.bluegecko.pay.common.service.ParsingService;
+import uk.co.bluegecko.pay.common.service.StreamRegistry;
 
 
 @Service
 @Slf4j
-public class ParsingServiceBase implements ParsingService, BeanReaderErrorHandler
+public class ParsingServiceBase implements ParsingService
 {
 
-	public StreamFactory factory()
+	public static final String RECORDS = "pay.parse.records";
+	public static final String TIME = "pay.parse.time";
+	public static final String ERRORS = "pay.parse.errors";
+
+	private static final long ERROR_BUDGET = 1000;
+
+	private final StreamRegistry streamRegistry;
+	private final MeterRegistry meterRegistry;
+	private final int errorsPerKey;
+	private final long errorBudget;
+
+	public ParsingServiceBase()
+	{
+		this( new StreamRegistryBase(), new SimpleMeterRegistry() );
+	}
+
+	public ParsingServiceBase( final StreamRegistry streamRegistry, final MeterRegistry meterRegistry )
 	{
-		final StreamFactory factory = StreamFactory.newInstance();
-		return factory;
+		this( streamRegistry, meterRegistry, ParseErrors.ERRORS_PER_KEY, ERROR_BUDGET );
+	}
+
+	public ParsingServiceBase( final StreamRegistry streamRegistry, final int errorsPerKey, final long errorBudget )
+	{
+		this( streamRegistry, new SimpleMeterRegistry(), errorsPerKey, errorBudget );
+	}
+
+	@Autowired
+	public ParsingServiceBase( final StreamRegistry streamRegistry, final MeterRegistry meterRegistry,
+			@Value( "${pay.parse.errors-per-key:10}" ) final int errorsPerKey,
+			@Value( "${pay.parse.error-budget:1000}" ) final long errorBudget )
+	{
+		super();
+
+		this.streamRegistry = streamRegistry;
+		this.meterRegistry = meterRegistry;
+		this.errorsPerKey = errorsPerKey;
+		this.errorBudget = errorBudget;
+	}
+
+	public StreamRegistry streamRegistry()
+	{
+		return streamRegistry;
 	}
 
 	@Override
-	public < T extends ParsingContext > void parse( final Reader dataFile, final Mapper< T > mapper ) throws IOException
+	public ParseErrors newErrors()
 	{
-		final StreamFactory factory = mapper.addMapping( factory() );
+		return new ParseErrors( errorsPerKey, errorBudget );
+	}
 
-		final BeanReader reader = factory.createReader( mapper.name(), dataFile );
-		try
-		{
-			reader.setErrorHandler( this );
-			final T context = mapper.newContext( reader );
+	@Override
+	public < T extends ParsingContext > Flux< ParsedRecord > records( final Reader dataFile, final Mapper< T > mapper )
+	{
+		return records( dataFile, mapper, newErrors() );
+	}
 
-			Object obj;
-			while ( ( obj = reader.read() ) != null )
+	@Override
+	public < T extends ParsingContext > Flux< ParsedRecord > records( final Reader dataFile, final Mapper< T > mapper,
+			final ParseErrors errors )
+	{
+		// records are read on demand, and the reader is closed on completion, error or cancel
+		return Flux.generate( () -> open( dataFile, mapper, errors ), ( state, sink ) ->
 			{
-				mapper.map( obj, context );
-			}
+				Object obj;
+				while ( ( obj = state.reader.read() ) != null )
+				{
+					final ParsedRecord record = mapper.toRecord( obj, state.context );
+					if ( record != null )
+					{
+						state.counted( record.name() );
+						sink.next( record );
+						return state;
+					}
+				}
+				sink.complete();
+				return state;
+			}, state -> close( state, mapper ) );
+	}
+
+	@Override
+	public < T extends ParsingContext > Message parse( final Reader dataFile, final Mapper< T > mapper )
+			throws IOException
+	{
+		return parse( dataFile, mapper, newErrors() );
+	}
+
+	@Override
+	public < T extends ParsingContext > Message parse( final Reader dataFile, final Mapper< T > mapper,
+			final ParseErrors errors ) throws IOException
+	{
+		records( dataFile, mapper, errors ).doOnNext( mapper::accept )
+				.blockLast();
+		return errors.message();
+	}
+
+	protected < T extends ParsingContext > ReaderState< T > open( final Reader dataFile, final Mapper< T > mapper,
+			final ParseErrors errors )
+	{
+		final StreamFactory factory = streamRegistry.factory( mapper );
+
+		final BeanReader reader = factory.createReader( mapper.name(), dataFile );
+		reader.setErrorHandler( ex -> handleError( ex, errors ) );
+
+		return new ReaderState<>( reader, mapper.newContext( reader ), errors );
+	}
+
+	protected < T extends ParsingContext > void close( final ReaderState< T > state, final Mapper< T > mapper )
+	{
+		state.reader.close();
+
+		// counted per file and published once, so the meters cost nothing per record
+		meterRegistry.timer( TIME, "mapper", mapper.name() )
+				.record( System.nanoTime() - state.started, TimeUnit.NANOSECONDS );
+		for ( final Map.Entry< String, long[] > count : state.counts.entrySet() )
+		{
+			meterRegistry.counter( RECORDS, "mapper", mapper.name(), "row", count.getKey() )
+					.increment( count.getValue()[0] );
 		}
-		finally
+		if ( !state.errors.isEmpty() )
 		{
-			reader.close();
+			meterRegistry.counter( ERRORS, "mapper", mapper.name(), "classification", Classification.ERROR.name() )
+					.increment( state.errors.total() );
+			log.warn( "{}: {} errors", mapper.name(), state.errors.total() );
 		}
 	}
 
-	@Override
-	public void handleError( final BeanReaderException ex ) throws Exception
+	protected void handleError( final BeanReaderException ex, final ParseErrors errors ) throws Exception
 	{
+		final RecordContext recordContext = ex.getRecordContext();
+		final String record = recordContext == null || recordContext.getRecordName() == null ? "file"
+				: recordContext.getRecordName();
+		final String line = recordContext == null ? "" : "line-" + recordContext.getLineNumber() + ": ";
+
 		if ( ex instanceof InvalidRecordException )
 		{
-			log.warn( ex.getLocalizedMessage() );
-			final RecordContext recordContext = ex.getRecordContext();
 			for ( final String error : recordContext.getRecordErrors() )
 			{
-				log.warn( error );
+				errors.add( record, line + error );
 			}
 			for ( final Map.Entry< String, Collection< String > > fieldErrors : recordContext.getFieldErrors()
 					.entrySet() )
 			{
-				log.warn( String.format( "Field '%s': %s", fieldErrors.getKey(),
-						StringUtils.join( fieldErrors.getValue(), ',' ) ) );
+				for ( final String error : fieldErrors.getValue() )
+				{
+					errors.add( record + "." + fieldErrors.getKey(), line + error );
+				}
 			}
 		}
 		else
 		{
-			log.warn( ex.getLocalizedMessage() );
+			errors.add( record, line + ex.getLocalizedMessage() );
 			throw ex;
 		}
 	}
 
+	protected static final class ReaderState< T extends ParsingContext >
+	{
+
+		private final BeanReader reader;
+		private final T context;
+		private final ParseErrors errors;
+		private final Map< String, long[] > counts;
+		private final long started;
+
+		protected ReaderState( final BeanReader reader, final T context, final ParseErrors errors )
+		{
+			this.reader = reader;
+			this.context = context;
+			this.errors = errors;
+			counts = new HashMap<>();
+			started = System.nanoTime();
+		}
+
+		protected void counted( final String name )
+		{
+			counts.computeIfAbsent( name == null ? "unknown" : name, key -> new long[1] )[0]++;
+		}
+
+	}
+
 }
@@ -0,0 +1,128 @@
+package uk.co.bluegecko.pay.common.service.base;
+
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.beanio.StreamFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import uk.co.bluegecko.pay.common.model.CacheStats;
+import uk.co.bluegecko.pay.common.service.Mapper;
+import uk.co.bluegecko.pay.common.service.StreamRegistry;
+
+
+@Service
+@Slf4j
+public class StreamRegistryBase implements StreamRegistry
+{
+
+	public static final String GETS = "pay.parse.streams.gets";
+	public static final String BUILD = "pay.parse.streams.build";
+
+	private final ConcurrentMap< String, StreamFactory > factories;
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final Timer buildTimer;
+
+	public StreamRegistryBase()
+	{
+		this( new SimpleMeterRegistry() );
+	}
+
+	@Autowired
+	public StreamRegistryBase( final MeterRegistry meterRegistry )
+	{
+		factories = new ConcurrentHashMap<>();
+		hits = new LongAdder();
+		misses = new LongAdder();
+		buildTimer = bind( meterRegistry );
+	}
+
+	// read when the registry is scraped, so a lookup only touches its adder
+	protected Timer bind( final MeterRegistry meterRegistry )
+	{
+		FunctionCounter.builder( GETS, hits, LongAdder::sum )
+				.tag( "result", "hit" )
+				.register( meterRegistry );
+		FunctionCounter.builder( GETS, misses, LongAdder::sum )
+				.tag( "result", "miss" )
+				.register( meterRegistry );
+		return Timer.builder( BUILD )
+				.register( meterRegistry );
+	}
+
+	@Override
+	public StreamFactory factory( final Mapper< ? > mapper )
+	{
+		final StreamFactory factory = factories.get( mapper.name() );
+		if ( factory != null )
+		{
+			hits.increment();
+			return factory;
+		}
+		// only one thread builds a missing layout, the rest wait for it and find it built, which is a hit
+		final AtomicBoolean built = new AtomicBoolean();
+		final StreamFactory loaded = factories.computeIfAbsent( mapper.name(), name ->
+			{
+				built.set( true );
+				return build( mapper );
+			} );
+		( built.get() ? misses : hits ).increment();
+		return loaded;
+	}
+
+	@Override
+	public StreamFactory reload( final Mapper< ? > mapper )
+	{
+		final StreamFactory factory = build( mapper );
+		factories.put( mapper.name(), factory );
+		return factory;
+	}
+
+	@Override
+	public void invalidate( final String name )
+	{
+		factories.remove( name );
+	}
+
+	@Override
+	public void invalidateAll()
+	{
+		factories.clear();
+	}
+
+	@Override
+	public CacheStats stats()
+	{
+		return CacheStats.builder()
+				.hits( hits.sum() )
+				.misses( misses.sum() )
+				.loadTime( ( long ) buildTimer.totalTime( TimeUnit.NANOSECONDS ) )
+				.size( factories.size() )
+				.build();
+	}
+
+	protected StreamFactory build( final Mapper< ? > mapper )
+	{
+		final long start = System.nanoTime();
+
+		final StreamFactory factory = mapper.addMapping( StreamFactory.newInstance() );
+
+		final long elapsed = System.nanoTime() - start;
+		buildTimer.record( elapsed, TimeUnit.NANOSECONDS );
+		log.info( "Built stream '{}' in {}us", mapper.name(), elapsed / 1000 );
+
+		return factory;
+	}
+
+}
@@ -0,0 +1,537 @@
+package uk.co.bluegecko.pay.v1.portfolio.codec;
+
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import uk.co.bluegecko.pay.common.model.EpochDays;
+import uk.co.bluegecko.pay.v1.portfolio.wire.Account;
+import uk.co.bluegecko.pay.v1.portfolio.wire.Batch;
+import uk.co.bluegecko.pay.v1.portfolio.wire.Instruction;
+import uk.co.bluegecko.pay.v1.portfolio.wire.InstructionEnvelope;
+import uk.co.bluegecko.pay.v1.portfolio.wire.Total;
+
+
+public final class WireCodec
+{
+
+	public static final String MIME_TYPE = "application/x-pay-v1";
+	public static final byte VERSION = 1;
+
+	private static final byte INSTRUCTION = 1;
+	private static final byte ACCOUNT = 2;
+	private static final byte BATCH = 3;
+	private static final byte ENVELOPE = 4;
+
+	// amounts with the scale of a pence value are the common case, other scales carry their own
+	private static final byte NONE = 0;
+	private static final byte PENCE = 1;
+	private static final byte SCALED = 2;
+	private static final byte UNSCALED = 3;
+
+	private static final Total.Type[] TYPES = Total.Type.values();
+
+	private WireCodec()
+	{}
+
+	public static boolean supports( final Class< ? > type )
+	{
+		return type == Instruction.class || type == Account.class || type == Batch.class
+				|| type == InstructionEnvelope.class;
+	}
+
+	public static byte[] encode( final Object payload )
+	{
+		final Output out = new Output( 128 );
+		out.writeByte( VERSION );
+		if ( payload instanceof Instruction )
+		{
+			out.writeByte( INSTRUCTION );
+			writeInstruction( out, ( Instruction ) payload );
+		}
+		else if ( payload instanceof Account )
+		{
+			out.writeByte( ACCOUNT );
+			writeAccount( out, ( Account ) payload );
+		}
+		else if ( payload instanceof Batch )
+		{
+			out.writeByte( BATCH );
+			writeBatch( out, ( Batch ) payload );
+		}
+		else if ( payload instanceof InstructionEnvelope )
+		{
+			out.writeByte( ENVELOPE );
+			writeEnvelope( out, ( InstructionEnvelope ) payload );
+		}
+		else
+		{
+			throw new IllegalArgumentException( "unsupported-type-" + ( payload == null ? null
+					: payload.getClass()
+							.getName() ) );
+		}
+		return out.toByteArray();
+	}
+
+	public static Object decode( final byte[] bytes )
+	{
+		final Input in = new Input( bytes );
+		final byte version = in.readByte();
+		if ( version != VERSION )
+		{
+			throw new IllegalArgumentException( "unsupported-version-" + version );
+		}
+		final byte type = in.readByte();
+		final Object payload;
+		switch ( type )
+		{
+			case INSTRUCTION:
+				payload = readInstruction( in );
+				break;
+			case ACCOUNT:
+				payload = readAccount( in );
+				break;
+			case BATCH:
+				payload = readBatch( in );
+				break;
+			case ENVELOPE:
+				payload = readEnvelope( in );
+				break;
+			default:
+				throw new IllegalArgumentException( "unsupported-type-" + type );
+		}
+		if ( !in.isFinished() )
+		{
+			throw new IllegalArgumentException( "trailing-bytes-" + in.remaining() );
+		}
+		return payload;
+	}
+
+	public static < T > T decode( final byte[] bytes, final Class< T > type )
+	{
+		final Object payload = decode( bytes );
+		if ( !type.isInstance( payload ) )
+		{
+			throw new IllegalArgumentException( "unexpected-type-" + payload.getClass()
+					.getName() );
+		}
+		return type.cast( payload );
+	}
+
+	private static void writeInstruction( final Output out, final Instruction instruction )
+	{
+		out.writeLong( instruction.id() );
+		out.writeLong( instruction.batch() );
+		out.writeVarLong( instruction.index() );
+		out.writeLong( instruction.lineNo() == null ? null : instruction.lineNo()
+				.longValue() );
+		writeNullableAccount( out, instruction.origin() );
+		writeNullableAccount( out, instruction.destination() );
+		out.writeString( instruction.transactionType() );
+		out.writeString( instruction.rti() );
+		writeAmount( out, instruction.amount() );
+		out.writeString( instruction.reference() );
+		out.writeLong( instruction.processingDate() == null ? null : instruction.processingDate()
+				.toEpochDay() );
+	}
+
+	private static Instruction readInstruction( final Input in )
+	{
+		final Instruction.InstructionBuilder builder = Instruction.builder()
+				.id( in.readLong() )
+				.batch( in.readLong() )
+				.index( ( int ) in.readVarLong() );
+		final Long lineNo = in.readLong();
+		builder.lineNo( lineNo == null ? null : lineNo.intValue() )
+				.origin( readNullableAccount( in ) )
+				.destination( readNullableAccount( in ) )
+				.transactionType( in.readString() )
+				.rti( in.readString() )
+				.amount( readAmount( in ) )
+				.reference( in.readString() );
+		final Long processingDate = in.readLong();
+		if ( processingDate != null )
+		{
+			builder.processingDate( EpochDays.toDate( processingDate ) );
+		}
+		return builder.build();
+	}
+
+	private static void writeNullableAccount( final Output out, final Account account )
+	{
+		out.writeBoolean( account != null );
+		if ( account != null )
+		{
+			writeAccount( out, account );
+		}
+	}
+
+	private static Account readNullableAccount( final Input in )
+	{
+		return in.readBoolean() ? readAccount( in ) : null;
+	}
+
+	private static void writeAccount( final Output out, final Account account )
+	{
+		out.writeString( account.sortCode() );
+		out.writeString( account.number() );
+		out.writeString( account.name() );
+		out.writeString( account.type() );
+	}
+
+	private static Account readAccount( final Input in )
+	{
+		return Account.builder()
+				.sortCode( in.readString() )
+				.number( in.readString() )
+				.name( in.readString() )
+				.type( in.readString() )
+				.build();
+	}
+
+	private static void writeBatch( final Output out, final Batch batch )
+	{
+		out.writeLong( batch.id() );
+		out.writeVarLong( batch.index() );
+		out.writeLong( batch.portfolio() );
+		out.writeString( batch.name() );
+		out.writeString( batch.userNumber() );
+		out.writeString( batch.set() );
+		out.writeVarLong( batch.section() );
+		out.writeVarLong( batch.sequence() );
+		out.writeVarLong( batch.generation() );
+		out.writeVarLong( batch.version() );
+		if ( batch.totals() == null )
+		{
+			out.writeVarLong( -1 );
+		}
+		else
+		{
+			out.writeVarLong( batch.totals()
+					.size() );
+			for ( final Total total : batch.totals() )
+			{
+				out.writeVarLong( total.type() == null ? -1 : total.type()
+						.ordinal() );
+				out.writeVarLong( total.count() );
+				writeAmount( out, total.amount() );
+			}
+		}
+	}
+
+	private static Batch readBatch( final Input in )
+	{
+		final Batch.BatchBuilder builder = Batch.builder()
+				.id( in.readLong() )
+				.index( ( int ) in.readVarLong() )
+				.portfolio( in.readLong() )
+				.name( in.readString() )
+				.userNumber( in.readString() )
+				.set( in.readString() )
+				.section( ( int ) in.readVarLong() )
+				.sequence( ( int ) in.readVarLong() )
+				.generation( ( int ) in.readVarLong() )
+				.version( ( int ) in.readVarLong() );
+		final int count = ( int ) in.readVarLong();
+		if ( count < 0 )
+		{
+			return builder.totals( null )
+					.build();
+		}
+		final Set< Total > totals = new LinkedHashSet<>();
+		for ( int i = 0; i < count; i++ )
+		{
+			final int type = ( int ) in.readVarLong();
+			if ( type >= TYPES.length )
+			{
+				throw new IllegalArgumentException( "unsupported-total-type-" + type );
+			}
+			totals.add( Total.builder()
+					.type( type < 0 ? null : TYPES[type] )
+					.count( ( int ) in.readVarLong() )
+					.amount( readAmount( in ) )
+					.build() );
+		}
+		return builder.totals( totals )
+				.build();
+	}
+
+	private static void writeEnvelope( final Output out, final InstructionEnvelope envelope )
+	{
+		out.writeVarLong( envelope.sequence() );
+		if ( envelope.instructions() == null )
+		{
+			out.writeVarLong( -1 );
+			return;
+		}
+		out.writeVarLong( envelope.instructions()
+				.size() );
+		for ( final Instruction instruction : envelope.instructions() )
+		{
+			writeInstruction( out, instruction );
+		}
+	}
+
+	private static InstructionEnvelope readEnvelope( final Input in )
+	{
+		final InstructionEnvelope.InstructionEnvelopeBuilder builder = InstructionEnvelope.builder()
+				.sequence( in.readVarLong() );
+		final int count = ( int ) in.readVarLong();
+		if ( count < 0 )
+		{
+			return builder.instructions( null )
+					.build();
+		}
+		final List< Instruction > instructions = new ArrayList<>( count );
+		for ( int i = 0; i < count; i++ )
+		{
+			instructions.add( readInstruction( in ) );
+		}
+		return builder.instructions( Collections.unmodifiableList( instructions ) )
+				.build();
+	}
+
+	private static void writeAmount( final Output out, final BigDecimal amount )
+	{
+		if ( amount == null )
+		{
+			out.writeByte( NONE );
+		}
+		else if ( amount.unscaledValue()
+				.bitLength() >= Long.SIZE )
+		{
+			out.writeByte( UNSCALED );
+			out.writeVarLong( amount.scale() );
+			out.writeBytes( amount.unscaledValue()
+					.toByteArray() );
+		}
+		else if ( amount.scale() == 2 )
+		{
+			out.writeByte( PENCE );
+			out.writeVarLong( amount.unscaledValue()
+					.longValue() );
+		}
+		else
+		{
+			// value and scale both survive, so 10.5 and 10.50 decode to what was sent
+			out.writeByte( SCALED );
+			out.writeVarLong( amount.scale() );
+			out.writeVarLong( amount.unscaledValue()
+					.longValue() );
+		}
+	}
+
+	private static BigDecimal readAmount( final Input in )
+	{
+		final byte form = in.readByte();
+		switch ( form )
+		{
+			case NONE:
+				return null;
+			case PENCE:
+				return BigDecimal.valueOf( in.readVarLong(), 2 );
+			case SCALED:
+				final int scale = ( int ) in.readVarLong();
+				return BigDecimal.valueOf( in.readVarLong(), scale );
+			case UNSCALED:
+				final int unscaledScale = ( int ) in.readVarLong();
+				return new BigDecimal( new BigInteger( in.readBytes() ), unscaledScale );
+			default:
+				throw new IllegalArgumentException( "unsupported-amount-" + form );
+		}
+	}
+
+	private static final class Output
+	{
+
+		private byte[] buffer;
+		private int position;
+
+		private Output( final int capacity )
+		{
+			buffer = new byte[capacity];
+		}
+
+		private void ensure( final int length )
+		{
+			if ( position + length > buffer.length )
+			{
+				buffer = Arrays.copyOf( buffer, Math.max( buffer.length * 2, position + length ) );
+			}
+		}
+
+		private void writeByte( final int value )
+		{
+			ensure( 1 );
+			buffer[position++] = ( byte ) value;
+		}
+
+		private void writeBoolean( final boolean value )
+		{
+			writeByte( value ? 1 : 0 );
+		}
+
+		// zig-zag varint, so small negatives such as the null markers stay one byte
+		private void writeVarLong( final long value )
+		{
+			long zigzag = value << 1 ^ value >> 63;
+			ensure( 10 );
+			while ( ( zigzag & ~0x7FL ) != 0 )
+			{
+				buffer[position++] = ( byte ) ( zigzag & 0x7F | 0x80 );
+				zigzag >>>= 7;
+			}
+			buffer[position++] = ( byte ) zigzag;
+		}
+
+		private void writeLong( final Long value )
+		{
+			writeBoolean( value != null );
+			if ( value != null )
+			{
+				writeVarLong( value );
+			}
+		}
+
+		private void writeBytes( final byte[] bytes )
+		{
+			writeVarLong( bytes.length );
+			ensure( bytes.length );
+			System.arraycopy( bytes, 0, buffer, position, bytes.length );
+			position += bytes.length;
+		}
+
+		private void writeString( final String value )
+		{
+			if ( value == null )
+			{
+				writeVarLong( -1 );
+				return;
+			}
+			final int length = value.length();
+			int i = 0;
+			while ( i < length && value.charAt( i ) < 0x80 )
+			{
+				i++;
+			}
+			if ( i < length )
+			{
+				writeBytes( value.getBytes( StandardCharsets.UTF_8 ) );
+				return;
+			}
+			// wire strings are almost always ASCII, so copy the characters without an intermediate array
+			writeVarLong( length );
+			ensure( length );
+			for ( int j = 0; j < length; j++ )
+			{
+				buffer[position++] = ( byte ) value.charAt( j );
+			}
+		}
+
+		private byte[] toByteArray()
+		{
+			return Arrays.copyOf( buffer, position );
+		}
+
+	}
+
+	private static final class Input
+	{
+
+		private final byte[] buffer;
+		private int position;
+
+		private Input( final byte[] buffer )
+		{
+			this.buffer = buffer;
+		}
+
+		private boolean isFinished()
+		{
+			return position == buffer.length;
+		}
+
+		private int remaining()
+		{
+			return buffer.length - position;
+		}
+
+		private byte readByte()
+		{
+			if ( position >= buffer.length )
+			{
+				throw new IllegalArgumentException( "truncated-payload-" + position );
+			}
+			return buffer[position++];
+		}
+
+		private boolean readBoolean()
+		{
+			return readByte() != 0;
+		}
+
+		private long readVarLong()
+		{
+			long zigzag = 0;
+			for ( int shift = 0; shift < Long.SIZE; shift += 7 )
+			{
+				final byte b = readByte();
+				zigzag |= ( long ) ( b & 0x7F ) << shift;
+				if ( ( b & 0x80 ) == 0 )
+				{
+					return zigzag >>> 1 ^ -( zigzag & 1 );
+				}
+			}
+			throw new IllegalArgumentException( "malformed-varint-" + position );
+		}
+
+		private Long readLong()
+		{
+			return readBoolean() ? readVarLong() : null;
+		}
+
+		private byte[] readBytes()
+		{
+			final int length = length();
+			final byte[] bytes = Arrays.copyOfRange( buffer, position, position + length );
+			position += length;
+			return bytes;
+		}
+
+		private String readString()
+		{
+			final long length = readVarLong();
+			if ( length < 0 )
+			{
+				return null;
+			}
+			final int checked = checked( length );
+			final String value = new String( buffer, position, checked, StandardCharsets.UTF_8 );
+			position += checked;
+			return value;
+		}
+
+		private int length()
+		{
+			return checked( readVarLong() );
+		}
+
+		private int checked( final long length )
+		{
+			if ( length < 0 || length > remaining() )
+			{
+				throw new IllegalArgumentException( "truncated-payload-" + position );
+			}
+			return ( int ) length;
+		}
+
+	}
+
+}
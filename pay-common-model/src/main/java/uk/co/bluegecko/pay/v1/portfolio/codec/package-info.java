@@ -0,0 +1 @@
+package uk.co.bluegecko.pay.v1.portfolio.codec;
\ No newline at end of file
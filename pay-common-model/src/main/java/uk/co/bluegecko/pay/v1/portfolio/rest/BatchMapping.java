@@ -7,5 +7,6 @@ public interface BatchMapping
 	public static final String BATCH = "/batch/";
 	public static final String BATCH_ID = "batchId";
 	public static final String BATCH_BY_ID = BATCH + "{" + BATCH_ID + "}";
+	public static final String INSTRUCTIONS = BATCH_BY_ID + "/instruction/";
 
 }
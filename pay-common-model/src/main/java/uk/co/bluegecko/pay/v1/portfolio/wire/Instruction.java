@@ -17,7 +17,8 @@ import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
 import lombok.Builder;
 import lombok.Value;
 import lombok.experimental.Accessors;
-import uk.co.bluegecko.pay.common.model.BuilderConstants;
+import uk.co.bluegecko.pay.common.model.Amounts;
+import uk.co.bluegecko.pay.common.model.EpochDays;
 import uk.co.bluegecko.pay.view.View;
 
 
@@ -56,7 +57,7 @@ public class Instruction
 	private final LocalDate processingDate;
 
 	@JsonPOJOBuilder( withPrefix = "" )
-	public static final class InstructionBuilder implements BuilderConstants
+	public static final class InstructionBuilder
 	{
 
 		public InstructionBuilder processingDate( final LocalDate processingDate )
@@ -68,7 +69,7 @@ public class Instruction
 
 		public InstructionBuilder processingDate( final long julianDate )
 		{
-			processingDate = LocalDate.ofEpochDay( julianDate );
+			processingDate = EpochDays.toDate( julianDate );
 
 			return this;
 		}
@@ -82,7 +83,7 @@ public class Instruction
 
 		public InstructionBuilder amount( final String pence )
 		{
-			amount = new BigDecimal( pence ).divide( HUNDRED );
+			amount = Amounts.fromPence( pence );
 
 			return this;
 		}
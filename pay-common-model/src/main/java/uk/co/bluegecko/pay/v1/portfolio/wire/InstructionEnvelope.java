@@ -0,0 +1,43 @@
+package uk.co.bluegecko.pay.v1.portfolio.wire;
+
+
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+
+@JsonDeserialize( builder = InstructionEnvelope.InstructionEnvelopeBuilder.class )
+@Value
+@Builder
+@Accessors( fluent = true )
+public class InstructionEnvelope
+{
+
+	public static final String TYPE = "payload-type";
+	public static final String ENVELOPE = "instruction-envelope";
+	public static final String FIRST_INDEX = "first-index";
+	public static final String LAST_INDEX = "last-index";
+	public static final String COUNT = "count";
+	public static final String PUBLISHED = "published-at";
+
+	private final long sequence;
+	private final List< Instruction > instructions;
+
+	@JsonPOJOBuilder( withPrefix = "" )
+	public static final class InstructionEnvelopeBuilder
+	{
+
+		private InstructionEnvelopeBuilder()
+		{
+			instructions = Collections.emptyList();
+		}
+
+	}
+
+}
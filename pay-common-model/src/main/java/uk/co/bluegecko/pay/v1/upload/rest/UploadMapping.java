@@ -6,7 +6,18 @@ public interface UploadMapping
 
 	public static final String FILE = "/file/";
 	public static final String UPLOAD = "/upload/";
+	public static final String STREAM = "/upload/stream/";
+	public static final String NAME = "name";
+	public static final String DIGEST = "digest";
 	public static final String JOB_ID = "jobId";
 	public static final String STATUS = "/status/{" + JOB_ID + "}";
+	public static final String SIZE = "size";
+	public static final String CHUNK_SIZE = "chunkSize";
+	public static final String SESSION_ID = "sessionId";
+	public static final String CHUNK_NO = "chunk";
+	public static final String SESSIONS = "/upload/sessions/";
+	public static final String SESSION = SESSIONS + "{" + SESSION_ID + "}";
+	public static final String CHUNK = SESSION + "/chunks/{" + CHUNK_NO + "}";
+	public static final String COMMIT = SESSION + "/commit";
 
 }
@@ -0,0 +1,41 @@
+package uk.co.bluegecko.pay.v1.upload.wire;
+
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.experimental.Accessors;
+import uk.co.bluegecko.pay.common.model.Message;
+
+
+@JsonDeserialize( builder = JobStatus.JobStatusBuilder.class )
+@Value
+@Builder
+@Accessors( fluent = true )
+public class JobStatus
+{
+
+	public enum State
+	{
+		QUEUED, RUNNING, COMPLETED, FAILED
+	}
+
+	private final long jobId;
+	private final String name;
+	private final State state;
+	private final long parsed;
+	private final long converted;
+	private final long published;
+	private final long conversionDepth;
+	private final long publishDepth;
+	private final long errors;
+	private final long elapsed;
+	private final Message message;
+
+	@JsonPOJOBuilder( withPrefix = "" )
+	public static final class JobStatusBuilder
+	{}
+
+}
@@ -0,0 +1,41 @@
+package uk.co.bluegecko.pay.v1.upload.wire;
+
+
+import java.util.List;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonPOJOBuilder;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+
+@JsonDeserialize( builder = SessionStatus.SessionStatusBuilder.class )
+@Value
+@Builder
+@Accessors( fluent = true )
+public class SessionStatus
+{
+
+	private final long sessionId;
+	private final String name;
+	private final long size;
+	private final int chunkSize;
+	private final int chunks;
+	private final String digest;
+	// chunk numbers still to be sent, so a client resumes by sending just these
+	private final List< Integer > missing;
+	// bytes received without a gap from the start of the file
+	private final long offset;
+	private final boolean committed;
+	private final Long jobId;
+	// the last line and instruction index published, where a resumed job carries on from
+	private final int line;
+	private final int index;
+
+	@JsonPOJOBuilder( withPrefix = "" )
+	public static final class SessionStatusBuilder
+	{}
+
+}
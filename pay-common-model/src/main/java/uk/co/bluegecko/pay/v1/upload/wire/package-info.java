@@ -0,0 +1 @@
+package uk.co.bluegecko.pay.v1.upload.wire;
\ No newline at end of file
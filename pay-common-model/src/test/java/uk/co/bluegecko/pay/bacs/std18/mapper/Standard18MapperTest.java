@@ -1,12 +1,14 @@
 package uk.co.bluegecko.pay.bacs.std18.mapper;
 
 
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
@@ -15,6 +17,9 @@ import java.io.StringReader;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.Month;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.function.BiConsumer;
 
 import org.apache.commons.lang3.StringUtils;
@@ -31,6 +36,7 @@ import uk.co.bluegecko.pay.bacs.std18.model.Row;
 import uk.co.bluegecko.pay.bacs.std18.model.UserHeader;
 import uk.co.bluegecko.pay.bacs.std18.model.UserTrailer;
 import uk.co.bluegecko.pay.bacs.std18.model.Volume;
+import uk.co.bluegecko.pay.common.model.ParsedRecord;
 import uk.co.bluegecko.pay.common.service.ParsingService;
 import uk.co.bluegecko.pay.common.service.base.ParsingServiceBase;
 
@@ -314,6 +320,100 @@ public class Standard18MapperTest
 		assertThat( contra.lineNo(), is( 6 ) );
 	}
 
+	@Test
+	public final void testParseFileVerifyNumberingUnconsumed() throws IOException
+	{
+		standard18Mapper.addRow( Row.CONTRA, consumer );
+
+		parse( reader( LINES ) );
+
+		final ArgumentCaptor< Contra > argContra = ArgumentCaptor.forClass( Contra.class );
+		verify( consumer ).accept( eq( Row.CONTRA ), argContra.capture() );
+
+		final Contra contra = argContra.getValue();
+		assertThat( contra.index(), is( 1 ) );
+		assertThat( contra.lineNo(), is( 6 ) );
+	}
+
+	@Test
+	public final void testParseFileResumed() throws IOException
+	{
+		standard18Mapper.addRow( Row.INSTR, consumer );
+		standard18Mapper.addRow( Row.CONTRA, consumer );
+
+		standard18Mapper.startAt( 1, 5 );
+		parse( reader( Arrays.copyOfRange( LINES, 5, LINES.length ) ) );
+
+		final ArgumentCaptor< Contra > argContra = ArgumentCaptor.forClass( Contra.class );
+		verify( consumer ).accept( eq( Row.CONTRA ), argContra.capture() );
+		verify( consumer, never() ).accept( eq( Row.INSTR ), any() );
+
+		final Contra contra = argContra.getValue();
+		assertThat( contra.index(), is( 2 ) );
+		assertThat( contra.lineNo(), is( 6 ) );
+	}
+
+	@Test
+	public final void testRecords()
+	{
+		standard18Mapper.addRow( Row.INSTR )
+				.addRow( Row.CONTRA );
+
+		final List< ParsedRecord > records = parsingService.records( reader( LINES ), standard18Mapper )
+				.collectList()
+				.block();
+
+		assertThat( records, hasSize( 2 ) );
+		assertThat( records.get( 0 )
+				.name(), is( Row.INSTR.name() ) );
+		assertThat( records.get( 0 )
+				.lineNo(), is( 5 ) );
+		assertThat( ( ( Instruction ) records.get( 0 )
+				.value() ).index(), is( 1 ) );
+		assertThat( records.get( 1 )
+				.name(), is( Row.CONTRA.name() ) );
+		assertThat( ( ( Contra ) records.get( 1 )
+				.value() ).index(), is( 2 ) );
+	}
+
+	@Test
+	public final void testRecordsInterleaved()
+	{
+		standard18Mapper.addRow( Row.INSTR )
+				.addRow( Row.CONTRA );
+		final Standard18Mapper resumed = new Standard18Mapper().addRow( Row.CONTRA )
+				.startAt( 1, 5 );
+
+		final Iterator< ParsedRecord > first = parsingService.records( reader( LINES ), standard18Mapper )
+				.toIterable()
+				.iterator();
+		final Iterator< ParsedRecord > second = parsingService.records( reader( Arrays.copyOfRange( LINES, 5,
+				LINES.length ) ), resumed )
+				.toIterable()
+				.iterator();
+
+		assertThat( ( ( Instruction ) first.next()
+				.value() ).index(), is( 1 ) );
+		assertThat( ( ( Contra ) second.next()
+				.value() ).index(), is( 2 ) );
+		assertThat( ( ( Contra ) first.next()
+				.value() ).lineNo(), is( 6 ) );
+	}
+
+	@Test
+	public final void testRecordsCancelClosesReader() throws IOException
+	{
+		standard18Mapper.addRow( Row.HDR1 )
+				.addRow( Row.HDR2 );
+		final Reader dataFile = spy( reader( LINES ) );
+
+		final ParsedRecord record = parsingService.records( dataFile, standard18Mapper )
+				.blockFirst();
+
+		assertThat( record.name(), is( Row.HDR1.name() ) );
+		verify( dataFile ).close();
+	}
+
 	protected < T > T parseAndVerify( final Row row, final Class< T > type ) throws IOException
 	{
 		standard18Mapper.addRow( row, consumer );
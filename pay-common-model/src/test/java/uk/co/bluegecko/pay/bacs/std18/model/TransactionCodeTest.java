@@ -68,6 +68,36 @@ public class TransactionCodeTest
 		TransactionCode.byCode( "XX" );
 	}
 
+	@Test
+	public final void testAllByCharsPass()
+	{
+		assertThat( TransactionCode.byCode( '0', 'S' ), is( AuddisCode.CONVERT ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public final void testAllByCharsFail()
+	{
+		TransactionCode.byCode( '9', '8' );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public final void testAllByCharsNonAscii()
+	{
+		TransactionCode.byCode( '\u00e9', '9' );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public final void testAllByCodeLength()
+	{
+		TransactionCode.byCode( "991" );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public final void testAllByCodeNull()
+	{
+		TransactionCode.byCode( null );
+	}
+
 	@Test
 	public final void testCreditType()
 	{
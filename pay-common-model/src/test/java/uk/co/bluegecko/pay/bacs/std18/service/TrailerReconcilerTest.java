@@ -0,0 +1,124 @@
+package uk.co.bluegecko.pay.bacs.std18.service;
+
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bluegecko.pay.bacs.std18.model.Contra;
+import uk.co.bluegecko.pay.bacs.std18.model.Header1;
+import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
+import uk.co.bluegecko.pay.bacs.std18.model.Row;
+import uk.co.bluegecko.pay.bacs.std18.model.UserTrailer;
+import uk.co.bluegecko.pay.common.model.Message.Classification;
+
+
+public class TrailerReconcilerTest
+{
+
+	private static final String BATCH_1 = "batch-1";
+	private static final String FILE = "A100101S  1100101";
+
+	private TrailerReconciler reconciler;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		reconciler = new TrailerReconciler();
+	}
+
+	@Test
+	public final void testReconciled()
+	{
+		batch( "55", "55", 1, 1 );
+
+		assertThat( reconciler.isReconciled(), is( true ) );
+		assertThat( reconciler.finish()
+				.has( Classification.WARN ), is( false ) );
+	}
+
+	@Test
+	public final void testValueMismatch()
+	{
+		batch( "56", "55", 1, 1 );
+
+		assertThat( reconciler.isReconciled(), is( false ) );
+		assertThat( reconciler.message()
+				.has( Classification.ERROR, BATCH_1 ), is( true ) );
+	}
+
+	@Test
+	public final void testCountMismatch()
+	{
+		batch( "55", "55", 2, 1 );
+
+		assertThat( reconciler.isReconciled(), is( false ) );
+	}
+
+	@Test
+	public final void testHeaderMismatch()
+	{
+		reconciler.accept( Row.HDR1, header( Row.HDR1, 1 ) );
+		reconciler.accept( Row.EOF1, header( Row.EOF1, 2 ) );
+
+		assertThat( reconciler.isReconciled(), is( false ) );
+	}
+
+	@Test
+	public final void testUnknownCode()
+	{
+		reconciler.accept( Row.INSTR, Instruction.builder()
+				.transactionType( "XX" )
+				.amount( "55" )
+				.lineNo( 1 )
+				.build() );
+
+		assertThat( reconciler.isReconciled(), is( false ) );
+	}
+
+	@Test
+	public final void testNoTrailer()
+	{
+		reconciler.accept( Row.INSTR, Instruction.builder()
+				.transactionType( "99" )
+				.amount( "55" )
+				.build() );
+
+		assertThat( reconciler.finish()
+				.has( Classification.WARN ), is( true ) );
+		assertThat( reconciler.isReconciled(), is( true ) );
+	}
+
+	private void batch( final String debit, final String credit, final int debitCount, final int creditCount )
+	{
+		reconciler.accept( Row.HDR1, header( Row.HDR1, 1 ) );
+		reconciler.accept( Row.INSTR, Instruction.builder()
+				.transactionType( "99" )
+				.amount( "55" )
+				.build() );
+		reconciler.accept( Row.CONTRA, Contra.builder()
+				.transactionType( "17" )
+				.amount( "55" )
+				.build() );
+		reconciler.accept( Row.EOF1, header( Row.EOF1, 1 ) );
+		reconciler.accept( Row.UTL1, UserTrailer.builder()
+				.debitValue( debit )
+				.creditValue( credit )
+				.debitCount( debitCount )
+				.creditCount( creditCount )
+				.ddiCount( 0 )
+				.build() );
+	}
+
+	private Header1 header( final Row row, final int sequence )
+	{
+		return Header1.builder()
+				.indicator( row )
+				.file( FILE )
+				.sequence( sequence )
+				.build();
+	}
+
+}
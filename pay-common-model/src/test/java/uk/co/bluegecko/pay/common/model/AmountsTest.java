@@ -0,0 +1,53 @@
+package uk.co.bluegecko.pay.common.model;
+
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+
+public class AmountsTest implements BuilderConstants
+{
+
+	private static final String[] PENCE =
+		{ "0", "00000000000", "5", "55", "00000000055", "100", "16587", "165870", "10000", "1000000", "99999999999" };
+
+	@Test
+	public final void testFromPenceMatchesDivide()
+	{
+		for ( final String pence : PENCE )
+		{
+			final BigDecimal expected = new BigDecimal( pence ).divide( HUNDRED );
+			final BigDecimal actual = Amounts.fromPence( pence );
+
+			assertThat( pence, actual, is( expected ) );
+			assertThat( pence, actual.scale(), is( expected.scale() ) );
+		}
+	}
+
+	@Test
+	public final void testFromPenceSigned()
+	{
+		assertThat( Amounts.fromPence( "-55" ), is( new BigDecimal( "-0.55" ) ) );
+	}
+
+	@Test( expected = NumberFormatException.class )
+	public final void testFromPenceBlank()
+	{
+		Amounts.fromPence( "   " );
+	}
+
+	@Test
+	public final void testParseDigits()
+	{
+		assertThat( Digits.parse( "00123", false ), is( 123L ) );
+		assertThat( Digits.parse( " 123 ", true ), is( 123L ) );
+		assertThat( Digits.parse( " 123 ", false ), is( Digits.NONE ) );
+		assertThat( Digits.parse( "", false ), is( Digits.NONE ) );
+		assertThat( Digits.parse( "12A", false ), is( Digits.NONE ) );
+	}
+
+}
@@ -0,0 +1,89 @@
+package uk.co.bluegecko.pay.common.model;
+
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import uk.co.bluegecko.pay.bacs.std18.model.Constants;
+
+
+public class CharacterPatternTest
+{
+
+	@Test
+	public final void testBacsCharacters()
+	{
+		final CharacterPattern pattern = CharacterPattern.compile( Constants.BACS_CHARACTERS );
+
+		assertThat( pattern.matches( "" ), is( true ) );
+		assertThat( pattern.matches( "REF & CO. 1/2-3" ), is( true ) );
+		assertThat( pattern.matches( "lower" ), is( false ) );
+		assertThat( pattern.matches( "A,B" ), is( false ) );
+		assertThat( pattern.matches( "£" ), is( false ) );
+	}
+
+	@Test
+	public final void testFixedLength()
+	{
+		final CharacterPattern pattern = CharacterPattern.compile( "[A-Z0-9]{2}" );
+
+		assertThat( pattern.matches( "99" ), is( true ) );
+		assertThat( pattern.matches( "0N" ), is( true ) );
+		assertThat( pattern.matches( "9" ), is( false ) );
+		assertThat( pattern.matches( "991" ), is( false ) );
+		assertThat( pattern.matches( "9n" ), is( false ) );
+	}
+
+	@Test
+	public final void testSequence()
+	{
+		final CharacterPattern pattern = CharacterPattern.compile( "B\\d{5}" );
+
+		assertThat( pattern.matches( "B12345" ), is( true ) );
+		assertThat( pattern.matches( "B1234" ), is( false ) );
+		assertThat( pattern.matches( "A12345" ), is( false ) );
+	}
+
+	@Test
+	public final void testOptional()
+	{
+		final CharacterPattern pattern = CharacterPattern.compile( "[0-9]?" );
+
+		assertThat( pattern.matches( "" ), is( true ) );
+		assertThat( pattern.matches( "1" ), is( true ) );
+		assertThat( pattern.matches( "10" ), is( false ) );
+	}
+
+	@Test
+	public final void testEscapedClass()
+	{
+		final CharacterPattern pattern = CharacterPattern.compile( "[A-Z \\-\\,]*" );
+
+		assertThat( pattern.matches( "SMITH, J-P" ), is( true ) );
+		assertThat( pattern.matches( "SMITH." ), is( false ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public final void testVariableThenMore()
+	{
+		CharacterPattern.compile( "[A-Z]*[0-9]" );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public final void testAlternation()
+	{
+		CharacterPattern.compile( "A|B" );
+	}
+
+	@Test
+	public final void testMatcherFallback()
+	{
+		assertThat( CharacterPattern.matcher( "A|B" )
+				.test( "B" ), is( true ) );
+		assertThat( CharacterPattern.matcher( "A|B" )
+				.test( "C" ), is( false ) );
+	}
+
+}
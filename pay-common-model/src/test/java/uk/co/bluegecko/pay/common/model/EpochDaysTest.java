@@ -0,0 +1,39 @@
+package uk.co.bluegecko.pay.common.model;
+
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+
+
+public class EpochDaysTest
+{
+
+	private static final long DAY = 16587;
+
+	@Test
+	public final void testToDate()
+	{
+		assertThat( EpochDays.toDate( DAY ), is( LocalDate.ofEpochDay( DAY ) ) );
+	}
+
+	@Test
+	public final void testToDateCached()
+	{
+		assertThat( EpochDays.toDate( DAY ), is( sameInstance( EpochDays.toDate( DAY ) ) ) );
+	}
+
+	@Test
+	public final void testToDateCollision()
+	{
+		final LocalDate date = EpochDays.toDate( DAY );
+
+		assertThat( EpochDays.toDate( DAY + 1024 ), is( LocalDate.ofEpochDay( DAY + 1024 ) ) );
+		assertThat( EpochDays.toDate( DAY ), is( date ) );
+	}
+
+}
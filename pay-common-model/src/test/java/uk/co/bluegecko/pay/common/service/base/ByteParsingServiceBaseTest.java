@@ -0,0 +1,96 @@
+package uk.co.bluegecko.pay.common.service.base;
+
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bluegecko.pay.common.service.ByteMapper;
+
+
+public class ByteParsingServiceBaseTest
+{
+
+	private static final String LINE_1 = "VOL1173922";
+	private static final String LINE_2 = "HDR1A100101S  1100101";
+	private static final String LINE_3 = "EOF1";
+
+	private ByteParsingServiceBase parsingService;
+	private TextMapper mapper;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		parsingService = new ByteParsingServiceBase( 8 );
+		mapper = new TextMapper();
+	}
+
+	@Test
+	public final void testParseLineFeed() throws IOException
+	{
+		parse( LINE_1 + "\n" + LINE_2 + "\n" + LINE_3 + "\n" );
+
+		assertThat( mapper.lines, contains( "1:" + LINE_1, "2:" + LINE_2, "3:" + LINE_3 ) );
+	}
+
+	@Test
+	public final void testParseCarriageReturnLineFeed() throws IOException
+	{
+		parse( LINE_1 + "\r\n" + LINE_2 + "\r\n" + LINE_3 + "\r\n" );
+
+		assertThat( mapper.lines, contains( "1:" + LINE_1, "2:" + LINE_2, "3:" + LINE_3 ) );
+	}
+
+	@Test
+	public final void testParseNoTrailingLineFeed() throws IOException
+	{
+		parse( LINE_1 + "\n" + LINE_3 );
+
+		assertThat( mapper.lines, contains( "1:" + LINE_1, "2:" + LINE_3 ) );
+	}
+
+	protected void parse( final String text ) throws IOException
+	{
+		parsingService.parse( new ByteArrayInputStream( text.getBytes( StandardCharsets.US_ASCII ) ), mapper );
+	}
+
+	private static final class TextParsingContext extends AbstractByteParsingContext
+	{}
+
+	private static final class TextMapper implements ByteMapper< TextParsingContext >
+	{
+
+		private final List< String > lines = new ArrayList<>();
+
+		@Override
+		public String name()
+		{
+			return "text";
+		}
+
+		@Override
+		public void map( final ByteBuffer record, final TextParsingContext context )
+		{
+			final byte[] bytes = new byte[record.remaining()];
+			record.get( bytes );
+			lines.add( context.lineNumber() + ":" + new String( bytes, StandardCharsets.US_ASCII ) );
+		}
+
+		@Override
+		public TextParsingContext newContext()
+		{
+			return new TextParsingContext();
+		}
+
+	}
+
+}
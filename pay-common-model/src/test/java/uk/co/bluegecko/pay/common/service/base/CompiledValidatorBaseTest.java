@@ -0,0 +1,140 @@
+package uk.co.bluegecko.pay.common.service.base;
+
+
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.constraints.Pattern;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
+
+import uk.co.bluegecko.pay.bacs.std18.model.Contra;
+import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
+import uk.co.bluegecko.pay.common.config.StandardConfiguration;
+import uk.co.bluegecko.pay.v1.portfolio.wire.Account;
+
+
+public class CompiledValidatorBaseTest
+{
+
+	private CompiledValidatorBase compiledValidator;
+	private LocalValidatorFactoryBean validator;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		compiledValidator = new CompiledValidatorBase();
+
+		validator = ( LocalValidatorFactoryBean ) new StandardConfiguration().validatorFactory();
+		validator.afterPropertiesSet();
+	}
+
+	@Test
+	public final void testValidInstruction()
+	{
+		final Instruction instruction = instruction().build();
+
+		assertThat( compiledValidator.validate( instruction ), is( empty() ) );
+		assertThat( compiledValidator.isValid( instruction ), is( true ) );
+		assertParity( instruction );
+	}
+
+	@Test
+	public final void testInvalidInstruction()
+	{
+		final Instruction instruction = instruction().index( 0 )
+				.transactionType( "9a" )
+				.rti( "ABC/1" )
+				.amount( new BigDecimal( "123456789012.001" ) )
+				.reference( "lower case" )
+				.build();
+
+		assertThat( compiledValidator.validate( instruction )
+				.size(), is( 5 ) );
+		assertThat( compiledValidator.isValid( instruction ), is( false ) );
+		assertParity( instruction );
+	}
+
+	@Test
+	public final void testInvalidContra()
+	{
+		final Contra contra = Contra.builder()
+				.index( 1 )
+				.transactionType( "991" )
+				.freeFormat( "£" )
+				.narrative( "CONTRA" )
+				.build();
+
+		assertParity( contra );
+	}
+
+	@Test
+	public final void testInvalidAccount()
+	{
+		assertParity( Account.builder()
+				.sortCode( "12345" )
+				.number( "1234567a" )
+				.name( "SMITH, J" )
+				.type( "10" )
+				.build() );
+		assertParity( Account.builder()
+				.sortCode( "123456" )
+				.number( "12345678" )
+				.name( "smith" )
+				.build() );
+	}
+
+	@Test
+	public final void testFallbackPattern()
+	{
+		assertParity( new Coded( "AB12" ) );
+		assertParity( new Coded( "AB" ) );
+		assertParity( new Coded( "ab12" ) );
+	}
+
+	private Instruction.InstructionBuilder instruction()
+	{
+		return Instruction.builder()
+				.index( 1 )
+				.lineNo( 1 )
+				.transactionType( "99" )
+				.rti( "0001" )
+				.amount( "1234" )
+				.reference( "REF & CO. 1/2-3" );
+	}
+
+	private < T > void assertParity( final T object )
+	{
+		assertThat( summary( compiledValidator.validate( object ) ), is( summary( validator.validate( object ) ) ) );
+	}
+
+	private < T > Set< String > summary( final Set< ConstraintViolation< T > > violations )
+	{
+		return violations.stream()
+				.map( violation -> violation.getPropertyPath() + " " + violation.getMessageTemplate() + " "
+						+ violation.getInvalidValue() )
+				.collect( Collectors.toSet() );
+	}
+
+	private static final class Coded
+	{
+
+		@Pattern( regexp = "[A-Z]{2}[0-9]+|[A-Z]{2}" )
+		private final String code;
+
+		private Coded( final String code )
+		{
+			this.code = code;
+		}
+
+	}
+
+}
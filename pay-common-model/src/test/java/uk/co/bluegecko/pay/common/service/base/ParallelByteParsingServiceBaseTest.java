@@ -0,0 +1,144 @@
+package uk.co.bluegecko.pay.common.service.base;
+
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import uk.co.bluegecko.pay.bacs.std18.mapper.Standard18ByteMapper;
+import uk.co.bluegecko.pay.bacs.std18.model.Row;
+import uk.co.bluegecko.pay.test.rule.FileSystemRule;
+
+
+public class ParallelByteParsingServiceBaseTest
+{
+
+	private static final String FILE = "/test.txt";
+
+	private static final String[] HEADERS =
+		{ "VOL1173922                               100101                                1",
+				"HDR1A100101S  11001011739220001000108194 08192 000000                           ",
+				"HDR2F0051200106                                   00                            ",
+				"UHL1 14308999999    AA0000BB4 MULTI  001       AUD0000                          " };
+	private static final String[] RECORDS =
+		{ "0100390105996309940202421315692/00000000000055BSDSAF 00000000055REF&LT 00000000055NAME   00000000055 14308",
+				"4020242131569201740202421315692/00000000000055OSTEXT 09         CONTRA            OA NAME 09         16116" };
+	private static final String[] TRAILERS =
+		{ "EOF1A100101S  11001011739220001000108194 08192 000000                           ",
+				"EOF2F0051200106                                   00                            ",
+				"UTL10000000000055000000000005500000010000001        0000000                     " };
+
+	@Rule
+	public final FileSystemRule fileSystemRule = new FileSystemRule();
+
+	private ParallelByteParsingServiceBase parsingService;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		parsingService = new ParallelByteParsingServiceBase( 4, 256 );
+	}
+
+	@After
+	public void tearDown()
+	{
+		parsingService.shutdown();
+	}
+
+	@Test
+	public final void testParseMatchesSequential() throws IOException
+	{
+		final List< String > lines = new ArrayList<>();
+		for ( int batch = 0; batch < 5; batch++ )
+		{
+			addAll( lines, HEADERS );
+			for ( int i = 0; i < 20; i++ )
+			{
+				addAll( lines, RECORDS );
+			}
+			addAll( lines, TRAILERS );
+		}
+		final String text = StringUtils.join( lines, "\r\n" );
+
+		final List< String > expected = new ArrayList<>();
+		new ByteParsingServiceBase().parse( new ByteArrayInputStream( text.getBytes( StandardCharsets.US_ASCII ) ),
+				mapper( expected ) );
+
+		final List< String > actual = new ArrayList<>();
+		parsingService.parse( channel( text ), mapper( actual ) );
+
+		assertThat( actual, hasSize( lines.size() ) );
+		assertThat( actual, is( expected ) );
+	}
+
+	@Test
+	public final void testParseUnidentifiedRecord() throws IOException
+	{
+		final List< String > lines = new ArrayList<>();
+		addAll( lines, HEADERS );
+		for ( int i = 0; i < 20; i++ )
+		{
+			addAll( lines, RECORDS );
+		}
+		lines.add( "XXX1" );
+		addAll( lines, TRAILERS );
+
+		final List< String > actual = new ArrayList<>();
+		try
+		{
+			parsingService.parse( channel( StringUtils.join( lines, '\n' ) ), mapper( actual ) );
+			fail( "unidentified record" );
+		}
+		catch ( final IllegalArgumentException ex )
+		{
+			assertThat( ex.getMessage(), is( "unidentified-record-at-line-45" ) );
+			assertThat( actual, hasSize( 44 ) );
+		}
+	}
+
+	protected Standard18ByteMapper mapper( final List< String > rows )
+	{
+		final BiConsumer< Row, Object > consumer = ( row, value ) -> rows.add( row.name() + " " + value );
+		final Standard18ByteMapper mapper = new Standard18ByteMapper();
+		for ( final Row row : Row.values() )
+		{
+			mapper.addRow( row, consumer );
+		}
+		return mapper;
+	}
+
+	protected FileChannel channel( final String text ) throws IOException
+	{
+		final Path file = fileSystemRule.getFileSystem()
+				.getPath( FILE );
+		Files.write( file, text.getBytes( StandardCharsets.US_ASCII ), StandardOpenOption.CREATE );
+		return FileChannel.open( file, StandardOpenOption.READ );
+	}
+
+	private static void addAll( final List< String > lines, final String... values )
+	{
+		for ( final String value : values )
+		{
+			lines.add( value );
+		}
+	}
+
+}
@@ -1,10 +1,15 @@
 package uk.co.bluegecko.pay.common.service.base;
 
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -25,7 +30,14 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uk.co.bluegecko.pay.common.model.Message;
+import uk.co.bluegecko.pay.common.model.Message.Classification;
+import uk.co.bluegecko.pay.common.model.ParsedRecord;
 import uk.co.bluegecko.pay.common.service.Mapper;
+import uk.co.bluegecko.pay.common.service.MessageException;
+import uk.co.bluegecko.pay.common.service.ParseErrors;
 
 
 public class ParsingServiceBaseTest
@@ -35,19 +47,24 @@ public class ParsingServiceBaseTest
 	private static final String TEST = "test";
 	private static final String TYPE = "VOL1";
 	private static final String LINE = "VOL1173922                               100101                                1";
+	private static final String NUMBER = "number";
+	private static final String INVALID = "VOL1ABCDEF";
+	private static final String VALID = "VOL1123456";
 
+	private MeterRegistry meterRegistry;
 	private ParsingServiceBase parsingService;
 
 	@Before
 	public void setUp() throws Exception
 	{
-		parsingService = new ParsingServiceBase();
+		meterRegistry = new SimpleMeterRegistry();
+		parsingService = new ParsingServiceBase( new StreamRegistryBase(), meterRegistry );
 	}
 
 	@Test
 	public final void testParseWithMap() throws IOException
 	{
-		final StreamFactory factory = parsingService.factory();
+		final StreamFactory factory = StreamFactory.newInstance();
 		factory.define( new StreamBuilder( TEST ).format( "fixedlength" )
 				.parser( new FixedLengthRecordParserFactory() )
 				.addRecord( new RecordBuilder( TYPE ).type( HashMap.class )
@@ -58,27 +75,122 @@ public class ParsingServiceBaseTest
 								.ignore() )
 						.addField( new FieldBuilder( TEXT ).length( 6 ) ) ) );
 
-		final Mapper< TextParsingContext > mapper = mock( Mapper.class );
-		when( mapper.name() ).thenReturn( TEST );
-		when( mapper.addMapping( any( StreamFactory.class ) ) ).thenReturn( factory );
-		when( mapper.newContext( any( BeanReader.class ) ) )
-				.thenAnswer( invocation -> new TextParsingContext( invocation.getArgument( 0 ) ) );
+		final Mapper< TextParsingContext > mapper = mapper( factory );
 
 		try (Reader dataFile = new StringReader( LINE ))
 		{
-			parsingService.parse( dataFile, mapper );
+			assertThat( parsingService.parse( dataFile, mapper )
+					.has( Classification.ERROR ), is( false ) );
 
 			@SuppressWarnings( "rawtypes" )
 			final ArgumentCaptor< Map > record = ArgumentCaptor.forClass( Map.class );
 			final ArgumentCaptor< TextParsingContext > contect = ArgumentCaptor.forClass( TextParsingContext.class );
 
-			verify( mapper, times( 1 ) ).map( record.capture(), contect.capture() );
+			verify( mapper, times( 1 ) ).toRecord( record.capture(), contect.capture() );
 
 			final Map< String, Object > value = record.getValue();
 			assertThat( value, hasEntry( TEXT, "173922" ) );
 		}
 	}
 
+	@Test
+	public final void testParseCollectsErrors() throws IOException
+	{
+		final Mapper< TextParsingContext > mapper = mapper( numberFactory() );
+		final ParseErrors errors = new ParseErrors( 10, ParseErrors.UNLIMITED );
+
+		try (Reader dataFile = new StringReader( lines( 15 ) ))
+		{
+			final Message message = parsingService.parse( dataFile, mapper, errors );
+
+			assertThat( errors.total(), is( 15L ) );
+			assertThat( errors.count( TYPE + "." + NUMBER ), is( 15L ) );
+			assertThat( message.text( Classification.ERROR, TYPE + "." + NUMBER ), hasSize( 10 ) );
+			assertThat( message.text( Classification.INFO, TYPE + "." + NUMBER ), contains( "5-more-errors" ) );
+			verify( mapper, times( 1 ) ).toRecord( any( Map.class ), any( TextParsingContext.class ) );
+		}
+	}
+
+	@Test
+	public final void testParseMetrics() throws IOException
+	{
+		final Mapper< TextParsingContext > mapper = mapper( numberFactory() );
+		when( mapper.toRecord( any( Map.class ), any( TextParsingContext.class ) ) ).thenReturn( ParsedRecord.builder()
+				.name( TYPE )
+				.build() );
+
+		try (Reader dataFile = new StringReader( lines( 2 ) + "\n" + VALID ))
+		{
+			parsingService.parse( dataFile, mapper );
+		}
+
+		assertThat( meterRegistry.counter( ParsingServiceBase.RECORDS, "mapper", TEST, "row", TYPE )
+				.count(), is( 2.0 ) );
+		assertThat( meterRegistry.counter( ParsingServiceBase.ERRORS, "mapper", TEST, "classification",
+				Classification.ERROR.name() )
+				.count(), is( 2.0 ) );
+		assertThat( meterRegistry.timer( ParsingServiceBase.TIME, "mapper", TEST )
+				.count(), is( 1L ) );
+	}
+
+	@Test
+	public final void testParseErrorBudget() throws IOException
+	{
+		final Mapper< TextParsingContext > mapper = mapper( numberFactory() );
+
+		try (Reader dataFile = new StringReader( lines( 15 ) ))
+		{
+			parsingService.parse( dataFile, mapper, new ParseErrors( 10, 3 ) );
+			fail( "expected error budget to be exceeded" );
+		}
+		catch ( final MessageException ex )
+		{
+			assertThat( ex.getMessage(), is( "error-budget-exceeded" ) );
+			assertThat( ex.messages()
+					.text( Classification.ERROR, TYPE + "." + NUMBER ), hasSize( 4 ) );
+			verify( mapper, never() ).toRecord( any( Map.class ), any( TextParsingContext.class ) );
+		}
+	}
+
+	private StreamFactory numberFactory()
+	{
+		final StreamFactory factory = StreamFactory.newInstance();
+		factory.define( new StreamBuilder( TEST ).format( "fixedlength" )
+				.parser( new FixedLengthRecordParserFactory() )
+				.addRecord( new RecordBuilder( TYPE ).type( HashMap.class )
+						.minLength( 1 )
+						.addField( new FieldBuilder( "type" ).length( 4 )
+								.rid()
+								.literal( TYPE )
+								.ignore() )
+						.addField( new FieldBuilder( NUMBER ).length( 6 )
+								.type( Integer.class ) ) ) );
+		return factory;
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private Mapper< TextParsingContext > mapper( final StreamFactory factory )
+	{
+		final Mapper< TextParsingContext > mapper = mock( Mapper.class );
+		when( mapper.name() ).thenReturn( TEST );
+		when( mapper.addMapping( any( StreamFactory.class ) ) ).thenReturn( factory );
+		when( mapper.newContext( any( BeanReader.class ) ) )
+				.thenAnswer( invocation -> new TextParsingContext( invocation.getArgument( 0 ) ) );
+		return mapper;
+	}
+
+	private String lines( final int invalid )
+	{
+		final StringBuilder lines = new StringBuilder();
+		for ( int i = 0; i < invalid; i++ )
+		{
+			lines.append( INVALID )
+					.append( '\n' );
+		}
+		return lines.append( VALID )
+				.toString();
+	}
+
 	private static final class TextParsingContext extends AbstractParsingContext
 	{
 
@@ -0,0 +1,114 @@
+package uk.co.bluegecko.pay.common.service.base;
+
+
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.beanio.StreamFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uk.co.bluegecko.pay.common.model.CacheStats;
+import uk.co.bluegecko.pay.common.service.Mapper;
+
+
+public class StreamRegistryBaseTest
+{
+
+	private static final String TEST = "test";
+
+	private MeterRegistry meterRegistry;
+	private StreamRegistryBase streamRegistry;
+	private Mapper< ? > mapper;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		meterRegistry = new SimpleMeterRegistry();
+		streamRegistry = new StreamRegistryBase( meterRegistry );
+
+		mapper = mock( Mapper.class );
+		when( mapper.name() ).thenReturn( TEST );
+		when( mapper.addMapping( any( StreamFactory.class ) ) ).thenAnswer( invocation -> invocation.getArgument( 0 ) );
+	}
+
+	@Test
+	public final void testFactoryBuiltOnce()
+	{
+		final StreamFactory factory = streamRegistry.factory( mapper );
+
+		assertThat( streamRegistry.factory( mapper ), is( sameInstance( factory ) ) );
+		assertThat( streamRegistry.factory( mapper ), is( sameInstance( factory ) ) );
+		verify( mapper, times( 1 ) ).addMapping( any( StreamFactory.class ) );
+
+		final CacheStats stats = streamRegistry.stats();
+		assertThat( stats.hits(), is( 2L ) );
+		assertThat( stats.misses(), is( 1L ) );
+		assertThat( stats.size(), is( 1 ) );
+		assertThat( stats.hitRate(), is( closeTo( 2.0 / 3.0, 0.001 ) ) );
+	}
+
+	@Test
+	public final void testMeters()
+	{
+		streamRegistry.factory( mapper );
+		streamRegistry.factory( mapper );
+
+		assertThat( meterRegistry.get( StreamRegistryBase.GETS )
+				.tag( "result", "hit" )
+				.functionCounter()
+				.count(), is( 1.0 ) );
+		assertThat( meterRegistry.get( StreamRegistryBase.GETS )
+				.tag( "result", "miss" )
+				.functionCounter()
+				.count(), is( 1.0 ) );
+		assertThat( meterRegistry.timer( StreamRegistryBase.BUILD )
+				.count(), is( 1L ) );
+	}
+
+	@Test
+	public final void testInvalidate()
+	{
+		final StreamFactory factory = streamRegistry.factory( mapper );
+
+		streamRegistry.invalidate( TEST );
+
+		assertThat( streamRegistry.stats()
+				.size(), is( 0 ) );
+		assertThat( streamRegistry.factory( mapper ), is( not( sameInstance( factory ) ) ) );
+		verify( mapper, times( 2 ) ).addMapping( any( StreamFactory.class ) );
+	}
+
+	@Test
+	public final void testInvalidateAll()
+	{
+		streamRegistry.factory( mapper );
+
+		streamRegistry.invalidateAll();
+
+		assertThat( streamRegistry.stats()
+				.size(), is( 0 ) );
+	}
+
+	@Test
+	public final void testReload()
+	{
+		final StreamFactory factory = streamRegistry.factory( mapper );
+
+		final StreamFactory reloaded = streamRegistry.reload( mapper );
+
+		assertThat( reloaded, is( not( sameInstance( factory ) ) ) );
+		assertThat( streamRegistry.factory( mapper ), is( sameInstance( reloaded ) ) );
+	}
+
+}
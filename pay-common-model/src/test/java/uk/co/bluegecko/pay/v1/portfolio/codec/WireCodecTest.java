@@ -0,0 +1,187 @@
+package uk.co.bluegecko.pay.v1.portfolio.codec;
+
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import uk.co.bluegecko.pay.bacs.std18.service.v1.test.FakeDataFactory;
+import uk.co.bluegecko.pay.common.config.StandardConfiguration;
+import uk.co.bluegecko.pay.v1.portfolio.wire.Account;
+import uk.co.bluegecko.pay.v1.portfolio.wire.Batch;
+import uk.co.bluegecko.pay.v1.portfolio.wire.Instruction;
+import uk.co.bluegecko.pay.v1.portfolio.wire.InstructionEnvelope;
+import uk.co.bluegecko.pay.v1.portfolio.wire.Total;
+
+
+public class WireCodecTest extends FakeDataFactory
+{
+
+	private ObjectMapper objectMapper;
+	private Instruction instruction;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		objectMapper = new StandardConfiguration().objectMapper( new Jackson2ObjectMapperBuilder() );
+		instruction = createWireInstruction( createWireAccountOrigin(), createWireAccountDestination() );
+	}
+
+	@Test
+	public final void testInstructionRoundTrip()
+	{
+		final byte[] bytes = WireCodec.encode( instruction );
+
+		assertThat( bytes[0], is( WireCodec.VERSION ) );
+		assertThat( WireCodec.decode( bytes, Instruction.class ), is( instruction ) );
+	}
+
+	@Test
+	public final void testNullsRoundTrip()
+	{
+		final Instruction empty = Instruction.builder()
+				.build();
+
+		assertThat( WireCodec.decode( WireCodec.encode( empty ), Instruction.class ), is( empty ) );
+	}
+
+	@Test
+	public final void testAmountScaleRoundTrip()
+	{
+		for ( final String amount : Arrays.asList( "0", "10.5", "10.50", "1E+3", "-0.01", "0.001",
+				"123456789012345678901234567890.12" ) )
+		{
+			final Instruction scaled = Instruction.builder()
+					.index( 1 )
+					.amount( new BigDecimal( amount ) )
+					.build();
+			final Instruction decoded = WireCodec.decode( WireCodec.encode( scaled ), Instruction.class );
+
+			assertThat( decoded.amount()
+					.scale(), is( scaled.amount()
+							.scale() ) );
+			assertThat( decoded, is( scaled ) );
+		}
+	}
+
+	@Test
+	public final void testAccountRoundTrip()
+	{
+		final Account account = createWireAccountOrigin();
+
+		assertThat( WireCodec.decode( WireCodec.encode( account ), Account.class ), is( account ) );
+	}
+
+	@Test
+	public final void testBatchRoundTrip()
+	{
+		final Batch batch = Batch.builder()
+				.id( 3L )
+				.index( 1 )
+				.portfolio( 2L )
+				.name( "BATCH" )
+				.userNumber( "123456" )
+				.set( "SET" )
+				.section( 1 )
+				.sequence( 2 )
+				.generation( 3 )
+				.version( 4 )
+				.totals( new HashSet<>( Arrays.asList( Total.builder()
+						.type( Total.Type.DEBIT )
+						.count( 10 )
+						.amount( new BigDecimal( "1234.56" ) )
+						.build(),
+						Total.builder()
+								.type( Total.Type.CREDIT )
+								.count( 1 )
+								.amount( new BigDecimal( "1234.56" ) )
+								.build() ) ) )
+				.build();
+
+		assertThat( WireCodec.decode( WireCodec.encode( batch ), Batch.class ), is( batch ) );
+	}
+
+	@Test
+	public final void testEnvelopeRoundTrip()
+	{
+		final InstructionEnvelope envelope = InstructionEnvelope.builder()
+				.sequence( 7 )
+				.instructions( Arrays.asList( instruction, instruction ) )
+				.build();
+
+		assertThat( WireCodec.decode( WireCodec.encode( envelope ), InstructionEnvelope.class ), is( envelope ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public final void testUnsupportedVersion()
+	{
+		final byte[] bytes = WireCodec.encode( instruction );
+		bytes[0] = WireCodec.VERSION + 1;
+
+		WireCodec.decode( bytes );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public final void testTruncated()
+	{
+		final byte[] bytes = WireCodec.encode( instruction );
+
+		WireCodec.decode( Arrays.copyOf( bytes, bytes.length - 3 ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public final void testUnsupportedTotalType()
+	{
+		final byte[] bytes = WireCodec.encode( Batch.builder()
+				.id( 1L )
+				.totals( Collections.singleton( Total.builder()
+						.type( Total.Type.DEBIT )
+						.build() ) )
+				.build() );
+		// the total ends with its type, a count of zero and no amount; a type from a later release is refused
+		bytes[bytes.length - 3] = ( byte ) ( 2 * Total.Type.values().length );
+
+		WireCodec.decode( bytes );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public final void testUnexpectedType()
+	{
+		WireCodec.decode( WireCodec.encode( instruction ), Batch.class );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public final void testUnsupportedPayload()
+	{
+		WireCodec.encode( Collections.emptyList() );
+	}
+
+	@Test
+	public final void testSmallerThanJson() throws IOException
+	{
+		final InstructionEnvelope envelope = InstructionEnvelope.builder()
+				.sequence( 1 )
+				.instructions( Collections.nCopies( 100, instruction ) )
+				.build();
+
+		final byte[] json = objectMapper.writeValueAsBytes( instruction );
+		final byte[] binary = WireCodec.encode( instruction );
+		final byte[] jsonEnvelope = objectMapper.writeValueAsBytes( envelope );
+		final byte[] binaryEnvelope = WireCodec.encode( envelope );
+		assertThat( binary.length, is( lessThan( json.length ) ) );
+		assertThat( binaryEnvelope.length, is( lessThan( jsonEnvelope.length ) ) );
+	}
+
+}
@@ -0,0 +1,48 @@
+package uk.co.bluegecko.pay.common.config;
+
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.util.MimeType;
+
+import uk.co.bluegecko.pay.v1.portfolio.codec.WireCodec;
+
+
+public final class WireMessageConverter extends AbstractMessageConverter
+{
+
+	public static final MimeType MIME_TYPE = MimeType.valueOf( WireCodec.MIME_TYPE );
+
+	public WireMessageConverter()
+	{
+		super( MIME_TYPE );
+	}
+
+	@Override
+	protected boolean supports( final Class< ? > type )
+	{
+		return WireCodec.supports( type );
+	}
+
+	@Override
+	protected boolean canConvertFrom( final Message< ? > message, final Class< ? > targetClass )
+	{
+		return message.getPayload() instanceof byte[] && super.canConvertFrom( message, targetClass );
+	}
+
+	@Override
+	protected Object convertFromInternal( final Message< ? > message, final Class< ? > targetClass,
+			final Object conversionHint )
+	{
+		return WireCodec.decode( ( byte[] ) message.getPayload(), targetClass );
+	}
+
+	@Override
+	protected Object convertToInternal( final Object payload, final MessageHeaders headers,
+			final Object conversionHint )
+	{
+		return WireCodec.encode( payload );
+	}
+
+}
@@ -1,12 +1,28 @@
 package uk.co.bluegecko.pay.common.controller;
 
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.springframework.hateoas.Link;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import uk.co.bluegecko.pay.RestMapping.Page;
 
 
 public abstract class AbstractController
 {
 
+	private static final String LINK = "Link";
+
 	protected MappingJacksonValue entityWithView( final Class< ? > view, final Object entity )
 	{
 		final MappingJacksonValue entityMapping = new MappingJacksonValue( entity );
@@ -14,4 +30,41 @@ public abstract class AbstractController
 		return entityMapping;
 	}
 
+	protected int limit( final int limit )
+	{
+		return Math.max( 1, Math.min( limit, Page.MAX_LIMIT ) );
+	}
+
+	// a full page links to the next, starting after its last key with the rest of this request's parameters kept
+	protected < T > HttpHeaders next( final List< T > page, final int limit, final Function< T, ? > key )
+	{
+		final HttpHeaders headers = new HttpHeaders();
+		if ( !page.isEmpty() && page.size() == limit )
+		{
+			final String href = ServletUriComponentsBuilder.fromCurrentRequest()
+					.replaceQueryParam( Page.AFTER, key.apply( page.get( page.size() - 1 ) ) )
+					.replaceQueryParam( Page.LIMIT, limit )
+					.toUriString();
+			headers.add( LINK, new Link( href, Link.REL_NEXT ).toString() );
+		}
+		return headers;
+	}
+
+	// one document to a line, written as each row is read, so an export of any size is sent in constant memory
+	protected < T > StreamingResponseBody lines( final ObjectWriter writer, final Consumer< Consumer< T > > rows )
+	{
+		return out -> rows.accept( ( final T row ) ->
+			{
+				try
+				{
+					out.write( writer.writeValueAsBytes( row ) );
+					out.write( '\n' );
+				}
+				catch ( final IOException ex )
+				{
+					throw new UncheckedIOException( ex );
+				}
+			} );
+	}
+
 }
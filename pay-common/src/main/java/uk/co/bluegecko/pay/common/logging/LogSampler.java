@@ -0,0 +1,35 @@
+package uk.co.bluegecko.pay.common.logging;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public final class LogSampler
+{
+
+	private final long every;
+	private final AtomicLong count;
+
+	public LogSampler( final long every )
+	{
+		if ( every < 1 )
+		{
+			throw new IllegalArgumentException( "invalid-sample-" + every );
+		}
+
+		this.every = every;
+		count = new AtomicLong();
+	}
+
+	// the first and every nth call after it, so a steady stream logs at a fixed fraction of its rate
+	public boolean sample()
+	{
+		return count.getAndIncrement() % every == 0;
+	}
+
+	public long count()
+	{
+		return count.get();
+	}
+
+}
@@ -0,0 +1 @@
+package uk.co.bluegecko.pay.common.logging;
\ No newline at end of file
@@ -0,0 +1,23 @@
+package uk.co.bluegecko.pay.portfolio.config;
+
+
+import org.springframework.cloud.stream.annotation.StreamMessageConverter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MessageConverter;
+
+import uk.co.bluegecko.pay.common.config.WireMessageConverter;
+
+
+@Configuration
+public class StreamConfig
+{
+
+	@Bean
+	@StreamMessageConverter
+	public MessageConverter wireMessageConverter()
+	{
+		return new WireMessageConverter();
+	}
+
+}
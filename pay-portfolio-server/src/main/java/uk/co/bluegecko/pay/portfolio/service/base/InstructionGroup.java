@@ -0,0 +1,184 @@
+package uk.co.bluegecko.pay.portfolio.service.base;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import uk.co.bluegecko.pay.portfolio.model.Instruction;
+import uk.co.bluegecko.pay.portfolio.service.InstructionService;
+
+
+// instructions from many messages are saved in one transaction once there are enough of them, or the first has
+// waited long enough, and only then is each message acknowledged; if the commit fails every message in the group
+// is handed back, so the group is redelivered whole
+public class InstructionGroup implements AutoCloseable
+{
+
+	public static final String COMMIT = "pay.sink.group.commit";
+	public static final String SIZE = "pay.sink.group.size";
+	public static final String FLUSHES = "pay.sink.group.flushes";
+	public static final String FAILED = "pay.sink.group.failed";
+
+	private static final Logger logger = LoggerFactory.getLogger( InstructionGroup.class );
+
+	public interface Acknowledgement
+	{
+
+		public void commit();
+
+		public void rollback();
+
+	}
+
+	private final InstructionService instructionService;
+	private final TransactionTemplate transactionTemplate;
+	private final int size;
+	private final long millis;
+	private final ScheduledExecutorService timer;
+	private final List< Instruction > instructions;
+	private final List< Acknowledgement > acknowledgements;
+	private final Timer commit;
+	private final DistributionSummary sizes;
+	private final Counter bySize;
+	private final Counter byTime;
+	private final Counter failed;
+	private long generation;
+
+	public InstructionGroup( final InstructionService instructionService,
+			final TransactionTemplate transactionTemplate, final int size, final long millis,
+			final MeterRegistry meterRegistry )
+	{
+		if ( size < 1 )
+		{
+			throw new IllegalArgumentException( "invalid-size-" + size );
+		}
+
+		this.instructionService = instructionService;
+		this.transactionTemplate = transactionTemplate;
+		this.size = size;
+		this.millis = millis;
+		timer = Executors.newSingleThreadScheduledExecutor();
+		instructions = new ArrayList<>( size );
+		acknowledgements = new ArrayList<>();
+		commit = Timer.builder( COMMIT )
+				.publishPercentileHistogram()
+				.register( meterRegistry );
+		sizes = DistributionSummary.builder( SIZE )
+				.baseUnit( "instructions" )
+				.publishPercentileHistogram()
+				.register( meterRegistry );
+		bySize = meterRegistry.counter( FLUSHES, "cause", "size" );
+		byTime = meterRegistry.counter( FLUSHES, "cause", "time" );
+		failed = meterRegistry.counter( FAILED );
+	}
+
+	public synchronized void add( final List< Instruction > received, final Acknowledgement acknowledgement )
+	{
+		if ( acknowledgements.isEmpty() )
+		{
+			final long expected = generation;
+			timer.schedule( () -> expire( expected ), millis, TimeUnit.MILLISECONDS );
+		}
+		instructions.addAll( received );
+		acknowledgements.add( acknowledgement );
+
+		if ( instructions.size() >= size )
+		{
+			bySize.increment();
+			flush();
+		}
+	}
+
+	public synchronized int pending()
+	{
+		return instructions.size();
+	}
+
+	// a group already flushed by size has moved on, so a timer left over from it does nothing
+	protected synchronized void expire( final long expected )
+	{
+		if ( generation == expected && !acknowledgements.isEmpty() )
+		{
+			byTime.increment();
+			flush();
+		}
+	}
+
+	public synchronized void flush()
+	{
+		if ( acknowledgements.isEmpty() )
+		{
+			return;
+		}
+
+		generation++;
+		final long start = System.nanoTime();
+		boolean committed = false;
+		try
+		{
+			transactionTemplate.execute( status ->
+				{
+					instructionService.saveAll( instructions );
+					return null;
+				} );
+			committed = true;
+			commit.record( System.nanoTime() - start, TimeUnit.NANOSECONDS );
+			sizes.record( instructions.size() );
+		}
+		catch ( final RuntimeException ex )
+		{
+			// not rethrown, as the messages are handed back here and the binder must not settle them again
+			logger.error( "Group of {} instructions from {} messages failed, redelivering", instructions.size(),
+					acknowledgements.size(), ex );
+			failed.increment();
+		}
+		finally
+		{
+			settle( committed );
+			instructions.clear();
+			acknowledgements.clear();
+		}
+	}
+
+	// each message is settled on its own, so one closed channel does not leave the rest of the group unsettled
+	protected void settle( final boolean committed )
+	{
+		for ( final Acknowledgement acknowledgement : acknowledgements )
+		{
+			try
+			{
+				if ( committed )
+				{
+					acknowledgement.commit();
+				}
+				else
+				{
+					acknowledgement.rollback();
+				}
+			}
+			catch ( final RuntimeException ex )
+			{
+				logger.warn( "Unable to settle message: {}", ex.getMessage() );
+			}
+		}
+	}
+
+	@Override
+	public void close()
+	{
+		flush();
+		timer.shutdownNow();
+	}
+
+}
@@ -1,18 +1,43 @@
 package uk.co.bluegecko.pay.portfolio.service.base;
 
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.StreamListener;
 import org.springframework.cloud.stream.messaging.Sink;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.rabbitmq.client.Channel;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import uk.co.bluegecko.pay.common.annotation.NotTestProfile;
+import uk.co.bluegecko.pay.common.logging.LogSampler;
 import uk.co.bluegecko.pay.portfolio.service.InstructionService;
+import uk.co.bluegecko.pay.portfolio.service.base.InstructionGroup.Acknowledgement;
 import uk.co.bluegecko.pay.portfolio.service.v1.InstructionWirePortfolioToV1;
 import uk.co.bluegecko.pay.v1.portfolio.wire.Instruction;
+import uk.co.bluegecko.pay.v1.portfolio.wire.InstructionEnvelope;
 
 
 @NotTestProfile
@@ -21,26 +46,206 @@ import uk.co.bluegecko.pay.v1.portfolio.wire.Instruction;
 public class InstructionSink
 {
 
+	public static final String SAVE = "pay.sink.save";
+	public static final String LATENCY = "pay.sink.latency";
+	public static final String INSTRUCTIONS = "pay.sink.instructions";
+	public static final String DEAD_LETTERED = "pay.sink.dead-lettered";
+
 	private static final Logger logger = LoggerFactory.getLogger( InstructionSink.class );
+	private static final int LOG_EVERY = 100;
+
+	private static final String ENVELOPE = "headers['" + InstructionEnvelope.TYPE + "']=='" + InstructionEnvelope.ENVELOPE
+			+ "'";
+	private static final String SINGLE = "headers['" + InstructionEnvelope.TYPE + "']==null";
 
 	private final InstructionWirePortfolioToV1 instructionWireService;
 	private final InstructionService instructionService;
+	private final InstructionGroup group;
+	private final Clock clock;
+	private final Timer singleTimer;
+	private final Timer envelopeTimer;
+	private final Timer latency;
+	private final Counter instructions;
+	private final Counter deadLettered;
+	private final LogSampler sampler;
 
 	@Autowired
 	public InstructionSink( final InstructionWirePortfolioToV1 instructionWireService,
-			final InstructionService instructionService )
+			final InstructionService instructionService, final PlatformTransactionManager transactionManager,
+			final Clock clock, final MeterRegistry meterRegistry,
+			@Value( "${pay.sink.group.size:500}" ) final int groupSize,
+			@Value( "${pay.sink.group.millis:100}" ) final long groupMillis )
+	{
+		this( instructionWireService, instructionService, new InstructionGroup( instructionService,
+				new TransactionTemplate( transactionManager ), groupSize, groupMillis, meterRegistry ), clock,
+				meterRegistry );
+	}
+
+	public InstructionSink( final InstructionWirePortfolioToV1 instructionWireService,
+			final InstructionService instructionService, final InstructionGroup group, final Clock clock,
+			final MeterRegistry meterRegistry )
 	{
 		super();
 
 		this.instructionWireService = instructionWireService;
 		this.instructionService = instructionService;
+		this.group = group;
+		this.clock = clock;
+		singleTimer = timer( meterRegistry, SAVE, "single" );
+		envelopeTimer = timer( meterRegistry, SAVE, "envelope" );
+		latency = Timer.builder( LATENCY )
+				.publishPercentileHistogram()
+				.register( meterRegistry );
+		instructions = meterRegistry.counter( INSTRUCTIONS );
+		deadLettered = meterRegistry.counter( DEAD_LETTERED );
+		sampler = new LogSampler( LOG_EVERY );
+	}
+
+	protected Timer timer( final MeterRegistry meterRegistry, final String name, final String type )
+	{
+		return Timer.builder( name )
+				.tag( "type", type )
+				.publishPercentileHistogram()
+				.register( meterRegistry );
+	}
+
+	// with manual acknowledgement the binder passes the channel, and messages join a group committed together;
+	// otherwise each is saved as it arrives and the binder acknowledges it on return
+	@StreamListener( target = Sink.INPUT, condition = SINGLE )
+	public void instructionSink( @Payload final Instruction instruction,
+			@Header( name = InstructionEnvelope.PUBLISHED, required = false ) final Long published,
+			@Header( name = AmqpHeaders.CHANNEL, required = false ) final Channel channel,
+			@Header( name = AmqpHeaders.DELIVERY_TAG, required = false ) final Long deliveryTag,
+			@Header( name = AmqpHeaders.REDELIVERED, required = false ) final Boolean redelivered )
+	{
+		if ( logger.isDebugEnabled() && sampler.sample() )
+		{
+			logger.debug( "Recieved: {} ({} messages)", instruction, sampler.count() );
+		}
+
+		save( singleTimer, () -> Collections.singletonList( instructionWireService.fromWire( instruction ) ),
+				published, channel, deliveryTag, redelivered );
+	}
+
+	@StreamListener( target = Sink.INPUT, condition = ENVELOPE )
+	public void instructionEnvelopeSink( @Payload final InstructionEnvelope envelope,
+			@Header( name = InstructionEnvelope.PUBLISHED, required = false ) final Long published,
+			@Header( name = AmqpHeaders.CHANNEL, required = false ) final Channel channel,
+			@Header( name = AmqpHeaders.DELIVERY_TAG, required = false ) final Long deliveryTag,
+			@Header( name = AmqpHeaders.REDELIVERED, required = false ) final Boolean redelivered )
+	{
+		if ( logger.isDebugEnabled() && sampler.sample() )
+		{
+			logger.debug( "Recieved envelope {} of {} ({} messages)", envelope.sequence(), envelope.instructions()
+					.size(), sampler.count() );
+		}
+
+		save( envelopeTimer, () -> envelope.instructions()
+				.stream()
+				.map( instructionWireService::fromWire )
+				.collect( Collectors.toList() ), published, channel, deliveryTag, redelivered );
+	}
+
+	protected void save( final Timer timer,
+			final Supplier< List< uk.co.bluegecko.pay.portfolio.model.Instruction > > converted, final Long published,
+			final Channel channel, final Long deliveryTag, final Boolean redelivered )
+	{
+		final long start = System.nanoTime();
+		if ( channel == null || deliveryTag == null )
+		{
+			// saved as one JDBC batch, and acknowledged by the binder on return
+			final List< uk.co.bluegecko.pay.portfolio.model.Instruction > received = converted.get();
+			instructionService.saveAll( received );
+			saved( timer, start, published, received.size() );
+			return;
+		}
+
+		final boolean requeue = !Boolean.TRUE.equals( redelivered );
+		try
+		{
+			final List< uk.co.bluegecko.pay.portfolio.model.Instruction > received = converted.get();
+			group.add( received, acknowledgement( channel, deliveryTag, requeue, () -> saved( timer, start,
+					published, received.size() ) ) );
+		}
+		catch ( final RuntimeException ex )
+		{
+			// not rethrown, as the binder would retry a message already settled here; one that cannot be read now
+			// will not be read on redelivery either
+			logger.error( "Unable to take message {}, dead-lettering", deliveryTag, ex );
+			try
+			{
+				reject( channel, deliveryTag, false );
+			}
+			catch ( final RuntimeException rejected )
+			{
+				logger.warn( "Unable to settle message: {}", rejected.getMessage() );
+			}
+		}
+	}
+
+	// a group that fails is handed back once, and a message in a group that fails again goes to the dead letter
+	// queue, so one bad message cannot hold up the queue for ever
+	protected Acknowledgement acknowledgement( final Channel channel, final long deliveryTag, final boolean requeue,
+			final Runnable committed )
+	{
+		return new Acknowledgement()
+			{
+
+				@Override
+				public void commit()
+				{
+					try
+					{
+						channel.basicAck( deliveryTag, false );
+					}
+					catch ( final IOException ex )
+					{
+						throw new UncheckedIOException( ex );
+					}
+					committed.run();
+				}
+
+				@Override
+				public void rollback()
+				{
+					reject( channel, deliveryTag, requeue );
+				}
+
+			};
+	}
+
+	protected void reject( final Channel channel, final long deliveryTag, final boolean requeue )
+	{
+		try
+		{
+			channel.basicNack( deliveryTag, false, requeue );
+		}
+		catch ( final IOException ex )
+		{
+			throw new UncheckedIOException( ex );
+		}
+		if ( !requeue )
+		{
+			deadLettered.increment();
+		}
+	}
+
+	// consume-to-save is measured here, including any wait for the group to commit; publish-to-save relies on the
+	// publisher's clock, so it is only as good as the clock skew between the two hosts
+	protected void saved( final Timer timer, final long start, final Long published, final int count )
+	{
+		timer.record( System.nanoTime() - start, TimeUnit.NANOSECONDS );
+		instructions.increment( count );
+		if ( published != null )
+		{
+			latency.record( Math.max( 0, clock.millis() - published ), TimeUnit.MILLISECONDS );
+		}
 	}
 
-	@StreamListener( Sink.INPUT )
-	public void instructionSink( final Instruction instruction )
+	@PreDestroy
+	public void close()
 	{
-		logger.info( "Recieved: {}", instruction );
-		instructionService.save( instructionWireService.fromWire( instruction ) );
+		group.close();
 	}
 
 }
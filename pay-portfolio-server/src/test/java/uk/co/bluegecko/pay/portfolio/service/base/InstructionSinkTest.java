@@ -1,16 +1,40 @@
 package uk.co.bluegecko.pay.portfolio.service.base;
 
 
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.rabbitmq.client.Channel;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import uk.co.bluegecko.pay.portfolio.PortfolioApplication;
 import uk.co.bluegecko.pay.portfolio.service.InstructionService;
 import uk.co.bluegecko.pay.portfolio.service.v1.AccountWirePortfolioToV1;
@@ -18,6 +42,7 @@ import uk.co.bluegecko.pay.portfolio.service.v1.InstructionWirePortfolioToV1;
 import uk.co.bluegecko.pay.test.harness.TestHarness;
 import uk.co.bluegecko.pay.v1.portfolio.wire.Account;
 import uk.co.bluegecko.pay.v1.portfolio.wire.Instruction;
+import uk.co.bluegecko.pay.v1.portfolio.wire.InstructionEnvelope;
 
 
 @SpringBootTest( classes = PortfolioApplication.class, webEnvironment = WebEnvironment.NONE )
@@ -27,8 +52,12 @@ public class InstructionSinkTest extends TestHarness
 	@MockBean
 	private InstructionService instructionService;
 
+	private MeterRegistry meterRegistry;
+	private PlatformTransactionManager transactionManager;
+	private Channel channel;
 	private InstructionSink instructionSink;
 	private Instruction instruction;
+	private Instruction next;
 
 	@Before
 	public final void setUp()
@@ -36,7 +65,12 @@ public class InstructionSinkTest extends TestHarness
 		final AccountWirePortfolioToV1 accountWireService = new AccountWirePortfolioToV1();
 		final InstructionWirePortfolioToV1 instructionWireService = new InstructionWirePortfolioToV1(
 				accountWireService );
-		instructionSink = new InstructionSink( instructionWireService, instructionService );
+		meterRegistry = new SimpleMeterRegistry();
+		transactionManager = mock( PlatformTransactionManager.class );
+		channel = mock( Channel.class );
+		instructionSink = new InstructionSink( instructionWireService, instructionService, new InstructionGroup(
+				instructionService, new TransactionTemplate( transactionManager ), 3, 50, meterRegistry ), Clock
+						.fixed( Instant.ofEpochMilli( 1500 ), ZoneOffset.UTC ), meterRegistry );
 
 		final Account origin = Account.builder()
 				.sortCode( "123456" )
@@ -60,14 +94,164 @@ public class InstructionSinkTest extends TestHarness
 				.processingDate( DATE.toEpochDay() )
 				.reference( "A-REFERENCE" )
 				.build();
+		next = Instruction.builder()
+				.id( 11L )
+				.index( 2 )
+				.lineNo( 4 )
+				.origin( origin )
+				.destination( destination )
+				.transactionType( "99" )
+				.amount( "2002" )
+				.processingDate( DATE.toEpochDay() )
+				.reference( "B-REFERENCE" )
+				.build();
+	}
+
+	@After
+	public final void tearDown()
+	{
+		instructionSink.close();
 	}
 
 	@Test
 	public final void testInstructionSink()
 	{
-		instructionSink.instructionSink( instruction );
+		instructionSink.instructionSink( instruction, null, null, null, null );
+
+		verify( instructionService, only() ).saveAll( anyListOf(
+				uk.co.bluegecko.pay.portfolio.model.Instruction.class ) );
+		assertThat( meterRegistry.counter( InstructionSink.INSTRUCTIONS )
+				.count(), is( 1.0 ) );
+		assertThat( meterRegistry.timer( InstructionSink.LATENCY )
+				.count(), is( 0L ) );
+	}
+
+	@Test
+	public final void testInstructionEnvelopeSink()
+	{
+		instructionSink.instructionEnvelopeSink( InstructionEnvelope.builder()
+				.sequence( 1 )
+				.instructions( Arrays.asList( instruction, next ) )
+				.build(), 1000L, null, null, null );
+
+		@SuppressWarnings( "unchecked" )
+		final ArgumentCaptor< List< uk.co.bluegecko.pay.portfolio.model.Instruction > > saved = ArgumentCaptor
+				.forClass( List.class );
+		verify( instructionService, only() ).saveAll( saved.capture() );
+		assertThat( saved.getValue()
+				.get( 0 )
+				.index(), is( 1 ) );
+		assertThat( saved.getValue()
+				.get( 1 )
+				.index(), is( 2 ) );
+		assertThat( meterRegistry.counter( InstructionSink.INSTRUCTIONS )
+				.count(), is( 2.0 ) );
+		assertThat( meterRegistry.timer( InstructionSink.LATENCY )
+				.totalTime( TimeUnit.MILLISECONDS ), is( 500.0 ) );
+	}
+
+	@Test
+	public final void testGroupCommitBySize() throws IOException
+	{
+		instructionSink.instructionSink( instruction, null, channel, 1L, null );
+		verify( instructionService, never() ).saveAll( anyListOf(
+				uk.co.bluegecko.pay.portfolio.model.Instruction.class ) );
+		verify( channel, never() ).basicAck( 1L, false );
+
+		instructionSink.instructionEnvelopeSink( InstructionEnvelope.builder()
+				.sequence( 1 )
+				.instructions( Arrays.asList( instruction, next ) )
+				.build(), null, channel, 2L, null );
+
+		@SuppressWarnings( "unchecked" )
+		final ArgumentCaptor< List< uk.co.bluegecko.pay.portfolio.model.Instruction > > saved = ArgumentCaptor
+				.forClass( List.class );
+		verify( instructionService, only() ).saveAll( saved.capture() );
+		assertThat( saved.getValue()
+				.size(), is( 3 ) );
+		verify( transactionManager ).commit( any() );
+		verify( channel ).basicAck( 1L, false );
+		verify( channel ).basicAck( 2L, false );
+		assertThat( meterRegistry.counter( InstructionSink.INSTRUCTIONS )
+				.count(), is( 3.0 ) );
+		assertThat( meterRegistry.summary( InstructionGroup.SIZE )
+				.totalAmount(), is( 3.0 ) );
+		assertThat( meterRegistry.counter( InstructionGroup.FLUSHES, "cause", "size" )
+				.count(), is( 1.0 ) );
+	}
+
+	@Test
+	public final void testGroupCommitByTime() throws IOException
+	{
+		instructionSink.instructionSink( instruction, null, channel, 1L, null );
+
+		verify( channel, timeout( 1000 ) ).basicAck( 1L, false );
+		verify( instructionService, only() ).saveAll( anyListOf(
+				uk.co.bluegecko.pay.portfolio.model.Instruction.class ) );
+		assertThat( meterRegistry.counter( InstructionGroup.FLUSHES, "cause", "time" )
+				.count(), is( 1.0 ) );
+		assertThat( meterRegistry.timer( InstructionGroup.COMMIT )
+				.count(), is( 1L ) );
+	}
+
+	@Test
+	public final void testGroupRedelivered() throws IOException
+	{
+		doThrow( new DataAccessResourceFailureException( "down" ) ).when( instructionService )
+				.saveAll( anyListOf( uk.co.bluegecko.pay.portfolio.model.Instruction.class ) );
+
+		instructionSink.instructionSink( instruction, null, channel, 1L, null );
+		instructionSink.instructionEnvelopeSink( InstructionEnvelope.builder()
+				.sequence( 1 )
+				.instructions( Arrays.asList( instruction, next ) )
+				.build(), null, channel, 2L, null );
+
+		verify( transactionManager, never() ).commit( any() );
+		verify( channel ).basicNack( 1L, false, true );
+		verify( channel ).basicNack( 2L, false, true );
+		verify( channel, never() ).basicAck( 1L, false );
+		assertThat( meterRegistry.counter( InstructionGroup.FAILED )
+				.count(), is( 1.0 ) );
+		assertThat( meterRegistry.counter( InstructionSink.INSTRUCTIONS )
+				.count(), is( 0.0 ) );
+		assertThat( meterRegistry.counter( InstructionSink.DEAD_LETTERED )
+				.count(), is( 0.0 ) );
+	}
+
+	@Test
+	public final void testGroupDeadLettered() throws IOException
+	{
+		doThrow( new DataAccessResourceFailureException( "down" ) ).when( instructionService )
+				.saveAll( anyListOf( uk.co.bluegecko.pay.portfolio.model.Instruction.class ) );
+
+		instructionSink.instructionSink( instruction, null, channel, 1L, true );
+		instructionSink.instructionEnvelopeSink( InstructionEnvelope.builder()
+				.sequence( 1 )
+				.instructions( Arrays.asList( instruction, next ) )
+				.build(), null, channel, 2L, false );
+
+		// only the message already handed back once goes to the dead letter queue
+		verify( channel ).basicNack( 1L, false, false );
+		verify( channel ).basicNack( 2L, false, true );
+		assertThat( meterRegistry.counter( InstructionSink.DEAD_LETTERED )
+				.count(), is( 1.0 ) );
+	}
+
+	@Test
+	public final void testUnreadableMessageDeadLettered() throws IOException
+	{
+		final Instruction unreadable = Instruction.builder()
+				.index( 3 )
+				.build();
+
+		instructionSink.instructionSink( unreadable, null, channel, 1L, null );
 
-		verify( instructionService, only() ).save( any( uk.co.bluegecko.pay.portfolio.model.Instruction.class ) );
+		verify( channel ).basicNack( 1L, false, false );
+		verify( channel, never() ).basicAck( 1L, false );
+		verify( instructionService, never() ).saveAll( anyListOf(
+				uk.co.bluegecko.pay.portfolio.model.Instruction.class ) );
+		assertThat( meterRegistry.counter( InstructionSink.DEAD_LETTERED )
+				.count(), is( 1.0 ) );
 	}
 
 }
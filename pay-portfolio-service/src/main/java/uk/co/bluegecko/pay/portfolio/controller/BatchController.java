@@ -6,11 +6,16 @@ import static uk.co.bluegecko.pay.v1.portfolio.rest.BatchMapping.BATCH_BY_ID;
 import static uk.co.bluegecko.pay.v1.portfolio.rest.BatchMapping.BATCH_ID;
 
 import java.net.URI;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -19,10 +24,15 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import uk.co.bluegecko.pay.RestMapping.Page;
 import uk.co.bluegecko.pay.RestMapping.View;
 import uk.co.bluegecko.pay.common.controller.AbstractController;
+import uk.co.bluegecko.pay.portfolio.service.BatchCache;
 import uk.co.bluegecko.pay.portfolio.service.BatchService;
 import uk.co.bluegecko.pay.portfolio.service.v1.BatchWirePortfolioToV1;
 import uk.co.bluegecko.pay.v1.portfolio.wire.Batch;
@@ -34,20 +44,29 @@ public class BatchController extends AbstractController
 
 	private final BatchWirePortfolioToV1 batchWireService;
 	private final BatchService batchService;
+	private final BatchCache batchCache;
+	private final ObjectMapper mapper;
 
 	@Autowired
-	public BatchController( final BatchWirePortfolioToV1 batchWireService, final BatchService batchService )
+	public BatchController( final BatchWirePortfolioToV1 batchWireService, final BatchService batchService,
+			final BatchCache batchCache, @Qualifier( "objectMapper" ) final ObjectMapper mapper )
 	{
 		super();
 
 		this.batchWireService = batchWireService;
 		this.batchService = batchService;
+		this.batchCache = batchCache;
+		this.mapper = mapper;
 	}
 
 	@PostMapping( BATCH )
 	public HttpEntity< Void > postBatch( @RequestBody final Batch batch )
 	{
 		final Long batchId = batchService.createBatch( batchWireService.fromWire( batch ) );
+		if ( batchId != null )
+		{
+			batchCache.invalidate( Collections.singleton( batchId ) );
+		}
 
 		final URI location = UriComponentsBuilder.fromPath( BATCH_BY_ID )
 				.buildAndExpand( batchId )
@@ -60,21 +79,42 @@ public class BatchController extends AbstractController
 	@GetMapping( BATCH_BY_ID )
 	public HttpEntity< Batch > getBatch( @PathVariable( BATCH_ID ) final long batchId )
 	{
-		final Batch batch = batchWireService.toWire( batchService.retreiveBatchById( batchId ) );
+		final Batch batch = batchCache.wireBatch( batchId );
 
 		return ResponseEntity.ok( batch );
 	}
 
 	@GetMapping( BATCH )
 	public HttpEntity< MappingJacksonValue > getBatches(
-			@RequestParam( name = View.PARAM, defaultValue = View.SUMMARY ) final Class< ? > view )
+			@RequestParam( name = View.PARAM, defaultValue = View.SUMMARY ) final Class< ? > view,
+			@RequestParam( name = Page.AFTER, defaultValue = "0" ) final long after,
+			@RequestParam( name = Page.LIMIT, required = false ) final Integer limit )
 	{
-		final List< Batch > batches = batchService.retreiveBatches()
+		// paged only when a limit is asked for, so callers that have always had the whole list still get it
+		final int size = limit == null ? Integer.MAX_VALUE : limit( limit );
+		final List< Batch > batches = batchService.retreiveBatches( after, size )
 				.stream()
-				.map( batchWireService::toWire )
+				.map( batchCache::toWire )
 				.collect( Collectors.toList() );
 
-		return ResponseEntity.ok( entityWithView( view, batches ) );
+		return ResponseEntity.ok()
+				.headers( limit == null ? new HttpHeaders() : next( batches, size, Batch::id ) )
+				.body( entityWithView( view, batches ) );
+	}
+
+	@GetMapping( path = BATCH, produces = Page.NDJSON )
+	public ResponseEntity< StreamingResponseBody > streamBatches(
+			@RequestParam( name = View.PARAM, defaultValue = View.SUMMARY ) final Class< ? > view,
+			@RequestParam( name = Page.AFTER, defaultValue = "0" ) final long after )
+	{
+		// converted directly rather than through the cache, so an export does not evict the batches being polled
+		final StreamingResponseBody body = lines( mapper.writerWithView( view ),
+				( final Consumer< Batch > row ) -> batchService.streamBatches( after, batch -> row.accept(
+						batchWireService.toWire( batch ) ) ) );
+
+		return ResponseEntity.ok()
+				.contentType( MediaType.parseMediaType( Page.NDJSON ) )
+				.body( body );
 	}
 
 }
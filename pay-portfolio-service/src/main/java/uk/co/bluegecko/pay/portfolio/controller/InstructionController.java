@@ -0,0 +1,83 @@
+package uk.co.bluegecko.pay.portfolio.controller;
+
+
+import static uk.co.bluegecko.pay.v1.portfolio.rest.BatchMapping.BATCH_ID;
+import static uk.co.bluegecko.pay.v1.portfolio.rest.BatchMapping.INSTRUCTIONS;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJacksonValue;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import uk.co.bluegecko.pay.RestMapping.Page;
+import uk.co.bluegecko.pay.RestMapping.View;
+import uk.co.bluegecko.pay.common.controller.AbstractController;
+import uk.co.bluegecko.pay.portfolio.service.InstructionService;
+import uk.co.bluegecko.pay.portfolio.service.v1.InstructionWirePortfolioToV1;
+import uk.co.bluegecko.pay.v1.portfolio.wire.Instruction;
+
+
+@RestController
+public class InstructionController extends AbstractController
+{
+
+	private final InstructionWirePortfolioToV1 instructionWireService;
+	private final InstructionService instructionService;
+	private final ObjectMapper mapper;
+
+	@Autowired
+	public InstructionController( final InstructionWirePortfolioToV1 instructionWireService,
+			final InstructionService instructionService, @Qualifier( "objectMapper" ) final ObjectMapper mapper )
+	{
+		super();
+
+		this.instructionWireService = instructionWireService;
+		this.instructionService = instructionService;
+		this.mapper = mapper;
+	}
+
+	@GetMapping( INSTRUCTIONS )
+	public HttpEntity< MappingJacksonValue > getInstructions( @PathVariable( BATCH_ID ) final long batchId,
+			@RequestParam( name = View.PARAM, defaultValue = View.SUMMARY ) final Class< ? > view,
+			@RequestParam( name = Page.AFTER, required = false ) final Integer after,
+			@RequestParam( name = Page.LIMIT, defaultValue = Page.DEFAULT_LIMIT ) final int limit )
+	{
+		final int size = limit( limit );
+		final List< Instruction > instructions = instructionService.retreiveInstructions( batchId, after, size )
+				.stream()
+				.map( instructionWireService::toWire )
+				.collect( Collectors.toList() );
+
+		return ResponseEntity.ok()
+				.headers( next( instructions, size, Instruction::index ) )
+				.body( entityWithView( view, instructions ) );
+	}
+
+	@GetMapping( path = INSTRUCTIONS, produces = Page.NDJSON )
+	public ResponseEntity< StreamingResponseBody > streamInstructions( @PathVariable( BATCH_ID ) final long batchId,
+			@RequestParam( name = View.PARAM, defaultValue = View.SUMMARY ) final Class< ? > view,
+			@RequestParam( name = Page.AFTER, required = false ) final Integer after )
+	{
+		final StreamingResponseBody body = lines( mapper.writerWithView( view ),
+				( final Consumer< Instruction > row ) -> instructionService.streamInstructions( batchId, after,
+						instruction -> row.accept( instructionWireService.toWire( instruction ) ) ) );
+
+		return ResponseEntity.ok()
+				.contentType( MediaType.parseMediaType( Page.NDJSON ) )
+				.body( body );
+	}
+
+}
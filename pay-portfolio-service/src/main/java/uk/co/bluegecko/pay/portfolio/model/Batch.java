@@ -2,6 +2,7 @@ package uk.co.bluegecko.pay.portfolio.model;
 
 
 import java.util.Optional;
+import java.util.Set;
 
 
 public interface Batch
@@ -27,4 +28,6 @@ public interface Batch
 
 	public int version();
 
+	public Set< Total > totals();
+
 }
@@ -0,0 +1,21 @@
+package uk.co.bluegecko.pay.portfolio.model;
+
+
+import java.math.BigDecimal;
+
+
+public interface Total
+{
+
+	public enum Type
+	{
+		DEBIT, CREDIT, CONTRA, AUDDIS, WARNING, ERROR
+	}
+
+	public Type type();
+
+	public int count();
+
+	public BigDecimal amount();
+
+}
@@ -1,12 +1,15 @@
 package uk.co.bluegecko.pay.portfolio.model.base;
 
 
+import java.util.Collections;
 import java.util.Optional;
+import java.util.Set;
 
 import lombok.Data;
 import lombok.experimental.Accessors;
 import uk.co.bluegecko.pay.portfolio.model.Batch;
 import uk.co.bluegecko.pay.portfolio.model.Portfolio;
+import uk.co.bluegecko.pay.portfolio.model.Total;
 
 
 @Data
@@ -24,6 +27,7 @@ public final class BatchBase implements Batch
 	private int sequence;
 	private int generation;
 	private int version;
+	private Set< Total > totals = Collections.emptySet();
 
 	public BatchBase portfolio( final Portfolio portfolio )
 	{
@@ -0,0 +1,20 @@
+package uk.co.bluegecko.pay.portfolio.model.base;
+
+
+import java.math.BigDecimal;
+
+import lombok.Value;
+import lombok.experimental.Accessors;
+import uk.co.bluegecko.pay.portfolio.model.Total;
+
+
+@Value
+@Accessors( fluent = true )
+public class TotalBase implements Total
+{
+
+	private final Type type;
+	private final int count;
+	private final BigDecimal amount;
+
+}
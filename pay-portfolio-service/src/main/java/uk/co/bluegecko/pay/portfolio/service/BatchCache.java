@@ -0,0 +1,22 @@
+package uk.co.bluegecko.pay.portfolio.service;
+
+
+import java.util.Collection;
+
+import uk.co.bluegecko.pay.portfolio.model.Batch;
+
+
+public interface BatchCache
+{
+
+	public Batch batch( long batchId );
+
+	public uk.co.bluegecko.pay.v1.portfolio.wire.Batch wireBatch( long batchId );
+
+	public uk.co.bluegecko.pay.v1.portfolio.wire.Batch toWire( Batch batch );
+
+	public void invalidate( Collection< Long > batchIds );
+
+	public void refresh( Collection< Long > batchIds );
+
+}
@@ -2,6 +2,7 @@ package uk.co.bluegecko.pay.portfolio.service;
 
 
 import java.util.List;
+import java.util.function.Consumer;
 
 import uk.co.bluegecko.pay.portfolio.model.Batch;
 
@@ -15,4 +16,8 @@ public interface BatchService
 
 	public List< Batch > retreiveBatches();
 
+	public List< Batch > retreiveBatches( long after, int limit );
+
+	public void streamBatches( long after, Consumer< ? super Batch > consumer );
+
 }
@@ -0,0 +1,20 @@
+package uk.co.bluegecko.pay.portfolio.service;
+
+
+import java.util.List;
+import java.util.Set;
+
+import uk.co.bluegecko.pay.portfolio.model.Instruction;
+import uk.co.bluegecko.pay.portfolio.model.Total;
+
+
+public interface BatchTotalService
+{
+
+	public void add( List< ? extends Instruction > instructions );
+
+	public Set< Total > totals( long batchId );
+
+	public Set< Total > totalsUncached( long batchId );
+
+}
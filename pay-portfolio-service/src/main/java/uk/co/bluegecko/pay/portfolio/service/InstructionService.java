@@ -1,6 +1,9 @@
 package uk.co.bluegecko.pay.portfolio.service;
 
 
+import java.util.List;
+import java.util.function.Consumer;
+
 import uk.co.bluegecko.pay.portfolio.model.Instruction;
 
 
@@ -9,4 +12,10 @@ public interface InstructionService
 
 	public void save( Instruction instruction );
 
+	public void saveAll( List< ? extends Instruction > instructions );
+
+	public List< Instruction > retreiveInstructions( long batchId, Integer after, int limit );
+
+	public void streamInstructions( long batchId, Integer after, Consumer< ? super Instruction > consumer );
+
 }
@@ -0,0 +1,129 @@
+package uk.co.bluegecko.pay.portfolio.service.base;
+
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.experimental.Accessors;
+import uk.co.bluegecko.pay.portfolio.model.Batch;
+import uk.co.bluegecko.pay.portfolio.service.BatchCache;
+import uk.co.bluegecko.pay.portfolio.service.BatchService;
+import uk.co.bluegecko.pay.portfolio.service.v1.BatchWirePortfolioToV1;
+
+
+// batches polled over and over are loaded and converted once until they expire or are evicted for space, and are
+// loaded again in place when instructions are saved to them; a miss is loaded by the first caller while any others
+// asking for the same batch wait on it rather than load it again
+@Service
+public class BatchCacheBase implements BatchCache
+{
+
+	public static final String CACHE = "pay.batch.cache";
+
+	private final BatchService batchService;
+	private final BatchWirePortfolioToV1 batchWireService;
+	private final Cache< Long, Entry > cache;
+
+	@Autowired
+	public BatchCacheBase( final BatchService batchService, final BatchWirePortfolioToV1 batchWireService,
+			final MeterRegistry meterRegistry, @Value( "${pay.batch.cache.size:1000}" ) final long size,
+			@Value( "${pay.batch.cache.millis:30000}" ) final long millis )
+	{
+		this( batchService, batchWireService, meterRegistry, size, millis, Ticker.systemTicker() );
+	}
+
+	public BatchCacheBase( final BatchService batchService, final BatchWirePortfolioToV1 batchWireService,
+			final MeterRegistry meterRegistry, final long size, final long millis, final Ticker ticker )
+	{
+		super();
+
+		this.batchService = batchService;
+		this.batchWireService = batchWireService;
+		cache = Caffeine.newBuilder()
+				.maximumSize( size )
+				.expireAfterWrite( millis, TimeUnit.MILLISECONDS )
+				.ticker( ticker )
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor( meterRegistry, cache, CACHE );
+	}
+
+	@Override
+	public Batch batch( final long batchId )
+	{
+		final Entry entry = cache.get( batchId, this::load );
+		return entry == null ? null : entry.batch();
+	}
+
+	@Override
+	public uk.co.bluegecko.pay.v1.portfolio.wire.Batch wireBatch( final long batchId )
+	{
+		final Entry entry = cache.get( batchId, this::load );
+		return entry == null ? null : entry.wire();
+	}
+
+	// a listed batch already cached is taken as it is, but one that is not is converted without being cached, so a
+	// page of batches nobody polls cannot evict those that are
+	@Override
+	public uk.co.bluegecko.pay.v1.portfolio.wire.Batch toWire( final Batch batch )
+	{
+		final Entry entry = batch.id() == null ? null : cache.getIfPresent( batch.id() );
+		return entry == null ? batchWireService.toWire( batch ) : entry.wire();
+	}
+
+	@Override
+	public void invalidate( final Collection< Long > batchIds )
+	{
+		cache.invalidateAll( batchIds );
+	}
+
+	// only batches already cached are loaded again, replacing their entries so pollers keep hitting rather than all
+	// missing at once; those not cached are left to be loaded when asked for
+	@Override
+	public void refresh( final Collection< Long > batchIds )
+	{
+		for ( final Long batchId : batchIds )
+		{
+			cache.asMap()
+					.computeIfPresent( batchId, ( id, entry ) -> load( id ) );
+		}
+	}
+
+	public CacheStats stats()
+	{
+		return cache.stats();
+	}
+
+	protected Entry load( final Long batchId )
+	{
+		final Batch batch = batchService.retreiveBatchById( batchId );
+		return batch == null ? null : entry( batch );
+	}
+
+	protected Entry entry( final Batch batch )
+	{
+		return new Entry( batch, batchWireService.toWire( batch ) );
+	}
+
+	@lombok.Value
+	@Accessors( fluent = true )
+	protected static class Entry
+	{
+
+		private final Batch batch;
+		private final uk.co.bluegecko.pay.v1.portfolio.wire.Batch wire;
+
+	}
+
+}
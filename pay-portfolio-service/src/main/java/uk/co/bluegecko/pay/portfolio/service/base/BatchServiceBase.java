@@ -3,18 +3,32 @@ package uk.co.bluegecko.pay.portfolio.service.base;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import uk.co.bluegecko.pay.portfolio.model.Batch;
 import uk.co.bluegecko.pay.portfolio.model.base.BatchBase;
 import uk.co.bluegecko.pay.portfolio.service.BatchService;
+import uk.co.bluegecko.pay.portfolio.service.BatchTotalService;
 
 
 @Service
 public class BatchServiceBase implements BatchService
 {
 
+	private final BatchTotalService batchTotalService;
+
+	@Autowired
+	public BatchServiceBase( final BatchTotalService batchTotalService )
+	{
+		super();
+
+		this.batchTotalService = batchTotalService;
+	}
+
 	@Override
 	public Long createBatch( final Batch batch )
 	{
@@ -24,13 +38,40 @@ public class BatchServiceBase implements BatchService
 	@Override
 	public Batch retreiveBatchById( final long batchId )
 	{
-		return new BatchBase( batchId ).index( ( int ) ( 10 + batchId ) );
+		return new BatchBase( batchId ).index( ( int ) ( 10 + batchId ) )
+				.totals( batchTotalService.totals( batchId ) );
 	}
 
+	// listed batches have their totals read without caching them, so a listing or an export of every batch does not
+	// push out the totals of those being polled
 	@Override
 	public List< Batch > retreiveBatches()
 	{
-		return Arrays.asList( retreiveBatchById( 1 ), retreiveBatchById( 2 ) );
+		return Arrays.asList( listed( 1 ), listed( 2 ) );
+	}
+
+	// pages run in id order from the last id seen, so each starts where the previous ended however many are added
+	@Override
+	public List< Batch > retreiveBatches( final long after, final int limit )
+	{
+		return retreiveBatches().stream()
+				.filter( ( final Batch batch ) -> batch.id() > after )
+				.limit( limit )
+				.collect( Collectors.toList() );
+	}
+
+	@Override
+	public void streamBatches( final long after, final Consumer< ? super Batch > consumer )
+	{
+		retreiveBatches().stream()
+				.filter( ( final Batch batch ) -> batch.id() > after )
+				.forEach( consumer );
+	}
+
+	protected Batch listed( final long batchId )
+	{
+		return new BatchBase( batchId ).index( ( int ) ( 10 + batchId ) )
+				.totals( batchTotalService.totalsUncached( batchId ) );
 	}
 
 }
@@ -0,0 +1,362 @@
+package uk.co.bluegecko.pay.portfolio.service.base;
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import uk.co.bluegecko.pay.bacs.std18.model.TransactionCode;
+import uk.co.bluegecko.pay.bacs.std18.model.TransactionType;
+import uk.co.bluegecko.pay.common.model.Amounts;
+import uk.co.bluegecko.pay.portfolio.model.Account;
+import uk.co.bluegecko.pay.portfolio.model.Instruction;
+import uk.co.bluegecko.pay.portfolio.model.Total;
+import uk.co.bluegecko.pay.portfolio.model.Total.Type;
+import uk.co.bluegecko.pay.portfolio.model.base.TotalBase;
+import uk.co.bluegecko.pay.portfolio.service.BatchTotalService;
+
+
+// the instructions saved in a transaction are summed there and added to BatchTotal in the same transaction, so the
+// totals commit or roll back with them and survive the node; a batch is never summed from its instructions. Reads
+// are served from counters cached per batch, which commits on this node add to and which expire so that totals
+// written by other nodes are seen. Counting exactly once costs a row lock per batch and type held until commit, so
+// consumers saving the same batch commit one after another; the rows are written just before the commit, after
+// the instructions, so the locks are held only while committing, and in batch order, so two never wait on each other
+@Service
+public class BatchTotalServiceBase implements BatchTotalService
+{
+
+	public static final String PERSISTED = "pay.batch.totals.persisted";
+	public static final String CACHE = "pay.batch.totals.cache";
+
+	private static final Type[] TYPES = Type.values();
+
+	private static final String SELECT = "SELECT Type, Cnt, Amount FROM portfolio.BatchTotal WHERE Batch = ?";
+	private static final String UPDATE = "UPDATE portfolio.BatchTotal SET Cnt = Cnt + ?, Amount = Amount + ? "
+			+ "WHERE Batch = ? AND Type = ?";
+	private static final String INSERT = "INSERT INTO portfolio.BatchTotal (Cnt, Amount, Batch, Type) VALUES (?, ?, ?, ?)";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate committed;
+	private final Cache< Long, Counters > batches;
+	private final Counter persisted;
+
+	@Autowired
+	public BatchTotalServiceBase( final JdbcTemplate jdbcTemplate, final PlatformTransactionManager transactionManager,
+			final MeterRegistry meterRegistry, @Value( "${pay.batch.totals.size:1000}" ) final long size,
+			@Value( "${pay.batch.totals.millis:1000}" ) final long millis )
+	{
+		this( jdbcTemplate, transactionManager, meterRegistry, size, millis, Ticker.systemTicker() );
+	}
+
+	public BatchTotalServiceBase( final JdbcTemplate jdbcTemplate, final PlatformTransactionManager transactionManager,
+			final MeterRegistry meterRegistry, final long size, final long millis, final Ticker ticker )
+	{
+		super();
+
+		this.jdbcTemplate = jdbcTemplate;
+		// loaded outside any transaction the caller has open, so totals it has not yet committed are never cached
+		committed = new TransactionTemplate( transactionManager );
+		committed.setPropagationBehavior( TransactionDefinition.PROPAGATION_NOT_SUPPORTED );
+		batches = Caffeine.newBuilder()
+				.maximumSize( size )
+				.expireAfterWrite( millis, TimeUnit.MILLISECONDS )
+				.ticker( ticker )
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor( meterRegistry, batches, CACHE );
+		persisted = meterRegistry.counter( PERSISTED );
+	}
+
+	// a type first seen by two nodes at once fails one insert, and with it the transaction saving its instructions,
+	// which finds the row there when it is tried again
+	@Override
+	public void add( final List< ? extends Instruction > instructions )
+	{
+		final Map< Long, long[] > deltas = sum( instructions );
+		if ( deltas.isEmpty() )
+		{
+			return;
+		}
+
+		if ( TransactionSynchronizationManager.isSynchronizationActive() )
+		{
+			TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter()
+				{
+
+					private long before;
+
+					// a failed write here rolls the transaction back, instructions and all
+					@Override
+					public void beforeCommit( final boolean readOnly )
+					{
+						before = System.nanoTime();
+						write( deltas );
+					}
+
+					@Override
+					public void afterCommit()
+					{
+						counted( deltas, before );
+					}
+
+				} );
+		}
+		else
+		{
+			final long before = System.nanoTime();
+			write( deltas );
+			counted( deltas, before );
+		}
+	}
+
+	@Override
+	public Set< Total > totals( final long batchId )
+	{
+		final Counters counters = batches.get( batchId, this::load );
+		return counters == null ? Collections.emptySet() : counters.totals();
+	}
+
+	// for batches read in passing, such as a listing or an export, which would otherwise push out those being polled
+	@Override
+	public Set< Total > totalsUncached( final long batchId )
+	{
+		Counters counters = batches.getIfPresent( batchId );
+		if ( counters == null )
+		{
+			counters = load( batchId );
+		}
+		return counters == null ? Collections.emptySet() : counters.totals();
+	}
+
+	public CacheStats stats()
+	{
+		return batches.stats();
+	}
+
+	// instructions arrive in runs from the same batch, so the map is only consulted when the batch changes; it is
+	// kept in batch order, which is the order the rows are locked in
+	protected Map< Long, long[] > sum( final List< ? extends Instruction > instructions )
+	{
+		final Map< Long, long[] > deltas = new TreeMap<>();
+		Long current = null;
+		long[] delta = null;
+		for ( final Instruction instruction : instructions )
+		{
+			final Long batchId = instruction.batch() == null ? null
+					: instruction.batch()
+							.id();
+			if ( batchId == null )
+			{
+				continue;
+			}
+			if ( !batchId.equals( current ) )
+			{
+				current = batchId;
+				delta = deltas.computeIfAbsent( batchId, id -> new long[2 * TYPES.length] );
+			}
+			final int i = type( instruction ).ordinal();
+			delta[2 * i]++;
+			delta[2 * i + 1] += instruction.amount() == null ? 0 : Amounts.toPence( instruction.amount() );
+		}
+		return deltas;
+	}
+
+	protected void write( final Map< Long, long[] > deltas )
+	{
+		final List< Object[] > rows = new ArrayList<>();
+		deltas.forEach( ( batchId, delta ) ->
+			{
+				for ( final Type type : TYPES )
+				{
+					final int i = type.ordinal();
+					if ( delta[2 * i] != 0 || delta[2 * i + 1] != 0 )
+					{
+						rows.add( new Object[]
+							{ delta[2 * i], delta[2 * i + 1], batchId, type.name() } );
+					}
+				}
+			} );
+
+		final int[] updated = jdbcTemplate.batchUpdate( UPDATE, rows );
+		final List< Object[] > inserts = new ArrayList<>();
+		for ( int i = 0; i < updated.length; i++ )
+		{
+			if ( updated[i] == 0 )
+			{
+				inserts.add( rows.get( i ) );
+			}
+		}
+		if ( !inserts.isEmpty() )
+		{
+			jdbcTemplate.batchUpdate( INSERT, inserts );
+		}
+		persisted.increment( rows.size() );
+	}
+
+	// counters loaded before the commit are added to; any loaded since may already hold the deltas, so they are
+	// dropped and loaded again rather than risk counting them twice
+	protected void counted( final Map< Long, long[] > deltas, final long before )
+	{
+		deltas.forEach( ( batchId, delta ) ->
+			{
+				final Counters counters = batches.getIfPresent( batchId );
+				if ( counters == null )
+				{
+					return;
+				}
+				if ( counters.loaded() < before )
+				{
+					counters.add( delta );
+				}
+				else
+				{
+					batches.asMap()
+							.remove( batchId, counters );
+				}
+			} );
+	}
+
+	// a batch with no totals is not cached, so asking after unknown batches fills nothing
+	protected Counters load( final Long batchId )
+	{
+		final Counters loaded = new Counters( System.nanoTime() );
+		final boolean found = committed.execute( status ->
+			{
+				final boolean[] rows = new boolean[1];
+				jdbcTemplate.query( SELECT, ( RowCallbackHandler ) rs ->
+					{
+						loaded.load( Type.valueOf( rs.getString( 1 ) ), rs.getLong( 2 ), rs.getLong( 3 ) );
+						rows[0] = true;
+					}, batchId );
+				return rows[0];
+			} );
+		return found ? loaded : null;
+	}
+
+	protected Type type( final Instruction instruction )
+	{
+		final TransactionCode code;
+		try
+		{
+			code = TransactionCode.byCode( instruction.transactionType() );
+		}
+		catch ( final IllegalArgumentException ex )
+		{
+			return Type.ERROR;
+		}
+
+		if ( code.transactionType() == TransactionType.AUDDIS )
+		{
+			return Type.AUDDIS;
+		}
+		if ( instruction.amount() == null )
+		{
+			return Type.ERROR;
+		}
+		if ( isContra( instruction ) )
+		{
+			return Type.CONTRA;
+		}
+		if ( instruction.amount()
+				.signum() == 0 )
+		{
+			return Type.WARNING;
+		}
+		return code.transactionType() == TransactionType.DEBIT ? Type.DEBIT : Type.CREDIT;
+	}
+
+	// a contra balances the batch against the originator's own account, so it is paid to the account it is from
+	protected boolean isContra( final Instruction instruction )
+	{
+		final Account origin = instruction.origin();
+		final Account destination = instruction.destination();
+		return origin != null && destination != null && Objects.equals( origin.sortCode(), destination.sortCode() )
+				&& Objects.equals( origin.number(), destination.number() );
+	}
+
+	// an adder per type for the count and the pence, so threads reading and committing to the same batch spread
+	// over cells rather than queue on a lock
+	protected static final class Counters
+	{
+
+		private final long loaded;
+		private final LongAdder[] counts;
+		private final LongAdder[] amounts;
+
+		protected Counters( final long loaded )
+		{
+			this.loaded = loaded;
+			counts = new LongAdder[TYPES.length];
+			amounts = new LongAdder[TYPES.length];
+			for ( int i = 0; i < TYPES.length; i++ )
+			{
+				counts[i] = new LongAdder();
+				amounts[i] = new LongAdder();
+			}
+		}
+
+		protected long loaded()
+		{
+			return loaded;
+		}
+
+		protected void add( final long[] delta )
+		{
+			for ( int i = 0; i < TYPES.length; i++ )
+			{
+				counts[i].add( delta[2 * i] );
+				amounts[i].add( delta[2 * i + 1] );
+			}
+		}
+
+		protected void load( final Type type, final long count, final long pence )
+		{
+			counts[type.ordinal()].add( count );
+			amounts[type.ordinal()].add( pence );
+		}
+
+		protected Set< Total > totals()
+		{
+			final Set< Total > totals = new LinkedHashSet<>();
+			for ( final Type type : TYPES )
+			{
+				final long count = counts[type.ordinal()].sum();
+				if ( count > 0 )
+				{
+					totals.add( new TotalBase( type, ( int ) Math.min( count, Integer.MAX_VALUE ),
+							Amounts.fromPence( amounts[type.ordinal()].sum() ) ) );
+				}
+			}
+			return totals;
+		}
+
+	}
+
+}
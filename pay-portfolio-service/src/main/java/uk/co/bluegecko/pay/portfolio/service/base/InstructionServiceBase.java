@@ -1,11 +1,45 @@
 package uk.co.bluegecko.pay.portfolio.service.base;
 
 
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IntSummaryStatistics;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import uk.co.bluegecko.pay.common.logging.LogSampler;
+import uk.co.bluegecko.pay.portfolio.model.Account;
+import uk.co.bluegecko.pay.portfolio.model.Batch;
 import uk.co.bluegecko.pay.portfolio.model.Instruction;
+import uk.co.bluegecko.pay.portfolio.model.base.AccountBase;
+import uk.co.bluegecko.pay.portfolio.model.base.BatchBase;
+import uk.co.bluegecko.pay.portfolio.model.base.InstructionBase;
+import uk.co.bluegecko.pay.portfolio.service.BatchCache;
+import uk.co.bluegecko.pay.portfolio.service.BatchTotalService;
 import uk.co.bluegecko.pay.portfolio.service.InstructionService;
 
 
@@ -13,12 +47,317 @@ import uk.co.bluegecko.pay.portfolio.service.InstructionService;
 public class InstructionServiceBase implements InstructionService
 {
 
+	public static final String SAVED = "pay.instructions.saved";
+	public static final String SEQUENCE = "portfolio.seq_Instruction";
+	public static final int INCREMENT = 50;
+
 	private static final Logger logger = LoggerFactory.getLogger( InstructionService.class );
+	private static final int LOG_EVERY = 1000;
+	private static final int BATCH_SIZE = 500;
+	private static final int FETCH_SIZE = 500;
+	private static final Account EMPTY = new AccountBase( null );
+
+	private static final String INSERT = "INSERT INTO portfolio.Instruction (Id, Version, Batch, Idx, lineNo, origin, "
+			+ "originNumber, originName, originType, destination, destinationSortCode, destinationName, "
+			+ "destinationType, transactionType, rti, amount, reference, processingDate) "
+			+ "VALUES (?, 0, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	private static final String EXISTING = "SELECT Idx FROM portfolio.Instruction WHERE Batch = ? AND Idx BETWEEN ? AND ?";
+	private static final String BATCH_EXISTS = "SELECT COUNT(*) FROM portfolio.Batch WHERE Id = ?";
+	private static final String BATCH_INSERT = "INSERT INTO portfolio.Batch (Id, Version, Idx, Name) VALUES (?, 0, 0, ?)";
+	private static final String BATCH_NAME = "UPLOAD-";
+	private static final String SELECT = "SELECT Id, Idx, lineNo, origin, originNumber, originName, originType, "
+			+ "destination, destinationSortCode, destinationName, destinationType, transactionType, rti, amount, "
+			+ "reference, processingDate FROM portfolio.Instruction WHERE Batch = ? ORDER BY Idx";
+	private static final String SELECT_AFTER = "SELECT Id, Idx, lineNo, origin, originNumber, originName, originType, "
+			+ "destination, destinationSortCode, destinationName, destinationType, transactionType, rti, amount, "
+			+ "reference, processingDate FROM portfolio.Instruction WHERE Batch = ? AND Idx > ? ORDER BY Idx";
+
+	private final JdbcTemplate jdbcTemplate;
+	private final TransactionTemplate transactionTemplate;
+	private final TransactionTemplate exportTemplate;
+	private final BatchTotalService batchTotalService;
+	private final BatchCache batchCache;
+	private final PooledSequence ids;
+	private final int batchSize;
+	private final Counter saved;
+	private final LogSampler sampler;
+
+	@Autowired
+	public InstructionServiceBase( final JdbcTemplate jdbcTemplate, final PlatformTransactionManager transactionManager,
+			final BatchTotalService batchTotalService, final BatchCache batchCache, final MeterRegistry meterRegistry )
+	{
+		this( jdbcTemplate, transactionManager, batchTotalService, batchCache, BATCH_SIZE, meterRegistry );
+	}
+
+	public InstructionServiceBase( final JdbcTemplate jdbcTemplate, final PlatformTransactionManager transactionManager,
+			final BatchTotalService batchTotalService, final BatchCache batchCache, final int batchSize,
+			final MeterRegistry meterRegistry )
+	{
+		super();
+
+		this.jdbcTemplate = jdbcTemplate;
+		transactionTemplate = new TransactionTemplate( transactionManager );
+		exportTemplate = new TransactionTemplate( transactionManager );
+		exportTemplate.setReadOnly( true );
+		this.batchTotalService = batchTotalService;
+		this.batchCache = batchCache;
+		this.batchSize = batchSize;
+		ids = new PooledSequence( jdbcTemplate, SEQUENCE, INCREMENT );
+		saved = meterRegistry.counter( SAVED );
+		sampler = new LogSampler( LOG_EVERY );
+	}
 
 	@Override
 	public void save( final Instruction instruction )
 	{
-		logger.info( "Saved: {}", instruction );
+		saveAll( Collections.singletonList( instruction ) );
+	}
+
+	// written as JDBC batches, with ids from the pooled sequence rather than one round trip per row, in a transaction
+	// of their own unless joining the caller's so the totals are written with them
+	@Override
+	public void saveAll( final List< ? extends Instruction > instructions )
+	{
+		transactionTemplate.execute( status ->
+			{
+				saved( instructions );
+				return null;
+			} );
+	}
+
+	protected void saved( final List< ? extends Instruction > instructions )
+	{
+		final List< Instruction > unique = unique( instructions );
+		batches( unique );
+		// the keys already there are read first, so a redelivered instruction is never inserted at all and nothing
+		// rests on how a driver carries on, or aborts, after a failed row; one saved by another node in between
+		// fails the transaction, and is found here when redelivered
+		final List< Instruction > inserted = missing( unique );
+		if ( inserted.size() < unique.size() )
+		{
+			logger.warn( "{} of {} instructions already saved", unique.size() - inserted.size(), unique.size() );
+		}
+		insert( inserted );
+		total( inserted );
+
+		saved.increment( unique.size() );
+		for ( final Instruction instruction : unique )
+		{
+			if ( sampler.sample() )
+			{
+				logger.info( "Saved: {} ({} saved)", instruction, sampler.count() );
+			}
+		}
+	}
+
+	// keyed on uk_Instruction_Idx, so a page is a range read from the last index seen rather than a skip over those
+	// already returned; without one it starts from the first, whatever its index
+	@Override
+	public List< Instruction > retreiveInstructions( final long batchId, final Integer after, final int limit )
+	{
+		final Batch batch = new BatchBase( batchId );
+		return jdbcTemplate.query( select( batchId, after, limit, 0 ), ( rs, rowNum ) -> mapRow( rs, batch ) );
+	}
+
+	// each row is handed on as it is read, so nothing is held beyond the driver's fetch; that needs a driver that
+	// keeps a cursor open, which PostgreSQL does only with autocommit off, hence the read-only transaction, and MySQL
+	// only with a fetch size of Integer.MIN_VALUE or useCursorFetch=true on the url, otherwise it reads the lot
+	@Override
+	public void streamInstructions( final long batchId, final Integer after,
+			final Consumer< ? super Instruction > consumer )
+	{
+		final Batch batch = new BatchBase( batchId );
+		exportTemplate.execute( status ->
+			{
+				jdbcTemplate.query( select( batchId, after, 0, FETCH_SIZE ), ( RowCallbackHandler ) rs -> consumer
+						.accept( mapRow( rs, batch ) ) );
+				return null;
+			} );
+	}
+
+	protected PreparedStatementCreator select( final long batchId, final Integer after, final int limit,
+			final int fetchSize )
+	{
+		return connection ->
+			{
+				final PreparedStatement statement = connection.prepareStatement( after == null ? SELECT
+						: SELECT_AFTER );
+				statement.setLong( 1, batchId );
+				if ( after != null )
+				{
+					statement.setInt( 2, after );
+				}
+				statement.setMaxRows( limit );
+				statement.setFetchSize( fetchSize );
+				return statement;
+			};
+	}
+
+	protected Instruction mapRow( final ResultSet rs, final Batch batch ) throws SQLException
+	{
+		final int lineNo = rs.getInt( "lineNo" );
+		final Integer line = rs.wasNull() ? null : lineNo;
+		final Date processingDate = rs.getDate( "processingDate" );
+		final String transactionType = rs.getString( "transactionType" );
+
+		return new InstructionBase( rs.getLong( "Id" ), batch, line ).index( rs.getInt( "Idx" ) )
+				.origin( new AccountBase( null ).sortCode( rs.getString( "origin" ) )
+						.number( rs.getString( "originNumber" ) )
+						.name( rs.getString( "originName" ) )
+						.type( rs.getString( "originType" ) ) )
+				.destination( new AccountBase( null ).sortCode( rs.getString( "destinationSortCode" ) )
+						.number( rs.getString( "destination" ) )
+						.name( rs.getString( "destinationName" ) )
+						.type( rs.getString( "destinationType" ) ) )
+				.transactionType( transactionType == null ? null : transactionType.trim() )
+				.rti( rs.getString( "rti" ) )
+				.amount( rs.getBigDecimal( "amount" ) )
+				.reference( rs.getString( "reference" ) )
+				.processingDate( processingDate == null ? null : processingDate.toLocalDate() );
+	}
+
+	// only rows written here are totalled, in the same transaction, so neither a redelivery nor a group that rolls
+	// back is counted twice; a batch cached with the old totals is replaced once the new ones are committed
+	protected void total( final List< Instruction > inserted )
+	{
+		batchTotalService.add( inserted );
+		TransactionSynchronizationManager.registerSynchronization( new TransactionSynchronizationAdapter()
+			{
+
+				@Override
+				public void afterCommit()
+				{
+					totalled( inserted );
+				}
+
+			} );
+	}
+
+	protected void totalled( final List< Instruction > inserted )
+	{
+		final Set< Long > batchIds = new HashSet<>();
+		for ( final Instruction instruction : inserted )
+		{
+			final Long batchId = batchId( instruction );
+			if ( batchId != null )
+			{
+				batchIds.add( batchId );
+			}
+		}
+		if ( !batchIds.isEmpty() )
+		{
+			batchCache.refresh( batchIds );
+		}
+	}
+
+	// an upload sends its instructions under a batch of its own, which is first seen here; a batch added by another
+	// node at the same time fails this group, and it is found there when redelivered
+	protected void batches( final List< Instruction > instructions )
+	{
+		final Set< Long > batchIds = new LinkedHashSet<>();
+		for ( final Instruction instruction : instructions )
+		{
+			final Long batchId = batchId( instruction );
+			if ( batchId != null )
+			{
+				batchIds.add( batchId );
+			}
+		}
+		for ( final Long batchId : batchIds )
+		{
+			if ( jdbcTemplate.queryForObject( BATCH_EXISTS, Integer.class, batchId ) == 0 )
+			{
+				jdbcTemplate.update( BATCH_INSERT, batchId, BATCH_NAME + batchId );
+			}
+		}
+	}
+
+	protected void insert( final List< Instruction > instructions )
+	{
+		if ( instructions.isEmpty() )
+		{
+			return;
+		}
+
+		jdbcTemplate.batchUpdate( INSERT, instructions, batchSize, this::setValues );
+	}
+
+	protected void setValues( final PreparedStatement statement, final Instruction instruction ) throws SQLException
+	{
+		statement.setLong( 1, ids.next() );
+		statement.setObject( 2, batchId( instruction ), Types.BIGINT );
+		statement.setInt( 3, instruction.index() );
+		statement.setObject( 4, instruction.lineNo(), Types.INTEGER );
+		final Account origin = instruction.origin() == null ? EMPTY : instruction.origin();
+		statement.setString( 5, origin.sortCode() );
+		statement.setString( 6, origin.number() );
+		statement.setString( 7, origin.name() );
+		statement.setString( 8, origin.type() );
+		final Account destination = instruction.destination() == null ? EMPTY : instruction.destination();
+		statement.setString( 9, destination.number() );
+		statement.setString( 10, destination.sortCode() );
+		statement.setString( 11, destination.name() );
+		statement.setString( 12, destination.type() );
+		statement.setString( 13, instruction.transactionType() );
+		statement.setString( 14, instruction.rti() );
+		statement.setBigDecimal( 15, instruction.amount() );
+		statement.setString( 16, instruction.reference() );
+		statement.setDate( 17, instruction.processingDate() == null ? null
+				: Date.valueOf( instruction.processingDate() ) );
+	}
+
+	// only the first of each (Batch, Idx) is kept, as uk_Instruction_Idx would reject the rest
+	protected List< Instruction > unique( final List< ? extends Instruction > instructions )
+	{
+		final Map< Long, Set< Integer > > seen = new HashMap<>();
+		final List< Instruction > unique = new ArrayList<>( instructions.size() );
+		for ( final Instruction instruction : instructions )
+		{
+			final Long batchId = batchId( instruction );
+			if ( batchId == null || seen.computeIfAbsent( batchId, id -> new HashSet<>() )
+					.add( instruction.index() ) )
+			{
+				unique.add( instruction );
+			}
+		}
+		return unique;
+	}
+
+	protected List< Instruction > missing( final List< Instruction > instructions )
+	{
+		final Map< Long, IntSummaryStatistics > ranges = new HashMap<>();
+		for ( final Instruction instruction : instructions )
+		{
+			final Long batchId = batchId( instruction );
+			if ( batchId != null )
+			{
+				ranges.computeIfAbsent( batchId, id -> new IntSummaryStatistics() )
+						.accept( instruction.index() );
+			}
+		}
+
+		final Map< Long, Set< Integer > > existing = new HashMap<>();
+		ranges.forEach( ( batchId, range ) -> existing.put( batchId, new HashSet<>( jdbcTemplate.queryForList(
+				EXISTING, Integer.class, batchId, range.getMin(), range.getMax() ) ) ) );
+
+		final List< Instruction > missing = new ArrayList<>( instructions.size() );
+		for ( final Instruction instruction : instructions )
+		{
+			final Long batchId = batchId( instruction );
+			if ( batchId == null || !existing.get( batchId )
+					.contains( instruction.index() ) )
+			{
+				missing.add( instruction );
+			}
+		}
+		return missing;
+	}
+
+	protected Long batchId( final Instruction instruction )
+	{
+		return instruction.batch() == null ? null
+				: instruction.batch()
+						.id();
 	}
 
 }
@@ -0,0 +1,82 @@
+package uk.co.bluegecko.pay.portfolio.service.base;
+
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.jdbc.support.incrementer.DataFieldMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.H2SequenceMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.HsqlSequenceMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.OracleSequenceMaxValueIncrementer;
+import org.springframework.jdbc.support.incrementer.PostgresSequenceMaxValueIncrementer;
+
+
+// pooled-lo: each value read from the sequence is the low end of a block as wide as its increment, so only one
+// insert in every block goes to the database for an id, and nodes sharing the sequence never overlap
+public class PooledSequence
+{
+
+	private final DataFieldMaxValueIncrementer incrementer;
+	private final int increment;
+	private long next;
+	private long limit;
+
+	public PooledSequence( final JdbcTemplate jdbcTemplate, final String sequence, final int increment )
+	{
+		this( incrementer( jdbcTemplate.getDataSource(), sequence ), increment );
+	}
+
+	public PooledSequence( final DataFieldMaxValueIncrementer incrementer, final int increment )
+	{
+		if ( increment < 1 )
+		{
+			throw new IllegalArgumentException( "invalid-increment-" + increment );
+		}
+
+		this.incrementer = incrementer;
+		this.increment = increment;
+	}
+
+	public synchronized long next()
+	{
+		if ( next == limit )
+		{
+			next = incrementer.nextLongValue();
+			limit = next + increment;
+		}
+		return next++;
+	}
+
+	// reading a sequence is written differently on each platform, so it goes through Spring's incrementer for the
+	// one the data source is on
+	protected static DataFieldMaxValueIncrementer incrementer( final DataSource dataSource, final String sequence )
+	{
+		final String product;
+		try
+		{
+			product = JdbcUtils.commonDatabaseName( JdbcUtils.extractDatabaseMetaData( dataSource,
+					"getDatabaseProductName" ) );
+		}
+		catch ( final MetaDataAccessException ex )
+		{
+			throw new IllegalStateException( "unknown-database", ex );
+		}
+
+		switch ( String.valueOf( product ) )
+		{
+			case "H2":
+				return new H2SequenceMaxValueIncrementer( dataSource, sequence );
+			case "HSQL Database Engine":
+				return new HsqlSequenceMaxValueIncrementer( dataSource, sequence );
+			case "PostgreSQL":
+				return new PostgresSequenceMaxValueIncrementer( dataSource, sequence );
+			case "Oracle":
+				return new OracleSequenceMaxValueIncrementer( dataSource, sequence );
+			default:
+				throw new IllegalArgumentException( "unsupported-database-" + product );
+		}
+	}
+
+}
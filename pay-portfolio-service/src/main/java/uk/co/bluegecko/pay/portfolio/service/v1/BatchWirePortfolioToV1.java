@@ -2,14 +2,17 @@ package uk.co.bluegecko.pay.portfolio.service.v1;
 
 
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import org.springframework.stereotype.Service;
 
 import uk.co.bluegecko.pay.common.service.WireService;
 import uk.co.bluegecko.pay.portfolio.model.Batch;
 import uk.co.bluegecko.pay.portfolio.model.Portfolio;
+import uk.co.bluegecko.pay.portfolio.model.Total;
 import uk.co.bluegecko.pay.portfolio.model.base.BatchBase;
 import uk.co.bluegecko.pay.portfolio.model.base.PortfolioBase;
+import uk.co.bluegecko.pay.portfolio.model.base.TotalBase;
 
 
 @Service
@@ -31,7 +34,14 @@ public class BatchWirePortfolioToV1 implements WireService< Batch, uk.co.bluegec
 				.generation( batch.generation() )
 				.section( batch.section() )
 				.sequence( batch.sequence() )
-				.version( batch.version() );
+				.version( batch.version() )
+				.totals( batch.totals()
+						.stream()
+						.map( ( final uk.co.bluegecko.pay.v1.portfolio.wire.Total t ) -> new TotalBase(
+								Total.Type.valueOf( t.type()
+										.name() ),
+								t.count(), t.amount() ) )
+						.collect( Collectors.toSet() ) );
 	}
 
 	@Override
@@ -50,6 +60,15 @@ public class BatchWirePortfolioToV1 implements WireService< Batch, uk.co.bluegec
 				.section( batch.section() )
 				.sequence( batch.sequence() )
 				.version( batch.version() )
+				.totals( batch.totals()
+						.stream()
+						.map( ( final Total t ) -> uk.co.bluegecko.pay.v1.portfolio.wire.Total.builder()
+								.type( uk.co.bluegecko.pay.v1.portfolio.wire.Total.Type.valueOf( t.type()
+										.name() ) )
+								.count( t.count() )
+								.amount( t.amount() )
+								.build() )
+						.collect( Collectors.toSet() ) )
 				.build();
 	}
 
@@ -1,10 +1,15 @@
 package uk.co.bluegecko.pay.portfolio.controller;
 
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static uk.co.bluegecko.pay.v1.portfolio.rest.BatchMapping.BATCH;
 import static uk.co.bluegecko.pay.v1.portfolio.rest.BatchMapping.BATCH_BY_ID;
@@ -17,7 +22,9 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import uk.co.bluegecko.pay.RestMapping.Page;
 import uk.co.bluegecko.pay.RestMapping.View;
 import uk.co.bluegecko.pay.portfolio.TestPortfolioApplication;
 import uk.co.bluegecko.pay.test.harness.TestHarness;
@@ -78,4 +85,57 @@ public class BatchControllerTest extends TestHarness
 				.andExpect( content().json( "[{\"id\":1,\"index\":11},{\"id\":2,\"index\":12}]" ) );
 	}
 
+	@Test
+	public final void testGetBatchesPaged() throws Exception
+	{
+		mvc.perform( get( BATCH ).param( Page.LIMIT, "1" ) )
+				.andExpect( status().isOk() )
+				.andExpect( content().json( "[{\"index\":11}]" ) )
+				.andExpect( header().string( "Link", containsString( "after=1" ) ) );
+
+		mvc.perform( get( BATCH ).param( Page.AFTER, "1" )
+				.param( Page.LIMIT, "1" ) )
+				.andExpect( status().isOk() )
+				.andExpect( content().json( "[{\"index\":12}]" ) );
+
+		mvc.perform( get( BATCH ).param( Page.AFTER, "2" )
+				.param( Page.LIMIT, "1" ) )
+				.andExpect( status().isOk() )
+				.andExpect( content().json( "[]" ) )
+				.andExpect( header().doesNotExist( "Link" ) );
+	}
+
+	@Test
+	public final void testGetBatchesUnpaged() throws Exception
+	{
+		mvc.perform( get( BATCH ).param( Page.AFTER, "1" ) )
+				.andExpect( status().isOk() )
+				.andExpect( content().json( "[{\"index\":12}]" ) )
+				.andExpect( header().doesNotExist( "Link" ) );
+	}
+
+	@Test
+	public final void testStreamBatches() throws Exception
+	{
+		final MvcResult result = mvc.perform( get( BATCH ).param( View.PARAM, View.DETAILED )
+				.accept( Page.NDJSON ) )
+				.andExpect( request().asyncStarted() )
+				.andReturn();
+
+		final String[] lines = mvc.perform( asyncDispatch( result ) )
+				.andExpect( status().isOk() )
+				.andExpect( content().contentType( Page.NDJSON ) )
+				.andReturn()
+				.getResponse()
+				.getContentAsString()
+				.split( "\n" );
+		assertThat( lines.length, is( 2 ) );
+		assertThat( mapper().readTree( lines[0] )
+				.get( "id" )
+				.asLong(), is( 1L ) );
+		assertThat( mapper().readTree( lines[1] )
+				.get( "index" )
+				.asInt(), is( 12 ) );
+	}
+
 }
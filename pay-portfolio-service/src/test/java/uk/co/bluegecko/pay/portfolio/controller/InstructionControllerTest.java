@@ -0,0 +1,122 @@
+package uk.co.bluegecko.pay.portfolio.controller;
+
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static uk.co.bluegecko.pay.v1.portfolio.rest.BatchMapping.INSTRUCTIONS;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import uk.co.bluegecko.pay.RestMapping.Page;
+import uk.co.bluegecko.pay.RestMapping.View;
+import uk.co.bluegecko.pay.portfolio.TestPortfolioApplication;
+import uk.co.bluegecko.pay.portfolio.model.Instruction;
+import uk.co.bluegecko.pay.portfolio.model.base.AccountBase;
+import uk.co.bluegecko.pay.portfolio.model.base.BatchBase;
+import uk.co.bluegecko.pay.portfolio.model.base.InstructionBase;
+import uk.co.bluegecko.pay.portfolio.service.InstructionService;
+import uk.co.bluegecko.pay.test.harness.TestHarness;
+
+
+@SpringBootTest( classes = TestPortfolioApplication.class, webEnvironment = WebEnvironment.MOCK )
+@AutoConfigureMockMvc
+public class InstructionControllerTest extends TestHarness
+{
+
+	@Autowired
+	private MockMvc mvc;
+
+	@MockBean
+	private InstructionService instructionService;
+
+	@Test
+	public final void testGetInstructionsPaged() throws Exception
+	{
+		when( instructionService.retreiveInstructions( 101L, null, 2 ) ).thenReturn( Arrays.asList( instruction( 1 ),
+				instruction( 2 ) ) );
+
+		mvc.perform( get( INSTRUCTIONS, 101L ).param( Page.LIMIT, "2" ) )
+				.andExpect( status().isOk() )
+				.andExpect( content().json( "[{\"index\":1},{\"index\":2}]" ) )
+				.andExpect( header().string( "Link", containsString( "after=2" ) ) );
+	}
+
+	@Test
+	public final void testGetInstructionsLastPage() throws Exception
+	{
+		when( instructionService.retreiveInstructions( 101L, 2, 2 ) ).thenReturn( Arrays.asList( instruction(
+				3 ) ) );
+
+		mvc.perform( get( INSTRUCTIONS, 101L ).param( Page.AFTER, "2" )
+				.param( Page.LIMIT, "2" )
+				.param( View.PARAM, View.DETAILED ) )
+				.andExpect( status().isOk() )
+				.andExpect( content().json( "[{\"batch\":101,\"index\":3}]" ) )
+				.andExpect( header().doesNotExist( "Link" ) );
+	}
+
+	@Test
+	public final void testStreamInstructions() throws Exception
+	{
+		doAnswer( invocation ->
+			{
+				final Consumer< Instruction > consumer = invocation.getArgument( 2 );
+				consumer.accept( instruction( 4 ) );
+				consumer.accept( instruction( 5 ) );
+				return null;
+			} ).when( instructionService )
+				.streamInstructions( eq( 101L ), eq( 3 ), any() );
+
+		final MvcResult result = mvc.perform( get( INSTRUCTIONS, 101L ).param( Page.AFTER, "3" )
+				.accept( Page.NDJSON ) )
+				.andExpect( request().asyncStarted() )
+				.andReturn();
+
+		final String[] lines = mvc.perform( asyncDispatch( result ) )
+				.andExpect( status().isOk() )
+				.andExpect( content().contentType( Page.NDJSON ) )
+				.andReturn()
+				.getResponse()
+				.getContentAsString()
+				.split( "\\n" );
+		assertThat( lines.length, is( 2 ) );
+		assertThat( mapper().readTree( lines[0] )
+				.get( "index" )
+				.asInt(), is( 4 ) );
+		assertThat( mapper().readTree( lines[1] )
+				.get( "index" )
+				.asInt(), is( 5 ) );
+	}
+
+	private Instruction instruction( final int index )
+	{
+		return new InstructionBase( 200L + index, new BatchBase( 101L ), index ).index( index )
+				.origin( new AccountBase( null ).sortCode( "123456" ) )
+				.destination( new AccountBase( null ).number( "87654321" ) )
+				.transactionType( "99" )
+				.amount( new BigDecimal( "10.01" ) );
+	}
+
+}
@@ -0,0 +1,181 @@
+package uk.co.bluegecko.pay.portfolio.service.base;
+
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uk.co.bluegecko.pay.portfolio.model.Batch;
+import uk.co.bluegecko.pay.portfolio.model.base.BatchBase;
+import uk.co.bluegecko.pay.portfolio.service.BatchService;
+import uk.co.bluegecko.pay.portfolio.service.v1.BatchWirePortfolioToV1;
+
+
+public class BatchCacheBaseTest
+{
+
+	private static final long MILLIS = 1000;
+	private static final int THREADS = 8;
+
+	private BatchService batchService;
+	private AtomicLong nanos;
+	private BatchCacheBase batchCache;
+	private ExecutorService executor;
+
+	@Before
+	public final void setUp()
+	{
+		batchService = mock( BatchService.class );
+		when( batchService.retreiveBatchById( anyLong() ) ).then( invocation -> batch( invocation.< Long > getArgument(
+				0 ) ) );
+		nanos = new AtomicLong();
+		batchCache = new BatchCacheBase( batchService, new BatchWirePortfolioToV1(), new SimpleMeterRegistry(), 10,
+				MILLIS, nanos::get );
+		executor = Executors.newFixedThreadPool( THREADS );
+	}
+
+	@After
+	public final void tearDown()
+	{
+		executor.shutdownNow();
+	}
+
+	@Test
+	public final void testReadThrough()
+	{
+		final uk.co.bluegecko.pay.v1.portfolio.wire.Batch wireBatch = batchCache.wireBatch( 1L );
+
+		assertThat( wireBatch.id(), is( 1L ) );
+		assertThat( batchCache.wireBatch( 1L ), is( sameInstance( wireBatch ) ) );
+		assertThat( batchCache.batch( 1L )
+				.index(), is( 11 ) );
+		verify( batchService, times( 1 ) ).retreiveBatchById( 1L );
+		assertThat( batchCache.stats()
+				.hitCount(), is( 2L ) );
+		assertThat( batchCache.stats()
+				.missCount(), is( 1L ) );
+	}
+
+	@Test
+	public final void testToWireListed()
+	{
+		final uk.co.bluegecko.pay.v1.portfolio.wire.Batch wireBatch = batchCache.wireBatch( 1L );
+
+		assertThat( batchCache.toWire( batch( 1L ) ), is( sameInstance( wireBatch ) ) );
+		assertThat( batchCache.toWire( batch( 2L ) )
+				.id(), is( 2L ) );
+		verify( batchService, never() ).retreiveBatchById( 2L );
+		assertThat( batchCache.stats()
+				.loadCount(), is( 1L ) );
+	}
+
+	@Test
+	public final void testToWireListedNotCached()
+	{
+		batchCache.toWire( batch( 2L ) );
+		batchCache.wireBatch( 2L );
+
+		verify( batchService, times( 1 ) ).retreiveBatchById( 2L );
+	}
+
+	@Test
+	public final void testRefresh()
+	{
+		final uk.co.bluegecko.pay.v1.portfolio.wire.Batch wireBatch = batchCache.wireBatch( 1L );
+
+		batchCache.refresh( Arrays.asList( 1L, 2L ) );
+
+		assertThat( batchCache.wireBatch( 1L ), is( not( sameInstance( wireBatch ) ) ) );
+		verify( batchService, times( 2 ) ).retreiveBatchById( 1L );
+		verify( batchService, never() ).retreiveBatchById( 2L );
+		assertThat( batchCache.stats()
+				.missCount(), is( 1L ) );
+	}
+
+	@Test
+	public final void testInvalidate()
+	{
+		batchCache.wireBatch( 1L );
+		batchCache.wireBatch( 2L );
+
+		batchCache.invalidate( Collections.singleton( 1L ) );
+		batchCache.wireBatch( 1L );
+		batchCache.wireBatch( 2L );
+
+		verify( batchService, times( 2 ) ).retreiveBatchById( 1L );
+		verify( batchService, times( 1 ) ).retreiveBatchById( 2L );
+	}
+
+	@Test
+	public final void testExpired()
+	{
+		batchCache.wireBatch( 1L );
+		nanos.addAndGet( TimeUnit.MILLISECONDS.toNanos( MILLIS - 1 ) );
+		batchCache.wireBatch( 1L );
+		nanos.addAndGet( TimeUnit.MILLISECONDS.toNanos( 1 ) );
+		batchCache.wireBatch( 1L );
+
+		verify( batchService, times( 2 ) ).retreiveBatchById( 1L );
+	}
+
+	@Test
+	public final void testConcurrentMisses() throws Exception
+	{
+		final CountDownLatch loading = new CountDownLatch( 1 );
+		final CountDownLatch release = new CountDownLatch( 1 );
+		doAnswer( invocation ->
+			{
+				loading.countDown();
+				release.await();
+				return batch( 3L );
+			} ).when( batchService )
+				.retreiveBatchById( 3L );
+
+		final List< Future< uk.co.bluegecko.pay.v1.portfolio.wire.Batch > > results = new ArrayList<>();
+		for ( int thread = 0; thread < THREADS; thread++ )
+		{
+			results.add( executor.submit( () -> batchCache.wireBatch( 3L ) ) );
+		}
+		assertThat( loading.await( 5, TimeUnit.SECONDS ), is( true ) );
+		// give the other callers time to arrive while the first is still loading
+		Thread.sleep( 100 );
+		release.countDown();
+
+		for ( final Future< uk.co.bluegecko.pay.v1.portfolio.wire.Batch > result : results )
+		{
+			assertThat( result.get( 5, TimeUnit.SECONDS )
+					.id(), is( 3L ) );
+		}
+		verify( batchService, times( 1 ) ).retreiveBatchById( 3L );
+	}
+
+	private Batch batch( final long batchId )
+	{
+		return new BatchBase( batchId ).index( ( int ) ( 10 + batchId ) );
+	}
+
+}
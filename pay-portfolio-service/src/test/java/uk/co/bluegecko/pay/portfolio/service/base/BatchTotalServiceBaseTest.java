@@ -0,0 +1,275 @@
+package uk.co.bluegecko.pay.portfolio.service.base;
+
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import uk.co.bluegecko.pay.common.model.Amounts;
+import uk.co.bluegecko.pay.portfolio.model.Instruction;
+import uk.co.bluegecko.pay.portfolio.model.Total;
+import uk.co.bluegecko.pay.portfolio.model.Total.Type;
+import uk.co.bluegecko.pay.portfolio.model.base.BatchBase;
+import uk.co.bluegecko.pay.portfolio.model.base.TotalBase;
+import uk.co.bluegecko.pay.portfolio.service.test.FakeDataFactory;
+
+
+public class BatchTotalServiceBaseTest extends FakeDataFactory
+{
+
+	private static final String CHANGELOG = "db/changelog/v1.0/db.changelog-portfolio-1.0.xml";
+	private static final String PERSISTED = "SELECT Cnt, Amount FROM portfolio.BatchTotal WHERE Batch = ? AND Type = ?";
+	private static final String OTHER_NODE = "UPDATE portfolio.BatchTotal SET Cnt = Cnt + 1, Amount = Amount + 100 "
+			+ "WHERE Batch = ? AND Type = ?";
+	private static final long MILLIS = 1000;
+	private static final int THREADS = 8;
+	private static final int ADDS = 100;
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private DataSourceTransactionManager transactionManager;
+	private MeterRegistry meterRegistry;
+	private AtomicLong nanos;
+	private BatchTotalServiceBase batchTotalService;
+
+	@Before
+	public void setUp() throws SQLException, LiquibaseException
+	{
+		database = new EmbeddedDatabaseBuilder().setType( EmbeddedDatabaseType.H2 )
+				.generateUniqueName( true )
+				.build();
+		final Database schema = DatabaseFactory.getInstance()
+				.findCorrectDatabaseImplementation( new JdbcConnection( database.getConnection() ) );
+		try
+		{
+			final Liquibase liquibase = new Liquibase( CHANGELOG, new ClassLoaderResourceAccessor(), schema );
+			liquibase.setChangeLogParameter( "autoIncrement", false );
+			liquibase.update( new Contexts() );
+		}
+		finally
+		{
+			schema.close();
+		}
+
+		jdbcTemplate = new JdbcTemplate( database );
+		transactionManager = new DataSourceTransactionManager( database );
+		meterRegistry = new SimpleMeterRegistry();
+		nanos = new AtomicLong();
+		batchTotalService = new BatchTotalServiceBase( jdbcTemplate, transactionManager, meterRegistry, 10, MILLIS,
+				nanos::get );
+		for ( long batchId = 1; batchId <= 2; batchId++ )
+		{
+			jdbcTemplate.update( "INSERT INTO portfolio.Batch (Id, Version, Idx, Name) VALUES (?, 0, ?, ?)", batchId,
+					batchId, "BATCH-" + batchId );
+		}
+	}
+
+	@After
+	public void tearDown()
+	{
+		database.shutdown();
+	}
+
+	@Test
+	public final void testTotalsByType()
+	{
+		batchTotalService.add( Arrays.asList( instruction( 1L, "17", "1.50" ), instruction( 1L, "01", "2.50" ),
+				instruction( 1L, "99", "10.01" ), instruction( 1L, "0N", "0.00" ), instruction( 1L, "99", "0.00" ),
+				instruction( 1L, "XX", "1.00" ), instruction( 1L, "99", "4.00" ).destination(
+						createAccountOrigin() ) ) );
+
+		assertThat( batchTotalService.totals( 1L ), contains( total( Type.DEBIT, 2, 400 ), total( Type.CREDIT, 1,
+				1001 ), total( Type.CONTRA, 1, 400 ), total( Type.AUDDIS, 1, 0 ), total( Type.WARNING, 1, 0 ), total(
+						Type.ERROR, 1, 100 ) ) );
+		assertThat( batchTotalService.totals( 2L )
+				.isEmpty(), is( true ) );
+	}
+
+	@Test
+	public final void testWritesDeltas()
+	{
+		batchTotalService.add( Arrays.asList( instruction( 1L, "17", "1.50" ), instruction( 2L, "99", "2.00" ) ) );
+
+		assertThat( persisted( 1L, Type.DEBIT ), is( Arrays.asList( 1L, 150L ) ) );
+		assertThat( persisted( 2L, Type.CREDIT ), is( Arrays.asList( 1L, 200L ) ) );
+
+		batchTotalService.add( Collections.singletonList( instruction( 1L, "17", "0.25" ) ) );
+
+		assertThat( persisted( 1L, Type.DEBIT ), is( Arrays.asList( 2L, 175L ) ) );
+		assertThat( persisted( 2L, Type.CREDIT ), is( Arrays.asList( 1L, 200L ) ) );
+		// two rows inserted by the first add, and only the changed one updated by the second
+		assertThat( meterRegistry.counter( BatchTotalServiceBase.PERSISTED )
+				.count(), is( 3.0 ) );
+	}
+
+	@Test
+	public final void testRolledBack()
+	{
+		batchTotalService.add( Collections.singletonList( instruction( 1L, "17", "1.50" ) ) );
+		assertThat( batchTotalService.totals( 1L ), contains( total( Type.DEBIT, 1, 150 ) ) );
+
+		new TransactionTemplate( transactionManager ).execute( status ->
+			{
+				batchTotalService.add( Collections.singletonList( instruction( 1L, "17", "1.00" ) ) );
+				status.setRollbackOnly();
+				return null;
+			} );
+
+		assertThat( persisted( 1L, Type.DEBIT ), is( Arrays.asList( 1L, 150L ) ) );
+		assertThat( batchTotalService.totals( 1L ), contains( total( Type.DEBIT, 1, 150 ) ) );
+	}
+
+	@Test
+	public final void testNotSeenUntilCommit()
+	{
+		new TransactionTemplate( transactionManager ).execute( status ->
+			{
+				batchTotalService.add( Collections.singletonList( instruction( 1L, "17", "1.50" ) ) );
+				assertThat( batchTotalService.totals( 1L )
+						.isEmpty(), is( true ) );
+				return null;
+			} );
+
+		assertThat( batchTotalService.totals( 1L ), contains( total( Type.DEBIT, 1, 150 ) ) );
+	}
+
+	@Test
+	public final void testWrittenAtCommit()
+	{
+		new TransactionTemplate( transactionManager ).execute( status ->
+			{
+				batchTotalService.add( Collections.singletonList( instruction( 1L, "17", "1.50" ) ) );
+				// no row is locked until the transaction commits
+				assertThat( persisted( 1L, Type.DEBIT )
+						.isEmpty(), is( true ) );
+				return null;
+			} );
+
+		assertThat( persisted( 1L, Type.DEBIT ), is( Arrays.asList( 1L, 150L ) ) );
+	}
+
+	@Test
+	public final void testOtherNodeSeenOnExpiry()
+	{
+		batchTotalService.add( Arrays.asList( instruction( 1L, "17", "1.50" ), instruction( 1L, "17", "1.50" ) ) );
+		assertThat( batchTotalService.totals( 1L ), contains( total( Type.DEBIT, 2, 300 ) ) );
+
+		jdbcTemplate.update( OTHER_NODE, 1L, Type.DEBIT.name() );
+		batchTotalService.add( Collections.singletonList( instruction( 1L, "17", "0.25" ) ) );
+
+		// the cached counters take the add made here, but not the other node's until they are loaded again
+		assertThat( batchTotalService.totals( 1L ), contains( total( Type.DEBIT, 3, 325 ) ) );
+		nanos.addAndGet( TimeUnit.MILLISECONDS.toNanos( MILLIS ) );
+		assertThat( batchTotalService.totals( 1L ), contains( total( Type.DEBIT, 4, 425 ) ) );
+	}
+
+	@Test
+	public final void testUnknownNotCached()
+	{
+		assertThat( batchTotalService.totals( 2L )
+				.isEmpty(), is( true ) );
+		assertThat( batchTotalService.totals( 2L )
+				.isEmpty(), is( true ) );
+		assertThat( batchTotalService.stats()
+				.missCount(), is( 2L ) );
+
+		batchTotalService.add( Collections.singletonList( instruction( 2L, "99", "2.00" ) ) );
+
+		assertThat( batchTotalService.totals( 2L ), contains( total( Type.CREDIT, 1, 200 ) ) );
+	}
+
+	@Test
+	public final void testTotalsUncached()
+	{
+		batchTotalService.add( Collections.singletonList( instruction( 1L, "17", "1.50" ) ) );
+
+		assertThat( batchTotalService.totalsUncached( 1L ), contains( total( Type.DEBIT, 1, 150 ) ) );
+		assertThat( batchTotalService.totals( 1L ), contains( total( Type.DEBIT, 1, 150 ) ) );
+		assertThat( batchTotalService.stats()
+				.missCount(), is( 1L ) );
+		assertThat( batchTotalService.totalsUncached( 1L ), contains( total( Type.DEBIT, 1, 150 ) ) );
+		assertThat( batchTotalService.stats()
+				.loadCount(), is( 1L ) );
+	}
+
+	@Test
+	public final void testConcurrentAdds() throws InterruptedException
+	{
+		final List< Instruction > instructions = Collections.singletonList( instruction( 1L, "17", "0.01" ) );
+		// the first add inserts the row, which two nodes seeing the type at once would otherwise race for
+		batchTotalService.add( instructions );
+		assertThat( batchTotalService.totals( 1L ), contains( total( Type.DEBIT, 1, 1 ) ) );
+		final ExecutorService executor = Executors.newFixedThreadPool( THREADS );
+
+		for ( int thread = 0; thread < THREADS; thread++ )
+		{
+			executor.execute( () ->
+				{
+					for ( int i = 0; i < ADDS; i++ )
+					{
+						batchTotalService.add( instructions );
+					}
+				} );
+		}
+		executor.shutdown();
+		assertThat( executor.awaitTermination( 1, TimeUnit.MINUTES ), is( true ) );
+
+		final long added = 1L + THREADS * ADDS;
+		assertThat( persisted( 1L, Type.DEBIT ), is( Arrays.asList( added, added ) ) );
+		assertThat( batchTotalService.totals( 1L ), contains( total( Type.DEBIT, ( int ) added, added ) ) );
+	}
+
+	private Instruction instruction( final long batchId, final String transactionType, final String amount )
+	{
+		return createInstruction( createAccountOrigin(), createAccountDestination(), new BatchBase( batchId ) )
+				.transactionType( transactionType )
+				.amount( new BigDecimal( amount ) );
+	}
+
+	private Total total( final Type type, final int count, final long pence )
+	{
+		return new TotalBase( type, count, Amounts.fromPence( pence ) );
+	}
+
+	private List< Long > persisted( final long batchId, final Type type )
+	{
+		final List< Long > persisted = new ArrayList<>();
+		jdbcTemplate.query( PERSISTED, rs ->
+			{
+				persisted.add( rs.getLong( 1 ) );
+				persisted.add( rs.getLong( 2 ) );
+			}, batchId, type.name() );
+		return persisted;
+	}
+
+}
@@ -1,36 +1,258 @@
 package uk.co.bluegecko.pay.portfolio.service.base;
 
 
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import liquibase.Contexts;
+import liquibase.Liquibase;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
 import uk.co.bluegecko.pay.portfolio.model.Instruction;
-import uk.co.bluegecko.pay.portfolio.service.InstructionService;
+import uk.co.bluegecko.pay.portfolio.model.Total;
+import uk.co.bluegecko.pay.portfolio.model.base.AccountBase;
+import uk.co.bluegecko.pay.portfolio.model.base.BatchBase;
+import uk.co.bluegecko.pay.portfolio.model.base.TotalBase;
+import uk.co.bluegecko.pay.portfolio.service.BatchCache;
 import uk.co.bluegecko.pay.portfolio.service.test.FakeDataFactory;
 
 
 public class InstructionServiceBaseTest extends FakeDataFactory
 {
 
-	private InstructionService instructionService;
+	private static final String CHANGELOG = "db/changelog/v1.0/db.changelog-portfolio-1.0.xml";
+	private static final String COUNT = "SELECT COUNT(*) FROM portfolio.Instruction";
+
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private MeterRegistry meterRegistry;
+	private DataSourceTransactionManager transactionManager;
+	private BatchTotalServiceBase batchTotalService;
+	private BatchCache batchCache;
+	private InstructionServiceBase instructionService;
 
 	@Before
-	public void setUp() throws Exception
+	public void setUp() throws SQLException, LiquibaseException
+	{
+		database = new EmbeddedDatabaseBuilder().setType( EmbeddedDatabaseType.H2 )
+				.generateUniqueName( true )
+				.build();
+		final Database schema = DatabaseFactory.getInstance()
+				.findCorrectDatabaseImplementation( new JdbcConnection( database.getConnection() ) );
+		try
+		{
+			final Liquibase liquibase = new Liquibase( CHANGELOG, new ClassLoaderResourceAccessor(), schema );
+			liquibase.setChangeLogParameter( "autoIncrement", false );
+			liquibase.update( new Contexts() );
+		}
+		finally
+		{
+			schema.close();
+		}
+
+		jdbcTemplate = new JdbcTemplate( database );
+		meterRegistry = new SimpleMeterRegistry();
+		transactionManager = new DataSourceTransactionManager( database );
+		batchTotalService = new BatchTotalServiceBase( jdbcTemplate, transactionManager, meterRegistry, 10, 1000 );
+		batchCache = mock( BatchCache.class );
+		instructionService = new InstructionServiceBase( jdbcTemplate, transactionManager, batchTotalService,
+				batchCache, meterRegistry );
+		for ( long batchId = 1; batchId <= 3; batchId++ )
+		{
+			jdbcTemplate.update( "INSERT INTO portfolio.Batch (Id, Version, Idx, Name) VALUES (?, 0, ?, ?)", batchId,
+					batchId, "BATCH-" + batchId );
+		}
+	}
+
+	@After
+	public void tearDown()
 	{
-		instructionService = new InstructionServiceBase();
+		database.shutdown();
 	}
 
 	@Test
-	public final void test()
+	public final void testSave()
 	{
-		final Instruction instruction = createInstruction( createAccountOrigin(), createAccountDestination(),
-				createBatch() );
-		instructionService.save( instruction );
+		instructionService.save( instruction( 1L, 1 ) );
+
+		assertThat( jdbcTemplate.queryForObject( COUNT, Integer.class ), is( 1 ) );
+		assertThat( jdbcTemplate.queryForObject( "SELECT rti FROM portfolio.Instruction", String.class ), is(
+				RTI ) );
+		assertThat( meterRegistry.counter( InstructionServiceBase.SAVED )
+				.count(), is( 1.0 ) );
+		verify( batchCache ).refresh( Collections.singleton( 1L ) );
+	}
 
-		assertThat( instruction.id(), is( INSTRUCTION_ID ) );
+	@Test
+	public final void testSaveAddsBatch()
+	{
+		instructionService.saveAll( instructions( 9L, 2 ) );
+		instructionService.saveAll( instructions( 9L, 3 ) );
+
+		assertThat( jdbcTemplate.queryForObject( "SELECT Name FROM portfolio.Batch WHERE Id = 9", String.class ), is(
+				"UPLOAD-9" ) );
+		assertThat( jdbcTemplate.queryForObject( COUNT, Integer.class ), is( 3 ) );
+	}
+
+	@Test
+	public final void testPooledIds()
+	{
+		instructionService.saveAll( instructions( 1L, 120 ) );
+
+		// three blocks from the sequence, used end to end
+		assertThat( jdbcTemplate.queryForObject( "SELECT MIN(Id) FROM portfolio.Instruction", Long.class ), is(
+				1L ) );
+		assertThat( jdbcTemplate.queryForObject( "SELECT MAX(Id) FROM portfolio.Instruction", Long.class ), is(
+				120L ) );
+		assertThat( jdbcTemplate.queryForObject( "SELECT NEXT VALUE FOR " + InstructionServiceBase.SEQUENCE,
+				Long.class ), is( 151L ) );
+	}
+
+	@Test
+	public final void testSaveRedelivered()
+	{
+		instructionService.saveAll( instructions( 1L, 3 ) );
+
+		instructionService.saveAll( Arrays.asList( instruction( 1L, 2 ), instruction( 1L, 3 ), instruction( 1L, 4 ),
+				instruction( 1L, 4 ) ) );
+
+		assertThat( jdbcTemplate.queryForObject( COUNT, Integer.class ), is( 4 ) );
+		assertThat( batchTotalService.totals( 1L ), contains( new TotalBase( Total.Type.CREDIT, 4, new BigDecimal(
+				"40.04" ) ) ) );
+	}
+
+	@Test
+	public final void testTotalledOnCommit()
+	{
+		final TransactionTemplate transactionTemplate = new TransactionTemplate( transactionManager );
+
+		transactionTemplate.execute( status ->
+			{
+				instructionService.saveAll( instructions( 1L, 3 ) );
+				status.setRollbackOnly();
+				return null;
+			} );
+		assertThat( batchTotalService.totals( 1L )
+				.isEmpty(), is( true ) );
+
+		transactionTemplate.execute( status ->
+			{
+				instructionService.saveAll( instructions( 1L, 3 ) );
+				assertThat( batchTotalService.totals( 1L )
+						.isEmpty(), is( true ) );
+				return null;
+			} );
+		assertThat( batchTotalService.totals( 1L ), contains( new TotalBase( Total.Type.CREDIT, 3, new BigDecimal(
+				"30.03" ) ) ) );
+	}
+
+	@Test
+	public final void testRetreiveInstructions()
+	{
+		instructionService.saveAll( instructions( 1L, 5 ) );
+		instructionService.saveAll( instructions( 2L, 5 ) );
+
+		final List< Instruction > page = instructionService.retreiveInstructions( 1L, 2, 2 );
+
+		assertThat( page.size(), is( 2 ) );
+		assertThat( page.get( 0 )
+				.index(), is( 3 ) );
+		assertThat( page.get( 1 )
+				.index(), is( 4 ) );
+		assertThat( page.get( 0 )
+				.batch()
+				.id(), is( 1L ) );
+		assertThat( page.get( 0 )
+				.origin(), is( new AccountBase( null ).sortCode( SORT_CODE )
+						.number( ACCT_NO )
+						.name( ACCT_NAME )
+						.type( ACCT_TYPE ) ) );
+		assertThat( page.get( 0 )
+				.destination(), is( new AccountBase( null ).sortCode( DEST_SORT_CODE )
+						.number( DEST_ACCT_NO )
+						.name( DEST_ACCT_NAME )
+						.type( DEST_ACCT_TYPE ) ) );
+		assertThat( page.get( 0 )
+				.transactionType(), is( TRANSACTION_TYPE ) );
+		assertThat( page.get( 0 )
+				.amount(), is( AMOUNT ) );
+		assertThat( page.get( 0 )
+				.processingDate(), is( DATE ) );
+	}
+
+	@Test
+	public final void testSaveWideIndex()
+	{
+		instructionService.save( instruction( 1L, 40000 ) );
+
+		assertThat( instructionService.retreiveInstructions( 1L, null, 1 )
+				.get( 0 )
+				.index(), is( 40000 ) );
+	}
+
+	@Test
+	public final void testRetreiveInstructionsFromStart()
+	{
+		instructionService.saveAll( Arrays.asList( instruction( 1L, 0 ), instruction( 1L, 1 ) ) );
+
+		final List< Integer > indexes = new ArrayList<>();
+		instructionService.retreiveInstructions( 1L, null, 10 )
+				.forEach( instruction -> indexes.add( instruction.index() ) );
+		instructionService.streamInstructions( 1L, null, instruction -> indexes.add( instruction.index() ) );
+
+		assertThat( indexes, contains( 0, 1, 0, 1 ) );
+	}
+
+	@Test
+	public final void testStreamInstructions()
+	{
+		instructionService.saveAll( instructions( 1L, 5 ) );
+
+		final List< Integer > indexes = new ArrayList<>();
+		instructionService.streamInstructions( 1L, 3, instruction -> indexes.add( instruction.index() ) );
+
+		assertThat( indexes, contains( 4, 5 ) );
+	}
+
+	private List< Instruction > instructions( final long batchId, final int count )
+	{
+		final List< Instruction > instructions = new ArrayList<>( count );
+		for ( int index = 1; index <= count; index++ )
+		{
+			instructions.add( instruction( batchId, index ) );
+		}
+		return instructions;
+	}
+
+	private Instruction instruction( final long batchId, final int index )
+	{
+		return createInstruction( createAccountOrigin(), createAccountDestination(), new BatchBase( batchId ) )
+				.index( index );
 	}
 
 }
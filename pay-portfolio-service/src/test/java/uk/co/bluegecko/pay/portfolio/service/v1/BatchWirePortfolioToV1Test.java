@@ -2,14 +2,20 @@ package uk.co.bluegecko.pay.portfolio.service.v1;
 
 
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
 
+import java.math.BigDecimal;
+import java.util.Collections;
+
 import org.hamcrest.Matcher;
 import org.junit.Before;
 import org.junit.Test;
 
 import uk.co.bluegecko.pay.portfolio.model.Batch;
+import uk.co.bluegecko.pay.portfolio.model.Total;
+import uk.co.bluegecko.pay.portfolio.model.base.TotalBase;
 import uk.co.bluegecko.pay.portfolio.service.test.FakeDataFactory;
 
 
@@ -46,6 +52,23 @@ public class BatchWirePortfolioToV1Test extends FakeDataFactory
 		assertBatch( batch, wireBatch, nullValue() );
 	}
 
+	@Test
+	public final void testTotals()
+	{
+		final Batch batch = createBatch().totals( Collections.singleton( new TotalBase( Total.Type.DEBIT, 2,
+				new BigDecimal( "3.50" ) ) ) );
+
+		final uk.co.bluegecko.pay.v1.portfolio.wire.Batch wireBatch = wireService.toWire( batch );
+
+		assertThat( wireBatch.totals(), contains( uk.co.bluegecko.pay.v1.portfolio.wire.Total.builder()
+				.type( uk.co.bluegecko.pay.v1.portfolio.wire.Total.Type.DEBIT )
+				.count( 2 )
+				.amount( new BigDecimal( "3.50" ) )
+				.build() ) );
+		assertThat( wireService.fromWire( wireBatch )
+				.totals(), is( batch.totals() ) );
+	}
+
 	@Test
 	public final void testFromWire()
 	{
@@ -19,7 +19,10 @@ import com.lexicalscope.jewel.cli.Cli;
 import com.lexicalscope.jewel.cli.CliFactory;
 import com.lexicalscope.jewel.cli.HelpRequestedException;
 
+import uk.co.bluegecko.pay.common.service.base.ByteParsingServiceBase;
+import uk.co.bluegecko.pay.common.service.base.ParallelByteParsingServiceBase;
 import uk.co.bluegecko.pay.common.service.base.ParsingServiceBase;
+import uk.co.bluegecko.pay.common.service.base.StreamRegistryBase;
 import uk.co.bluegecko.pay.tools.file.parser.cli.ParserCmdLine;
 import uk.co.bluegecko.pay.tools.file.parser.service.FileParserService;
 
@@ -32,7 +35,8 @@ public class FileParserApplication
 
 	public static void main( final String... args )
 	{
-		new SpringApplicationBuilder().sources( FileParserApplication.class, ParsingServiceBase.class )
+		new SpringApplicationBuilder().sources( FileParserApplication.class, ParsingServiceBase.class,
+				StreamRegistryBase.class, ByteParsingServiceBase.class, ParallelByteParsingServiceBase.class )
 				.profiles( "dev" )
 				.properties( "spring.application.name:file-parser" )
 				.web( WebApplicationType.NONE )
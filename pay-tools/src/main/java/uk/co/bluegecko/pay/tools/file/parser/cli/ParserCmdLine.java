@@ -32,6 +32,14 @@ public interface ParserCmdLine extends ParserSettings
 	@Option( shortName = "c", longName = "contras", description = "print contras" )
 	public boolean contras();
 
+	@Override
+	@Option( shortName = "b", longName = "bytes", description = "use byte parser" )
+	public boolean bytes();
+
+	@Override
+	@Option( shortName = "p", longName = "parallel", description = "use parallel byte parser" )
+	public boolean parallel();
+
 	@Unparsed( minimum = 1, name = "file(s) to parse (at least one)",
 			description = "list of file(s) to parse (at least one)" )
 	public List< String > arguments();
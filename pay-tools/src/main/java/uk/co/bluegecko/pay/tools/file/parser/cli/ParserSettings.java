@@ -12,4 +12,8 @@ public interface ParserSettings
 
 	public boolean contras();
 
+	public boolean bytes();
+
+	public boolean parallel();
+
 }
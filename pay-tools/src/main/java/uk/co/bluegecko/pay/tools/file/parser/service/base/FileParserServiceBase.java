@@ -3,10 +3,13 @@ package uk.co.bluegecko.pay.tools.file.parser.service.base;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.function.BiConsumer;
 import java.util.stream.Stream;
 
@@ -15,8 +18,11 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import uk.co.bluegecko.pay.bacs.std18.mapper.Standard18ByteMapper;
 import uk.co.bluegecko.pay.bacs.std18.mapper.Standard18Mapper;
 import uk.co.bluegecko.pay.bacs.std18.model.Row;
+import uk.co.bluegecko.pay.common.service.ByteParsingService;
+import uk.co.bluegecko.pay.common.service.ParallelByteParsingService;
 import uk.co.bluegecko.pay.common.service.ParsingService;
 import uk.co.bluegecko.pay.tools.file.common.service.AbstractFileService;
 import uk.co.bluegecko.pay.tools.file.parser.cli.ParserCmdLine;
@@ -31,13 +37,18 @@ public class FileParserServiceBase extends AbstractFileService implements FilePa
 	private static final Logger logger = LoggerFactory.getLogger( FileParserService.class );
 
 	private final ParsingService parsingService;
+	private final ByteParsingService byteParsingService;
+	private final ParallelByteParsingService parallelParsingService;
 
 	@Autowired
-	public FileParserServiceBase( final ParsingService parsingService )
+	public FileParserServiceBase( final ParsingService parsingService, final ByteParsingService byteParsingService,
+			final ParallelByteParsingService parallelParsingService )
 	{
 		super();
 
 		this.parsingService = parsingService;
+		this.byteParsingService = byteParsingService;
+		this.parallelParsingService = parallelParsingService;
 	}
 
 	@Override
@@ -59,7 +70,18 @@ public class FileParserServiceBase extends AbstractFileService implements FilePa
 	{
 		try
 		{
-			parse( Files.newBufferedReader( file, StandardCharsets.UTF_8 ), parserSettings );
+			if ( parserSettings.parallel() )
+			{
+				parse( FileChannel.open( file, StandardOpenOption.READ ), parserSettings );
+			}
+			else if ( parserSettings.bytes() )
+			{
+				parse( Files.newByteChannel( file ), parserSettings );
+			}
+			else
+			{
+				parse( Files.newBufferedReader( file, StandardCharsets.UTF_8 ), parserSettings );
+			}
 			logger.warn( "Parsed '{}'", file.toString() );
 		}
 		catch ( final IOException e )
@@ -75,33 +97,62 @@ public class FileParserServiceBase extends AbstractFileService implements FilePa
 		parsingService.parse( dataFile, standard18Mapper );
 	}
 
+	protected void parse( final ReadableByteChannel dataFile, final ParserSettings parserSettings ) throws IOException
+	{
+		final Standard18ByteMapper standard18Mapper = createByteMapper( parserSettings );
+
+		byteParsingService.parse( dataFile, standard18Mapper );
+	}
+
+	protected void parse( final FileChannel dataFile, final ParserSettings parserSettings ) throws IOException
+	{
+		final Standard18ByteMapper standard18Mapper = createByteMapper( parserSettings );
+
+		parallelParsingService.parse( dataFile, standard18Mapper );
+	}
+
 	protected Standard18Mapper createMapper( final ParserSettings parserSettings )
 	{
 		final Standard18Mapper standard18Mapper = new Standard18Mapper();
 
+		addRows( parserSettings, standard18Mapper::addRow );
+
+		return standard18Mapper;
+	}
+
+	protected Standard18ByteMapper createByteMapper( final ParserSettings parserSettings )
+	{
+		final Standard18ByteMapper standard18Mapper = new Standard18ByteMapper();
+
+		addRows( parserSettings, standard18Mapper::addRow );
+
+		return standard18Mapper;
+	}
+
+	protected void addRows( final ParserSettings parserSettings,
+			final BiConsumer< Row, BiConsumer< Row, Object > > addRow )
+	{
 		if ( parserSettings.instructions() )
 		{
-			standard18Mapper.addRow( Row.INSTR, printRow() );
+			addRow.accept( Row.INSTR, printRow() );
 		}
 		if ( parserSettings.contras() )
 		{
-			standard18Mapper.addRow( Row.CONTRA, printRow() );
+			addRow.accept( Row.CONTRA, printRow() );
 		}
 		if ( parserSettings.headers() )
 		{
-			standard18Mapper.addRow( Row.VOL1, printRow() );
-			standard18Mapper.addRow( Row.HDR1, printRow() );
-			standard18Mapper.addRow( Row.HDR2, printRow() );
-			standard18Mapper.addRow( Row.UHL1, printRow() );
+			addRow.accept( Row.VOL1, printRow() );
+			addRow.accept( Row.HDR1, printRow() );
+			addRow.accept( Row.HDR2, printRow() );
+			addRow.accept( Row.UHL1, printRow() );
 		}
 		if ( parserSettings.trailers() )
 		{
-			standard18Mapper.addRow( Row.EOF1, printRow() );
-			standard18Mapper.addRow( Row.EOF2, printRow() );
-			standard18Mapper.addRow( Row.UTL1, printRow() );
+			addRow.accept( Row.EOF1, printRow() );
+			addRow.accept( Row.EOF2, printRow() );
+			addRow.accept( Row.UTL1, printRow() );
 		}
-
-		return standard18Mapper;
 	}
 
 	protected BiConsumer< Row, Object > printRow()
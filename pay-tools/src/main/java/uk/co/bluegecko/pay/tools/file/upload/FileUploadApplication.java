@@ -3,16 +3,25 @@ package uk.co.bluegecko.pay.tools.file.upload;
 
 import java.io.IOException;
 import java.nio.file.FileSystems;
+import java.time.Duration;
+import java.util.List;
 
 import org.apache.commons.lang3.ArrayUtils;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.ExitCodeGenerator;
+import org.springframework.boot.SpringApplication;
 import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 import com.lexicalscope.jewel.cli.ArgumentValidationException;
@@ -21,29 +30,76 @@ import com.lexicalscope.jewel.cli.CliFactory;
 import com.lexicalscope.jewel.cli.HelpRequestedException;
 
 import uk.co.bluegecko.pay.tools.file.upload.cli.UploadCmdLine;
+import uk.co.bluegecko.pay.tools.file.upload.model.UploadResult;
 import uk.co.bluegecko.pay.tools.file.upload.service.FileUploadService;
 
 
 @SpringBootApplication
-public class FileUploadApplication
+public class FileUploadApplication implements ExitCodeGenerator
 {
 
+	public static final int EXIT_FAILED = 1;
+	public static final int EXIT_USAGE = 2;
+	public static final int EXIT_UNREACHABLE = 3;
+
 	private static final Logger logger = LoggerFactory.getLogger( FileUploadApplication.class );
 
+	private static final Duration READ_TIMEOUT = Duration.ofMinutes( 5 );
+
+	private volatile int exitCode;
+
+	// scripts run this unattended, so a file that was not uploaded shows in the exit code as well as the log
 	public static void main( final String... args )
 	{
-		new SpringApplicationBuilder().sources( FileUploadApplication.class )
+		System.exit( SpringApplication.exit( new SpringApplicationBuilder().sources( FileUploadApplication.class )
 				.profiles( "dev" )
 				.properties( "spring.application.name:file-upload" )
 				.web( WebApplicationType.NONE )
-				.run( args )
-				.close();
+				.run( args ) ) );
+	}
+
+	@Override
+	public int getExitCode()
+	{
+		return exitCode;
 	}
 
 	@Bean
-	public RestTemplate restTemplate( final RestTemplateBuilder builder )
+	public RestTemplate restTemplate( final RestTemplateBuilder builder,
+			@Value( "${pay.upload.connections:16}" ) final int connections,
+			@Value( "${pay.upload.read-timeout-seconds:300}" ) final long readTimeout )
+	{
+		final RestTemplate restTemplate = builder.build();
+		restTemplate.setRequestFactory( pooledRequestFactory( connections, Duration.ofSeconds( readTimeout ) ) );
+		return restTemplate;
+	}
+
+	public static HttpComponentsClientHttpRequestFactory pooledRequestFactory( final int connections )
+	{
+		return pooledRequestFactory( connections, READ_TIMEOUT );
+	}
+
+	// connections are kept alive and shared by every upload, rather than opened afresh for each request; a server
+	// that stops answering fails the request rather than holding its connection for ever
+	public static HttpComponentsClientHttpRequestFactory pooledRequestFactory( final int connections,
+			final Duration readTimeout )
 	{
-		return builder.build();
+		final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal( connections );
+		connectionManager.setDefaultMaxPerRoute( connections );
+
+		final HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(
+				HttpClients.custom()
+						.setConnectionManager( connectionManager )
+						.setDefaultRequestConfig( RequestConfig.custom()
+								.setConnectTimeout( 5000 )
+								.setConnectionRequestTimeout( 30000 )
+								.setSocketTimeout( ( int ) readTimeout.toMillis() )
+								.build() )
+						.build() );
+		// bodies are streamed, so a file is compressed as it is sent rather than held in memory first
+		requestFactory.setBufferRequestBody( false );
+		return requestFactory;
 	}
 
 	@Bean
@@ -54,7 +110,16 @@ public class FileUploadApplication
 				final Cli< UploadCmdLine > cli = CliFactory.createCli( UploadCmdLine.class );
 				try
 				{
-					fileUploadService.processFiles( cli.parseArguments( args ), FileSystems.getDefault() );
+					final UploadCmdLine commandLine = cli.parseArguments( args );
+					final List< UploadResult > results = fileUploadService.processFiles( commandLine, FileSystems
+							.getDefault() );
+					// a file that could not be read has no result
+					if ( results.size() < commandLine.arguments()
+							.size() || results.stream()
+									.anyMatch( result -> !result.isSuccess() ) )
+					{
+						exitCode = EXIT_FAILED;
+					}
 				}
 				catch ( final HelpRequestedException ex )
 				{
@@ -64,10 +129,17 @@ public class FileUploadApplication
 				{
 					logger.error( ex.getLocalizedMessage() );
 					logger.error( "args {}", ArrayUtils.toString( args ) );
+					exitCode = EXIT_USAGE;
 				}
 				catch ( final IOException ex )
 				{
 					logger.error( "Unable to connect to host" );
+					exitCode = EXIT_UNREACHABLE;
+				}
+				catch ( final IllegalStateException ex )
+				{
+					logger.error( ex.getLocalizedMessage() );
+					exitCode = EXIT_FAILED;
 				}
 			};
 	}
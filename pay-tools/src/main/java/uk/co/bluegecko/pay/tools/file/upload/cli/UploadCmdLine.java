@@ -8,7 +8,7 @@ import com.lexicalscope.jewel.cli.Option;
 import com.lexicalscope.jewel.cli.Unparsed;
 
 
-public interface UploadCmdLine
+public interface UploadCmdLine extends UploadSettings
 {
 
 	@Option( defaultToNull = true, longName = "spring.output.ansi.enabled", hidden = true )
@@ -21,6 +21,31 @@ public interface UploadCmdLine
 	@Option( defaultValue = "", shortName = "d", longName = "directory", description = "directory of files" )
 	public String directory();
 
+	@Override
+	@Option( defaultValue = "8388608", shortName = "c", longName = "chunk-size",
+			description = "files larger than this are sent in chunks of this many bytes" )
+	public int chunkSize();
+
+	@Override
+	@Option( defaultValue = "4", shortName = "p", longName = "parallel",
+			description = "number of chunks of a file sent at once" )
+	public int parallel();
+
+	@Override
+	@Option( defaultValue = "4", shortName = "n", longName = "concurrent",
+			description = "number of files uploaded at once" )
+	public int concurrent();
+
+	@Override
+	@Option( defaultValue = "3", shortName = "r", longName = "retries",
+			description = "times a request is retried after a server error or lost connection" )
+	public int retries();
+
+	@Override
+	@Option( shortName = "u", longName = "uncompressed",
+			description = "send files as they are, rather than gzipped on the way" )
+	public boolean uncompressed();
+
 	@Unparsed( minimum = 1, name = "file(s) to upload (at least one)",
 			description = "list of file(s) to upload (at least one)" )
 	public List< String > arguments();
@@ -0,0 +1,17 @@
+package uk.co.bluegecko.pay.tools.file.upload.cli;
+
+
+public interface UploadSettings
+{
+
+	public int chunkSize();
+
+	public int parallel();
+
+	public int concurrent();
+
+	public int retries();
+
+	public boolean uncompressed();
+
+}
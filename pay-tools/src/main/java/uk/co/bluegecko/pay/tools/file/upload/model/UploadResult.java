@@ -0,0 +1,35 @@
+package uk.co.bluegecko.pay.tools.file.upload.model;
+
+
+import java.net.URI;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+
+@Value
+@Builder
+@Accessors( fluent = true )
+public class UploadResult
+{
+
+	private final String name;
+	private final long size;
+	private final long elapsed;
+	private final int attempts;
+	private final URI location;
+	private final String error;
+
+	public boolean isSuccess()
+	{
+		return error == null;
+	}
+
+	// MiB/s from bytes and milliseconds
+	public double throughput()
+	{
+		return elapsed == 0 ? 0 : size / 1048.576 / elapsed;
+	}
+
+}
@@ -0,0 +1 @@
+package uk.co.bluegecko.pay.tools.file.upload.model;
\ No newline at end of file
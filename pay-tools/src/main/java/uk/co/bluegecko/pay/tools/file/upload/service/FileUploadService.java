@@ -3,13 +3,15 @@ package uk.co.bluegecko.pay.tools.file.upload.service;
 
 import java.io.IOException;
 import java.nio.file.FileSystem;
+import java.util.List;
 
 import uk.co.bluegecko.pay.tools.file.upload.cli.UploadCmdLine;
+import uk.co.bluegecko.pay.tools.file.upload.model.UploadResult;
 
 
 public interface FileUploadService
 {
 
-	public void processFiles( UploadCmdLine commandLine, FileSystem fileSystem ) throws IOException;
+	public List< UploadResult > processFiles( UploadCmdLine commandLine, FileSystem fileSystem ) throws IOException;
 
 }
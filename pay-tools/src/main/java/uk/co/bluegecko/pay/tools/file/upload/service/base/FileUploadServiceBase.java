@@ -1,17 +1,49 @@
 package uk.co.bluegecko.pay.tools.file.upload.service.base;
 
 
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.CHUNK;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.CHUNK_SIZE;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.COMMIT;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.DIGEST;
 import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.FILE;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.NAME;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.SESSION;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.SESSIONS;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.SIZE;
 import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.UPLOAD;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
 import java.nio.file.FileSystem;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
+import org.apache.http.conn.ConnectTimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,16 +51,25 @@ import org.springframework.core.io.PathResource;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import uk.co.bluegecko.pay.tools.file.common.service.AbstractFileService;
 import uk.co.bluegecko.pay.tools.file.upload.cli.UploadCmdLine;
+import uk.co.bluegecko.pay.tools.file.upload.cli.UploadSettings;
+import uk.co.bluegecko.pay.tools.file.upload.model.UploadResult;
 import uk.co.bluegecko.pay.tools.file.upload.service.FileUploadService;
+import uk.co.bluegecko.pay.v1.upload.wire.SessionStatus;
 
 
 @Service
@@ -37,33 +78,83 @@ public class FileUploadServiceBase extends AbstractFileService implements FileUp
 
 	private static final Logger logger = LoggerFactory.getLogger( FileUploadService.class );
 
+	private static final int ATTEMPTS = 3;
+	private static final Duration BACKOFF = Duration.ofMillis( 500 );
+
 	private final RestTemplate restTemplate;
+	private final Duration backoff;
 
 	@Autowired
 	public FileUploadServiceBase( final RestTemplate restTemplate )
+	{
+		this( restTemplate, BACKOFF );
+	}
+
+	public FileUploadServiceBase( final RestTemplate restTemplate, final Duration backoff )
 	{
 		super();
 
 		this.restTemplate = restTemplate;
+		this.backoff = backoff;
 	}
 
 	@Override
-	public void processFiles( final UploadCmdLine commandLine, final FileSystem fileSystem ) throws IOException
+	public List< UploadResult > processFiles( final UploadCmdLine commandLine, final FileSystem fileSystem )
+			throws IOException
 	{
 		final URI host = commandLine.host();
 
 		checkConnection( host );
 
-		processFiles( commandLine.arguments()
-				.stream(), commandLine.directory(), fileSystem, host );
+		return processFiles( commandLine.arguments()
+				.stream(), commandLine.directory(), fileSystem, host, commandLine );
 	}
 
-	protected void processFiles( final Stream< String > stream, final String baseDir, final FileSystem fileSystem,
-			final URI host )
+	// each file is uploaded on its own thread, with the connections kept alive and shared between them
+	protected List< UploadResult > processFiles( final Stream< String > stream, final String baseDir,
+			final FileSystem fileSystem, final URI host, final UploadSettings settings )
 	{
-		stream.map( arg -> fileSystem.getPath( baseDir, arg ) )
+		final List< Path > files = stream.map( arg -> fileSystem.getPath( baseDir, arg ) )
 				.filter( file -> isFileValid( file ) )
-				.forEach( file -> uploadFile( host, file ) );
+				.collect( Collectors.toList() );
+		if ( files.isEmpty() )
+		{
+			return new ArrayList<>();
+		}
+
+		final long start = System.nanoTime();
+		final ExecutorService uploaders = Executors.newFixedThreadPool( Math.max( 1, Math.min( settings
+				.concurrent(), files.size() ) ) );
+		final List< UploadResult > results = new ArrayList<>( files.size() );
+		try
+		{
+			final List< Future< UploadResult > > uploads = new ArrayList<>( files.size() );
+			for ( final Path file : files )
+			{
+				uploads.add( uploaders.submit( () -> upload( host, file, settings ) ) );
+			}
+			for ( final Future< UploadResult > upload : uploads )
+			{
+				results.add( upload.get() );
+			}
+		}
+		catch ( final InterruptedException ex )
+		{
+			Thread.currentThread()
+					.interrupt();
+			throw new IllegalStateException( "upload-interrupted", ex );
+		}
+		catch ( final ExecutionException ex )
+		{
+			throw new IllegalStateException( "upload-failed", ex.getCause() );
+		}
+		finally
+		{
+			uploaders.shutdownNow();
+		}
+
+		summarise( results, TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) );
+		return results;
 	}
 
 	protected void checkConnection( final URI host ) throws IOException
@@ -74,10 +165,50 @@ public class FileUploadServiceBase extends AbstractFileService implements FileUp
 		}
 	}
 
-	protected void uploadFile( final URI host, final Path file )
+	// a failure is reported in the result, so one bad file does not stop the rest
+	protected UploadResult upload( final URI host, final Path file, final UploadSettings settings )
+	{
+		final AtomicInteger attempts = new AtomicInteger();
+		final long start = System.nanoTime();
+		long size = 0;
+		URI location = null;
+		String error = null;
+		try
+		{
+			size = Files.size( file );
+			location = size > settings.chunkSize() ? uploadChunked( host, file, settings, attempts )
+					: retry( file.toString(), settings.retries(), attempts, false, () -> uploadFile( host, file,
+							!settings.uncompressed() ) );
+		}
+		catch ( final IOException | RuntimeException ex )
+		{
+			logger.error( "Upload of '{}' failed: {}", file, ex.getMessage() );
+			error = ex.getMessage() == null ? ex.getClass()
+					.getSimpleName() : ex.getMessage();
+		}
+
+		return UploadResult.builder()
+				.name( file.toString() )
+				.size( size )
+				.elapsed( TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start ) )
+				.attempts( attempts.get() )
+				.location( location )
+				.error( error )
+				.build();
+	}
+
+	protected URI uploadFile( final URI host, final Path file )
+	{
+		return uploadFile( host, file, false );
+	}
+
+	// a file already gzipped is sent as it is, and the server inflates either as it parses
+	protected URI uploadFile( final URI host, final Path file, final boolean compress )
 	{
 		final MultiValueMap< String, Object > map = new LinkedMultiValueMap<>();
-		map.add( FILE, new PathResource( file ) );
+		map.add( FILE, compress && !file.getFileName()
+				.toString()
+				.endsWith( GzipResource.SUFFIX ) ? new GzipResource( file ) : new PathResource( file ) );
 
 		final HttpHeaders headers = new HttpHeaders();
 		headers.setContentType( MediaType.MULTIPART_FORM_DATA );
@@ -89,6 +220,265 @@ public class FileUploadServiceBase extends AbstractFileService implements FileUp
 		logger.warn( "Uploaded '{}' with response {}", file.toString(), result.getStatusCode() );
 		logger.warn( "Redirect to '{}'", result.getHeaders()
 				.getLocation() );
+		return result.getHeaders()
+				.getLocation();
+	}
+
+	// the server keeps the chunks it has, so a session opened again for the same file only needs what is missing,
+	// and nothing is published until every chunk is there and the session is committed
+	protected URI uploadChunked( final URI host, final Path file, final UploadSettings settings,
+			final AtomicInteger attempts ) throws IOException
+	{
+		final long size = Files.size( file );
+		final URI sessions = UriComponentsBuilder.fromUri( host )
+				.replacePath( SESSIONS )
+				.queryParam( NAME, file.getFileName()
+						.toString() )
+				.queryParam( SIZE, size )
+				.queryParam( CHUNK_SIZE, settings.chunkSize() )
+				.queryParam( DIGEST, digest( file ) )
+				.build()
+				.toUri();
+		SessionStatus status;
+		try
+		{
+			status = retry( file.toString(), settings.retries(), attempts, () -> restTemplate.postForEntity(
+					sessions, null, SessionStatus.class )
+					.getBody() );
+		}
+		catch ( final HttpClientErrorException ex )
+		{
+			if ( ex.getStatusCode() != HttpStatus.CONFLICT )
+			{
+				throw ex;
+			}
+			// the digest was declared, so a conflict means this very file was accepted before, as when an earlier
+			// run committed it and was cut short before it could say so
+			final URI location = ex.getResponseHeaders()
+					.getLocation();
+			logger.warn( "'{}' was already uploaded, see '{}'", file, location );
+			return location;
+		}
+		logger.info( "Session {} for '{}': {} of {} chunks to send", status.sessionId(), file, status.missing()
+				.size(), status.chunks() );
+
+		final ExecutorService senders = Executors.newFixedThreadPool( Math.max( 1, settings.parallel() ) );
+		try
+		{
+			for ( int attempt = 1; !status.missing()
+					.isEmpty(); attempt++ )
+			{
+				if ( attempt > ATTEMPTS )
+				{
+					throw new IllegalStateException( "upload-incomplete-" + status.missing()
+							.size() + "-chunks-missing" );
+				}
+				sendChunks( senders, host, file, status, settings, attempts );
+				final long sessionId = status.sessionId();
+				status = retry( file.toString(), settings.retries(), attempts, () -> restTemplate.getForObject( uri(
+						host, SESSION, sessionId ), SessionStatus.class ) );
+			}
+		}
+		finally
+		{
+			senders.shutdownNow();
+		}
+
+		final long sessionId = status.sessionId();
+		final ResponseEntity< Void > result = retry( file.toString(), settings.retries(), attempts,
+				() -> restTemplate.exchange( uri( host, COMMIT, sessionId ), HttpMethod.POST, null, Void.class ) );
+		logger.warn( "Uploaded '{}' in {} chunks with response {}", file.toString(), status.chunks(), result
+				.getStatusCode() );
+		logger.warn( "Redirect to '{}'", result.getHeaders()
+				.getLocation() );
+		return result.getHeaders()
+				.getLocation();
+	}
+
+	// the server knows a file by the digest of what it holds, so a compressed file is hashed as it is inflated
+	protected String digest( final Path file ) throws IOException
+	{
+		final MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance( "SHA-256" );
+		}
+		catch ( final NoSuchAlgorithmException ex )
+		{
+			throw new IllegalStateException( ex );
+		}
+
+		final InputStream raw = Files.newInputStream( file );
+		try (InputStream input = new DigestInputStream( file.getFileName()
+				.toString()
+				.endsWith( GzipResource.SUFFIX ) ? new GZIPInputStream( raw ) : raw, digest ))
+		{
+			final byte[] buffer = new byte[64 * 1024];
+			while ( input.read( buffer ) != -1 )
+			{
+				// only hashing
+			}
+		}
+		return String.format( "%064x", new BigInteger( 1, digest.digest() ) );
+	}
+
+	protected void sendChunks( final ExecutorService senders, final URI host, final Path file,
+			final SessionStatus status, final UploadSettings settings, final AtomicInteger attempts )
+	{
+		final List< Future< ? > > sent = new ArrayList<>();
+		for ( final int chunk : status.missing() )
+		{
+			sent.add( senders.submit( () -> retry( file + "#" + chunk, settings.retries(), attempts,
+					() -> sendChunk( host, file, status, chunk ) ) ) );
+		}
+
+		// a failed chunk is only logged, as it shows up missing when the session is checked again
+		for ( final Future< ? > future : sent )
+		{
+			try
+			{
+				future.get();
+			}
+			catch ( final InterruptedException ex )
+			{
+				Thread.currentThread()
+						.interrupt();
+				throw new IllegalStateException( "upload-interrupted", ex );
+			}
+			catch ( final ExecutionException ex )
+			{
+				logger.warn( "Chunk of '{}' failed: {}", file, ex.getCause()
+						.getMessage() );
+			}
+		}
+	}
+
+	protected Void sendChunk( final URI host, final Path file, final SessionStatus status, final int chunk )
+	{
+		final long position = ( long ) chunk * status.chunkSize();
+		final int length = ( int ) Math.min( status.chunkSize(), status.size() - position );
+
+		final HttpHeaders headers = new HttpHeaders();
+		headers.setContentType( MediaType.APPLICATION_OCTET_STREAM );
+		try
+		{
+			restTemplate.exchange( uri( host, CHUNK, status.sessionId(), chunk ), HttpMethod.PUT, new HttpEntity<>(
+					read( file, position, length ), headers ), Void.class );
+			return null;
+		}
+		catch ( final IOException ex )
+		{
+			throw new UncheckedIOException( ex );
+		}
+		catch ( final RestClientException ex )
+		{
+			logger.debug( "Chunk {} of '{}' failed", chunk, file, ex );
+			throw ex;
+		}
+	}
+
+	protected byte[] read( final Path file, final long position, final int length ) throws IOException
+	{
+		final ByteBuffer buffer = ByteBuffer.allocate( length );
+		try (final SeekableByteChannel channel = Files.newByteChannel( file ))
+		{
+			channel.position( position );
+			while ( buffer.hasRemaining() && channel.read( buffer ) != -1 )
+			{
+				// a read may return fewer bytes than asked for
+			}
+		}
+		return buffer.array();
+	}
+
+	protected < T > T retry( final String what, final int retries, final AtomicInteger attempts,
+			final Supplier< T > request )
+	{
+		return retry( what, retries, attempts, true, request );
+	}
+
+	// only server errors and lost connections are worth trying again, with exponential backoff and jitter so
+	// concurrent uploads do not all come back at once; chunks, sessions found again by their digest, status checks
+	// and commits are safe to send twice, but a whole file is only sent again when the server never saw it, or
+	// turned it away as busy, as it may otherwise have been accepted with only the response lost
+	protected < T > T retry( final String what, final int retries, final AtomicInteger attempts,
+			final boolean idempotent, final Supplier< T > request )
+	{
+		for ( int attempt = 0;; attempt++ )
+		{
+			attempts.incrementAndGet();
+			try
+			{
+				return request.get();
+			}
+			catch ( final HttpServerErrorException | ResourceAccessException ex )
+			{
+				if ( attempt >= retries || !idempotent && !isUnsent( ex ) )
+				{
+					throw ex;
+				}
+				final long delay = backoff.toMillis() << Math.min( attempt, 16 );
+				final long jittered = delay / 2 + ThreadLocalRandom.current()
+						.nextLong( delay / 2 + 1 );
+				logger.warn( "'{}' failed with {}, retrying in {}ms", what, ex.getMessage(), jittered );
+				sleep( jittered );
+			}
+		}
+	}
+
+	protected boolean isUnsent( final RestClientException ex )
+	{
+		if ( ex instanceof HttpServerErrorException )
+		{
+			return ( ( HttpServerErrorException ) ex ).getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE;
+		}
+		return ex.getCause() instanceof ConnectException || ex.getCause() instanceof ConnectTimeoutException;
+	}
+
+	protected void summarise( final List< UploadResult > results, final long elapsed )
+	{
+		long bytes = 0;
+		int failed = 0;
+		for ( final UploadResult result : results )
+		{
+			bytes += result.size();
+			if ( result.isSuccess() )
+			{
+				logger.warn( "{}: {} bytes in {}ms ({} MiB/s, {} requests) -> {}", result.name(), result.size(),
+						result.elapsed(), String.format( "%.2f", result.throughput() ), result.attempts(), result
+								.location() );
+			}
+			else
+			{
+				failed++;
+				logger.error( "{}: FAILED after {}ms ({} requests): {}", result.name(), result.elapsed(), result
+						.attempts(), result.error() );
+			}
+		}
+		logger.warn( "{} files, {} failed, {} bytes in {}ms ({} MiB/s)", results.size(), failed, bytes, elapsed,
+				String.format( "%.2f", elapsed == 0 ? 0 : bytes / 1048.576 / elapsed ) );
+	}
+
+	private void sleep( final long millis )
+	{
+		try
+		{
+			Thread.sleep( millis );
+		}
+		catch ( final InterruptedException ex )
+		{
+			Thread.currentThread()
+					.interrupt();
+			throw new IllegalStateException( "upload-interrupted", ex );
+		}
+	}
+
+	private URI uri( final URI host, final String path, final Object... variables )
+	{
+		return UriComponentsBuilder.fromUri( host )
+				.replacePath( path )
+				.buildAndExpand( variables )
+				.toUri();
 	}
 
 }
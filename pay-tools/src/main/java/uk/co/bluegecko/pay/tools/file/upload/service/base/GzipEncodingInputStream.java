@@ -0,0 +1,102 @@
+package uk.co.bluegecko.pay.tools.file.upload.service.base;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+
+// gzips whatever is read through it, so a file is compressed as it is sent rather than written out compressed first;
+// the trailer is only built once the file has been read to the end
+public class GzipEncodingInputStream extends SequenceInputStream
+{
+
+	private static final byte[] HEADER =
+		{ 0x1f, ( byte ) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, ( byte ) 0xff };
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Members members;
+
+	public GzipEncodingInputStream( final InputStream input )
+	{
+		this( input, Deflater.BEST_SPEED );
+	}
+
+	public GzipEncodingInputStream( final InputStream input, final int level )
+	{
+		this( new Members( input, level ) );
+	}
+
+	private GzipEncodingInputStream( final Members members )
+	{
+		super( members );
+
+		this.members = members;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try
+		{
+			super.close();
+		}
+		finally
+		{
+			members.deflater.end();
+		}
+	}
+
+	private static class Members implements Enumeration< InputStream >
+	{
+
+		private final CRC32 crc;
+		private final Deflater deflater;
+		private final InputStream input;
+		private int next;
+
+		private Members( final InputStream input, final int level )
+		{
+			crc = new CRC32();
+			deflater = new Deflater( level, true );
+			this.input = new DeflaterInputStream( new CheckedInputStream( input, crc ), deflater, BUFFER_SIZE );
+		}
+
+		@Override
+		public boolean hasMoreElements()
+		{
+			return next < 3;
+		}
+
+		@Override
+		public InputStream nextElement()
+		{
+			switch ( next++ )
+			{
+				case 0:
+					return new ByteArrayInputStream( HEADER );
+				case 1:
+					return input;
+				case 2:
+					return new ByteArrayInputStream( ByteBuffer.allocate( 8 )
+							.order( ByteOrder.LITTLE_ENDIAN )
+							.putInt( ( int ) crc.getValue() )
+							.putInt( ( int ) deflater.getBytesRead() )
+							.array() );
+				default:
+					throw new NoSuchElementException();
+			}
+		}
+
+	}
+
+}
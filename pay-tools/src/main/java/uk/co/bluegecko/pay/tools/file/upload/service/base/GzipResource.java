@@ -0,0 +1,59 @@
+package uk.co.bluegecko.pay.tools.file.upload.service.base;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.springframework.core.io.AbstractResource;
+
+
+// a file sent gzipped, compressed again each time it is read so a retried request sends it in full
+public class GzipResource extends AbstractResource
+{
+
+	public static final String SUFFIX = ".gz";
+
+	private final Path path;
+
+	public GzipResource( final Path path )
+	{
+		super();
+
+		this.path = path;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException
+	{
+		return new GzipEncodingInputStream( Files.newInputStream( path ) );
+	}
+
+	@Override
+	public boolean exists()
+	{
+		return Files.exists( path );
+	}
+
+	// the compressed length is only known once it has been sent
+	@Override
+	public long contentLength()
+	{
+		return -1;
+	}
+
+	@Override
+	public String getFilename()
+	{
+		return path.getFileName()
+				.toString() + SUFFIX;
+	}
+
+	@Override
+	public String getDescription()
+	{
+		return "gzip [" + path + "]";
+	}
+
+}
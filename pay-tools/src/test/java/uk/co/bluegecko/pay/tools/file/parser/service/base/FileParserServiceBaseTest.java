@@ -12,6 +12,8 @@ import static org.mockito.Mockito.verify;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.Files;
@@ -29,11 +31,16 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import com.lexicalscope.jewel.cli.Cli;
 import com.lexicalscope.jewel.cli.CliFactory;
 
+import uk.co.bluegecko.pay.bacs.std18.mapper.Standard18ByteMapper;
 import uk.co.bluegecko.pay.bacs.std18.mapper.Standard18Mapper;
 import uk.co.bluegecko.pay.bacs.std18.model.Row;
 import uk.co.bluegecko.pay.bacs.std18.model.Volume;
+import uk.co.bluegecko.pay.common.service.ByteMapper;
+import uk.co.bluegecko.pay.common.service.ByteParsingService;
 import uk.co.bluegecko.pay.common.service.Mapper;
+import uk.co.bluegecko.pay.common.service.ParallelByteParsingService;
 import uk.co.bluegecko.pay.common.service.ParsingService;
+import uk.co.bluegecko.pay.common.service.SegmentedByteMapper;
 import uk.co.bluegecko.pay.test.harness.TestHarness;
 import uk.co.bluegecko.pay.test.rule.FileSystemRule;
 import uk.co.bluegecko.pay.tools.file.parser.cli.ParserCmdLine;
@@ -54,6 +61,10 @@ public class FileParserServiceBaseTest extends TestHarness
 
 	@MockBean
 	private ParsingService parsingService;
+	@MockBean
+	private ByteParsingService byteParsingService;
+	@MockBean
+	private ParallelByteParsingService parallelParsingService;
 
 	private FileParserServiceBase fileParserService;
 
@@ -64,7 +75,8 @@ public class FileParserServiceBaseTest extends TestHarness
 	@Before
 	public void setUp() throws Exception
 	{
-		fileParserService = new FileParserServiceBase( parsingService );
+		fileParserService = new FileParserServiceBase( parsingService, byteParsingService,
+				parallelParsingService );
 		cli = CliFactory.createCli( ParserCmdLine.class );
 		parserSettings = cli.parseArguments( FILE_1 );
 	}
@@ -93,6 +105,19 @@ public class FileParserServiceBaseTest extends TestHarness
 		assertThat( mapper.isSet( Row.EOF1 ), is( false ) );
 	}
 
+	@Test
+	public final void testCreateByteMapperWithEnabled()
+	{
+		final ParserSettings parserSettings = cli.parseArguments( "-i", "-c", "-h", "-t", "-b", FILE_1 );
+
+		final Standard18ByteMapper mapper = fileParserService.createByteMapper( parserSettings );
+
+		assertThat( mapper.isSet( Row.INSTR ), is( true ) );
+		assertThat( mapper.isSet( Row.CONTRA ), is( true ) );
+		assertThat( mapper.isSet( Row.HDR1 ), is( true ) );
+		assertThat( mapper.isSet( Row.EOF1 ), is( true ) );
+	}
+
 	@SuppressWarnings( "unchecked" )
 	@Test
 	public final void testProcessFiles() throws IOException
@@ -140,6 +165,37 @@ public class FileParserServiceBaseTest extends TestHarness
 		verify( parsingService, times( 1 ) ).parse( any( Reader.class ), any( Mapper.class ) );
 	}
 
+	@SuppressWarnings( "unchecked" )
+	@Test
+	public final void testProcessFilesBytes() throws IOException
+	{
+		final String fileName = FILE_1;
+		try (final FileSystem fileSystem = fileSystemRule.getFileSystem())
+		{
+			Files.write( fileSystem.getPath( fileName ), LINES_1, StandardCharsets.UTF_8, StandardOpenOption.CREATE );
+
+			fileParserService.processFiles( cli.parseArguments( "-b", fileName ), fileSystem );
+		}
+		verify( byteParsingService, times( 1 ) ).parse( any( ReadableByteChannel.class ), any( ByteMapper.class ) );
+		verify( parsingService, never() ).parse( any( Reader.class ), any( Mapper.class ) );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	@Test
+	public final void testProcessFilesParallel() throws IOException
+	{
+		final String fileName = FILE_1;
+		try (final FileSystem fileSystem = fileSystemRule.getFileSystem())
+		{
+			Files.write( fileSystem.getPath( fileName ), LINES_1, StandardCharsets.UTF_8, StandardOpenOption.CREATE );
+
+			fileParserService.processFiles( cli.parseArguments( "-p", fileName ), fileSystem );
+		}
+		verify( parallelParsingService, times( 1 ) ).parse( any( FileChannel.class ),
+				any( SegmentedByteMapper.class ) );
+		verify( byteParsingService, never() ).parse( any( ReadableByteChannel.class ), any( ByteMapper.class ) );
+	}
+
 	@Test
 	public final void testConsumer()
 	{
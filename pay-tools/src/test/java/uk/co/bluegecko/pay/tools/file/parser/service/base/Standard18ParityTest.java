@@ -0,0 +1,83 @@
+package uk.co.bluegecko.pay.tools.file.parser.service.base;
+
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import org.junit.Test;
+
+import uk.co.bluegecko.pay.bacs.std18.mapper.Standard18ByteMapper;
+import uk.co.bluegecko.pay.bacs.std18.mapper.Standard18Mapper;
+import uk.co.bluegecko.pay.bacs.std18.model.Row;
+import uk.co.bluegecko.pay.common.service.base.ByteParsingServiceBase;
+import uk.co.bluegecko.pay.common.service.base.ParsingServiceBase;
+
+
+public class Standard18ParityTest
+{
+
+	private static final String[] SAMPLE_FILES =
+		{ "BTE_DEF.100101.10.1", "BTE_DEF.100146.50.1", "BTE_DEF.B01256.50.1", "BTE_HSM.100346.OneRecord.1.1",
+				"BTE_UB.BACS_BUR.AllDAILY.10", "BTE_UB.BACS_BUR.MULTI_mixedtypes" };
+
+	@Test
+	public final void testSampleFiles() throws IOException
+	{
+		for ( final String sampleFile : SAMPLE_FILES )
+		{
+			final List< String > expected = parseBeanIO( sampleFile );
+			final List< String > actual = parseBytes( sampleFile );
+
+			assertThat( sampleFile, actual, is( expected ) );
+		}
+	}
+
+	@Test
+	public final void testSampleFilesNotEmpty() throws IOException
+	{
+		assertThat( parseBytes( SAMPLE_FILES[0] ).isEmpty(), is( false ) );
+	}
+
+	protected List< String > parseBeanIO( final String sampleFile ) throws IOException
+	{
+		final List< String > rows = new ArrayList<>();
+		final Standard18Mapper mapper = new Standard18Mapper();
+		for ( final Row row : Row.values() )
+		{
+			mapper.addRow( row, collect( rows ) );
+		}
+		new ParsingServiceBase().parse( new InputStreamReader( open( sampleFile ), StandardCharsets.UTF_8 ), mapper );
+		return rows;
+	}
+
+	protected List< String > parseBytes( final String sampleFile ) throws IOException
+	{
+		final List< String > rows = new ArrayList<>();
+		final Standard18ByteMapper mapper = new Standard18ByteMapper();
+		for ( final Row row : Row.values() )
+		{
+			mapper.addRow( row, collect( rows ) );
+		}
+		new ByteParsingServiceBase().parse( open( sampleFile ), mapper );
+		return rows;
+	}
+
+	protected BiConsumer< Row, Object > collect( final List< String > rows )
+	{
+		return ( final Row row, final Object value ) -> rows.add( row.name() + " " + value );
+	}
+
+	protected InputStream open( final String sampleFile )
+	{
+		return getClass().getResourceAsStream( "/sample-files/" + sampleFile );
+	}
+
+}
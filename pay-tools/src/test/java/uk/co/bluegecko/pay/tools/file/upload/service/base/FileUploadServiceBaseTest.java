@@ -1,17 +1,33 @@
 package uk.co.bluegecko.pay.tools.file.upload.service.base;
 
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.client.ExpectedCount.once;
 import static org.springframework.test.web.client.ExpectedCount.times;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withCreatedEntity;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withNoContent;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
 import static uk.co.bluegecko.pay.test.exception.ThrowableCaptor.capture;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
@@ -19,15 +35,26 @@ import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.springframework.util.StreamUtils;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.web.client.RestTemplate;
 
@@ -37,7 +64,10 @@ import com.lexicalscope.jewel.cli.CliFactory;
 
 import uk.co.bluegecko.pay.test.harness.TestHarness;
 import uk.co.bluegecko.pay.test.rule.FileSystemRule;
+import uk.co.bluegecko.pay.tools.file.upload.FileUploadApplication;
 import uk.co.bluegecko.pay.tools.file.upload.cli.UploadCmdLine;
+import uk.co.bluegecko.pay.tools.file.upload.cli.UploadSettings;
+import uk.co.bluegecko.pay.tools.file.upload.model.UploadResult;
 
 
 public class FileUploadServiceBaseTest extends TestHarness
@@ -45,12 +75,16 @@ public class FileUploadServiceBaseTest extends TestHarness
 
 	private static final String UPLOAD = "upload/";
 	private static final String STATUS = "status/1";
+	private static final String SESSIONS = "upload/sessions/";
+	private static final String SESSION = SESSIONS + "3";
 
 	private static final String FILE_1 = "/test1.txt";
 	private static final String FILE_2 = "/test2,txt";
 
 	private static final List< String > LINES_1 = Arrays.asList( "Line 1.1", "Line 1.2" );
 	private static final List< String > LINES_2 = Arrays.asList( "Line 2.1", "Line 2.2" );
+	private static final int FILES = 12;
+	private static final String SAMPLE = "/sample-files/BTE_DEF.B01256.50.1";
 
 	@Rule
 	public final FileSystemRule fileSystemRule = new FileSystemRule();
@@ -62,11 +96,14 @@ public class FileUploadServiceBaseTest extends TestHarness
 	private final MockRestServiceServer server = MockRestServiceServer.createServer( restTemplate );
 
 	private FileUploadServiceBase fileUploadService;
+	private FileUploadServiceBase pooledUploadService;
 
 	@Before
 	public void setUp() throws Exception
 	{
-		fileUploadService = new FileUploadServiceBase( restTemplate );
+		fileUploadService = new FileUploadServiceBase( restTemplate, Duration.ofMillis( 1 ) );
+		pooledUploadService = new FileUploadServiceBase( new RestTemplate( FileUploadApplication
+				.pooledRequestFactory( 4 ) ), Duration.ofMillis( 1 ) );
 	}
 
 	@After
@@ -104,6 +141,117 @@ public class FileUploadServiceBaseTest extends TestHarness
 		server.verify();
 	}
 
+	@Test
+	public final void testFileUploadChunked() throws IOException, URISyntaxException, NoSuchAlgorithmException
+	{
+		final URI host = createURI( false );
+		final Path file = fileSystemRule.getFileSystem()
+				.getPath( FILE_1 );
+		Files.write( file, LINES_1, StandardCharsets.UTF_8, StandardOpenOption.CREATE );
+		final String digest = String.format( "%064x", new BigInteger( 1, MessageDigest.getInstance( "SHA-256" )
+				.digest( Files.readAllBytes( file ) ) ) );
+
+		final MockRestServiceServer chunkServer = MockRestServiceServer.bindTo( restTemplate )
+				.ignoreExpectOrder( true )
+				.build();
+		chunkServer.expect( once(), requestTo( host.resolve( SESSIONS + "?name=test1.txt&size=18&chunkSize=8&digest="
+				+ digest ) ) )
+				.andExpect( method( HttpMethod.POST ) )
+				.andRespond( withCreatedEntity( host.resolve( SESSION ) ).contentType( MediaType.APPLICATION_JSON )
+						.body( session( "[0,1,2]" ) ) );
+		for ( final String chunk : Arrays.asList( "0", "1", "2" ) )
+		{
+			chunkServer.expect( once(), requestTo( host.resolve( SESSION + "/chunks/" + chunk ) ) )
+					.andExpect( method( HttpMethod.PUT ) )
+					.andRespond( withNoContent() );
+		}
+		chunkServer.expect( once(), requestTo( host.resolve( SESSION ) ) )
+				.andExpect( method( HttpMethod.GET ) )
+				.andRespond( withSuccess( session( "[]" ), MediaType.APPLICATION_JSON ) );
+		chunkServer.expect( once(), requestTo( host.resolve( SESSION + "/commit" ) ) )
+				.andExpect( method( HttpMethod.POST ) )
+				.andRespond( withCreatedEntity( host.resolve( STATUS ) ) );
+
+		assertThat( fileUploadService.uploadChunked( host, file, settings( 8 ), new AtomicInteger() ), is( host
+				.resolve( STATUS ) ) );
+
+		chunkServer.verify();
+	}
+
+	@Test
+	public final void testFileUploadChunkedAlreadyUploaded() throws IOException, URISyntaxException
+	{
+		final URI host = createURI( false );
+		final Path file = fileSystemRule.getFileSystem()
+				.getPath( FILE_1 );
+		Files.write( file, LINES_1, StandardCharsets.UTF_8, StandardOpenOption.CREATE );
+
+		final HttpHeaders headers = new HttpHeaders();
+		headers.setLocation( host.resolve( STATUS ) );
+		server.expect( once(), requestTo( startsWith( host.resolve( SESSIONS )
+				.toString() ) ) )
+				.andExpect( method( HttpMethod.POST ) )
+				.andRespond( withStatus( HttpStatus.CONFLICT ).headers( headers ) );
+
+		assertThat( fileUploadService.uploadChunked( host, file, settings( 8 ), new AtomicInteger() ), is( host
+				.resolve( STATUS ) ) );
+
+		server.verify();
+	}
+
+	@Test
+	public final void testGzipEncoding() throws IOException
+	{
+		final byte[] content = String.join( "\n", LINES_1 )
+				.getBytes( StandardCharsets.UTF_8 );
+
+		try (InputStream input = new GZIPInputStream( new GzipEncodingInputStream( new ByteArrayInputStream(
+				content ) ) ))
+		{
+			assertThat( StreamUtils.copyToByteArray( input ), is( content ) );
+		}
+	}
+
+	@Test
+	public final void testFileUploadCompressed() throws IOException, URISyntaxException
+	{
+		final URI host = createURI( true );
+		serverRule.stubFor( post( urlEqualTo( "/" + UPLOAD ) ).willReturn( aResponse().withStatus( 202 )
+				.withHeader( "Location", host.resolve( STATUS )
+						.toString() ) ) );
+
+		final Path file = fileSystemRule.getFileSystem()
+				.getPath( "/sample.txt" );
+		try (InputStream input = getClass().getResourceAsStream( SAMPLE ))
+		{
+			Files.write( file, StreamUtils.copyToByteArray( input ) );
+		}
+
+		pooledUploadService.uploadFile( host, file, false );
+		final long plain = serverRule.findAll( postRequestedFor( urlEqualTo( "/" + UPLOAD ) ) )
+				.get( 0 )
+				.getBody().length;
+		serverRule.resetRequests();
+		pooledUploadService.uploadFile( host, file, true );
+		final byte[] body = serverRule.findAll( postRequestedFor( urlEqualTo( "/" + UPLOAD ) ) )
+				.get( 0 )
+				.getBody();
+
+		assertThat( ( long ) body.length, is( lessThan( plain / 4 ) ) );
+		assertThat( new String( body, StandardCharsets.ISO_8859_1 ).contains( "filename=\"sample.txt.gz\"" ), is(
+				true ) );
+	}
+
+	@Test
+	public final void testReadChunk() throws IOException
+	{
+		final Path file = fileSystemRule.getFileSystem()
+				.getPath( FILE_1 );
+		Files.write( file, LINES_1, StandardCharsets.UTF_8, StandardOpenOption.CREATE );
+
+		assertThat( new String( fileUploadService.read( file, 5, 3 ), StandardCharsets.UTF_8 ), is( "1.1" ) );
+	}
+
 	@Test
 	public final void testProcessFiles() throws IOException, URISyntaxException
 	{
@@ -120,12 +268,166 @@ public class FileUploadServiceBaseTest extends TestHarness
 			Files.write( fileSystem.getPath( fileNames[1] ), LINES_2, StandardCharsets.UTF_8,
 					StandardOpenOption.CREATE );
 
-			fileUploadService.processFiles( Arrays.asList( fileNames )
-					.stream(), "", fileSystem, createURI( false ) );
+			final List< UploadResult > results = fileUploadService.processFiles( Arrays.asList( fileNames )
+					.stream(), "", fileSystem, createURI( false ), settings( 1024 ) );
+
+			assertThat( results.size(), is( 2 ) );
+			assertThat( results.get( 0 )
+					.isSuccess(), is( true ) );
+			assertThat( results.get( 1 )
+					.size(), is( 18L ) );
 		}
 		server.verify();
 	}
 
+	@Test
+	public final void testProcessFilesConcurrent() throws IOException, URISyntaxException
+	{
+		final URI host = createURI( true );
+		serverRule.stubFor( post( urlEqualTo( "/" + UPLOAD ) ).willReturn( aResponse().withStatus( 202 )
+				.withHeader( "Location", host.resolve( STATUS )
+						.toString() ) ) );
+
+		final List< String > fileNames = IntStream.range( 0, FILES )
+				.mapToObj( i -> "/test" + i + ".txt" )
+				.collect( Collectors.toList() );
+		try (final FileSystem fileSystem = fileSystemRule.getFileSystem())
+		{
+			for ( final String fileName : fileNames )
+			{
+				Files.write( fileSystem.getPath( fileName ), LINES_1, StandardCharsets.UTF_8,
+						StandardOpenOption.CREATE );
+			}
+
+			final List< UploadResult > results = pooledUploadService.processFiles( fileNames.stream(), "",
+					fileSystem, host, settings( 1024 ) );
+
+			assertThat( results.size(), is( FILES ) );
+			for ( int i = 0; i < FILES; i++ )
+			{
+				assertThat( results.get( i )
+						.name(), is( fileNames.get( i ) ) );
+				assertThat( results.get( i )
+						.location(), is( host.resolve( STATUS ) ) );
+				assertThat( results.get( i )
+						.attempts(), is( 1 ) );
+			}
+		}
+		serverRule.verify( FILES, postRequestedFor( urlEqualTo( "/" + UPLOAD ) ) );
+	}
+
+	@Test
+	public final void testUploadRetried() throws IOException, URISyntaxException
+	{
+		final URI host = createURI( true );
+		serverRule.stubFor( post( urlEqualTo( "/" + UPLOAD ) ).inScenario( "retry" )
+				.whenScenarioStateIs( STARTED )
+				.willReturn( aResponse().withStatus( 503 ) )
+				.willSetStateTo( "recovered" ) );
+		serverRule.stubFor( post( urlEqualTo( "/" + UPLOAD ) ).inScenario( "retry" )
+				.whenScenarioStateIs( "recovered" )
+				.willReturn( aResponse().withStatus( 202 )
+						.withHeader( "Location", host.resolve( STATUS )
+								.toString() ) ) );
+
+		final Path file = fileSystemRule.getFileSystem()
+				.getPath( FILE_1 );
+		Files.write( file, LINES_1, StandardCharsets.UTF_8, StandardOpenOption.CREATE );
+
+		final UploadResult result = pooledUploadService.upload( host, file, settings( 1024 ) );
+
+		assertThat( result.isSuccess(), is( true ) );
+		assertThat( result.attempts(), is( 2 ) );
+		assertThat( result.location(), is( host.resolve( STATUS ) ) );
+		serverRule.verify( 2, postRequestedFor( urlEqualTo( "/" + UPLOAD ) ) );
+	}
+
+	@Test
+	public final void testUploadRetriesExhausted() throws IOException, URISyntaxException
+	{
+		final URI host = createURI( true );
+		serverRule.stubFor( post( urlEqualTo( "/" + UPLOAD ) ).willReturn( aResponse().withStatus( 503 ) ) );
+
+		final Path file = fileSystemRule.getFileSystem()
+				.getPath( FILE_1 );
+		Files.write( file, LINES_1, StandardCharsets.UTF_8, StandardOpenOption.CREATE );
+
+		final UploadResult result = pooledUploadService.upload( host, file, settings( 1024 ) );
+
+		assertThat( result.isSuccess(), is( false ) );
+		assertThat( result.location(), is( nullValue() ) );
+		// the first request and three retries
+		assertThat( result.attempts(), is( 4 ) );
+		serverRule.verify( 4, postRequestedFor( urlEqualTo( "/" + UPLOAD ) ) );
+	}
+
+	@Test
+	public final void testUploadNotRetriedAfterServerError() throws IOException, URISyntaxException
+	{
+		final URI host = createURI( true );
+		serverRule.stubFor( post( urlEqualTo( "/" + UPLOAD ) ).willReturn( aResponse().withStatus( 500 ) ) );
+
+		final Path file = fileSystemRule.getFileSystem()
+				.getPath( FILE_1 );
+		Files.write( file, LINES_1, StandardCharsets.UTF_8, StandardOpenOption.CREATE );
+
+		final UploadResult result = pooledUploadService.upload( host, file, settings( 1024 ) );
+
+		// the server had the file, and may have accepted it
+		assertThat( result.isSuccess(), is( false ) );
+		assertThat( result.attempts(), is( 1 ) );
+	}
+
+	@Test
+	public final void testUploadReadTimeout() throws IOException, URISyntaxException
+	{
+		final URI host = createURI( true );
+		serverRule.stubFor( post( urlEqualTo( "/" + UPLOAD ) ).willReturn( aResponse().withStatus( 202 )
+				.withFixedDelay( 2000 ) ) );
+		final FileUploadServiceBase timedUploadService = new FileUploadServiceBase( new RestTemplate(
+				FileUploadApplication.pooledRequestFactory( 4, Duration.ofMillis( 200 ) ) ), Duration.ofMillis( 1 ) );
+
+		final Path file = fileSystemRule.getFileSystem()
+				.getPath( FILE_1 );
+		Files.write( file, LINES_1, StandardCharsets.UTF_8, StandardOpenOption.CREATE );
+
+		final UploadResult result = timedUploadService.upload( host, file, settings( 1024 ) );
+
+		assertThat( result.isSuccess(), is( false ) );
+		assertThat( result.attempts(), is( 1 ) );
+		assertThat( result.elapsed(), is( lessThan( 2000L ) ) );
+	}
+
+	@Test
+	public final void testUploadRetriedWhenRefused() throws IOException, URISyntaxException
+	{
+		final Path file = fileSystemRule.getFileSystem()
+				.getPath( FILE_1 );
+		Files.write( file, LINES_1, StandardCharsets.UTF_8, StandardOpenOption.CREATE );
+
+		// nothing listens on the port, so the file never reached a server and is sent again
+		final UploadResult result = pooledUploadService.upload( createURI( false ), file, settings( 1024 ) );
+
+		assertThat( result.isSuccess(), is( false ) );
+		assertThat( result.attempts(), is( 4 ) );
+	}
+
+	@Test
+	public final void testUploadNotRetriedOnClientError() throws IOException, URISyntaxException
+	{
+		final URI host = createURI( true );
+		serverRule.stubFor( post( urlEqualTo( "/" + UPLOAD ) ).willReturn( aResponse().withStatus( 400 ) ) );
+
+		final Path file = fileSystemRule.getFileSystem()
+				.getPath( FILE_1 );
+		Files.write( file, LINES_1, StandardCharsets.UTF_8, StandardOpenOption.CREATE );
+
+		final UploadResult result = pooledUploadService.upload( host, file, settings( 1024 ) );
+
+		assertThat( result.isSuccess(), is( false ) );
+		assertThat( result.attempts(), is( 1 ) );
+	}
+
 	@Test
 	public final void testProcessFilesCmdLine() throws IOException, URISyntaxException
 	{
@@ -141,11 +443,29 @@ public class FileUploadServiceBaseTest extends TestHarness
 		{
 			Files.write( fileSystem.getPath( fileName ), LINES_1, StandardCharsets.UTF_8, StandardOpenOption.CREATE );
 
-			fileUploadService.processFiles( cmdLine, fileSystem );
+			assertThat( fileUploadService.processFiles( cmdLine, fileSystem )
+					.get( 0 )
+					.isSuccess(), is( true ) );
 		}
 		server.verify();
 	}
 
+	private UploadSettings settings( final int chunkSize )
+	{
+		final UploadSettings settings = mock( UploadSettings.class );
+		when( settings.chunkSize() ).thenReturn( chunkSize );
+		when( settings.parallel() ).thenReturn( 2 );
+		when( settings.concurrent() ).thenReturn( 4 );
+		when( settings.retries() ).thenReturn( 3 );
+		return settings;
+	}
+
+	private String session( final String missing )
+	{
+		return "{\"sessionId\":3,\"name\":\"test1.txt\",\"size\":18,\"chunkSize\":8,\"chunks\":3,\"missing\":"
+				+ missing + ",\"offset\":0,\"committed\":false,\"line\":0,\"index\":0}";
+	}
+
 	private URI createURI( final boolean useServerPort ) throws URISyntaxException
 	{
 		final int port = useServerPort ? serverRule.port() : 9090;
@@ -9,6 +9,8 @@ import org.springframework.context.annotation.Configuration;
 
 import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
 import uk.co.bluegecko.pay.common.annotation.TestProfile;
+import uk.co.bluegecko.pay.common.logging.LogSampler;
+import uk.co.bluegecko.pay.upload.service.InstructionPublisher;
 import uk.co.bluegecko.pay.upload.service.StreamingService;
 
 
@@ -34,10 +36,49 @@ public class TestConfig
 
 		private static final Logger logger = LoggerFactory.getLogger( StreamingService.class );
 
+		private final LogSampler sampler = new LogSampler( 1000 );
+
 		@Override
 		public void sendInstruction( final Instruction instruction )
 		{
-			logger.info( "sending {}", instruction.reference() );
+			sending( instruction.reference() );
+		}
+
+		private void sending( final String reference )
+		{
+			if ( sampler.sample() )
+			{
+				logger.info( "sending {} ({} sent)", reference, sampler.count() );
+			}
+		}
+
+		@Override
+		public InstructionPublisher publisher()
+		{
+			return new InstructionPublisher()
+			{
+
+				@Override
+				public void send( final Instruction instruction )
+				{
+					sendInstruction( instruction );
+				}
+
+				@Override
+				public void send( final uk.co.bluegecko.pay.v1.portfolio.wire.Instruction instruction )
+				{
+					sending( instruction.reference() );
+				}
+
+				@Override
+				public void flush()
+				{}
+
+				@Override
+				public void close()
+				{}
+
+			};
 		}
 
 	}
@@ -0,0 +1,150 @@
+package uk.co.bluegecko.pay.upload.service.base;
+
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.MessageChannel;
+
+import io.micrometer.core.instrument.Timer;
+import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
+import uk.co.bluegecko.pay.bacs.std18.service.v1.InstructionWireStd18ToV1;
+import uk.co.bluegecko.pay.upload.service.InstructionPublisher;
+import uk.co.bluegecko.pay.v1.portfolio.wire.InstructionEnvelope;
+
+
+public class BatchingPublisher implements InstructionPublisher
+{
+
+	private final MessageChannel channel;
+	private final InstructionWireStd18ToV1 instructionWireService;
+	private final ScheduledExecutorService scheduler;
+	private final int batchSize;
+	private final long linger;
+	private final Clock clock;
+	private final Timer timer;
+
+	private List< uk.co.bluegecko.pay.v1.portfolio.wire.Instruction > instructions;
+	private int firstIndex;
+	private int lastIndex;
+	private int sequence;
+	private ScheduledFuture< ? > lingering;
+	private RuntimeException failed;
+
+	public BatchingPublisher( final MessageChannel channel, final InstructionWireStd18ToV1 instructionWireService,
+			final ScheduledExecutorService scheduler, final int batchSize, final long linger, final Clock clock,
+			final Timer timer )
+	{
+		if ( batchSize < 1 || linger < 0 )
+		{
+			throw new IllegalArgumentException( "invalid-batch-" + batchSize + "-" + linger );
+		}
+
+		this.channel = channel;
+		this.instructionWireService = instructionWireService;
+		this.scheduler = scheduler;
+		this.batchSize = batchSize;
+		this.linger = linger;
+		this.clock = clock;
+		this.timer = timer;
+		instructions = new ArrayList<>( batchSize );
+	}
+
+	@Override
+	public void send( final Instruction instruction )
+	{
+		send( instructionWireService.toWire( instruction ) );
+	}
+
+	@Override
+	public synchronized void send( final uk.co.bluegecko.pay.v1.portfolio.wire.Instruction instruction )
+	{
+		failed();
+		if ( instructions.isEmpty() )
+		{
+			firstIndex = instruction.index();
+			if ( linger > 0 )
+			{
+				lingering = scheduler.schedule( this::linger, linger, TimeUnit.MILLISECONDS );
+			}
+		}
+		instructions.add( instruction );
+		lastIndex = instruction.index();
+
+		if ( instructions.size() >= batchSize )
+		{
+			publish();
+		}
+	}
+
+	@Override
+	public synchronized void flush()
+	{
+		failed();
+		publish();
+	}
+
+	// a flush on the scheduler has no caller to throw to, so its failure is kept and thrown to the next one; the job
+	// then fails rather than completing, or checkpointing, past the envelope that was lost
+	protected synchronized void linger()
+	{
+		try
+		{
+			publish();
+		}
+		catch ( final RuntimeException ex )
+		{
+			failed = ex;
+		}
+	}
+
+	protected void failed()
+	{
+		if ( failed != null )
+		{
+			throw new IllegalStateException( "envelope-not-sent", failed );
+		}
+	}
+
+	protected void publish()
+	{
+		if ( lingering != null )
+		{
+			lingering.cancel( false );
+			lingering = null;
+		}
+		if ( instructions.isEmpty() )
+		{
+			return;
+		}
+
+		// instructions arrive in index order and are sent under the same lock, so envelopes keep that order
+		final InstructionEnvelope envelope = InstructionEnvelope.builder()
+				.sequence( ++sequence )
+				.instructions( instructions )
+				.build();
+		instructions = new ArrayList<>( batchSize );
+
+		timer.record( () -> channel.send( MessageBuilder.withPayload( envelope )
+				.setSequenceNumber( sequence )
+				.setHeader( InstructionEnvelope.TYPE, InstructionEnvelope.ENVELOPE )
+				.setHeader( InstructionEnvelope.FIRST_INDEX, firstIndex )
+				.setHeader( InstructionEnvelope.LAST_INDEX, lastIndex )
+				.setHeader( InstructionEnvelope.COUNT, envelope.instructions()
+						.size() )
+				.setHeader( InstructionEnvelope.PUBLISHED, clock.millis() )
+				.build() ) );
+	}
+
+	@Override
+	public void close()
+	{
+		flush();
+	}
+
+}
@@ -1,19 +1,31 @@
 package uk.co.bluegecko.pay.upload.service.base;
 
 
+import java.time.Clock;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.annotation.PreDestroy;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.stream.annotation.EnableBinding;
 import org.springframework.cloud.stream.annotation.Output;
 import org.springframework.cloud.stream.messaging.Source;
 import org.springframework.integration.support.MessageBuilder;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
 import uk.co.bluegecko.pay.bacs.std18.service.v1.InstructionWireStd18ToV1;
 import uk.co.bluegecko.pay.common.annotation.NotTestProfile;
+import uk.co.bluegecko.pay.common.logging.LogSampler;
+import uk.co.bluegecko.pay.upload.service.InstructionPublisher;
 import uk.co.bluegecko.pay.upload.service.StreamingService;
+import uk.co.bluegecko.pay.v1.portfolio.wire.InstructionEnvelope;
 
 
 @Service
@@ -22,30 +34,76 @@ import uk.co.bluegecko.pay.upload.service.StreamingService;
 public class StreamingServiceBase implements StreamingService
 {
 
+	public static final String PUBLISH = "pay.stream.publish";
+
 	private static final Logger logger = LoggerFactory.getLogger( StreamingService.class );
+	private static final int LOG_EVERY = 1000;
 
 	private final Source source;
 	private final InstructionWireStd18ToV1 instructionWireService;
+	private final ScheduledExecutorService scheduler;
+	private final int batchSize;
+	private final long linger;
+	private final Clock clock;
+	private final Timer singleTimer;
+	private final Timer envelopeTimer;
+	private final LogSampler sampler;
 
 	@Autowired
-	public StreamingServiceBase( final Source source, final InstructionWireStd18ToV1 instructionWireService )
+	public StreamingServiceBase( final Source source, final InstructionWireStd18ToV1 instructionWireService,
+			@Value( "${pay.streaming.batch-size:100}" ) final int batchSize,
+			@Value( "${pay.streaming.linger:50}" ) final long linger, final Clock clock,
+			final MeterRegistry meterRegistry )
 	{
 		super();
 
 		this.source = source;
 		this.instructionWireService = instructionWireService;
+		this.batchSize = batchSize;
+		this.linger = linger;
+		this.clock = clock;
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		singleTimer = timer( meterRegistry, "single" );
+		envelopeTimer = timer( meterRegistry, "envelope" );
+		sampler = new LogSampler( LOG_EVERY );
+	}
+
+	protected Timer timer( final MeterRegistry meterRegistry, final String type )
+	{
+		return Timer.builder( PUBLISH )
+				.tag( "type", type )
+				.publishPercentileHistogram()
+				.register( meterRegistry );
 	}
 
 	@Override
 	@Output( value = Source.OUTPUT )
 	public void sendInstruction( final Instruction instruction )
 	{
-		logger.info( "sending {}", instruction.reference() );
+		if ( logger.isDebugEnabled() && sampler.sample() )
+		{
+			logger.debug( "sending {} ({} sent)", instruction.reference(), sampler.count() );
+		}
 
-		source.output()
-				.send( MessageBuilder.withPayload( instructionWireService.toWire( instruction ) )
+		final Object payload = instructionWireService.toWire( instruction );
+		singleTimer.record( () -> source.output()
+				.send( MessageBuilder.withPayload( payload )
 						.setSequenceNumber( instruction.index() )
-						.build() );
+						.setHeader( InstructionEnvelope.PUBLISHED, clock.millis() )
+						.build() ) );
+	}
+
+	@Override
+	public InstructionPublisher publisher()
+	{
+		return new BatchingPublisher( source.output(), instructionWireService, scheduler, batchSize, linger, clock,
+				envelopeTimer );
+	}
+
+	@PreDestroy
+	public void shutdown()
+	{
+		scheduler.shutdownNow();
 	}
 
 }
@@ -0,0 +1,209 @@
+package uk.co.bluegecko.pay.upload.service.base;
+
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHeaders;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uk.co.bluegecko.pay.bacs.std18.model.Account;
+import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
+import uk.co.bluegecko.pay.bacs.std18.service.v1.AccountWireStd18ToV1;
+import uk.co.bluegecko.pay.bacs.std18.service.v1.InstructionWireStd18ToV1;
+import uk.co.bluegecko.pay.upload.service.InstructionPublisher;
+import uk.co.bluegecko.pay.v1.portfolio.wire.InstructionEnvelope;
+
+
+public class BatchingPublisherTest
+{
+
+	private static final Clock CLOCK = Clock.fixed( Instant.ofEpochMilli( 1000 ), ZoneOffset.UTC );
+	private static final Account ACCOUNT = Account.builder()
+			.sortCode( "123456" )
+			.number( "12345678" )
+			.name( "B.BAGGINS" )
+			.build();
+
+	private InstructionWireStd18ToV1 instructionWireService;
+	private ScheduledExecutorService scheduler;
+	private List< Message< ? > > messages;
+	private MessageChannel channel;
+	private MeterRegistry meterRegistry;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		instructionWireService = new InstructionWireStd18ToV1( new AccountWireStd18ToV1() );
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		messages = new CopyOnWriteArrayList<>();
+		channel = new CapturingChannel( messages::add );
+		meterRegistry = new SimpleMeterRegistry();
+	}
+
+	@After
+	public void tearDown()
+	{
+		scheduler.shutdownNow();
+	}
+
+	@Test
+	public final void testFlushByCount()
+	{
+		try (InstructionPublisher publisher = batchingPublisher( 3, 0 ))
+		{
+			for ( int i = 1; i <= 7; i++ )
+			{
+				publisher.send( instruction( i ) );
+			}
+			assertThat( messages.size(), is( 2 ) );
+		}
+
+		assertThat( messages.size(), is( 3 ) );
+		assertThat( indexes( 0 ), contains( 1, 2, 3 ) );
+		assertThat( indexes( 2 ), contains( 7 ) );
+
+		final MessageHeaders headers = messages.get( 1 )
+				.getHeaders();
+		assertThat( headers.get( "sequenceNumber" ), is( 2 ) );
+		assertThat( headers.get( InstructionEnvelope.TYPE ), is( InstructionEnvelope.ENVELOPE ) );
+		assertThat( headers.get( InstructionEnvelope.FIRST_INDEX ), is( 4 ) );
+		assertThat( headers.get( InstructionEnvelope.LAST_INDEX ), is( 6 ) );
+		assertThat( headers.get( InstructionEnvelope.COUNT ), is( 3 ) );
+		assertThat( headers.get( InstructionEnvelope.PUBLISHED ), is( 1000L ) );
+		assertThat( meterRegistry.timer( "test" )
+				.count(), is( 3L ) );
+	}
+
+	@Test
+	public final void testFlushByLinger() throws InterruptedException
+	{
+		final InstructionPublisher publisher = batchingPublisher( 100, 10 );
+		publisher.send( instruction( 1 ) );
+		publisher.send( instruction( 2 ) );
+
+		final long timeout = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( 5 );
+		while ( messages.isEmpty() && System.currentTimeMillis() < timeout )
+		{
+			Thread.sleep( 5 );
+		}
+
+		assertThat( messages.size(), is( 1 ) );
+		assertThat( indexes( 0 ), contains( 1, 2 ) );
+	}
+
+	@Test
+	public final void testLingerFailureThrownToNextCaller() throws InterruptedException
+	{
+		final CountDownLatch attempted = new CountDownLatch( 1 );
+		channel = new CapturingChannel( message ->
+			{
+				attempted.countDown();
+				throw new MessageDeliveryException( message, "broker-down" );
+			} );
+		final InstructionPublisher publisher = batchingPublisher( 100, 10 );
+		publisher.send( instruction( 1 ) );
+		assertThat( attempted.await( 5, TimeUnit.SECONDS ), is( true ) );
+
+		try
+		{
+			publisher.send( instruction( 2 ) );
+			fail( "expected failure" );
+		}
+		catch ( final IllegalStateException ex )
+		{
+			assertThat( ex.getCause(), is( instanceOf( MessageDeliveryException.class ) ) );
+		}
+		try
+		{
+			publisher.close();
+			fail( "expected failure" );
+		}
+		catch ( final IllegalStateException ex )
+		{
+			assertThat( ex.getCause(), is( instanceOf( MessageDeliveryException.class ) ) );
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public final void testInvalidBatchSize()
+	{
+		batchingPublisher( 0, 0 );
+	}
+
+	private BatchingPublisher batchingPublisher( final int batchSize, final long linger )
+	{
+		return new BatchingPublisher( channel, instructionWireService, scheduler, batchSize, linger, CLOCK,
+				meterRegistry.timer( "test" ) );
+	}
+
+	private Instruction instruction( final int index )
+	{
+		return Instruction.builder()
+				.index( index )
+				.lineNo( index + 4 )
+				.origin( ACCOUNT )
+				.destination( ACCOUNT )
+				.transactionType( "99" )
+				.amount( "1001" )
+				.reference( "REF" + index )
+				.build();
+	}
+
+	private List< Integer > indexes( final int message )
+	{
+		return ( ( InstructionEnvelope ) messages.get( message )
+				.getPayload() ).instructions()
+						.stream()
+						.map( uk.co.bluegecko.pay.v1.portfolio.wire.Instruction::index )
+						.collect( Collectors.toList() );
+	}
+
+	private static final class CapturingChannel implements MessageChannel
+	{
+
+		private final Consumer< Message< ? > > consumer;
+
+		private CapturingChannel( final Consumer< Message< ? > > consumer )
+		{
+			this.consumer = consumer;
+		}
+
+		@Override
+		public boolean send( final Message< ? > message )
+		{
+			return send( message, INDEFINITE_TIMEOUT );
+		}
+
+		@Override
+		public boolean send( final Message< ? > message, final long timeout )
+		{
+			consumer.accept( message );
+			return true;
+		}
+
+	}
+
+}
@@ -3,21 +3,39 @@ package uk.co.bluegecko.pay.upload.controller;
 
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.CHUNK;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.CHUNK_NO;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.CHUNK_SIZE;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.COMMIT;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.DIGEST;
 import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.FILE;
 import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.JOB_ID;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.NAME;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.SESSION;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.SESSIONS;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.SESSION_ID;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.SIZE;
 import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.STATUS;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.STREAM;
 import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.UPLOAD;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.servlet.annotation.MultipartConfig;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -25,7 +43,15 @@ import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
 import uk.co.bluegecko.pay.common.controller.AbstractController;
+import uk.co.bluegecko.pay.common.model.Message;
+import uk.co.bluegecko.pay.common.service.MessageException;
+import uk.co.bluegecko.pay.upload.model.Session;
+import uk.co.bluegecko.pay.upload.service.DuplicateFileException;
+import uk.co.bluegecko.pay.upload.service.InvalidRequestException;
+import uk.co.bluegecko.pay.upload.service.SessionService;
 import uk.co.bluegecko.pay.upload.service.UploadService;
+import uk.co.bluegecko.pay.v1.upload.wire.JobStatus;
+import uk.co.bluegecko.pay.v1.upload.wire.SessionStatus;
 
 
 @RestController
@@ -34,13 +60,15 @@ public class UploadController extends AbstractController
 {
 
 	private final UploadService uploadService;
+	private final SessionService sessionService;
 
 	@Autowired
-	public UploadController( final UploadService uploadService )
+	public UploadController( final UploadService uploadService, final SessionService sessionService )
 	{
 		super();
 
 		this.uploadService = uploadService;
+		this.sessionService = sessionService;
 	}
 
 	// TODO waiting for hateos fix for handling @<Method>Mapping
@@ -56,14 +84,129 @@ public class UploadController extends AbstractController
 				.build();
 	}
 
+	// the body is read as it arrives, so there is no size limit and nothing is buffered, and a gzip body is
+	// inflated on the way to the parser
+	@RequestMapping( path = STREAM, method = RequestMethod.POST, consumes =
+		{ MediaType.APPLICATION_OCTET_STREAM_VALUE, MediaType.TEXT_PLAIN_VALUE } )
+	public HttpEntity< Void > handleStreamUpload( @RequestParam( name = NAME, required = false ) final String name,
+			@RequestParam( name = DIGEST, required = false ) final String digest,
+			@RequestHeader( name = HttpHeaders.CONTENT_ENCODING, required = false ) final String encoding,
+			final InputStream body ) throws IOException
+	{
+		final Long jobId = uploadService.processStream( name, digest, encoding, body );
+
+		final URI location = linkTo( methodOn( UploadController.class ).getJobStatus( jobId ) ).toUri();
+		return ResponseEntity.accepted()
+				.location( location )
+				.build();
+	}
+
+	// a large file is sent as numbered chunks in any order, which can be resent until the session is committed;
+	// the digest is of the whole file, or of the file inside when it is compressed
+	@RequestMapping( path = SESSIONS, method = RequestMethod.POST )
+	public HttpEntity< SessionStatus > createSession( @RequestParam( NAME ) final String name,
+			@RequestParam( SIZE ) final long size, @RequestParam( CHUNK_SIZE ) final int chunkSize,
+			@RequestParam( DIGEST ) final String digest ) throws IOException
+	{
+		final SessionStatus status = uploadService.createSession( name, size, chunkSize, digest )
+				.status();
+
+		final URI location = linkTo( methodOn( UploadController.class ).getSession( status.sessionId() ) ).toUri();
+		return ResponseEntity.created( location )
+				.contentType( MediaType.APPLICATION_JSON )
+				.body( status );
+	}
+
+	// @GetMapping( SESSION )
+	@RequestMapping( path = SESSION, method = RequestMethod.GET )
+	public HttpEntity< SessionStatus > getSession( @PathVariable( SESSION_ID ) final long sessionId )
+	{
+		return sessionService.session( sessionId )
+				.map( session -> ResponseEntity.ok()
+						.contentType( MediaType.APPLICATION_JSON )
+						.body( session.status() ) )
+				.orElse( ResponseEntity.notFound()
+						.build() );
+	}
+
+	@RequestMapping( path = CHUNK, method = RequestMethod.PUT, consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE )
+	public HttpEntity< Void > putChunk( @PathVariable( SESSION_ID ) final long sessionId,
+			@PathVariable( CHUNK_NO ) final int chunk, final InputStream body ) throws IOException
+	{
+		final Optional< Session > session = sessionService.session( sessionId );
+		if ( !session.isPresent() )
+		{
+			return ResponseEntity.notFound()
+					.build();
+		}
+
+		sessionService.write( session.get(), chunk, body );
+		return ResponseEntity.noContent()
+				.build();
+	}
+
+	@RequestMapping( path = COMMIT, method = RequestMethod.POST )
+	public HttpEntity< Void > commitSession( @PathVariable( SESSION_ID ) final long sessionId ) throws IOException
+	{
+		final Optional< Session > session = sessionService.session( sessionId );
+		if ( !session.isPresent() )
+		{
+			return ResponseEntity.notFound()
+					.build();
+		}
+
+		final Long jobId = uploadService.commitSession( session.get() );
+
+		final URI location = linkTo( methodOn( UploadController.class ).getJobStatus( jobId ) ).toUri();
+		return ResponseEntity.accepted()
+				.location( location )
+				.build();
+	}
+
+	@ExceptionHandler( MessageException.class )
+	public HttpEntity< Message > handleRejected( final MessageException ex )
+	{
+		return ResponseEntity.unprocessableEntity()
+				.contentType( MediaType.APPLICATION_JSON )
+				.body( ex.messages() );
+	}
+
+	@ExceptionHandler( DuplicateFileException.class )
+	public HttpEntity< Message > handleDuplicate( final DuplicateFileException ex )
+	{
+		final URI location = linkTo( methodOn( UploadController.class ).getJobStatus( ex.original()
+				.jobId() ) ).toUri();
+		return ResponseEntity.status( HttpStatus.CONFLICT )
+				.location( location )
+				.contentType( MediaType.APPLICATION_JSON )
+				.body( ex.messages() );
+	}
+
+	// only what the client sent wrong; any other IllegalArgumentException is a fault of ours, and a 500
+	@ExceptionHandler( InvalidRequestException.class )
+	public HttpEntity< Void > handleInvalid( final InvalidRequestException ex )
+	{
+		return ResponseEntity.badRequest()
+				.build();
+	}
+
+	@ExceptionHandler( RejectedExecutionException.class )
+	public HttpEntity< Void > handleBusy( final RejectedExecutionException ex )
+	{
+		return ResponseEntity.status( HttpStatus.SERVICE_UNAVAILABLE )
+				.build();
+	}
+
 	// @GetMapping( STATUS )
 	@RequestMapping( path = STATUS, method = RequestMethod.GET )
-	public HttpEntity< String > getJobStatus( @PathVariable( JOB_ID ) final long jobId )
+	public HttpEntity< JobStatus > getJobStatus( @PathVariable( JOB_ID ) final long jobId )
 	{
-		final String body = uploadService.getJobStatus( jobId );
-		return ResponseEntity.ok()
-				.contentType( MediaType.TEXT_PLAIN )
-				.body( body );
+		return uploadService.getJobStatus( jobId )
+				.map( status -> ResponseEntity.ok()
+						.contentType( MediaType.APPLICATION_JSON )
+						.body( status ) )
+				.orElse( ResponseEntity.notFound()
+						.build() );
 	}
 
 }
@@ -0,0 +1,21 @@
+package uk.co.bluegecko.pay.upload.model;
+
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.experimental.Accessors;
+
+
+@Value
+@Builder
+@Accessors( fluent = true )
+public class AcceptedFile
+{
+
+	private final FileDigest digest;
+	private final long jobId;
+	private final String name;
+	private final String owner;
+	private final long accepted;
+
+}
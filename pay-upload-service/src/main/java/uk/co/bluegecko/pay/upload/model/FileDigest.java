@@ -0,0 +1,106 @@
+package uk.co.bluegecko.pay.upload.model;
+
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+
+// a SHA-256 held as four longs, so hundreds of thousands of retained digests stay small and hash cheaply
+public final class FileDigest
+{
+
+	public static final String ALGORITHM = "SHA-256";
+	public static final int LENGTH = 32;
+
+	private final long[] words;
+
+	private FileDigest( final long[] words )
+	{
+		this.words = words;
+	}
+
+	public static MessageDigest newDigest()
+	{
+		try
+		{
+			return MessageDigest.getInstance( ALGORITHM );
+		}
+		catch ( final NoSuchAlgorithmException ex )
+		{
+			throw new IllegalStateException( ex );
+		}
+	}
+
+	public static FileDigest of( final byte[] digest )
+	{
+		if ( digest.length != LENGTH )
+		{
+			throw new IllegalArgumentException( "invalid-digest-length-" + digest.length );
+		}
+
+		final long[] words = new long[LENGTH / Long.BYTES];
+		for ( int i = 0; i < digest.length; i++ )
+		{
+			words[i / Long.BYTES] = words[i / Long.BYTES] << 8 | digest[i] & 0xFF;
+		}
+		return new FileDigest( words );
+	}
+
+	public static FileDigest parse( final String hex )
+	{
+		if ( hex == null || hex.length() != LENGTH * 2 )
+		{
+			throw new IllegalArgumentException( "invalid-digest-" + hex );
+		}
+
+		final byte[] digest = new byte[LENGTH];
+		for ( int i = 0; i < LENGTH; i++ )
+		{
+			final int high = Character.digit( hex.charAt( i * 2 ), 16 );
+			final int low = Character.digit( hex.charAt( i * 2 + 1 ), 16 );
+			if ( high < 0 || low < 0 )
+			{
+				throw new IllegalArgumentException( "invalid-digest-" + hex );
+			}
+			digest[i] = ( byte ) ( high << 4 | low );
+		}
+		return of( digest );
+	}
+
+	@Override
+	public boolean equals( final Object obj )
+	{
+		if ( this == obj )
+		{
+			return true;
+		}
+		if ( !( obj instanceof FileDigest ) )
+		{
+			return false;
+		}
+		final long[] other = ( ( FileDigest ) obj ).words;
+		return words[0] == other[0] && words[1] == other[1] && words[2] == other[2] && words[3] == other[3];
+	}
+
+	@Override
+	public int hashCode()
+	{
+		// the digest is already uniformly distributed, so any word will do
+		return ( int ) ( words[0] ^ words[0] >>> 32 );
+	}
+
+	@Override
+	public String toString()
+	{
+		final StringBuilder hex = new StringBuilder( LENGTH * 2 );
+		for ( final long word : words )
+		{
+			for ( int shift = Long.SIZE - 4; shift >= 0; shift -= 4 )
+			{
+				hex.append( Character.forDigit( ( int ) ( word >>> shift & 0xF ), 16 ) );
+			}
+		}
+		return hex.toString();
+	}
+
+}
@@ -0,0 +1,138 @@
+package uk.co.bluegecko.pay.upload.model;
+
+
+import java.time.Clock;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import uk.co.bluegecko.pay.common.model.Message;
+import uk.co.bluegecko.pay.upload.model.PipelineGauges.Stage;
+import uk.co.bluegecko.pay.v1.upload.wire.JobStatus;
+import uk.co.bluegecko.pay.v1.upload.wire.JobStatus.State;
+
+
+public class Job
+{
+
+	private final long id;
+	private final String name;
+	private final Clock clock;
+	private final AtomicReference< State > state;
+	private final LongAdder parsed;
+	private final LongAdder published;
+	private final LongAdder errors;
+	private final PipelineGauges gauges;
+	private final long created;
+	private volatile long started;
+	private volatile long finished;
+	private volatile Message message;
+
+	public Job( final long id, final String name, final Clock clock )
+	{
+		this.id = id;
+		this.name = name;
+		this.clock = clock;
+		state = new AtomicReference<>( State.QUEUED );
+		parsed = new LongAdder();
+		published = new LongAdder();
+		errors = new LongAdder();
+		gauges = new PipelineGauges();
+		created = clock.millis();
+	}
+
+	public long id()
+	{
+		return id;
+	}
+
+	public String name()
+	{
+		return name;
+	}
+
+	public State state()
+	{
+		return state.get();
+	}
+
+	public boolean isFinished()
+	{
+		final State current = state.get();
+		return current == State.COMPLETED || current == State.FAILED;
+	}
+
+	public long finished()
+	{
+		return finished;
+	}
+
+	public PipelineGauges gauges()
+	{
+		return gauges;
+	}
+
+	public void parsed()
+	{
+		parsed.increment();
+	}
+
+	public void parsed( final long count )
+	{
+		parsed.add( count );
+	}
+
+	public void published()
+	{
+		published.increment();
+	}
+
+	public void errors( final long count )
+	{
+		errors.add( count );
+	}
+
+	public boolean start()
+	{
+		started = clock.millis();
+		return state.compareAndSet( State.QUEUED, State.RUNNING );
+	}
+
+	public void complete()
+	{
+		finish( State.COMPLETED, null );
+	}
+
+	public void fail( final Message message )
+	{
+		finish( State.FAILED, message );
+	}
+
+	private void finish( final State outcome, final Message message )
+	{
+		this.message = message;
+		finished = clock.millis();
+		state.set( outcome );
+	}
+
+	public JobStatus status()
+	{
+		final State current = state.get();
+		final long start = current == State.QUEUED ? created : started;
+		final long end = current == State.COMPLETED || current == State.FAILED ? finished : clock.millis();
+
+		return JobStatus.builder()
+				.jobId( id )
+				.name( name )
+				.state( current )
+				.parsed( parsed.sum() )
+				.converted( gauges.count( Stage.CONVERT ) )
+				.published( published.sum() )
+				.conversionDepth( gauges.conversionDepth() )
+				.publishDepth( gauges.publishDepth() )
+				.errors( errors.sum() )
+				.elapsed( end - start )
+				.message( message )
+				.build();
+	}
+
+}
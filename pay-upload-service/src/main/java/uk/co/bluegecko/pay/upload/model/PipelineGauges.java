@@ -0,0 +1,77 @@
+package uk.co.bluegecko.pay.upload.model;
+
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class PipelineGauges
+{
+
+	public enum Stage
+	{
+		// time recorded against PARSE is time the parser spent blocked on a full queue
+		PARSE, CONVERT, PUBLISH
+	}
+
+	private final LongAdder[] counts;
+	private final LongAdder[] nanos;
+	private final LongAdder invalid;
+
+	public PipelineGauges()
+	{
+		final int stages = Stage.values().length;
+		counts = new LongAdder[stages];
+		nanos = new LongAdder[stages];
+		for ( int i = 0; i < stages; i++ )
+		{
+			counts[i] = new LongAdder();
+			nanos[i] = new LongAdder();
+		}
+		invalid = new LongAdder();
+	}
+
+	public void record( final Stage stage, final long elapsed )
+	{
+		counts[stage.ordinal()].increment();
+		nanos[stage.ordinal()].add( elapsed );
+	}
+
+	public void invalid()
+	{
+		invalid.increment();
+	}
+
+	public long count( final Stage stage )
+	{
+		return counts[stage.ordinal()].sum();
+	}
+
+	public long nanos( final Stage stage )
+	{
+		return nanos[stage.ordinal()].sum();
+	}
+
+	public long invalidCount()
+	{
+		return invalid.sum();
+	}
+
+	public long conversionDepth()
+	{
+		return Math.max( 0, count( Stage.PARSE ) - count( Stage.CONVERT ) );
+	}
+
+	public long publishDepth()
+	{
+		return Math.max( 0, count( Stage.CONVERT ) - count( Stage.PUBLISH ) );
+	}
+
+	// records per second busy in a stage, so the lowest is the bottleneck; a parser that spends long blocked
+	// is waiting on the stages after it
+	public double throughput( final Stage stage )
+	{
+		final long elapsed = nanos( stage );
+		return elapsed == 0 ? 0 : count( stage ) * 1_000_000_000d / elapsed;
+	}
+
+}
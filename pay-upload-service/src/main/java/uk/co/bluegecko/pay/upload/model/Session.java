@@ -0,0 +1,234 @@
+package uk.co.bluegecko.pay.upload.model;
+
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import uk.co.bluegecko.pay.v1.upload.wire.SessionStatus;
+
+
+public class Session
+{
+
+	private final long id;
+	private final String name;
+	private final long size;
+	private final int chunkSize;
+	private final int chunks;
+	private final FileDigest digest;
+	private final BitSet received;
+	private volatile boolean committed;
+	private volatile boolean completed;
+	private volatile Long jobId;
+	private volatile Long batchId;
+	private volatile int line;
+	private volatile int index;
+	private volatile long touched;
+
+	public Session( final long id, final String name, final long size, final int chunkSize, final FileDigest digest )
+	{
+		if ( size < 0 )
+		{
+			throw new IllegalArgumentException( "invalid-size-" + size );
+		}
+		if ( chunkSize < 1 )
+		{
+			throw new IllegalArgumentException( "invalid-chunk-size-" + chunkSize );
+		}
+		if ( ( size + chunkSize - 1 ) / chunkSize > Integer.MAX_VALUE )
+		{
+			throw new IllegalArgumentException( "invalid-chunk-count-" + size + "/" + chunkSize );
+		}
+
+		this.id = id;
+		this.name = name;
+		this.size = size;
+		this.chunkSize = chunkSize;
+		chunks = ( int ) ( ( size + chunkSize - 1 ) / chunkSize );
+		this.digest = digest;
+		received = new BitSet( chunks );
+	}
+
+	public long id()
+	{
+		return id;
+	}
+
+	public String name()
+	{
+		return name;
+	}
+
+	public long size()
+	{
+		return size;
+	}
+
+	public int chunkSize()
+	{
+		return chunkSize;
+	}
+
+	public int chunks()
+	{
+		return chunks;
+	}
+
+	// as declared by the client when the session was opened, of the file inside when it is compressed
+	public FileDigest digest()
+	{
+		return digest;
+	}
+
+	// the last chunk holds whatever is left over
+	public long length( final int chunk )
+	{
+		check( chunk );
+		return chunk < chunks - 1 ? chunkSize : size - ( long ) chunkSize * ( chunks - 1 );
+	}
+
+	public void check( final int chunk )
+	{
+		if ( chunk < 0 || chunk >= chunks )
+		{
+			throw new IllegalArgumentException( "invalid-chunk-" + chunk );
+		}
+	}
+
+	public synchronized void received( final int chunk )
+	{
+		check( chunk );
+		received.set( chunk );
+		notifyAll();
+	}
+
+	// a session is read as its chunks arrive, so a reader may wait for the next one, up to a point
+	public synchronized boolean await( final int chunk, final long millis ) throws InterruptedException
+	{
+		check( chunk );
+		final long until = System.currentTimeMillis() + millis;
+		for ( long remaining = millis; !received.get( chunk ); remaining = until - System.currentTimeMillis() )
+		{
+			if ( remaining <= 0 )
+			{
+				return false;
+			}
+			wait( remaining );
+		}
+		return true;
+	}
+
+	public synchronized boolean isReceived( final int chunk )
+	{
+		return received.get( chunk );
+	}
+
+	public synchronized boolean isComplete()
+	{
+		return received.cardinality() == chunks;
+	}
+
+	public synchronized List< Integer > missing()
+	{
+		final List< Integer > missing = new ArrayList<>( chunks - received.cardinality() );
+		for ( int chunk = received.nextClearBit( 0 ); chunk < chunks; chunk = received.nextClearBit( chunk + 1 ) )
+		{
+			missing.add( chunk );
+		}
+		return missing;
+	}
+
+	public synchronized long offset()
+	{
+		return Math.min( ( long ) received.nextClearBit( 0 ) * chunkSize, size );
+	}
+
+	public boolean isCommitted()
+	{
+		return committed;
+	}
+
+	public void committed()
+	{
+		committed = true;
+	}
+
+	public boolean isCompleted()
+	{
+		return completed;
+	}
+
+	public void completed()
+	{
+		completed = true;
+	}
+
+	public Long jobId()
+	{
+		return jobId;
+	}
+
+	public void jobId( final Long jobId )
+	{
+		this.jobId = jobId;
+	}
+
+	// the instructions keep the batch of the first job to publish them, so a job started again sends any it
+	// repeats under the same batch
+	public Long batchId()
+	{
+		return batchId;
+	}
+
+	public void batchId( final Long batchId )
+	{
+		this.batchId = batchId;
+	}
+
+	public int line()
+	{
+		return line;
+	}
+
+	public int index()
+	{
+		return index;
+	}
+
+	public synchronized void checkpoint( final int line, final int index )
+	{
+		this.line = line;
+		this.index = index;
+	}
+
+	// when the session was last written or moved on, so one left alone for too long can be let go
+	public long touched()
+	{
+		return touched;
+	}
+
+	public void touch( final long millis )
+	{
+		touched = millis;
+	}
+
+	public SessionStatus status()
+	{
+		return SessionStatus.builder()
+				.sessionId( id )
+				.name( name )
+				.size( size )
+				.chunkSize( chunkSize )
+				.chunks( chunks )
+				.digest( digest == null ? null : digest.toString() )
+				.missing( completed ? new ArrayList<>() : missing() )
+				.offset( completed ? size : offset() )
+				.committed( committed )
+				.jobId( jobId )
+				.line( line )
+				.index( index )
+				.build();
+	}
+
+}
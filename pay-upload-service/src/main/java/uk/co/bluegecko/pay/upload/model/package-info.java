@@ -0,0 +1 @@
+package uk.co.bluegecko.pay.upload.model;
\ No newline at end of file
@@ -0,0 +1,21 @@
+package uk.co.bluegecko.pay.upload.service;
+
+
+import java.util.Optional;
+
+import uk.co.bluegecko.pay.upload.model.AcceptedFile;
+import uk.co.bluegecko.pay.upload.model.FileDigest;
+
+
+public interface DigestStore
+{
+
+	public Optional< AcceptedFile > find( FileDigest digest );
+
+	public Optional< AcceptedFile > claim( FileDigest digest, long jobId, String name, String owner );
+
+	public void release( FileDigest digest, long jobId );
+
+	public int size();
+
+}
@@ -0,0 +1,34 @@
+package uk.co.bluegecko.pay.upload.service;
+
+
+import uk.co.bluegecko.pay.common.model.Message;
+import uk.co.bluegecko.pay.common.model.Message.Classification;
+import uk.co.bluegecko.pay.common.service.MessageException;
+import uk.co.bluegecko.pay.upload.model.AcceptedFile;
+
+
+public class DuplicateFileException extends MessageException
+{
+
+	private static final long serialVersionUID = 1L;
+
+	public static final String DUPLICATE = "duplicate-file";
+
+	private final transient AcceptedFile original;
+
+	public DuplicateFileException( final AcceptedFile original )
+	{
+		super( DUPLICATE, Message.builder()
+				.classification( Classification.ERROR )
+				.message( DUPLICATE, "job-" + original.jobId(), "digest-" + original.digest() )
+				.build() );
+
+		this.original = original;
+	}
+
+	public AcceptedFile original()
+	{
+		return original;
+	}
+
+}
@@ -0,0 +1,19 @@
+package uk.co.bluegecko.pay.upload.service;
+
+
+import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
+
+
+public interface InstructionPublisher extends AutoCloseable
+{
+
+	public void send( Instruction instruction );
+
+	public void send( uk.co.bluegecko.pay.v1.portfolio.wire.Instruction instruction );
+
+	public void flush();
+
+	@Override
+	public void close();
+
+}
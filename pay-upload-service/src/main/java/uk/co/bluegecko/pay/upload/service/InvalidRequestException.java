@@ -0,0 +1,20 @@
+package uk.co.bluegecko.pay.upload.service;
+
+
+// a request the client got wrong, such as a bad digest or chunk number, as against a fault of our own
+public class InvalidRequestException extends IllegalArgumentException
+{
+
+	private static final long serialVersionUID = 1L;
+
+	public InvalidRequestException( final String message )
+	{
+		super( message );
+	}
+
+	public InvalidRequestException( final String message, final Throwable cause )
+	{
+		super( message, cause );
+	}
+
+}
@@ -0,0 +1,29 @@
+package uk.co.bluegecko.pay.upload.service;
+
+
+import java.io.IOException;
+import java.util.Optional;
+
+import uk.co.bluegecko.pay.upload.model.Job;
+
+
+public interface JobService
+{
+
+	@FunctionalInterface
+	public interface Task
+	{
+
+		public void run( Job job ) throws IOException;
+
+	}
+
+	public Job submit( String name, Task task );
+
+	public Job submit( String name, Task check, Task task );
+
+	public Job run( String name, Task task ) throws IOException;
+
+	public Optional< Job > job( long jobId );
+
+}
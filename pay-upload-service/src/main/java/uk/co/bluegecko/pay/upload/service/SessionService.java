@@ -0,0 +1,31 @@
+package uk.co.bluegecko.pay.upload.service;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+
+import uk.co.bluegecko.pay.upload.model.FileDigest;
+import uk.co.bluegecko.pay.upload.model.Session;
+
+
+public interface SessionService
+{
+
+	public Session create( String name, long size, int chunkSize, FileDigest digest ) throws IOException;
+
+	public Optional< Session > session( long sessionId );
+
+	public void write( Session session, int chunk, InputStream input ) throws IOException;
+
+	public InputStream open( Session session ) throws IOException;
+
+	public InputStream follow( Session session, long idleMillis ) throws IOException;
+
+	public void started( Session session, long jobId ) throws IOException;
+
+	public void checkpoint( Session session, int line, int index ) throws IOException;
+
+	public void completed( Session session ) throws IOException;
+
+}
@@ -9,4 +9,6 @@ public interface StreamingService
 
 	public void sendInstruction( Instruction instruction );
 
+	public InstructionPublisher publisher();
+
 }
@@ -2,15 +2,29 @@ package uk.co.bluegecko.pay.upload.service;
 
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
 
 import org.springframework.web.multipart.MultipartFile;
 
+import uk.co.bluegecko.pay.upload.model.PipelineGauges;
+import uk.co.bluegecko.pay.upload.model.Session;
+import uk.co.bluegecko.pay.v1.upload.wire.JobStatus;
+
 
 public interface UploadService
 {
 
 	public long processFile( MultipartFile file ) throws IOException;
 
-	public String getJobStatus( long jobId );
+	public long processStream( String name, String digest, String encoding, InputStream input ) throws IOException;
+
+	public Session createSession( String name, long size, int chunkSize, String digest ) throws IOException;
+
+	public long commitSession( Session session ) throws IOException;
+
+	public Optional< JobStatus > getJobStatus( long jobId );
+
+	public PipelineGauges getPipelineGauges();
 
 }
@@ -0,0 +1,100 @@
+package uk.co.bluegecko.pay.upload.service.base;
+
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
+import uk.co.bluegecko.pay.upload.model.Session;
+import uk.co.bluegecko.pay.upload.service.InstructionPublisher;
+import uk.co.bluegecko.pay.upload.service.SessionService;
+
+
+// records how far a session has been published, moving the checkpoint only once the publisher below has flushed,
+// so a resumed job never skips an instruction and repeats at most those sent since the last flush
+public class CheckpointPublisher implements InstructionPublisher
+{
+
+	private final InstructionPublisher publisher;
+	private final SessionService sessionService;
+	private final Session session;
+	private final int interval;
+	private int pending;
+	private int line;
+	private int index;
+
+	public CheckpointPublisher( final InstructionPublisher publisher, final SessionService sessionService,
+			final Session session, final int interval )
+	{
+		if ( interval < 1 )
+		{
+			throw new IllegalArgumentException( "invalid-interval-" + interval );
+		}
+
+		this.publisher = publisher;
+		this.sessionService = sessionService;
+		this.session = session;
+		this.interval = interval;
+		line = session.line();
+		index = session.index();
+	}
+
+	@Override
+	public void send( final Instruction instruction )
+	{
+		publisher.send( instruction );
+		sent( instruction.lineNo(), instruction.index() );
+	}
+
+	@Override
+	public void send( final uk.co.bluegecko.pay.v1.portfolio.wire.Instruction instruction )
+	{
+		publisher.send( instruction );
+		sent( instruction.lineNo(), instruction.index() );
+	}
+
+	@Override
+	public void flush()
+	{
+		publisher.flush();
+		save();
+	}
+
+	@Override
+	public void close()
+	{
+		publisher.close();
+		save();
+	}
+
+	private void sent( final Integer lineNo, final int sentIndex )
+	{
+		if ( lineNo != null )
+		{
+			line = lineNo;
+		}
+		index = sentIndex;
+		if ( ++pending >= interval )
+		{
+			flush();
+		}
+	}
+
+	private void save()
+	{
+		if ( pending == 0 )
+		{
+			return;
+		}
+		try
+		{
+			sessionService.checkpoint( session, line, index );
+			pending = 0;
+		}
+		catch ( final IOException ex )
+		{
+			throw new UncheckedIOException( ex );
+		}
+	}
+
+}
@@ -0,0 +1,263 @@
+package uk.co.bluegecko.pay.upload.service.base;
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import uk.co.bluegecko.pay.upload.model.AcceptedFile;
+import uk.co.bluegecko.pay.upload.model.FileDigest;
+import uk.co.bluegecko.pay.upload.service.DigestStore;
+
+
+@Service
+public class DigestStoreBase implements DigestStore
+{
+
+	private static final Logger logger = LoggerFactory.getLogger( DigestStore.class );
+
+	private static final char CLAIM = '+';
+	private static final char RELEASE = '-';
+	private static final String SEPARATOR = " ";
+
+	private final Clock clock;
+	private final Path path;
+	private final long retention;
+	private final LinkedHashMap< FileDigest, AcceptedFile > accepted;
+	private BufferedWriter log;
+	private long logged;
+
+	@Autowired
+	public DigestStoreBase( final Clock clock,
+			@Value( "${pay.upload.digests.path:${pay.upload.data:data}/digests.log}" ) final String path,
+			@Value( "${pay.upload.digests.retention-days:30}" ) final long retentionDays ) throws IOException
+	{
+		this( clock, Paths.get( path ), Duration.ofDays( retentionDays ) );
+	}
+
+	public DigestStoreBase( final Clock clock, final Path path, final Duration retention ) throws IOException
+	{
+		super();
+
+		this.clock = clock;
+		this.path = path;
+		this.retention = retention.toMillis();
+		accepted = new LinkedHashMap<>();
+		load();
+	}
+
+	@Override
+	public synchronized Optional< AcceptedFile > find( final FileDigest digest )
+	{
+		evict();
+		return Optional.ofNullable( accepted.get( digest ) );
+	}
+
+	// an owner, such as an upload session, may claim its own file again for another job, as when a failed commit is
+	// retried or picked up after a restart
+	@Override
+	public synchronized Optional< AcceptedFile > claim( final FileDigest digest, final long jobId, final String name,
+			final String owner )
+	{
+		evict();
+		final AcceptedFile existing = accepted.get( digest );
+		if ( existing != null && ( owner == null || !owner.equals( existing.owner() ) ) )
+		{
+			return Optional.of( existing );
+		}
+
+		final AcceptedFile file = AcceptedFile.builder()
+				.digest( digest )
+				.jobId( jobId )
+				.name( name )
+				.owner( owner )
+				.accepted( existing == null ? clock.millis() : existing.accepted() )
+				.build();
+		accepted.put( digest, file );
+		append( entry( file ) );
+		return Optional.empty();
+	}
+
+	@Override
+	public synchronized void release( final FileDigest digest, final long jobId )
+	{
+		final AcceptedFile existing = accepted.get( digest );
+		if ( existing != null && existing.jobId() == jobId )
+		{
+			accepted.remove( digest );
+			append( RELEASE + SEPARATOR + digest + SEPARATOR + jobId );
+		}
+	}
+
+	@Override
+	public synchronized int size()
+	{
+		return accepted.size();
+	}
+
+	@PreDestroy
+	public synchronized void close() throws IOException
+	{
+		if ( log != null )
+		{
+			log.close();
+			log = null;
+		}
+	}
+
+	// claims are appended in time order, so the oldest are always at the head and eviction stops at the first
+	// live entry
+	protected void evict()
+	{
+		final long expired = clock.millis() - retention;
+		final Iterator< AcceptedFile > files = accepted.values()
+				.iterator();
+		while ( files.hasNext() )
+		{
+			if ( files.next()
+					.accepted() >= expired )
+			{
+				break;
+			}
+			files.remove();
+		}
+	}
+
+	protected void load() throws IOException
+	{
+		final Path directory = path.toAbsolutePath()
+				.getParent();
+		if ( directory != null )
+		{
+			Files.createDirectories( directory );
+		}
+		if ( Files.exists( path ) )
+		{
+			final List< String > lines = Files.readAllLines( path, StandardCharsets.UTF_8 );
+			for ( final String line : lines )
+			{
+				replay( line );
+			}
+			evict();
+			logger.info( "loaded {} digests from {}", accepted.size(), path );
+
+			// the log holds expired and released entries too, so rewrite it when they outnumber the live ones
+			logged = lines.size();
+			if ( logged > accepted.size() * 2 )
+			{
+				compact();
+				logged = accepted.size();
+			}
+		}
+		log = Files.newBufferedWriter( path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND );
+	}
+
+	protected void replay( final String line )
+	{
+		final String[] fields = line.split( SEPARATOR, 6 );
+		try
+		{
+			if ( line.charAt( 0 ) == CLAIM && fields.length == 6 )
+			{
+				final FileDigest digest = FileDigest.parse( fields[1] );
+				accepted.remove( digest );
+				accepted.put( digest, AcceptedFile.builder()
+						.digest( digest )
+						.jobId( Long.parseLong( fields[2] ) )
+						.accepted( Long.parseLong( fields[3] ) )
+						.owner( fields[4].isEmpty() ? null : fields[4] )
+						.name( fields[5].isEmpty() ? null : fields[5] )
+						.build() );
+			}
+			else if ( line.charAt( 0 ) == RELEASE && fields.length == 3 )
+			{
+				final FileDigest digest = FileDigest.parse( fields[1] );
+				final AcceptedFile existing = accepted.get( digest );
+				if ( existing != null && existing.jobId() == Long.parseLong( fields[2] ) )
+				{
+					accepted.remove( digest );
+				}
+			}
+			else
+			{
+				logger.warn( "skipping digest entry: {}", line );
+			}
+		}
+		catch ( final RuntimeException ex )
+		{
+			// a torn last line from a crash must not stop the store loading
+			logger.warn( "skipping digest entry: {} {}", line, ex.getMessage() );
+		}
+	}
+
+	protected void compact() throws IOException
+	{
+		final Path compacted = path.resolveSibling( path.getFileName() + ".tmp" );
+		try (BufferedWriter writer = Files.newBufferedWriter( compacted, StandardCharsets.UTF_8 ))
+		{
+			for ( final AcceptedFile file : accepted.values() )
+			{
+				writer.write( entry( file ) );
+				writer.newLine();
+			}
+		}
+		Files.move( compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+	}
+
+	// the name goes last, as it is the only field that may hold a space
+	protected String entry( final AcceptedFile file )
+	{
+		return CLAIM + SEPARATOR + file.digest() + SEPARATOR + file.jobId() + SEPARATOR + file.accepted() + SEPARATOR
+				+ ( file.owner() == null ? "" : file.owner() ) + SEPARATOR + ( file.name() == null ? "" : file.name() );
+	}
+
+	protected void append( final String line )
+	{
+		try
+		{
+			log.write( line );
+			log.newLine();
+			log.flush();
+			if ( ++logged > accepted.size() * 2 + 1024 )
+			{
+				log.close();
+				compact();
+				logged = accepted.size();
+				log = Files.newBufferedWriter( path, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+						StandardOpenOption.APPEND );
+			}
+		}
+		catch ( final IOException ex )
+		{
+			throw new UncheckedIOException( ex );
+		}
+	}
+
+	protected Map< FileDigest, AcceptedFile > accepted()
+	{
+		return accepted;
+	}
+
+}
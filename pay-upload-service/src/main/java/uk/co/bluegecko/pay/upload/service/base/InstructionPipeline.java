@@ -0,0 +1,227 @@
+package uk.co.bluegecko.pay.upload.service.base;
+
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
+import uk.co.bluegecko.pay.bacs.std18.service.v1.InstructionWireStd18ToV1;
+import uk.co.bluegecko.pay.upload.model.Job;
+import uk.co.bluegecko.pay.upload.model.PipelineGauges;
+import uk.co.bluegecko.pay.upload.model.PipelineGauges.Stage;
+import uk.co.bluegecko.pay.upload.service.InstructionPublisher;
+
+
+public class InstructionPipeline implements InstructionPublisher
+{
+
+	private static final Logger logger = LoggerFactory.getLogger( InstructionPipeline.class );
+
+	private static final long POLL = 10;
+
+	private static final CompletableFuture< uk.co.bluegecko.pay.v1.portfolio.wire.Instruction > FLUSH =
+			new CompletableFuture<>();
+	private static final CompletableFuture< uk.co.bluegecko.pay.v1.portfolio.wire.Instruction > END =
+			new CompletableFuture<>();
+
+	private final Job job;
+	private final long batchId;
+	private final InstructionPublisher publisher;
+	private final InstructionWireStd18ToV1 instructionWireService;
+	private final Executor converters;
+	private final PipelineGauges gauges;
+	private final BlockingQueue< CompletableFuture< uk.co.bluegecko.pay.v1.portfolio.wire.Instruction > > queue;
+	private final Future< ? > publishing;
+	private volatile RuntimeException failure;
+	private boolean closed;
+	private boolean thrown;
+
+	public InstructionPipeline( final Job job, final long batchId, final InstructionPublisher publisher,
+			final InstructionWireStd18ToV1 instructionWireService, final Executor converters,
+			final ExecutorService publishers, final PipelineGauges gauges, final int capacity )
+	{
+		if ( capacity < 1 )
+		{
+			throw new IllegalArgumentException( "invalid-capacity-" + capacity );
+		}
+
+		this.job = job;
+		this.batchId = batchId;
+		this.publisher = publisher;
+		this.instructionWireService = instructionWireService;
+		this.converters = converters;
+		this.gauges = gauges;
+		queue = new ArrayBlockingQueue<>( capacity );
+		publishing = publishers.submit( this::publish );
+	}
+
+	@Override
+	public void send( final Instruction instruction )
+	{
+		check();
+		record( Stage.PARSE, put( CompletableFuture.supplyAsync( () -> convert( instruction ), converters ) ) );
+	}
+
+	@Override
+	public void send( final uk.co.bluegecko.pay.v1.portfolio.wire.Instruction instruction )
+	{
+		check();
+		// already converted, but counted through the stage so the depths still balance
+		record( Stage.CONVERT, 0 );
+		record( Stage.PARSE, put( CompletableFuture.completedFuture( instruction ) ) );
+	}
+
+	@Override
+	public void flush()
+	{
+		check();
+		put( FLUSH );
+	}
+
+	@Override
+	public void close()
+	{
+		if ( closed )
+		{
+			return;
+		}
+		closed = true;
+
+		try
+		{
+			while ( failure == null && !queue.offer( END, POLL, TimeUnit.MILLISECONDS ) )
+			{
+				// the publisher is still draining
+			}
+			publishing.get();
+		}
+		catch ( final InterruptedException ex )
+		{
+			publishing.cancel( true );
+			Thread.currentThread()
+					.interrupt();
+			throw new IllegalStateException( "pipeline-interrupted", ex );
+		}
+		catch ( final ExecutionException ex )
+		{
+			throw new IllegalStateException( "pipeline-failed", ex.getCause() );
+		}
+		finally
+		{
+			publisher.close();
+		}
+
+		final PipelineGauges jobGauges = job.gauges();
+		logger.debug( "pipeline {}: parser blocked {}ms, convert {}/s, publish {}/s", job.name(),
+				TimeUnit.NANOSECONDS.toMillis( jobGauges.nanos( Stage.PARSE ) ),
+				( long ) jobGauges.throughput( Stage.CONVERT ), ( long ) jobGauges.throughput( Stage.PUBLISH ) );
+
+		// a failure already thrown from send is not thrown again, or try-with-resources would suppress it on itself
+		if ( failure != null && !thrown )
+		{
+			throw failure;
+		}
+	}
+
+	// returns the time spent blocked, which is the backpressure from the stages downstream
+	private long put( final CompletableFuture< uk.co.bluegecko.pay.v1.portfolio.wire.Instruction > item )
+	{
+		try
+		{
+			if ( queue.offer( item ) )
+			{
+				return 0;
+			}
+
+			final long start = System.nanoTime();
+			while ( !queue.offer( item, POLL, TimeUnit.MILLISECONDS ) )
+			{
+				check();
+			}
+			return System.nanoTime() - start;
+		}
+		catch ( final InterruptedException ex )
+		{
+			Thread.currentThread()
+					.interrupt();
+			throw new IllegalStateException( "pipeline-interrupted", ex );
+		}
+	}
+
+	private void check()
+	{
+		if ( failure != null )
+		{
+			thrown = true;
+			throw failure;
+		}
+		if ( closed )
+		{
+			throw new IllegalStateException( "pipeline-closed" );
+		}
+	}
+
+	// validation belongs to the check pass, so every instruction that reaches here is sent, under the batch the
+	// portfolio knows it by
+	private uk.co.bluegecko.pay.v1.portfolio.wire.Instruction convert( final Instruction instruction )
+	{
+		final long start = System.nanoTime();
+		final uk.co.bluegecko.pay.v1.portfolio.wire.Instruction converted = instructionWireService.toWire( instruction,
+				batchId );
+		record( Stage.CONVERT, System.nanoTime() - start );
+		return converted;
+	}
+
+	// instructions are queued in the order they were parsed and converted out of order, so waiting on each
+	// in turn publishes them in index order
+	private void publish()
+	{
+		try
+		{
+			for ( CompletableFuture< uk.co.bluegecko.pay.v1.portfolio.wire.Instruction > next = queue.take(); next != END; next = queue
+					.take() )
+			{
+				if ( next == FLUSH )
+				{
+					publisher.flush();
+					continue;
+				}
+
+				final uk.co.bluegecko.pay.v1.portfolio.wire.Instruction converted = next.join();
+				final long start = System.nanoTime();
+				publisher.send( converted );
+				job.published();
+				record( Stage.PUBLISH, System.nanoTime() - start );
+			}
+		}
+		catch ( final InterruptedException ex )
+		{
+			Thread.currentThread()
+					.interrupt();
+			failure = new IllegalStateException( "pipeline-interrupted", ex );
+		}
+		catch ( final RuntimeException ex )
+		{
+			logger.warn( "pipeline {} failed: {}", job.name(), ex.getMessage() );
+			failure = ex;
+			queue.clear();
+		}
+	}
+
+	private void record( final Stage stage, final long elapsed )
+	{
+		job.gauges()
+				.record( stage, elapsed );
+		gauges.record( stage, elapsed );
+	}
+
+}
@@ -0,0 +1,283 @@
+package uk.co.bluegecko.pay.upload.service.base;
+
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.sun.management.ThreadMXBean;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uk.co.bluegecko.pay.common.model.Message;
+import uk.co.bluegecko.pay.common.model.Message.Classification;
+import uk.co.bluegecko.pay.common.service.MessageException;
+import uk.co.bluegecko.pay.upload.model.Job;
+import uk.co.bluegecko.pay.upload.service.JobService;
+
+
+@Service
+public class JobServiceBase implements JobService
+{
+
+	public static final String JOBS = "pay.upload.jobs";
+	public static final String ALLOCATED = "pay.upload.allocated";
+	public static final String MESSAGES = "pay.upload.messages";
+
+	private static final Logger logger = LoggerFactory.getLogger( JobService.class );
+
+	private final Clock clock;
+	private final Executor executor;
+	private final Duration retention;
+	private final int maxRetained;
+	private final AtomicLong ids;
+	private final ConcurrentMap< Long, Job > jobs;
+	private final MeterRegistry meterRegistry;
+	private final DistributionSummary allocated;
+	private final ThreadMXBean threads;
+
+	@Autowired
+	public JobServiceBase( final Clock clock, final MeterRegistry meterRegistry,
+			@Value( "${pay.upload.jobs.workers:4}" ) final int workers,
+			@Value( "${pay.upload.jobs.queue-size:16}" ) final int queueSize,
+			@Value( "${pay.upload.jobs.retention-minutes:60}" ) final long retentionMinutes,
+			@Value( "${pay.upload.jobs.max-retained:1000}" ) final int maxRetained )
+	{
+		this( clock, new ThreadPoolExecutor( workers, workers, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>( queueSize ) ), Duration.ofMinutes( retentionMinutes ), maxRetained,
+				meterRegistry );
+	}
+
+	public JobServiceBase( final Clock clock, final Executor executor, final Duration retention,
+			final int maxRetained )
+	{
+		this( clock, executor, retention, maxRetained, new SimpleMeterRegistry() );
+	}
+
+	public JobServiceBase( final Clock clock, final Executor executor, final Duration retention,
+			final int maxRetained, final MeterRegistry meterRegistry )
+	{
+		super();
+
+		this.clock = clock;
+		this.executor = executor;
+		this.retention = retention;
+		this.maxRetained = maxRetained;
+		this.meterRegistry = meterRegistry;
+		// seeded from the clock, so ids handed out before a restart, and still held by sessions and the digest
+		// store, are never handed out again
+		ids = new AtomicLong( clock.millis() * 1000 );
+		jobs = new ConcurrentHashMap<>();
+		threads = threads();
+		allocated = DistributionSummary.builder( ALLOCATED )
+				.baseUnit( "bytes" )
+				.register( meterRegistry );
+		meterRegistry.gauge( JOBS + ".retained", jobs, ConcurrentMap::size );
+	}
+
+	@Override
+	public Job submit( final String name, final Task task )
+	{
+		return queue( create( name ), task );
+	}
+
+	// the check is the job's first phase on the pool, so a rejected or duplicate file fails the job with its message
+	// rather than holding the caller's thread while the whole file is read, and only what passes goes on to the task
+	@Override
+	public Job submit( final String name, final Task check, final Task task )
+	{
+		return queue( create( name ), job ->
+			{
+				check.run( job );
+				task.run( job );
+			} );
+	}
+
+	protected Job queue( final Job job, final Task task )
+	{
+		try
+		{
+			executor.execute( () -> execute( job, task ) );
+		}
+		catch ( final RejectedExecutionException ex )
+		{
+			jobs.remove( job.id() );
+			throw ex;
+		}
+		return job;
+	}
+
+	@Override
+	public Job run( final String name, final Task task ) throws IOException
+	{
+		final Job job = create( name );
+		run( job, task );
+		return job;
+	}
+
+	@Override
+	public Optional< Job > job( final long jobId )
+	{
+		return Optional.ofNullable( jobs.get( jobId ) );
+	}
+
+	@PreDestroy
+	public void shutdown()
+	{
+		if ( executor instanceof ExecutorService )
+		{
+			( ( ExecutorService ) executor ).shutdownNow();
+		}
+	}
+
+	protected Job create( final String name )
+	{
+		evict();
+
+		final Job job = new Job( ids.incrementAndGet(), name, clock );
+		jobs.put( job.id(), job );
+		return job;
+	}
+
+	protected void execute( final Job job, final Task task )
+	{
+		try
+		{
+			run( job, task );
+		}
+		catch ( final IOException | RuntimeException ex )
+		{
+			logger.warn( "job {} failed: {}", job.id(), ex.getMessage() );
+		}
+	}
+
+	protected void run( final Job job, final Task task ) throws IOException
+	{
+		final long start = System.nanoTime();
+		final long allocatedBefore = allocatedBytes();
+		job.start();
+		try
+		{
+			task.run( job );
+			job.complete();
+		}
+		catch ( final MessageException ex )
+		{
+			job.fail( ex.messages() );
+			throw ex;
+		}
+		catch ( final IOException | RuntimeException ex )
+		{
+			final Message message = new Message();
+			message.add( Classification.ERROR, ex.getClass()
+					.getSimpleName(), String.valueOf( ex.getMessage() ) );
+			job.fail( message );
+			throw ex;
+		}
+		finally
+		{
+			record( job, System.nanoTime() - start, allocatedBefore );
+		}
+	}
+
+	protected void record( final Job job, final long elapsed, final long allocatedBefore )
+	{
+		meterRegistry.timer( JOBS, "outcome", job.state()
+				.name() )
+				.record( elapsed, TimeUnit.NANOSECONDS );
+
+		// only what the job thread allocates, which is parsing; conversion and publishing run on shared pools
+		final long allocatedAfter = allocatedBytes();
+		if ( allocatedBefore >= 0 && allocatedAfter >= allocatedBefore )
+		{
+			allocated.record( allocatedAfter - allocatedBefore );
+		}
+
+		final Message message = job.status()
+				.message();
+		if ( message != null )
+		{
+			for ( final Classification classification : Classification.values() )
+			{
+				final long count = message.keys( classification )
+						.stream()
+						.mapToLong( key -> message.text( classification, key )
+								.size() )
+						.sum();
+				if ( count > 0 )
+				{
+					meterRegistry.counter( MESSAGES, "classification", classification.name() )
+							.increment( count );
+				}
+			}
+		}
+	}
+
+	protected long allocatedBytes()
+	{
+		if ( threads != null && threads.isThreadAllocatedMemoryEnabled() )
+		{
+			return threads.getThreadAllocatedBytes( Thread.currentThread()
+					.getId() );
+		}
+		return -1;
+	}
+
+	// the allocation counter is HotSpot's, so other JVMs go without
+	protected static ThreadMXBean threads()
+	{
+		try
+		{
+			return ManagementFactory.getPlatformMXBean( ThreadMXBean.class );
+		}
+		catch ( final IllegalArgumentException ex )
+		{
+			return null;
+		}
+	}
+
+	protected void evict()
+	{
+		final long expired = clock.millis() - retention.toMillis();
+		jobs.values()
+				.removeIf( job -> job.isFinished() && job.finished() < expired );
+
+		// running and queued jobs are never evicted, so this only trims finished ones, oldest first
+		final int excess = jobs.size() - maxRetained + 1;
+		if ( excess > 0 )
+		{
+			final List< Long > oldest = jobs.values()
+					.stream()
+					.filter( Job::isFinished )
+					.sorted( Comparator.comparingLong( Job::finished ) )
+					.limit( excess )
+					.map( Job::id )
+					.collect( Collectors.toList() );
+			oldest.forEach( jobs::remove );
+		}
+	}
+
+}
@@ -0,0 +1,435 @@
+package uk.co.bluegecko.pay.upload.service.base;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import uk.co.bluegecko.pay.common.model.Message;
+import uk.co.bluegecko.pay.common.model.Message.Classification;
+import uk.co.bluegecko.pay.common.service.MessageException;
+import uk.co.bluegecko.pay.upload.model.FileDigest;
+import uk.co.bluegecko.pay.upload.model.Session;
+import uk.co.bluegecko.pay.upload.service.InvalidRequestException;
+import uk.co.bluegecko.pay.upload.service.SessionService;
+
+
+@Service
+public class SessionServiceBase implements SessionService
+{
+
+	private static final Logger logger = LoggerFactory.getLogger( SessionService.class );
+
+	private static final String STATE = "session.properties";
+	private static final String CHUNK = "chunk-";
+	private static final String PART = ".part";
+
+	private static final String NAME = "name";
+	private static final String SIZE = "size";
+	private static final String CHUNK_SIZE = "chunkSize";
+	private static final String DIGEST = "digest";
+	private static final String COMMITTED = "committed";
+	private static final String JOB_ID = "jobId";
+	private static final String BATCH_ID = "batchId";
+	private static final String LINE = "line";
+	private static final String INDEX = "index";
+
+	private final Clock clock;
+	private final Path root;
+	private final Duration ttl;
+	private final ConcurrentMap< Long, Session > sessions;
+	private final AtomicLong ids;
+
+	@Autowired
+	public SessionServiceBase( final Clock clock,
+			@Value( "${pay.upload.sessions.path:${pay.upload.data:data}/sessions}" ) final String root,
+			@Value( "${pay.upload.sessions.ttl-minutes:1440}" ) final long ttlMinutes ) throws IOException
+	{
+		this( clock, Paths.get( root ), Duration.ofMinutes( ttlMinutes ) );
+	}
+
+	public SessionServiceBase( final Clock clock, final Path root ) throws IOException
+	{
+		this( clock, root, Duration.ofDays( 1 ) );
+	}
+
+	public SessionServiceBase( final Clock clock, final Path root, final Duration ttl ) throws IOException
+	{
+		super();
+
+		this.clock = clock;
+		this.root = root;
+		this.ttl = ttl;
+		sessions = new ConcurrentHashMap<>();
+		// seeded from the clock as job ids are, as a session's id also names the claim on its digest, which outlives
+		// the session's directory
+		ids = new AtomicLong( clock.millis() * 1000 );
+		load();
+		evict();
+	}
+
+	// a client that starts again without its session id picks up the session still open for the same file, known
+	// by its digest rather than a name that any number of files may share
+	@Override
+	public synchronized Session create( final String name, final long size, final int chunkSize,
+			final FileDigest digest ) throws IOException
+	{
+		if ( digest == null )
+		{
+			throw new InvalidRequestException( "invalid-digest" );
+		}
+		evict();
+		for ( final Session session : sessions.values() )
+		{
+			if ( !session.isCommitted() && session.size() == size && session.chunkSize() == chunkSize && session
+					.digest()
+					.equals( digest ) )
+			{
+				session.touch( clock.millis() );
+				return session;
+			}
+		}
+
+		final Session session;
+		try
+		{
+			session = new Session( ids.incrementAndGet(), name, size, chunkSize, digest );
+		}
+		catch ( final IllegalArgumentException ex )
+		{
+			throw new InvalidRequestException( ex.getMessage(), ex );
+		}
+		session.touch( clock.millis() );
+		Files.createDirectories( directory( session ) );
+		save( session );
+		sessions.put( session.id(), session );
+		logger.info( "session {}: {} of {} bytes in {} chunks", session.id(), name, size, session.chunks() );
+		return session;
+	}
+
+	@Override
+	public Optional< Session > session( final long sessionId )
+	{
+		return Optional.ofNullable( sessions.get( sessionId ) );
+	}
+
+	@Override
+	public void write( final Session session, final int chunk, final InputStream input ) throws IOException
+	{
+		if ( chunk < 0 || chunk >= session.chunks() )
+		{
+			throw new InvalidRequestException( "invalid-chunk-" + chunk );
+		}
+		final long length = session.length( chunk );
+		if ( session.isCommitted() )
+		{
+			throw new MessageException( "session-committed", Message.builder()
+					.classification( Classification.ERROR )
+					.message( "session-committed", "session-" + session.id() )
+					.build() );
+		}
+
+		// written aside and moved into place, so a dropped connection never leaves a short chunk behind
+		final Path part = Files.createTempFile( directory( session ), CHUNK + chunk + "-", PART );
+		final long written;
+		try (OutputStream output = Files.newOutputStream( part ))
+		{
+			written = copy( input, output, length );
+		}
+		if ( written != length )
+		{
+			Files.deleteIfExists( part );
+			throw new InvalidRequestException( "invalid-chunk-length-" + chunk + "-" + written );
+		}
+		Files.move( part, chunk( session, chunk ), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE );
+		session.received( chunk );
+		session.touch( clock.millis() );
+	}
+
+	@Override
+	public InputStream open( final Session session ) throws IOException
+	{
+		// chunks are opened one at a time as the parser reaches them
+		return new SequenceInputStream( new Chunks( session, 0 ) );
+	}
+
+	// chunks are sent in any order, so the reader waits at the first gap, and gives up when nothing fills it for
+	// too long
+	@Override
+	public InputStream follow( final Session session, final long idleMillis ) throws IOException
+	{
+		return new SequenceInputStream( new Chunks( session, idleMillis ) );
+	}
+
+	@Override
+	public void started( final Session session, final long jobId ) throws IOException
+	{
+		session.committed();
+		session.jobId( jobId );
+		if ( session.batchId() == null )
+		{
+			session.batchId( jobId );
+		}
+		session.touch( clock.millis() );
+		save( session );
+	}
+
+	@Override
+	public void checkpoint( final Session session, final int line, final int index ) throws IOException
+	{
+		session.checkpoint( line, index );
+		session.touch( clock.millis() );
+		save( session );
+	}
+
+	// the session is kept in memory until it expires, so a repeated commit still finds its job, but nothing of it is
+	// left on disk; after a restart the digest store is what still knows the file was accepted
+	@Override
+	public void completed( final Session session ) throws IOException
+	{
+		session.completed();
+		session.touch( clock.millis() );
+		delete( session );
+	}
+
+	// an open session the client never came back to, or a completed one kept for its job, goes once nothing has
+	// touched it for the ttl, along with whatever of it is still on disk; a job still publishing touches its
+	// session at every checkpoint
+	protected void evict()
+	{
+		final long expired = clock.millis() - ttl.toMillis();
+		for ( final Session session : sessions.values() )
+		{
+			if ( session.touched() < expired && sessions.remove( session.id(), session ) )
+			{
+				logger.info( "session {} expired: {}", session.id(), session.name() );
+				try
+				{
+					delete( session );
+				}
+				catch ( final IOException ex )
+				{
+					logger.warn( "session {} not deleted: {}", session.id(), ex.getMessage() );
+				}
+			}
+		}
+	}
+
+	protected void delete( final Session session ) throws IOException
+	{
+		final Path directory = directory( session );
+		if ( !Files.isDirectory( directory ) )
+		{
+			return;
+		}
+		try (DirectoryStream< Path > files = Files.newDirectoryStream( directory ))
+		{
+			for ( final Path file : files )
+			{
+				Files.deleteIfExists( file );
+			}
+		}
+		Files.deleteIfExists( directory );
+	}
+
+	protected void load() throws IOException
+	{
+		if ( !Files.isDirectory( root ) )
+		{
+			Files.createDirectories( root );
+			return;
+		}
+
+		try (DirectoryStream< Path > directories = Files.newDirectoryStream( root, Files::isDirectory ))
+		{
+			for ( final Path directory : directories )
+			{
+				try
+				{
+					final Session session = load( Long.parseLong( directory.getFileName()
+							.toString() ), directory );
+					sessions.put( session.id(), session );
+					ids.accumulateAndGet( session.id(), Math::max );
+				}
+				catch ( final IOException | RuntimeException ex )
+				{
+					logger.warn( "skipping session {}: {}", directory, ex.getMessage() );
+				}
+			}
+		}
+		logger.info( "loaded {} sessions from {}", sessions.size(), root );
+	}
+
+	protected Session load( final long id, final Path directory ) throws IOException
+	{
+		final Properties state = new Properties();
+		try (InputStream input = Files.newInputStream( directory.resolve( STATE ) ))
+		{
+			state.load( input );
+		}
+
+		final Session session = new Session( id, state.getProperty( NAME ), Long.parseLong( state.getProperty(
+				SIZE ) ), Integer.parseInt( state.getProperty( CHUNK_SIZE ) ), FileDigest.parse( state.getProperty(
+						DIGEST ) ) );
+		if ( Boolean.parseBoolean( state.getProperty( COMMITTED ) ) )
+		{
+			session.committed();
+		}
+		if ( state.containsKey( JOB_ID ) )
+		{
+			session.jobId( Long.valueOf( state.getProperty( JOB_ID ) ) );
+		}
+		if ( state.containsKey( BATCH_ID ) )
+		{
+			session.batchId( Long.valueOf( state.getProperty( BATCH_ID ) ) );
+		}
+		session.checkpoint( Integer.parseInt( state.getProperty( LINE, "0" ) ), Integer.parseInt( state
+				.getProperty( INDEX, "0" ) ) );
+		for ( int chunk = 0; chunk < session.chunks(); chunk++ )
+		{
+			if ( Files.exists( chunk( session, chunk ) ) )
+			{
+				session.received( chunk );
+			}
+		}
+		// every chunk and checkpoint is moved into the directory, so it was last touched when that last changed
+		session.touch( Files.getLastModifiedTime( directory )
+				.toMillis() );
+		return session;
+	}
+
+	protected void save( final Session session ) throws IOException
+	{
+		final Properties state = new Properties();
+		if ( session.name() != null )
+		{
+			state.setProperty( NAME, session.name() );
+		}
+		state.setProperty( SIZE, Long.toString( session.size() ) );
+		state.setProperty( CHUNK_SIZE, Integer.toString( session.chunkSize() ) );
+		state.setProperty( DIGEST, session.digest()
+				.toString() );
+		state.setProperty( COMMITTED, Boolean.toString( session.isCommitted() ) );
+		if ( session.jobId() != null )
+		{
+			state.setProperty( JOB_ID, session.jobId()
+					.toString() );
+		}
+		if ( session.batchId() != null )
+		{
+			state.setProperty( BATCH_ID, session.batchId()
+					.toString() );
+		}
+		state.setProperty( LINE, Integer.toString( session.line() ) );
+		state.setProperty( INDEX, Integer.toString( session.index() ) );
+
+		// replaced whole, so a crash leaves either the old checkpoint or the new one
+		final Path directory = directory( session );
+		final Path saved = directory.resolve( STATE + PART );
+		try (OutputStream output = Files.newOutputStream( saved ))
+		{
+			state.store( output, null );
+		}
+		Files.move( saved, directory.resolve( STATE ), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE );
+	}
+
+	protected Path directory( final Session session )
+	{
+		return root.resolve( Long.toString( session.id() ) );
+	}
+
+	protected Path chunk( final Session session, final int chunk )
+	{
+		return directory( session ).resolve( CHUNK + chunk );
+	}
+
+	protected class Chunks implements Enumeration< InputStream >
+	{
+
+		private final Session session;
+		private final long idleMillis;
+		private int next = 0;
+
+		protected Chunks( final Session session, final long idleMillis )
+		{
+			this.session = session;
+			this.idleMillis = idleMillis;
+		}
+
+		@Override
+		public boolean hasMoreElements()
+		{
+			return next < session.chunks();
+		}
+
+		@Override
+		public InputStream nextElement()
+		{
+			if ( !hasMoreElements() )
+			{
+				throw new NoSuchElementException();
+			}
+			try
+			{
+				if ( idleMillis > 0 && !session.await( next, idleMillis ) )
+				{
+					throw new IOException( "session-idle-" + session.id() + "-chunk-" + next );
+				}
+				return Files.newInputStream( chunk( session, next++ ) );
+			}
+			catch ( final InterruptedException ex )
+			{
+				Thread.currentThread()
+						.interrupt();
+				throw new UncheckedIOException( new InterruptedIOException( "session-interrupted-" + session.id() ) );
+			}
+			catch ( final IOException ex )
+			{
+				throw new UncheckedIOException( ex );
+			}
+		}
+
+	}
+
+	// stops one byte past the expected length, so an oversized chunk is caught without reading all of it
+	private static long copy( final InputStream input, final OutputStream output, final long length )
+			throws IOException
+	{
+		final byte[] buffer = new byte[64 * 1024];
+		long written = 0;
+		int read;
+		while ( written <= length && ( read = input.read( buffer, 0, ( int ) Math.min( buffer.length, length
+				- written + 1 ) ) ) != -1 )
+		{
+			output.write( buffer, 0, read );
+			written += read;
+		}
+		return written;
+	}
+
+}
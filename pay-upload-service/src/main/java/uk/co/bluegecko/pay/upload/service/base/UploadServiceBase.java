@@ -1,62 +1,737 @@
 package uk.co.bluegecko.pay.upload.service.base;
 
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+import javax.annotation.PreDestroy;
+import javax.validation.ConstraintViolation;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import uk.co.bluegecko.pay.bacs.std18.mapper.Standard18Mapper;
 import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
 import uk.co.bluegecko.pay.bacs.std18.model.Row;
+import uk.co.bluegecko.pay.bacs.std18.service.TrailerReconciler;
+import uk.co.bluegecko.pay.bacs.std18.service.v1.InstructionWireStd18ToV1;
+import uk.co.bluegecko.pay.common.model.Message;
+import uk.co.bluegecko.pay.common.model.Message.Classification;
+import uk.co.bluegecko.pay.common.service.CompiledValidator;
+import uk.co.bluegecko.pay.common.service.MessageException;
+import uk.co.bluegecko.pay.common.service.ParseErrors;
 import uk.co.bluegecko.pay.common.service.ParsingService;
+import uk.co.bluegecko.pay.upload.model.AcceptedFile;
+import uk.co.bluegecko.pay.upload.model.FileDigest;
+import uk.co.bluegecko.pay.upload.model.Job;
+import uk.co.bluegecko.pay.upload.model.PipelineGauges;
+import uk.co.bluegecko.pay.upload.model.PipelineGauges.Stage;
+import uk.co.bluegecko.pay.upload.model.Session;
+import uk.co.bluegecko.pay.upload.service.DigestStore;
+import uk.co.bluegecko.pay.upload.service.DuplicateFileException;
+import uk.co.bluegecko.pay.upload.service.InstructionPublisher;
+import uk.co.bluegecko.pay.upload.service.InvalidRequestException;
+import uk.co.bluegecko.pay.upload.service.JobService;
+import uk.co.bluegecko.pay.upload.service.SessionService;
 import uk.co.bluegecko.pay.upload.service.StreamingService;
 import uk.co.bluegecko.pay.upload.service.UploadService;
+import uk.co.bluegecko.pay.v1.upload.wire.JobStatus;
+import uk.co.bluegecko.pay.v1.upload.wire.JobStatus.State;
 
 
 @Service
 public class UploadServiceBase implements UploadService
 {
 
+	public static final String PIPELINE_RECORDS = "pay.upload.pipeline.records";
+	public static final String PIPELINE_BUSY = "pay.upload.pipeline.busy";
+	public static final String PIPELINE_DEPTH = "pay.upload.pipeline.depth";
+	public static final String PIPELINE_INVALID = "pay.upload.pipeline.invalid";
+	public static final String GZIP = "gzip";
+	public static final String GZIP_SUFFIX = ".gz";
+
 	private static final Logger logger = LoggerFactory.getLogger( UploadService.class );
 
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int CHECKPOINT = 1000;
+	private static final String SESSION_OWNER = "session-";
+
 	private final ParsingService parsingService;
 	private final StreamingService streamingService;
+	private final JobService jobService;
+	private final DigestStore digestStore;
+	private final SessionService sessionService;
+	private final InstructionWireStd18ToV1 instructionWireService;
+	private final CompiledValidator validator;
+	private final ExecutorService converters;
+	private final ExecutorService publishers;
+	private final ExecutorService followers;
+	private final int capacity;
+	private final long idle;
+	private final Clock clock;
+	private final PipelineGauges gauges;
+	private final ConcurrentMap< Long, Future< Checked > > checks;
 
 	@Autowired
-	public UploadServiceBase( final ParsingService parsingService, final StreamingService streamingService )
+	public UploadServiceBase( final ParsingService parsingService, final StreamingService streamingService,
+			final JobService jobService, final DigestStore digestStore, final SessionService sessionService,
+			final InstructionWireStd18ToV1 instructionWireService, final CompiledValidator validator,
+			final Clock clock, final MeterRegistry meterRegistry,
+			@Value( "${pay.upload.pipeline.converters:0}" ) final int converters,
+			@Value( "${pay.upload.pipeline.capacity:1024}" ) final int capacity,
+			@Value( "${pay.upload.jobs.workers:4}" ) final int workers,
+			@Value( "${pay.upload.sessions.followers:32}" ) final int followers,
+			@Value( "${pay.upload.sessions.idle-seconds:300}" ) final long idleSeconds )
+	{
+		// no converters configured means one per processor; a running job holds one publisher, so there are never
+		// more than the job workers, while an open session holds a follower until it's committed or gives up, and
+		// one more than allowed is refused rather than queued behind the others
+		this( parsingService, streamingService, jobService, digestStore, sessionService, instructionWireService,
+				validator, Executors.newFixedThreadPool( converters > 0 ? converters : Runtime.getRuntime()
+						.availableProcessors() ), Executors.newFixedThreadPool( workers ), new ThreadPoolExecutor( 0,
+								followers, 60L, TimeUnit.SECONDS, new SynchronousQueue<>() ), capacity, Duration
+										.ofSeconds( idleSeconds ), clock, meterRegistry );
+	}
+
+	public UploadServiceBase( final ParsingService parsingService, final StreamingService streamingService,
+			final JobService jobService, final DigestStore digestStore, final SessionService sessionService,
+			final InstructionWireStd18ToV1 instructionWireService, final CompiledValidator validator,
+			final ExecutorService converters, final ExecutorService publishers, final ExecutorService followers,
+			final int capacity, final Duration idle, final Clock clock, final MeterRegistry meterRegistry )
 	{
 		super();
 
 		this.parsingService = parsingService;
 		this.streamingService = streamingService;
+		this.jobService = jobService;
+		this.digestStore = digestStore;
+		this.sessionService = sessionService;
+		this.instructionWireService = instructionWireService;
+		this.validator = validator;
+		this.converters = converters;
+		this.publishers = publishers;
+		this.followers = followers;
+		this.capacity = capacity;
+		this.idle = idle.toMillis();
+		this.clock = clock;
+		gauges = new PipelineGauges();
+		checks = new ConcurrentHashMap<>();
+		bind( meterRegistry );
+	}
+
+	// the gauges are read when the registry is scraped, so the pipeline itself only touches its adders
+	protected void bind( final MeterRegistry meterRegistry )
+	{
+		for ( final Stage stage : Stage.values() )
+		{
+			final String name = stage.name()
+					.toLowerCase();
+			FunctionCounter.builder( PIPELINE_RECORDS, gauges, value -> value.count( stage ) )
+					.tag( "stage", name )
+					.register( meterRegistry );
+			FunctionCounter.builder( PIPELINE_BUSY, gauges, value -> value.nanos( stage ) / 1e9 )
+					.tag( "stage", name )
+					.baseUnit( "seconds" )
+					.register( meterRegistry );
+		}
+		Gauge.builder( PIPELINE_DEPTH, gauges, PipelineGauges::conversionDepth )
+				.tag( "queue", "conversion" )
+				.register( meterRegistry );
+		Gauge.builder( PIPELINE_DEPTH, gauges, PipelineGauges::publishDepth )
+				.tag( "queue", "publish" )
+				.register( meterRegistry );
+		FunctionCounter.builder( PIPELINE_INVALID, gauges, PipelineGauges::invalidCount )
+				.register( meterRegistry );
 	}
 
 	@Override
 	public long processFile( final MultipartFile file ) throws IOException
+	{
+		logger.info( "processing: {}", file.getOriginalFilename() );
+
+		return process( file.getOriginalFilename(), null, file.getContentType(), file.getInputStream() );
+	}
+
+	@Override
+	public long processStream( final String name, final String digest, final String encoding,
+			final InputStream input ) throws IOException
+	{
+		logger.info( "streaming: {}", name );
+
+		final FileDigest expected = digest == null ? null : digest( digest );
+		if ( expected != null )
+		{
+			digestStore.find( expected )
+					.ifPresent( original ->
+						{
+							throw new DuplicateFileException( original );
+						} );
+		}
+
+		return process( name, expected, encoding, input );
+	}
+
+	// the body only lasts as long as the request, so copying it to a spool is all that runs on the request thread;
+	// the check is the job's first phase on the pool, failing the job with its message for a rejected or duplicate
+	// file, and publishing from the same copy is the second
+	protected long process( final String name, final FileDigest expected, final String encoding,
+			final InputStream input ) throws IOException
+	{
+		// named for its encoding, so publishing inflates it as the check did
+		final Path spool = Files.createTempFile( "upload-", isCompressed( name, encoding ) ? ".tmp" + GZIP_SUFFIX
+				: ".tmp" );
+		final AtomicReference< FileDigest > accepted = new AtomicReference<>();
+		try
+		{
+			Files.copy( input, spool, StandardCopyOption.REPLACE_EXISTING );
+			return jobService.submit( name, job -> accepted.set( check( job, expected, spool, name, encoding ) ),
+					job -> publish( job, spool, accepted.get() ) )
+					.id();
+		}
+		catch ( final IOException | RuntimeException ex )
+		{
+			Files.deleteIfExists( spool );
+			throw ex;
+		}
+	}
+
+	protected FileDigest check( final Job job, final FileDigest expected, final Path spool, final String name,
+			final String encoding ) throws IOException
+	{
+		try
+		{
+			return check( job, expected, Files.newInputStream( spool ), name, encoding );
+		}
+		catch ( final IOException | RuntimeException ex )
+		{
+			Files.deleteIfExists( spool );
+			throw ex;
+		}
+	}
+
+	// the body can only be read once, so a duplicate is only stopped before it is checked when the client declares
+	// its digest; otherwise it is hashed as it is read and claimed once accepted; a compressed file is hashed as the
+	// file it holds, so the same file sent compressed and plain is still a duplicate
+	protected FileDigest check( final Job job, final FileDigest expected, final InputStream input, final String name,
+			final String encoding ) throws IOException
+	{
+		if ( expected != null )
+		{
+			claim( job, expected, null );
+		}
+
+		try
+		{
+			final MessageDigest digest = FileDigest.newDigest();
+			final Message message;
+			try (InputStream body = new DigestInputStream( decoded( input, name, encoding ), digest ))
+			{
+				message = reconcile( job, reader( body ) );
+			}
+			catch ( final ZipException ex )
+			{
+				throw new InvalidRequestException( "invalid-compressed-file", ex );
+			}
+			accepted( job, message );
+
+			final FileDigest actual = FileDigest.of( digest.digest() );
+			if ( expected != null )
+			{
+				matched( expected, actual );
+			}
+			else
+			{
+				claim( job, actual, null );
+			}
+			return actual;
+		}
+		catch ( final IOException | RuntimeException ex )
+		{
+			if ( expected != null )
+			{
+				digestStore.release( expected, job.id() );
+			}
+			throw ex;
+		}
+	}
+
+	protected void publish( final Job job, final Path spool, final FileDigest digest ) throws IOException
+	{
+		try
+		{
+			publish( job, spool );
+		}
+		catch ( final IOException | RuntimeException ex )
+		{
+			// a failed file may be fixed and sent again
+			digestStore.release( digest, job.id() );
+			throw ex;
+		}
+		finally
+		{
+			Files.deleteIfExists( spool );
+		}
+	}
+
+	protected void publish( final Job job, final Path file ) throws IOException
+	{
+		final Standard18Mapper standard18Mapper = new Standard18Mapper().addRow( Row.INSTR );
+
+		try (InstructionPublisher publisher = pipeline( job ))
+		{
+			parsingService.records( reader( open( file ) ), standard18Mapper )
+					.map( record -> ( Instruction ) record.value() )
+					.doOnNext( publisher::send )
+					.blockLast();
+		}
+	}
+
+	protected void accepted( final Job job, final Message message )
+	{
+		if ( message.has( Classification.ERROR ) )
+		{
+			logger.warn( "rejected: {} {}", job.name(), message );
+			throw new MessageException( "file-rejected", message );
+		}
+	}
+
+	protected void matched( final FileDigest expected, final FileDigest actual )
+	{
+		if ( !expected.equals( actual ) )
+		{
+			throw new MessageException( "digest-mismatch", Message.builder()
+					.classification( Classification.ERROR )
+					.message( "digest-mismatch", "expected-" + expected, "actual-" + actual )
+					.build() );
+		}
+	}
+
+	// the check when the upload arrives is cheap but racy, so the claim made as the job starts is what decides
+	protected void claim( final Job job, final FileDigest digest, final String owner )
+	{
+		final Optional< AcceptedFile > original = digestStore.claim( digest, job.id(), job.name(), owner );
+		if ( original.isPresent() )
+		{
+			logger.warn( "duplicate: {} of job {}", job.name(), original.get()
+					.jobId() );
+			throw new DuplicateFileException( original.get() );
+		}
+	}
+
+	// the digest is declared up front, so a file already accepted is refused before any chunk is sent, and the
+	// chunks are checked as they arrive, leaving only publishing for the commit
+	@Override
+	public Session createSession( final String name, final long size, final int chunkSize, final String digest )
+			throws IOException
+	{
+		final FileDigest expected = digest( digest );
+		digestStore.find( expected )
+				.ifPresent( original ->
+					{
+						throw new DuplicateFileException( original );
+					} );
+
+		final Session session = sessionService.create( name, size, chunkSize, expected );
+		follow( session );
+		return session;
+	}
+
+	@Override
+	public long commitSession( final Session session ) throws IOException
+	{
+		synchronized ( session )
+		{
+			if ( !session.isComplete() )
+			{
+				throw new MessageException( "session-incomplete", Message.builder()
+						.classification( Classification.ERROR )
+						.message( "session-incomplete", "missing-" + session.missing()
+								.size(), "offset-" + session.offset() )
+						.build() );
+			}
+
+			// committing again is safe, and only starts another job when the last one failed
+			final Long current = session.jobId();
+			if ( current != null && ( session.isCompleted() || jobService.job( current )
+					.filter( job -> job.state() != State.FAILED )
+					.isPresent() ) )
+			{
+				return current;
+			}
+
+			logger.info( "committing session {}: {} from line {}", session.id(), session.name(), session.line() );
+			final Job job = jobService.submit( session.name(), next -> processSession( next, session ) );
+			session.jobId( job.id() );
+			return job.id();
+		}
+	}
+
+	// the claim belongs to the session, so a job started again after a failure or a restart claims it again
+	protected void processSession( final Job job, final Session session ) throws IOException
+	{
+		sessionService.started( session, job.id() );
+		claim( job, session.digest(), SESSION_OWNER + session.id() );
+
+		try
+		{
+			final Checked checked = checked( session );
+			job.parsed( checked.counts()
+					.parsed() );
+			job.errors( checked.counts()
+					.errors() );
+			accepted( job, checked.message() );
+			matched( session.digest(), checked.digest() );
+
+			// a resumed job skips the lines already published and carries on numbering from the checkpoint
+			final Standard18Mapper standard18Mapper = new Standard18Mapper().addRow( Row.INSTR )
+					.startAt( session.index(), session.line() );
+			try (InstructionPublisher publisher = pipeline( job, session.batchId(), new CheckpointPublisher(
+					streamingService.publisher(), sessionService, session, CHECKPOINT ) ))
+			{
+				parsingService.records( skip( reader( open( session ) ), session.line() ), standard18Mapper )
+						.map( record -> ( Instruction ) record.value() )
+						.doOnNext( publisher::send )
+						.blockLast();
+			}
+		}
+		catch ( final IOException | RuntimeException ex )
+		{
+			digestStore.release( session.digest(), job.id() );
+			throw ex;
+		}
+		sessionService.completed( session );
+	}
+
+	// one thread per open session, parked at the first chunk not yet sent, so a session is checked as it arrives
+	// rather than all at once when committed; one that gave up is started again when the client comes back, and
+	// with every follower taken the session is refused as busy until one is free
+	protected void follow( final Session session )
+	{
+		// the check of a session that expired without being committed goes with it
+		checks.keySet()
+				.removeIf( id -> !sessionService.session( id )
+						.isPresent() );
+		checks.compute( session.id(), ( id, check ) -> check != null && !failed( check ) ? check : followers
+				.submit( () -> check( session, sessionService.follow( session, idle ) ) ) );
+	}
+
+	// the check made as the chunks arrived usually has only the tail left; a session loaded after a restart has
+	// none, and one that failed is checked again from the start, which repeats a real rejection
+	protected Checked checked( final Session session ) throws IOException
+	{
+		final Future< Checked > check = checks.remove( session.id() );
+		if ( check != null )
+		{
+			try
+			{
+				return check.get();
+			}
+			catch ( final InterruptedException ex )
+			{
+				Thread.currentThread()
+						.interrupt();
+				throw new IllegalStateException( "check-interrupted", ex );
+			}
+			catch ( final ExecutionException ex )
+			{
+				logger.warn( "checking session {} again: {}", session.id(), ex.getCause()
+						.getMessage() );
+			}
+		}
+		return check( session, sessionService.open( session ) );
+	}
+
+	protected Checked check( final Session session, final InputStream input ) throws IOException
+	{
+		// only counted here, and added to the job that publishes the session
+		final Job counts = new Job( session.id(), session.name(), clock );
+		final MessageDigest digest = FileDigest.newDigest();
+		try (InputStream body = new DigestInputStream( decoded( input, session.name(), null ), digest ))
+		{
+			final Message message = reconcile( counts, reader( body ) );
+			return new Checked( counts.status(), message, FileDigest.of( digest.digest() ) );
+		}
+		catch ( final ZipException ex )
+		{
+			throw new InvalidRequestException( "invalid-compressed-file", ex );
+		}
+	}
+
+	protected boolean failed( final Future< Checked > check )
+	{
+		if ( !check.isDone() )
+		{
+			return false;
+		}
+		try
+		{
+			check.get();
+			return false;
+		}
+		catch ( final InterruptedException ex )
+		{
+			Thread.currentThread()
+					.interrupt();
+			return false;
+		}
+		catch ( final ExecutionException | CancellationException ex )
+		{
+			return true;
+		}
+	}
+
+	protected FileDigest digest( final String digest )
+	{
+		try
+		{
+			return FileDigest.parse( digest );
+		}
+		catch ( final IllegalArgumentException ex )
+		{
+			throw new InvalidRequestException( ex.getMessage(), ex );
+		}
+	}
+
+	protected BufferedReader skip( final BufferedReader reader, final int lines ) throws IOException
+	{
+		for ( int line = 0; line < lines && reader.readLine() != null; line++ )
+		{
+			// only counting lines, the parser starts after them
+		}
+		return reader;
+	}
+
+	// every instruction is converted and validated in the check pass too, so an invalid one rejects the file
+	// before any is sent
+	protected Message reconcile( final Job job, final Reader reader ) throws IOException
+	{
+		final TrailerReconciler reconciler = new TrailerReconciler();
+		final ParseErrors invalid = new ParseErrors();
+
+		final Message message = parse( job, reader, reconcilingMapper( job, reconciler, invalid ), reconciler );
+		if ( !invalid.isEmpty() )
+		{
+			job.errors( invalid.total() );
+			final Message violations = invalid.message();
+			for ( final Classification classification : Classification.values() )
+			{
+				for ( final String key : violations.keys( classification ) )
+				{
+					message.add( classification, key, violations.text( classification, key )
+							.toArray( new String[0] ) );
+				}
+			}
+		}
+		return message;
+	}
+
+	protected Message parse( final Job job, final Reader reader, final Standard18Mapper standard18Mapper,
+			final TrailerReconciler reconciler ) throws IOException
+	{
+		final ParseErrors errors = parsingService.newErrors();
+		try
+		{
+			// records that fail to parse are counted and skipped, as they always were; only the trailers, or an
+			// exhausted error budget, reject the file
+			parsingService.parse( reader, standard18Mapper, errors );
+			final Message reconciled = reconciler.finish();
+			job.errors( reconciled.keys( Classification.ERROR )
+					.stream()
+					.mapToLong( key -> reconciled.text( Classification.ERROR, key )
+							.size() )
+					.sum() );
+			return reconciled;
+		}
+		finally
+		{
+			job.errors( errors.total() );
+		}
+	}
+
+	protected Standard18Mapper reconcilingMapper( final Job job, final TrailerReconciler reconciler,
+			final ParseErrors invalid )
 	{
 		final Standard18Mapper standard18Mapper = new Standard18Mapper();
+		for ( final Row row : TrailerReconciler.ROWS )
+		{
+			standard18Mapper.addRow( row, counted( job, row == Row.INSTR ? reconciler.andThen( validating( job,
+					invalid ) ) : reconciler ) );
+		}
+		return standard18Mapper;
+	}
 
-		standard18Mapper.addRow( Row.INSTR,
-				( final Row row, final Object value ) -> streamingService.sendInstruction( ( Instruction ) value ) );
+	protected BiConsumer< Row, Object > validating( final Job job, final ParseErrors invalid )
+	{
+		return ( row, value ) ->
+			{
+				final uk.co.bluegecko.pay.v1.portfolio.wire.Instruction instruction = instructionWireService.toWire(
+						( Instruction ) value );
+				if ( validator.isValid( instruction ) )
+				{
+					return;
+				}
 
-		logger.info( "processing: {}", file.getOriginalFilename() );
+				job.gauges()
+						.invalid();
+				gauges.invalid();
+				for ( final ConstraintViolation< ? > violation : validator.validate( instruction ) )
+				{
+					// bounded per property, so a file of bad references cannot exhaust memory
+					invalid.add( violation.getPropertyPath()
+							.toString(), "index-" + instruction.index() + ": " + violation.getMessage() );
+				}
+			};
+	}
+
+	protected BiConsumer< Row, Object > counted( final Job job, final BiConsumer< Row, Object > consumer )
+	{
+		return ( row, value ) ->
+			{
+				job.parsed();
+				consumer.accept( row, value );
+			};
+	}
+
+	// parsing stays on the job thread, conversion and validation fan out to the pool, and a publisher thread
+	// per job sends in order, with a bounded queue between them holding the parser back; a file is published as a
+	// batch of its own
+	protected InstructionPublisher pipeline( final Job job )
+	{
+		return pipeline( job, job.id(), streamingService.publisher() );
+	}
+
+	protected InstructionPublisher pipeline( final Job job, final long batchId, final InstructionPublisher publisher )
+	{
+		return new InstructionPipeline( job, batchId, publisher, instructionWireService, converters, publishers,
+				gauges, capacity );
+	}
+
+	protected InputStream open( final Path file ) throws IOException
+	{
+		return decoded( Files.newInputStream( file ), file.getFileName()
+				.toString(), null );
+	}
+
+	protected InputStream open( final Session session ) throws IOException
+	{
+		return decoded( sessionService.open( session ), session.name(), null );
+	}
+
+	// inflated as it is read, so the decompressed file is never held in memory or written out
+	protected InputStream decoded( final InputStream input, final String name, final String encoding )
+			throws IOException
+	{
+		if ( !isCompressed( name, encoding ) )
+		{
+			return input;
+		}
+		try
+		{
+			return new GZIPInputStream( input, BUFFER_SIZE );
+		}
+		catch ( final IOException ex )
+		{
+			input.close();
+			throw ex;
+		}
+	}
+
+	// the encoding is a Content-Encoding or content type, either of which may name gzip
+	protected boolean isCompressed( final String name, final String encoding )
+	{
+		return encoding != null && encoding.toLowerCase()
+				.contains( GZIP ) || name != null && name.toLowerCase()
+						.endsWith( GZIP_SUFFIX );
+	}
 
-		parsingService.parse( new InputStreamReader( file.getInputStream(), StandardCharsets.UTF_8 ),
-				standard18Mapper );
+	protected BufferedReader reader( final InputStream input )
+	{
+		return new BufferedReader( new InputStreamReader( input, StandardCharsets.UTF_8 ), BUFFER_SIZE );
+	}
 
-		return 0;
+	@Override
+	public Optional< JobStatus > getJobStatus( final long jobId )
+	{
+		return jobService.job( jobId )
+				.map( Job::status );
 	}
 
 	@Override
-	public String getJobStatus( final long jobId )
+	public PipelineGauges getPipelineGauges()
+	{
+		return gauges;
+	}
+
+	protected static final class Checked
+	{
+
+		private final JobStatus counts;
+		private final Message message;
+		private final FileDigest digest;
+
+		protected Checked( final JobStatus counts, final Message message, final FileDigest digest )
+		{
+			this.counts = counts;
+			this.message = message;
+			this.digest = digest;
+		}
+
+		public JobStatus counts()
+		{
+			return counts;
+		}
+
+		public Message message()
+		{
+			return message;
+		}
+
+		public FileDigest digest()
+		{
+			return digest;
+		}
+
+	}
+
+	@PreDestroy
+	public void shutdown()
 	{
-		return "COMPLETED: " + jobId;
+		converters.shutdownNow();
+		publishers.shutdownNow();
+		followers.shutdownNow();
 	}
 
 }
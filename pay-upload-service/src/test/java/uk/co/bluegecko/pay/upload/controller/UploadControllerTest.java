@@ -1,30 +1,58 @@
 package uk.co.bluegecko.pay.upload.controller;
 
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
-import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.CHUNK;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.CHUNK_SIZE;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.COMMIT;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.DIGEST;
 import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.FILE;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.NAME;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.SESSIONS;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.SIZE;
 import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.STATUS;
+import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.STREAM;
 import static uk.co.bluegecko.pay.v1.upload.rest.UploadMapping.UPLOAD;
 
+import java.io.InputStream;
+import java.util.Optional;
+
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
 
 import uk.co.bluegecko.pay.test.harness.TestHarness;
 import uk.co.bluegecko.pay.upload.TestUploadApplication;
+import uk.co.bluegecko.pay.upload.model.AcceptedFile;
+import uk.co.bluegecko.pay.upload.model.FileDigest;
+import uk.co.bluegecko.pay.upload.model.Session;
+import uk.co.bluegecko.pay.upload.service.DigestStore;
+import uk.co.bluegecko.pay.upload.service.DuplicateFileException;
+import uk.co.bluegecko.pay.upload.service.InvalidRequestException;
+import uk.co.bluegecko.pay.upload.service.SessionService;
 import uk.co.bluegecko.pay.upload.service.StreamingService;
 import uk.co.bluegecko.pay.upload.service.UploadService;
+import uk.co.bluegecko.pay.v1.upload.wire.JobStatus;
+import uk.co.bluegecko.pay.v1.upload.wire.JobStatus.State;
 
 
 @SpringBootTest( classes = TestUploadApplication.class, webEnvironment = WebEnvironment.MOCK )
@@ -32,7 +60,14 @@ import uk.co.bluegecko.pay.upload.service.UploadService;
 public class UploadControllerTest extends TestHarness
 {
 
-	private static final String COMLETED = "COMLETED: 1";
+	private static final FileDigest CONTENT = FileDigest.of( FileDigest.newDigest()
+			.digest( "0123456789012345678901234".getBytes() ) );
+	private static final JobStatus COMPLETED = JobStatus.builder()
+			.jobId( 1L )
+			.state( State.COMPLETED )
+			.parsed( 3 )
+			.published( 1 )
+			.build();
 
 	@Autowired
 	private MockMvc mvc;
@@ -43,6 +78,12 @@ public class UploadControllerTest extends TestHarness
 	@MockBean
 	private StreamingService streamingService;
 
+	@MockBean
+	private SessionService sessionService;
+
+	@MockBean
+	private DigestStore digestStore;
+
 	@Test
 	public final void testFileUpload() throws Exception
 	{
@@ -55,16 +96,145 @@ public class UploadControllerTest extends TestHarness
 		verify( uploadService ).processFile( multipartFile );
 	}
 
+	@Test
+	public final void testStreamUpload() throws Exception
+	{
+		mvc.perform( post( STREAM ).param( NAME, "test.txt" )
+				.contentType( MediaType.TEXT_PLAIN )
+				.content( "Spring Framework" ) )
+				.andExpect( status().isAccepted() )
+				.andExpect( header().string( "Location", "http://localhost/status/0" ) );
+
+		verify( uploadService ).processStream( eq( "test.txt" ), isNull(), isNull(), any( InputStream.class ) );
+	}
+
+	@Test
+	public final void testStreamUploadCompressed() throws Exception
+	{
+		mvc.perform( post( STREAM ).param( NAME, "test.txt" )
+				.header( HttpHeaders.CONTENT_ENCODING, "gzip" )
+				.contentType( MediaType.APPLICATION_OCTET_STREAM )
+				.content( new byte[]
+					{ 0x1f, ( byte ) 0x8b } ) )
+				.andExpect( status().isAccepted() );
+
+		verify( uploadService ).processStream( eq( "test.txt" ), isNull(), eq( "gzip" ), any( InputStream.class ) );
+	}
+
+	@Test
+	public final void testStreamUploadDuplicate() throws Exception
+	{
+		final String digest = FileDigest.of( FileDigest.newDigest()
+				.digest( "Spring Framework".getBytes() ) )
+				.toString();
+		doThrow( new DuplicateFileException( AcceptedFile.builder()
+				.digest( FileDigest.parse( digest ) )
+				.jobId( 7L )
+				.name( "test.txt" )
+				.build() ) ).when( uploadService )
+						.processStream( eq( "test.txt" ), eq( digest ), isNull(), any( InputStream.class ) );
+
+		mvc.perform( post( STREAM ).param( NAME, "test.txt" )
+				.param( DIGEST, digest )
+				.contentType( MediaType.TEXT_PLAIN )
+				.content( "Spring Framework" ) )
+				.andExpect( status().isConflict() )
+				.andExpect( header().string( "Location", "http://localhost/status/7" ) );
+	}
+
+	@Test
+	public final void testCreateSession() throws Exception
+	{
+		when( uploadService.createSession( "test.txt", 25L, 10, CONTENT.toString() ) ).thenReturn( new Session( 3L,
+				"test.txt", 25L, 10, CONTENT ) );
+
+		mvc.perform( post( SESSIONS ).param( NAME, "test.txt" )
+				.param( SIZE, "25" )
+				.param( CHUNK_SIZE, "10" )
+				.param( DIGEST, CONTENT.toString() ) )
+				.andExpect( status().isCreated() )
+				.andExpect( header().string( "Location", "http://localhost/upload/sessions/3" ) )
+				.andExpect( jsonPath( "$.chunks" ).value( 3 ) )
+				.andExpect( jsonPath( "$.missing.length()" ).value( 3 ) )
+				.andExpect( jsonPath( "$.digest" ).value( CONTENT.toString() ) );
+	}
+
+	@Test
+	public final void testCreateSessionWithoutDigest() throws Exception
+	{
+		mvc.perform( post( SESSIONS ).param( NAME, "test.txt" )
+				.param( SIZE, "25" )
+				.param( CHUNK_SIZE, "10" ) )
+				.andExpect( status().isBadRequest() );
+	}
+
+	@Test
+	public final void testPutChunk() throws Exception
+	{
+		final Session session = new Session( 3L, "test.txt", 25L, 10, CONTENT );
+		when( sessionService.session( 3L ) ).thenReturn( Optional.of( session ) );
+
+		mvc.perform( put( CHUNK, 3L, 1 ).contentType( MediaType.APPLICATION_OCTET_STREAM )
+				.content( "0123456789".getBytes() ) )
+				.andExpect( status().isNoContent() );
+
+		verify( sessionService ).write( eq( session ), eq( 1 ), any( InputStream.class ) );
+	}
+
+	@Test
+	public final void testPutChunkInvalid() throws Exception
+	{
+		final Session session = new Session( 3L, "test.txt", 25L, 10, CONTENT );
+		when( sessionService.session( 3L ) ).thenReturn( Optional.of( session ) );
+		doThrow( new InvalidRequestException( "invalid-chunk-3" ) ).when( sessionService )
+				.write( eq( session ), eq( 3 ), any( InputStream.class ) );
+
+		mvc.perform( put( CHUNK, 3L, 3 ).contentType( MediaType.APPLICATION_OCTET_STREAM )
+				.content( "0123456789".getBytes() ) )
+				.andExpect( status().isBadRequest() );
+	}
+
+	@Test
+	public final void testCommitSession() throws Exception
+	{
+		final Session session = new Session( 3L, "test.txt", 25L, 10, CONTENT );
+		when( sessionService.session( 3L ) ).thenReturn( Optional.of( session ) );
+		when( uploadService.commitSession( session ) ).thenReturn( 5L );
+
+		mvc.perform( post( COMMIT, 3L ) )
+				.andExpect( status().isAccepted() )
+				.andExpect( header().string( "Location", "http://localhost/status/5" ) );
+	}
+
+	@Test
+	public final void testCommitSessionUnknown() throws Exception
+	{
+		when( sessionService.session( 4L ) ).thenReturn( Optional.empty() );
+
+		mvc.perform( post( COMMIT, 4L ) )
+				.andExpect( status().isNotFound() );
+	}
+
 	@Test
 	public final void testFileStatus() throws Exception
 	{
-		when( uploadService.getJobStatus( 1L ) ).thenReturn( COMLETED );
+		when( uploadService.getJobStatus( 1L ) ).thenReturn( Optional.of( COMPLETED ) );
 
 		mvc.perform( get( STATUS, 1L ) )
 				.andExpect( status().isOk() )
-				.andExpect( content().string( COMLETED ) );
+				.andExpect( jsonPath( "$.state" ).value( "COMPLETED" ) )
+				.andExpect( jsonPath( "$.published" ).value( 1 ) );
 
 		verify( uploadService ).getJobStatus( 1L );
 	}
 
+	@Test
+	public final void testFileStatusUnknown() throws Exception
+	{
+		when( uploadService.getJobStatus( 2L ) ).thenReturn( Optional.empty() );
+
+		mvc.perform( get( STATUS, 2L ) )
+				.andExpect( status().isNotFound() );
+	}
+
 }
@@ -0,0 +1,212 @@
+package uk.co.bluegecko.pay.upload.service.base;
+
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import lombok.extern.slf4j.Slf4j;
+import uk.co.bluegecko.pay.upload.model.AcceptedFile;
+import uk.co.bluegecko.pay.upload.model.FileDigest;
+
+
+@Slf4j
+public class DigestStoreBaseTest
+{
+
+	private static final Duration RETENTION = Duration.ofDays( 1 );
+	private static final int DIGESTS = 300_000;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Clock clock;
+	private Path path;
+	private DigestStoreBase digestStore;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		clock = mock( Clock.class );
+		when( clock.millis() ).thenReturn( 1000L );
+		path = folder.getRoot()
+				.toPath()
+				.resolve( "digests.log" );
+		digestStore = new DigestStoreBase( clock, path, RETENTION );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		digestStore.close();
+	}
+
+	@Test
+	public final void testClaim()
+	{
+		final FileDigest digest = digest( 1 );
+
+		assertThat( digestStore.find( digest )
+				.isPresent(), is( false ) );
+		assertThat( digestStore.claim( digest, 1L, "test.txt", null )
+				.isPresent(), is( false ) );
+
+		final AcceptedFile original = digestStore.claim( digest, 2L, "copy.txt", null )
+				.get();
+		assertThat( original.jobId(), is( 1L ) );
+		assertThat( original.name(), is( "test.txt" ) );
+		assertThat( original.accepted(), is( 1000L ) );
+		assertThat( digestStore.find( digest )
+				.get(), is( original ) );
+	}
+
+	@Test
+	public final void testClaimOwned()
+	{
+		final FileDigest digest = digest( 1 );
+		digestStore.claim( digest, 1L, "test.txt", "session-1" );
+		when( clock.millis() ).thenReturn( 2000L );
+
+		assertThat( digestStore.claim( digest, 2L, "test.txt", "session-1" )
+				.isPresent(), is( false ) );
+		assertThat( digestStore.find( digest )
+				.get()
+				.jobId(), is( 2L ) );
+		assertThat( digestStore.find( digest )
+				.get()
+				.accepted(), is( 1000L ) );
+		assertThat( digestStore.claim( digest, 3L, "test.txt", "session-2" )
+				.get()
+				.jobId(), is( 2L ) );
+		assertThat( digestStore.claim( digest, 3L, "test.txt", null )
+				.get()
+				.jobId(), is( 2L ) );
+	}
+
+	@Test
+	public final void testRelease()
+	{
+		final FileDigest digest = digest( 1 );
+		digestStore.claim( digest, 1L, "test.txt", null );
+
+		digestStore.release( digest, 2L );
+		assertThat( digestStore.size(), is( 1 ) );
+
+		digestStore.release( digest, 1L );
+		assertThat( digestStore.size(), is( 0 ) );
+		assertThat( digestStore.claim( digest, 2L, "test.txt", null )
+				.isPresent(), is( false ) );
+	}
+
+	@Test
+	public final void testRetention()
+	{
+		digestStore.claim( digest( 1 ), 1L, "first.txt", null );
+		when( clock.millis() ).thenReturn( 2000L );
+		digestStore.claim( digest( 2 ), 2L, "second.txt", null );
+
+		when( clock.millis() ).thenReturn( 1000L + RETENTION.toMillis() + 1 );
+		assertThat( digestStore.find( digest( 1 ) )
+				.isPresent(), is( false ) );
+		assertThat( digestStore.find( digest( 2 ) )
+				.isPresent(), is( true ) );
+		assertThat( digestStore.size(), is( 1 ) );
+	}
+
+	@Test
+	public final void testReload() throws IOException
+	{
+		digestStore.claim( digest( 1 ), 1L, "first.txt", null );
+		digestStore.claim( digest( 2 ), 2L, "second file.txt", null );
+		digestStore.claim( digest( 3 ), 3L, null, "session-3" );
+		digestStore.release( digest( 1 ), 1L );
+		digestStore.close();
+		Files.write( path, "+ torn".getBytes( StandardCharsets.UTF_8 ), StandardOpenOption.APPEND );
+
+		digestStore = new DigestStoreBase( clock, path, RETENTION );
+
+		assertThat( digestStore.size(), is( 2 ) );
+		assertThat( digestStore.find( digest( 1 ) )
+				.isPresent(), is( false ) );
+		assertThat( digestStore.find( digest( 2 ) )
+				.get()
+				.name(), is( "second file.txt" ) );
+		assertThat( digestStore.find( digest( 3 ) )
+				.get()
+				.jobId(), is( 3L ) );
+		assertThat( digestStore.find( digest( 3 ) )
+				.get()
+				.owner(), is( "session-3" ) );
+		// the released and torn entries are compacted away
+		assertThat( Files.readAllLines( path )
+				.size(), is( 2 ) );
+	}
+
+	@Test
+	public final void testParse()
+	{
+		final FileDigest digest = FileDigest.of( FileDigest.newDigest()
+				.digest( "test".getBytes( StandardCharsets.UTF_8 ) ) );
+
+		assertThat( digest.toString(), is( "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c0f00a08f0a" ) );
+		assertThat( FileDigest.parse( digest.toString() ), is( digest ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public final void testParseInvalid()
+	{
+		FileDigest.parse( "9f86d081" );
+	}
+
+	@Test
+	public final void testLookupTime()
+	{
+		final FileDigest[] digests = new FileDigest[DIGESTS];
+		for ( int i = 0; i < DIGESTS; i++ )
+		{
+			digests[i] = digest( i );
+		}
+
+		long claim = System.nanoTime();
+		for ( int i = 0; i < DIGESTS; i++ )
+		{
+			digestStore.claim( digests[i], i, null, null );
+		}
+		claim = System.nanoTime() - claim;
+
+		long find = System.nanoTime();
+		for ( int i = 0; i < DIGESTS; i++ )
+		{
+			digestStore.find( digests[i] );
+		}
+		find = System.nanoTime() - find;
+
+		assertThat( digestStore.size(), is( DIGESTS ) );
+		log.info( "{} digests: claim {}ms, find {}ns each", DIGESTS, TimeUnit.NANOSECONDS.toMillis( claim ),
+				find / DIGESTS );
+	}
+
+	private FileDigest digest( final int value )
+	{
+		return FileDigest.of( FileDigest.newDigest()
+				.digest( Integer.toString( value )
+						.getBytes( StandardCharsets.UTF_8 ) ) );
+	}
+
+}
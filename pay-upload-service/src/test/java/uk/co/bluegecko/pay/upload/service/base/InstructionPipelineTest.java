@@ -0,0 +1,189 @@
+package uk.co.bluegecko.pay.upload.service.base;
+
+
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import uk.co.bluegecko.pay.bacs.std18.model.Account;
+import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
+import uk.co.bluegecko.pay.bacs.std18.service.v1.AccountWireStd18ToV1;
+import uk.co.bluegecko.pay.bacs.std18.service.v1.InstructionWireStd18ToV1;
+import uk.co.bluegecko.pay.upload.model.Job;
+import uk.co.bluegecko.pay.upload.model.PipelineGauges;
+import uk.co.bluegecko.pay.upload.model.PipelineGauges.Stage;
+import uk.co.bluegecko.pay.upload.service.InstructionPublisher;
+
+
+public class InstructionPipelineTest
+{
+
+	private static final int RECORDS = 200;
+	private static final long BATCH_ID = 7L;
+	private static final Account ACCOUNT = Account.builder()
+			.sortCode( "123456" )
+			.number( "12345678" )
+			.name( "B.BAGGINS" )
+			.build();
+
+	private ExecutorService pool;
+	private ExecutorService publishers;
+	private Executor converters;
+	private List< Integer > published;
+	private List< Long > batches;
+	private Job job;
+	private PipelineGauges gauges;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		pool = Executors.newFixedThreadPool( 4 );
+		publishers = Executors.newCachedThreadPool();
+		// random delays so conversions finish out of order
+		converters = command -> pool.execute( () ->
+			{
+				try
+				{
+					Thread.sleep( ThreadLocalRandom.current()
+							.nextInt( 3 ) );
+				}
+				catch ( final InterruptedException ex )
+				{
+					Thread.currentThread()
+							.interrupt();
+				}
+				command.run();
+			} );
+		published = new CopyOnWriteArrayList<>();
+		batches = new CopyOnWriteArrayList<>();
+		job = new Job( 1, "test", Clock.systemUTC() );
+		gauges = new PipelineGauges();
+	}
+
+	@After
+	public void tearDown()
+	{
+		pool.shutdownNow();
+		publishers.shutdownNow();
+	}
+
+	@Test
+	public final void testPublishesInIndexOrder()
+	{
+		try (InstructionPublisher pipeline = pipeline( capturing(), 2 ))
+		{
+			for ( int i = 1; i <= RECORDS; i++ )
+			{
+				pipeline.send( instruction( i ) );
+			}
+		}
+
+		assertThat( published, is( IntStream.rangeClosed( 1, RECORDS )
+				.boxed()
+				.collect( Collectors.toList() ) ) );
+		assertThat( batches, everyItem( is( BATCH_ID ) ) );
+		assertThat( job.status()
+				.published(), is( ( long ) RECORDS ) );
+		assertThat( gauges.count( Stage.PARSE ), is( ( long ) RECORDS ) );
+		assertThat( gauges.count( Stage.CONVERT ), is( ( long ) RECORDS ) );
+		assertThat( gauges.count( Stage.PUBLISH ), is( ( long ) RECORDS ) );
+		assertThat( gauges.conversionDepth(), is( 0L ) );
+		assertThat( gauges.publishDepth(), is( 0L ) );
+	}
+
+	@Test
+	public final void testPublishFailure()
+	{
+		final InstructionPublisher failing = mock( InstructionPublisher.class );
+		final IllegalStateException failure = new IllegalStateException( "broker-down" );
+		doThrow( failure )
+				.when( failing )
+				.send( any( uk.co.bluegecko.pay.v1.portfolio.wire.Instruction.class ) );
+
+		try (InstructionPublisher pipeline = pipeline( failing, 1 ))
+		{
+			for ( int i = 1; i <= RECORDS; i++ )
+			{
+				pipeline.send( instruction( i ) );
+			}
+			fail( "expected failure" );
+		}
+		catch ( final IllegalStateException ex )
+		{
+			assertThat( ex, is( failure ) );
+		}
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public final void testInvalidCapacity()
+	{
+		pipeline( capturing(), 0 );
+	}
+
+	private InstructionPipeline pipeline( final InstructionPublisher publisher, final int capacity )
+	{
+		return new InstructionPipeline( job, BATCH_ID, publisher, new InstructionWireStd18ToV1(
+				new AccountWireStd18ToV1() ), converters, publishers, gauges, capacity );
+	}
+
+	private InstructionPublisher capturing()
+	{
+		return new InstructionPublisher()
+		{
+
+			@Override
+			public void send( final Instruction instruction )
+			{
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void send( final uk.co.bluegecko.pay.v1.portfolio.wire.Instruction instruction )
+			{
+				published.add( instruction.index() );
+				batches.add( instruction.batch() );
+			}
+
+			@Override
+			public void flush()
+			{}
+
+			@Override
+			public void close()
+			{}
+
+		};
+	}
+
+	private Instruction instruction( final int index )
+	{
+		return Instruction.builder()
+				.index( index )
+				.lineNo( index + 4 )
+				.origin( ACCOUNT )
+				.destination( ACCOUNT )
+				.transactionType( "99" )
+				.amount( "1001" )
+				.reference( "REF" + index )
+				.build();
+	}
+
+}
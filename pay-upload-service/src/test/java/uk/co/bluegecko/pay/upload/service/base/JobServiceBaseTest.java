@@ -0,0 +1,201 @@
+package uk.co.bluegecko.pay.upload.service.base;
+
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uk.co.bluegecko.pay.common.model.Message.Classification;
+import uk.co.bluegecko.pay.upload.model.Job;
+import uk.co.bluegecko.pay.upload.service.JobService;
+import uk.co.bluegecko.pay.v1.upload.wire.JobStatus;
+import uk.co.bluegecko.pay.v1.upload.wire.JobStatus.State;
+
+
+public class JobServiceBaseTest
+{
+
+	private static final String NAME = "test.txt";
+
+	private Clock clock;
+	private List< Runnable > queued;
+	private MeterRegistry meterRegistry;
+	private JobService jobService;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		clock = mock( Clock.class );
+		when( clock.millis() ).thenReturn( 1000L );
+		queued = new ArrayList<>();
+		meterRegistry = new SimpleMeterRegistry();
+		jobService = new JobServiceBase( clock, queued::add, Duration.ofMillis( 500 ), 3, meterRegistry );
+	}
+
+	@Test
+	public final void testSubmitQueuesAndRuns()
+	{
+		final Job job = jobService.submit( NAME, running -> {
+			running.parsed();
+			running.published();
+		} );
+
+		assertThat( job.id(), is( id( 1 ) ) );
+		assertThat( status( id( 1 ) ).state(), is( State.QUEUED ) );
+
+		when( clock.millis() ).thenReturn( 1250L );
+		queued.forEach( Runnable::run );
+
+		final JobStatus status = status( id( 1 ) );
+		assertThat( status.state(), is( State.COMPLETED ) );
+		assertThat( status.parsed(), is( 1L ) );
+		assertThat( status.published(), is( 1L ) );
+		assertThat( status.elapsed(), is( 0L ) );
+	}
+
+	@Test
+	public final void testCheckedOnPool()
+	{
+		final Job job = jobService.submit( NAME, Job::parsed, Job::published );
+
+		assertThat( status( job.id() ).state(), is( State.QUEUED ) );
+		assertThat( status( job.id() ).parsed(), is( 0L ) );
+
+		queued.forEach( Runnable::run );
+
+		final JobStatus status = status( job.id() );
+		assertThat( status.state(), is( State.COMPLETED ) );
+		assertThat( status.parsed(), is( 1L ) );
+		assertThat( status.published(), is( 1L ) );
+	}
+
+	@Test
+	public final void testCheckFailsJob()
+	{
+		final Job job = jobService.submit( NAME, running -> {
+			throw new IOException( "broken" );
+		}, Job::published );
+
+		queued.forEach( Runnable::run );
+
+		final JobStatus status = status( job.id() );
+		assertThat( status.state(), is( State.FAILED ) );
+		assertThat( status.published(), is( 0L ) );
+		assertThat( status.message()
+				.has( Classification.ERROR, IOException.class.getSimpleName() ), is( true ) );
+	}
+
+	@Test
+	public final void testRunFails()
+	{
+		try
+		{
+			jobService.run( NAME, job -> {
+				job.errors( 2 );
+				throw new IOException( "broken" );
+			} );
+			fail( "expected failure" );
+		}
+		catch ( final IOException ex )
+		{
+			final JobStatus status = status( id( 1 ) );
+			assertThat( status.state(), is( State.FAILED ) );
+			assertThat( status.errors(), is( 2L ) );
+			assertThat( meterRegistry.timer( JobServiceBase.JOBS, "outcome", State.FAILED.name() )
+					.count(), is( 1L ) );
+			assertThat( meterRegistry.counter( JobServiceBase.MESSAGES, "classification", "ERROR" )
+					.count(), is( 1.0 ) );
+			assertThat( status.message()
+					.has( "IOException" ), is( true ) );
+		}
+	}
+
+	@Test
+	public final void testIdsAreUnique() throws IOException
+	{
+		assertThat( jobService.run( NAME, job -> {} )
+				.id(), is( id( 1 ) ) );
+		assertThat( jobService.run( NAME, job -> {} )
+				.id(), is( id( 2 ) ) );
+	}
+
+	@Test
+	public final void testFinishedJobsExpire() throws IOException
+	{
+		jobService.run( NAME, job -> {} );
+		jobService.submit( NAME, job -> {} );
+
+		when( clock.millis() ).thenReturn( 2000L );
+		jobService.run( NAME, job -> {} );
+
+		assertThat( jobService.job( id( 1 ) )
+				.isPresent(), is( false ) );
+		assertThat( jobService.job( id( 2 ) )
+				.isPresent(), is( true ) );
+		assertThat( jobService.job( id( 3 ) )
+				.isPresent(), is( true ) );
+	}
+
+	@Test
+	public final void testOldestFinishedJobsEvicted() throws IOException
+	{
+		for ( int i = 0; i < 5; i++ )
+		{
+			when( clock.millis() ).thenReturn( 1000L + i );
+			jobService.run( NAME, job -> {} );
+		}
+
+		assertThat( jobService.job( id( 2 ) )
+				.isPresent(), is( false ) );
+		assertThat( jobService.job( id( 3 ) )
+				.isPresent(), is( true ) );
+		assertThat( jobService.job( id( 5 ) )
+				.isPresent(), is( true ) );
+	}
+
+	@Test( expected = RejectedExecutionException.class )
+	public final void testRejected()
+	{
+		jobService = new JobServiceBase( clock, task -> {
+			throw new RejectedExecutionException();
+		}, Duration.ofMillis( 500 ), 3 );
+
+		try
+		{
+			jobService.submit( NAME, job -> {} );
+		}
+		finally
+		{
+			assertThat( jobService.job( id( 1 ) )
+					.isPresent(), is( false ) );
+		}
+	}
+
+	// ids are seeded from the clock, which starts at 1000ms
+	private static long id( final int job )
+	{
+		return 1000L * 1000 + job;
+	}
+
+	private JobStatus status( final long jobId )
+	{
+		return jobService.job( jobId )
+				.get()
+				.status();
+	}
+
+}
@@ -0,0 +1,314 @@
+package uk.co.bluegecko.pay.upload.service.base;
+
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import uk.co.bluegecko.pay.common.service.MessageException;
+import uk.co.bluegecko.pay.upload.model.FileDigest;
+import uk.co.bluegecko.pay.upload.model.Session;
+import uk.co.bluegecko.pay.upload.service.InvalidRequestException;
+import uk.co.bluegecko.pay.v1.upload.wire.SessionStatus;
+
+
+public class SessionServiceBaseTest
+{
+
+	private static final String FILE_NAME = "test.txt";
+	private static final byte[] CONTENT = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes( StandardCharsets.UTF_8 );
+	private static final int CHUNK_SIZE = 10;
+	private static final FileDigest DIGEST = FileDigest.of( FileDigest.newDigest()
+			.digest( CONTENT ) );
+	private static final Clock CLOCK = Clock.fixed( Instant.ofEpochMilli( 1000L ), ZoneOffset.UTC );
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path root;
+	private SessionServiceBase sessionService;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		root = folder.getRoot()
+				.toPath()
+				.resolve( "sessions" );
+		sessionService = new SessionServiceBase( CLOCK, root );
+	}
+
+	@Test
+	public final void testCreate() throws IOException
+	{
+		final Session session = sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE, DIGEST );
+
+		assertThat( session.chunks(), is( 4 ) );
+		assertThat( session.length( 3 ), is( 6L ) );
+		assertThat( session.missing(), is( Arrays.asList( 0, 1, 2, 3 ) ) );
+		assertThat( sessionService.session( session.id() )
+				.get(), is( session ) );
+		// an open session for the same file is picked up again, whatever it is called, but not another file
+		assertThat( sessionService.create( "copy.txt", CONTENT.length, CHUNK_SIZE, DIGEST ), is( session ) );
+		assertThat( sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE, FileDigest.of( FileDigest
+				.newDigest()
+				.digest( FILE_NAME.getBytes( StandardCharsets.UTF_8 ) ) ) )
+				.id(), is( session.id() + 1 ) );
+		// ids carry on from the clock, so they are not used again after a restart
+		assertThat( session.id(), is( 1000L * 1000 + 1 ) );
+	}
+
+	@Test( expected = InvalidRequestException.class )
+	public final void testCreateInvalid() throws IOException
+	{
+		sessionService.create( FILE_NAME, CONTENT.length, 0, DIGEST );
+	}
+
+	@Test
+	public final void testFollow() throws Exception
+	{
+		final Session session = sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE, DIGEST );
+		write( session, 2 );
+		write( session, 3 );
+
+		final ExecutorService reader = Executors.newSingleThreadExecutor();
+		try
+		{
+			final Future< byte[] > read = reader.submit( () -> read( sessionService.follow( session, 10_000 ) ) );
+			write( session, 1 );
+			assertThat( read.isDone(), is( false ) );
+
+			write( session, 0 );
+			assertThat( read.get( 10, TimeUnit.SECONDS ), is( CONTENT ) );
+		}
+		finally
+		{
+			reader.shutdownNow();
+		}
+	}
+
+	@Test( expected = UncheckedIOException.class )
+	public final void testFollowIdle() throws IOException
+	{
+		final Session session = sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE, DIGEST );
+		write( session, 0 );
+
+		read( sessionService.follow( session, 10 ) );
+	}
+
+	@Test
+	public final void testWriteOutOfOrder() throws IOException
+	{
+		final Session session = sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE, DIGEST );
+
+		write( session, 2 );
+		write( session, 0 );
+		assertThat( session.offset(), is( 10L ) );
+		assertThat( session.missing(), is( Arrays.asList( 1, 3 ) ) );
+
+		write( session, 3 );
+		write( session, 1 );
+		assertThat( session.isComplete(), is( true ) );
+		assertThat( session.offset(), is( ( long ) CONTENT.length ) );
+		assertThat( read( sessionService.open( session ) ), is( CONTENT ) );
+	}
+
+	@Test
+	public final void testWriteShortChunk() throws IOException
+	{
+		final Session session = sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE, DIGEST );
+
+		try
+		{
+			sessionService.write( session, 0, new ByteArrayInputStream( CONTENT, 0, CHUNK_SIZE - 1 ) );
+			fail( "expected invalid length" );
+		}
+		catch ( final IllegalArgumentException ex )
+		{
+			assertThat( ex.getMessage(), is( "invalid-chunk-length-0-9" ) );
+		}
+		assertThat( session.isReceived( 0 ), is( false ) );
+		assertThat( root.resolve( Long.toString( session.id() ) )
+				.toFile()
+				.list().length, is( 1 ) );
+	}
+
+	@Test( expected = InvalidRequestException.class )
+	public final void testWriteInvalidChunk() throws IOException
+	{
+		final Session session = sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE, DIGEST );
+
+		sessionService.write( session, 4, new ByteArrayInputStream( CONTENT ) );
+	}
+
+	@Test( expected = MessageException.class )
+	public final void testWriteCommitted() throws IOException
+	{
+		final Session session = sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE, DIGEST );
+		sessionService.started( session, 1L );
+
+		write( session, 0 );
+	}
+
+	@Test
+	public final void testReload() throws IOException
+	{
+		final Session session = sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE, DIGEST );
+		write( session, 0 );
+		write( session, 2 );
+		sessionService.started( session, 7L );
+		sessionService.checkpoint( session, 12, 9 );
+
+		sessionService = new SessionServiceBase( CLOCK, root );
+
+		final SessionStatus status = sessionService.session( session.id() )
+				.get()
+				.status();
+		assertThat( status.name(), is( FILE_NAME ) );
+		assertThat( status.digest(), is( DIGEST.toString() ) );
+		assertThat( status.missing(), is( Arrays.asList( 1, 3 ) ) );
+		assertThat( status.committed(), is( true ) );
+		assertThat( status.jobId(), is( 7L ) );
+		assertThat( status.line(), is( 12 ) );
+		assertThat( status.index(), is( 9 ) );
+		assertThat( sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE, DIGEST )
+				.id(), is( session.id() + 1 ) );
+	}
+
+	@Test
+	public final void testStartedAgainKeepsBatch() throws IOException
+	{
+		final Session session = sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE, DIGEST );
+		sessionService.started( session, 7L );
+		sessionService.started( session, 8L );
+
+		final Session reloaded = new SessionServiceBase( CLOCK, root ).session( session.id() )
+				.get();
+		assertThat( reloaded.jobId(), is( 8L ) );
+		assertThat( reloaded.batchId(), is( 7L ) );
+	}
+
+	@Test
+	public final void testCompleted() throws IOException
+	{
+		final Session session = sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE, DIGEST );
+		for ( int chunk = 0; chunk < session.chunks(); chunk++ )
+		{
+			write( session, chunk );
+		}
+		sessionService.started( session, 7L );
+
+		sessionService.completed( session );
+
+		assertThat( Files.exists( root.resolve( Long.toString( session.id() ) ) ), is( false ) );
+		final SessionStatus status = sessionService.session( session.id() )
+				.get()
+				.status();
+		assertThat( status.missing(), is( Collections.emptyList() ) );
+		assertThat( status.jobId(), is( 7L ) );
+		assertThat( new SessionServiceBase( CLOCK, root ).session( session.id() )
+				.isPresent(), is( false ) );
+	}
+
+	@Test
+	public final void testExpired() throws IOException
+	{
+		final Clock clock = mock( Clock.class );
+		when( clock.millis() ).thenReturn( 1000L );
+		sessionService = new SessionServiceBase( clock, root, Duration.ofMillis( 500 ) );
+		final Session open = sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE, DIGEST );
+		final Session completed = sessionService.create( FILE_NAME, CONTENT.length, CONTENT.length, DIGEST );
+		sessionService.started( completed, 7L );
+		sessionService.completed( completed );
+
+		when( clock.millis() ).thenReturn( 1250L );
+		write( open, 0 );
+		when( clock.millis() ).thenReturn( 1600L );
+		sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE * 2, DIGEST );
+
+		assertThat( sessionService.session( completed.id() )
+				.isPresent(), is( false ) );
+		assertThat( sessionService.session( open.id() )
+				.isPresent(), is( true ) );
+
+		when( clock.millis() ).thenReturn( 1800L );
+		sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE * 3, DIGEST );
+
+		assertThat( sessionService.session( open.id() )
+				.isPresent(), is( false ) );
+		assertThat( Files.exists( root.resolve( Long.toString( open.id() ) ) ), is( false ) );
+	}
+
+	@Test
+	public final void testExpiredOnReload() throws IOException
+	{
+		final Session session = sessionService.create( FILE_NAME, CONTENT.length, CHUNK_SIZE, DIGEST );
+		write( session, 0 );
+		final Path directory = root.resolve( Long.toString( session.id() ) );
+		Files.setLastModifiedTime( directory, FileTime.fromMillis( 0L ) );
+
+		assertThat( new SessionServiceBase( CLOCK, root, Duration.ofMillis( 500 ) ).session( session.id() )
+				.isPresent(), is( false ) );
+		assertThat( Files.exists( directory ), is( false ) );
+	}
+
+	@Test
+	public final void testEmpty() throws IOException
+	{
+		final Session session = sessionService.create( null, 0, CHUNK_SIZE, DIGEST );
+
+		assertThat( session.chunks(), is( 0 ) );
+		assertThat( session.isComplete(), is( true ) );
+		assertThat( session.status()
+				.name(), is( nullValue() ) );
+	}
+
+	private void write( final Session session, final int chunk ) throws IOException
+	{
+		sessionService.write( session, chunk, new ByteArrayInputStream( CONTENT, chunk * CHUNK_SIZE, ( int ) session
+				.length( chunk ) ) );
+	}
+
+	private byte[] read( final InputStream input ) throws IOException
+	{
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (InputStream chunks = input)
+		{
+			final byte[] buffer = new byte[7];
+			int read;
+			while ( ( read = chunks.read( buffer ) ) != -1 )
+			{
+				output.write( buffer, 0, read );
+			}
+		}
+		return output.toByteArray();
+	}
+
+}
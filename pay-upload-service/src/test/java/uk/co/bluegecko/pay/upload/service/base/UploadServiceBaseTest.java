@@ -3,23 +3,63 @@ package uk.co.bluegecko.pay.upload.service.base;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
-import static org.mockito.Mockito.only;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
+import javax.validation.ConstraintViolation;
+
+import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
-import uk.co.bluegecko.pay.bacs.std18.model.Instruction;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import uk.co.bluegecko.pay.bacs.std18.service.v1.AccountWireStd18ToV1;
+import uk.co.bluegecko.pay.bacs.std18.service.v1.InstructionWireStd18ToV1;
+import uk.co.bluegecko.pay.common.model.FieldPath;
+import uk.co.bluegecko.pay.common.model.FieldViolation;
+import uk.co.bluegecko.pay.common.model.Message.Classification;
+import uk.co.bluegecko.pay.common.service.CompiledValidator;
+import uk.co.bluegecko.pay.common.service.MessageException;
 import uk.co.bluegecko.pay.common.service.base.ParsingServiceBase;
+import uk.co.bluegecko.pay.upload.model.FileDigest;
+import uk.co.bluegecko.pay.upload.model.PipelineGauges.Stage;
+import uk.co.bluegecko.pay.upload.model.Session;
+import uk.co.bluegecko.pay.upload.service.DuplicateFileException;
+import uk.co.bluegecko.pay.upload.service.InstructionPublisher;
+import uk.co.bluegecko.pay.upload.service.InvalidRequestException;
 import uk.co.bluegecko.pay.upload.service.StreamingService;
 import uk.co.bluegecko.pay.upload.service.UploadService;
+import uk.co.bluegecko.pay.v1.portfolio.wire.Instruction;
+import uk.co.bluegecko.pay.v1.upload.wire.JobStatus;
+import uk.co.bluegecko.pay.v1.upload.wire.JobStatus.State;
 
 
 public class UploadServiceBaseTest
@@ -28,15 +68,54 @@ public class UploadServiceBaseTest
 	private static final String FILE_NAME = "test.txt";
 	private static final String VOL_LINE = "VOL1173922                               100101                                1";
 	private static final String INST_LINE = "0100390105996309940202421315692000000000000006BSDSAF 00000000006REF&LT 00000000006NAME   00000000006 14308";
+	private static final String HDR1_LINE = "HDR1A100101S  110010117392200010001       08194 08192 000000                    ";
+	private static final String UTL1_LINE = "UTL10000000000000000000000000600000000000001        0000000                     ";
+	private static final String UTL1_TWO = "UTL10000000000000000000000001200000000000002        0000000                     ";
+	private static final String UTL1_MISMATCH = "UTL10000000000055000000000005500000010000010        0000000                     ";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
 
 	private StreamingService streamingService;
+	private InstructionPublisher publisher;
+	private CompiledValidator validator;
+	private MeterRegistry meterRegistry;
+	private ExecutorService converters;
+	private ExecutorService publishers;
+	private ExecutorService followers;
+	private DigestStoreBase digestStore;
+	private SessionServiceBase sessionService;
 	private UploadService uploadService;
 
 	@Before
 	public void setUp() throws Exception
 	{
 		streamingService = mock( StreamingService.class );
-		uploadService = new UploadServiceBase( new ParsingServiceBase(), streamingService );
+		publisher = mock( InstructionPublisher.class );
+		when( streamingService.publisher() ).thenReturn( publisher );
+		validator = mock( CompiledValidator.class );
+		when( validator.isValid( any() ) ).thenReturn( true );
+		meterRegistry = new SimpleMeterRegistry();
+		converters = Executors.newFixedThreadPool( 2 );
+		publishers = Executors.newCachedThreadPool();
+		followers = new ThreadPoolExecutor( 0, 2, 1L, TimeUnit.SECONDS, new SynchronousQueue<>() );
+		digestStore = new DigestStoreBase( Clock.systemUTC(), folder.newFile()
+				.toPath(), Duration.ofDays( 1 ) );
+		sessionService = new SessionServiceBase( Clock.systemUTC(), folder.newFolder()
+				.toPath() );
+		uploadService = new UploadServiceBase( new ParsingServiceBase(), streamingService,
+				new JobServiceBase( Clock.systemUTC(), Runnable::run, Duration.ofHours( 1 ), 10 ), digestStore,
+				sessionService, new InstructionWireStd18ToV1( new AccountWireStd18ToV1() ), validator, converters,
+				publishers, followers, 4, Duration.ofSeconds( 10 ), Clock.systemUTC(), meterRegistry );
+	}
+
+	@After
+	public void tearDown() throws IOException
+	{
+		digestStore.close();
+		converters.shutdownNow();
+		publishers.shutdownNow();
+		followers.shutdownNow();
 	}
 
 	@Test
@@ -46,7 +125,8 @@ public class UploadServiceBaseTest
 
 		uploadService.processFile( file );
 
-		verify( streamingService, only() ).sendInstruction( any( Instruction.class ) );
+		verify( publisher, times( 1 ) ).send( any( Instruction.class ) );
+		verify( publisher ).close();
 	}
 
 	@Test
@@ -56,13 +136,426 @@ public class UploadServiceBaseTest
 
 		uploadService.processFile( file );
 
-		verify( streamingService, never() ).sendInstruction( any( Instruction.class ) );
+		verify( publisher, never() ).send( any( Instruction.class ) );
+	}
+
+	@Test
+	public final void testUploadReconciled() throws IOException
+	{
+		final MultipartFile file = new MockMultipartFile( FILE_NAME,
+				String.join( "\n", HDR1_LINE, INST_LINE, UTL1_LINE )
+						.getBytes() );
+
+		uploadService.processFile( file );
+
+		verify( publisher, times( 1 ) ).send( any( Instruction.class ) );
+	}
+
+	@Test
+	public final void testUploadNotReconciled() throws IOException
+	{
+		final MultipartFile file = new MockMultipartFile( FILE_NAME,
+				String.join( "\n", HDR1_LINE, INST_LINE, UTL1_MISMATCH )
+						.getBytes() );
+
+		final JobStatus status = failed( uploadService.processFile( file ) );
+
+		assertThat( status.message()
+				.has( Classification.ERROR, "batch-1" ), is( true ) );
+		verify( publisher, never() ).send( any( Instruction.class ) );
+	}
+
+	@Test
+	public final void testUploadParseErrorNotRejected() throws IOException
+	{
+		final MultipartFile file = new MockMultipartFile( FILE_NAME,
+				String.join( "\n", HDR1_LINE, INST_LINE, INST_LINE.substring( 0, 90 ), UTL1_LINE )
+						.getBytes() );
+
+		final JobStatus status = uploadService.getJobStatus( uploadService.processFile( file ) )
+				.get();
+
+		assertThat( status.state(), is( State.COMPLETED ) );
+		assertThat( status.errors(), is( 1L ) );
+		verify( publisher, times( 1 ) ).send( any( Instruction.class ) );
+	}
+
+	@Test
+	public final void testStreamReconciled() throws IOException
+	{
+		uploadService.processStream( FILE_NAME, null, null, stream( HDR1_LINE, INST_LINE, UTL1_LINE ) );
+
+		verify( publisher, times( 1 ) ).send( any( Instruction.class ) );
+	}
+
+	@Test
+	public final void testStreamNotReconciled() throws IOException
+	{
+		final JobStatus status = failed( uploadService.processStream( FILE_NAME, null, null, stream( HDR1_LINE,
+				INST_LINE, UTL1_MISMATCH ) ) );
+
+		assertThat( status.message()
+				.has( Classification.ERROR, "batch-1" ), is( true ) );
+		verify( publisher, never() ).send( any( Instruction.class ) );
+		assertThat( digestStore.size(), is( 0 ) );
+	}
+
+	@Test
+	public final void testUploadDuplicate() throws IOException
+	{
+		final byte[] content = String.join( "\n", HDR1_LINE, INST_LINE, UTL1_LINE )
+				.getBytes();
+		final long jobId = uploadService.processFile( new MockMultipartFile( FILE_NAME, content ) );
+
+		final JobStatus status = failed( uploadService.processFile( new MockMultipartFile( "copy.txt", content ) ) );
+
+		assertThat( status.message()
+				.text( Classification.ERROR, DuplicateFileException.DUPLICATE )
+				.contains( "job-" + jobId ), is( true ) );
+
+		verify( publisher, times( 1 ) ).send( any( Instruction.class ) );
+	}
+
+	@Test
+	public final void testUploadCompressed() throws IOException
+	{
+		final byte[] content = String.join( "\n", HDR1_LINE, INST_LINE, UTL1_LINE )
+				.getBytes();
+
+		final long jobId = uploadService.processFile( new MockMultipartFile( FILE_NAME, FILE_NAME + ".gz",
+				"application/gzip", gzip( content ) ) );
+
+		assertThat( uploadService.getJobStatus( jobId )
+				.get()
+				.state(), is( State.COMPLETED ) );
+		verify( publisher, times( 1 ) ).send( any( Instruction.class ) );
+		// held as the file inside, so the same file sent plain is a duplicate
+		assertThat( digestStore.find( FileDigest.of( FileDigest.newDigest()
+				.digest( content ) ) )
+				.get()
+				.jobId(), is( jobId ) );
+	}
+
+	@Test
+	public final void testUploadCompressedInvalid() throws IOException
+	{
+		final JobStatus status = failed( uploadService.processFile( new MockMultipartFile( FILE_NAME, FILE_NAME
+				+ ".gz", "application/gzip", INST_LINE.getBytes() ) ) );
+
+		assertThat( status.message()
+				.has( Classification.ERROR, InvalidRequestException.class.getSimpleName() ), is( true ) );
+	}
+
+	@Test
+	public final void testStreamCompressed() throws IOException
+	{
+		uploadService.processStream( FILE_NAME, null, "gzip", new ByteArrayInputStream( gzip( String.join( "\n",
+				HDR1_LINE, INST_LINE, UTL1_LINE )
+				.getBytes() ) ) );
+
+		verify( publisher, times( 1 ) ).send( any( Instruction.class ) );
+	}
+
+	@Test
+	public final void testUploadRejectedNotRetained() throws IOException
+	{
+		final MultipartFile file = new MockMultipartFile( FILE_NAME,
+				String.join( "\n", HDR1_LINE, INST_LINE, UTL1_MISMATCH )
+						.getBytes() );
+
+		for ( int attempt = 0; attempt < 2; attempt++ )
+		{
+			assertThat( failed( uploadService.processFile( file ) ).message()
+					.has( Classification.ERROR, "batch-1" ), is( true ) );
+			assertThat( digestStore.size(), is( 0 ) );
+		}
+	}
+
+	@Test
+	public final void testStreamDuplicateDigest() throws IOException
+	{
+		final byte[] content = String.join( "\n", HDR1_LINE, INST_LINE, UTL1_LINE )
+				.getBytes();
+		final String digest = FileDigest.of( FileDigest.newDigest()
+				.digest( content ) )
+				.toString();
+		uploadService.processStream( FILE_NAME, digest, null, new ByteArrayInputStream( content ) );
+
+		try
+		{
+			uploadService.processStream( FILE_NAME, digest, null, new ByteArrayInputStream( content ) );
+			fail( "expected duplicate" );
+		}
+		catch ( final DuplicateFileException ex )
+		{
+			assertThat( ex.original()
+					.digest()
+					.toString(), is( digest ) );
+		}
+
+		verify( publisher, times( 1 ) ).send( any( Instruction.class ) );
 	}
 
 	@Test
-	public final void testJobStatus()
+	public final void testStreamDigestMismatch() throws IOException
+	{
+		final String digest = FileDigest.of( FileDigest.newDigest()
+				.digest( VOL_LINE.getBytes() ) )
+				.toString();
+
+		final JobStatus status = failed( uploadService.processStream( FILE_NAME, digest, null, stream( HDR1_LINE,
+				INST_LINE, UTL1_LINE ) ) );
+
+		assertThat( status.message()
+				.has( Classification.ERROR, "digest-mismatch" ), is( true ) );
+		verify( publisher, never() ).send( any( Instruction.class ) );
+		assertThat( digestStore.size(), is( 0 ) );
+	}
+
+	@Test
+	public final void testSessionCommit() throws IOException
+	{
+		final byte[] content = String.join( "\n", HDR1_LINE, INST_LINE, UTL1_LINE )
+				.getBytes();
+		// checked by the session's follower as the chunks arrive, last first
+		final Session session = uploadService.createSession( FILE_NAME, content.length, 100, digest( content )
+				.toString() );
+		for ( int chunk = session.chunks() - 1; chunk >= 0; chunk-- )
+		{
+			sessionService.write( session, chunk, new ByteArrayInputStream( content, chunk * 100, ( int ) session
+					.length( chunk ) ) );
+		}
+
+		final long jobId = uploadService.commitSession( session );
+
+		assertThat( uploadService.getJobStatus( jobId )
+				.get()
+				.state(), is( State.COMPLETED ) );
+		assertThat( uploadService.commitSession( session ), is( jobId ) );
+		assertThat( session.status()
+				.index(), is( 1 ) );
+		assertThat( session.status()
+				.line(), is( 2 ) );
+		verify( publisher, times( 1 ) ).send( any( Instruction.class ) );
+	}
+
+	@Test
+	public final void testSessionResumed() throws IOException
+	{
+		final byte[] content = String.join( "\n", HDR1_LINE, INST_LINE, INST_LINE, UTL1_TWO )
+				.getBytes();
+		// opened without a follower, as a session loaded after a restart is, so it is checked when committed
+		final Session session = sessionService.create( FILE_NAME, content.length, content.length, digest(
+				content ) );
+		sessionService.write( session, 0, new ByteArrayInputStream( content ) );
+		// as left by a job that published the first instruction and then failed
+		sessionService.checkpoint( session, 2, 1 );
+
+		uploadService.commitSession( session );
+
+		final ArgumentCaptor< Instruction > sent = ArgumentCaptor.forClass( Instruction.class );
+		verify( publisher, times( 1 ) ).send( sent.capture() );
+		assertThat( sent.getValue()
+				.index(), is( 2 ) );
+		assertThat( sent.getValue()
+				.lineNo(), is( 3 ) );
+	}
+
+	@Test
+	public final void testSessionDigestMismatch() throws IOException
+	{
+		final byte[] content = String.join( "\n", HDR1_LINE, INST_LINE, UTL1_LINE )
+				.getBytes();
+		final Session session = uploadService.createSession( FILE_NAME, content.length, 100, digest( VOL_LINE
+				.getBytes() ).toString() );
+		for ( int chunk = 0; chunk < session.chunks(); chunk++ )
+		{
+			sessionService.write( session, chunk, new ByteArrayInputStream( content, chunk * 100, ( int ) session
+					.length( chunk ) ) );
+		}
+
+		try
+		{
+			uploadService.commitSession( session );
+			fail( "expected mismatch" );
+		}
+		catch ( final MessageException ex )
+		{
+			assertThat( ex.messages()
+					.has( Classification.ERROR, "digest-mismatch" ), is( true ) );
+		}
+
+		assertThat( digestStore.size(), is( 0 ) );
+		verify( publisher, never() ).send( any( Instruction.class ) );
+	}
+
+	@Test
+	public final void testSessionDuplicate() throws IOException
+	{
+		final byte[] content = String.join( "\n", HDR1_LINE, INST_LINE, UTL1_LINE )
+				.getBytes();
+		final long jobId = uploadService.processFile( new MockMultipartFile( FILE_NAME, content ) );
+
+		try
+		{
+			uploadService.createSession( FILE_NAME, content.length, 100, digest( content ).toString() );
+			fail( "expected duplicate" );
+		}
+		catch ( final DuplicateFileException ex )
+		{
+			assertThat( ex.original()
+					.jobId(), is( jobId ) );
+		}
+	}
+
+	@Test
+	public final void testSessionClaimedAgain() throws IOException
+	{
+		final byte[] content = String.join( "\n", HDR1_LINE, INST_LINE, UTL1_LINE )
+				.getBytes();
+		final Session session = uploadService.createSession( FILE_NAME, content.length, content.length, digest(
+				content ).toString() );
+		sessionService.write( session, 0, new ByteArrayInputStream( content ) );
+		// as left by a job of the same session cut short by a restart
+		digestStore.claim( session.digest(), 99L, FILE_NAME, "session-" + session.id() );
+
+		final long jobId = uploadService.commitSession( session );
+
+		assertThat( uploadService.getJobStatus( jobId )
+				.get()
+				.state(), is( State.COMPLETED ) );
+		assertThat( digestStore.find( session.digest() )
+				.get()
+				.jobId(), is( jobId ) );
+		verify( publisher, times( 1 ) ).send( any( Instruction.class ) );
+	}
+
+	@Test
+	public final void testSessionRefusedWhenFollowersBusy() throws IOException
+	{
+		uploadService.createSession( FILE_NAME, 250, 100, digest( new byte[250] ).toString() );
+		uploadService.createSession( FILE_NAME, 300, 100, digest( new byte[300] ).toString() );
+
+		try
+		{
+			uploadService.createSession( FILE_NAME, 350, 100, digest( new byte[350] ).toString() );
+			fail( "expected busy" );
+		}
+		catch ( final RejectedExecutionException ex )
+		{
+			// refused, so the client tries again later
+		}
+		// the same file again is the same session, already followed
+		uploadService.createSession( FILE_NAME, 250, 100, digest( new byte[250] ).toString() );
+	}
+
+	@Test( expected = InvalidRequestException.class )
+	public final void testSessionInvalidDigest() throws IOException
+	{
+		uploadService.createSession( FILE_NAME, 100, 100, "not-a-digest" );
+	}
+
+	@Test
+	public final void testSessionIncomplete() throws IOException
+	{
+		final Session session = uploadService.createSession( FILE_NAME, 250, 100, digest( new byte[250] )
+				.toString() );
+		sessionService.write( session, 1, new ByteArrayInputStream( new byte[100] ) );
+
+		try
+		{
+			uploadService.commitSession( session );
+			fail( "expected incomplete" );
+		}
+		catch ( final MessageException ex )
+		{
+			assertThat( ex.messages()
+					.has( Classification.ERROR, "session-incomplete" ), is( true ) );
+		}
+		assertThat( session.missing(), is( Arrays.asList( 0, 2 ) ) );
+	}
+
+	@Test
+	public final void testJobStatus() throws IOException
+	{
+		assertThat( uploadService.getJobStatus( 1 )
+				.isPresent(), is( false ) );
+
+		final MultipartFile file = new MockMultipartFile( FILE_NAME,
+				String.join( "\n", HDR1_LINE, INST_LINE, UTL1_LINE )
+						.getBytes() );
+		final long jobId = uploadService.processFile( file );
+		final JobStatus status = uploadService.getJobStatus( jobId )
+				.get();
+
+		assertThat( status.jobId(), is( jobId ) );
+		assertThat( status.state(), is( State.COMPLETED ) );
+		assertThat( status.parsed(), is( 3L ) );
+		assertThat( status.converted(), is( 1L ) );
+		assertThat( status.published(), is( 1L ) );
+		assertThat( status.conversionDepth(), is( 0L ) );
+		assertThat( status.publishDepth(), is( 0L ) );
+		assertThat( status.errors(), is( 0L ) );
+		assertThat( uploadService.getPipelineGauges()
+				.count( Stage.PUBLISH ), is( 1L ) );
+		assertThat( meterRegistry.find( UploadServiceBase.PIPELINE_RECORDS )
+				.tags( "stage", "publish" )
+				.functionCounter()
+				.count(), is( 1.0 ) );
+	}
+
+	@Test
+	public final void testUploadInvalidInstruction() throws IOException
+	{
+		when( validator.isValid( any() ) ).thenReturn( false );
+		when( validator.validate( any() ) ).thenReturn( Collections.< ConstraintViolation< Object > > singleton(
+				FieldViolation.< Object > builder()
+						.message( "must match" )
+						.propertyPath( FieldPath.of( "reference" ) )
+						.build() ) );
+
+		final MultipartFile file = new MockMultipartFile( FILE_NAME,
+				String.join( "\n", HDR1_LINE, INST_LINE, UTL1_LINE )
+						.getBytes() );
+		final JobStatus status = failed( uploadService.processFile( file ) );
+
+		assertThat( status.message()
+				.has( Classification.ERROR, "reference" ), is( true ) );
+		assertThat( uploadService.getPipelineGauges()
+				.invalidCount(), is( 1L ) );
+		assertThat( digestStore.size(), is( 0 ) );
+		verify( publisher, never() ).send( any( Instruction.class ) );
+	}
+
+	// the check runs on the job, so a rejected file is only seen in the job's state
+	private JobStatus failed( final long jobId )
+	{
+		final JobStatus status = uploadService.getJobStatus( jobId )
+				.get();
+		assertThat( status.state(), is( State.FAILED ) );
+		return status;
+	}
+
+	private FileDigest digest( final byte[] content )
+	{
+		return FileDigest.of( FileDigest.newDigest()
+				.digest( content ) );
+	}
+
+	private byte[] gzip( final byte[] content ) throws IOException
+	{
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (OutputStream compressed = new GZIPOutputStream( output ))
+		{
+			compressed.write( content );
+		}
+		return output.toByteArray();
+	}
+
+	private InputStream stream( final String... lines )
 	{
-		assertThat( uploadService.getJobStatus( 1 ), is( "COMPLETED: 1" ) );
+		return new ByteArrayInputStream( String.join( "\n", lines )
+				.getBytes() );
 	}
 
 }